@@ -1,5 +1,9 @@
 package com.muyingmall.common.redis.config;
 
+import com.muyingmall.common.redis.id.IdGenerator;
+import com.muyingmall.common.redis.id.SegmentAllocator;
+import com.muyingmall.common.redis.id.impl.RedisSegmentAllocator;
+import com.muyingmall.common.redis.id.impl.SegmentIdGenerator;
 import com.muyingmall.common.redis.lock.DistributedLock;
 import com.muyingmall.common.redis.lock.impl.RedisDistributedLock;
 import com.muyingmall.common.redis.properties.RedisProperties;
@@ -28,6 +32,7 @@ import jakarta.annotation.PostConstruct;
  *   <li>CacheService缓存服务</li>
  *   <li>DistributedLock分布式锁</li>
  *   <li>RedisUtils工具类</li>
+ *   <li>IdGenerator分布式ID生成器</li>
  *   <li>RedisProperties配置属性</li>
  * </ul>
  * 
@@ -93,13 +98,42 @@ public class RedisAutoConfiguration {
         return redisUtils;
     }
 
+    /**
+     * 配置号段分配器
+     *
+     * @param redisTemplate   Redis模板
+     * @param redisProperties Redis配置属性
+     * @return 号段分配器实例
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public SegmentAllocator segmentAllocator(RedisTemplate<String, Object> redisTemplate,
+                                             RedisProperties redisProperties) {
+        return new RedisSegmentAllocator(redisTemplate, redisProperties);
+    }
+
+    /**
+     * 配置分布式ID生成器
+     *
+     * @param segmentAllocator 号段分配器
+     * @param redisProperties  Redis配置属性
+     * @return ID生成器实例
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean
+    public IdGenerator idGenerator(SegmentAllocator segmentAllocator, RedisProperties redisProperties) {
+        RedisProperties.Id id = redisProperties.getId();
+        log.info("初始化分布式ID生成器: step={}, preloadRatio={}", id.getStep(), id.getPreloadRatio());
+        return new SegmentIdGenerator(segmentAllocator, id.getStep(), id.getPreloadRatio());
+    }
+
     /**
      * 配置完成后的初始化
      */
     @PostConstruct
     public void init() {
         log.info("Redis模块自动配置完成");
-        log.info("可用组件: CacheService, DistributedLock, RedisUtils");
+        log.info("可用组件: CacheService, DistributedLock, RedisUtils, IdGenerator");
         log.info("配置属性前缀: muying.redis");
     }
 }
\ No newline at end of file
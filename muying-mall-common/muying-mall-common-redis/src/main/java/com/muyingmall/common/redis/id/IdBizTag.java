@@ -0,0 +1,36 @@
+package com.muyingmall.common.redis.id;
+
+/**
+ * 分布式ID业务标识
+ *
+ * <p>同一业务在各服务中必须使用相同的标识，才能共享同一个序列。</p>
+ *
+ * @author 母婴商城开发团队
+ * @since 2025-10-17
+ * @version 1.0
+ */
+public final class IdBizTag {
+
+    /**
+     * 订单号
+     */
+    public static final String ORDER = "order";
+
+    /**
+     * 支付单号
+     */
+    public static final String PAYMENT = "payment";
+
+    /**
+     * 物流单号
+     */
+    public static final String TRACKING = "tracking";
+
+    /**
+     * 用户优惠券码
+     */
+    public static final String COUPON_CODE = "coupon_code";
+
+    private IdBizTag() {
+    }
+}
@@ -0,0 +1,44 @@
+package com.muyingmall.common.redis.id;
+
+/**
+ * 分布式ID生成器接口
+ *
+ * <p>为订单号、支付单号、物流单号等业务编号提供全局唯一且趋势递增的ID。</p>
+ *
+ * <p>使用示例：</p>
+ * <pre>{@code
+ * @Autowired
+ * private IdGenerator idGenerator;
+ *
+ * // 纯数字ID
+ * long id = idGenerator.nextId("order");
+ *
+ * // 业务编号：前缀 + 日期 + 定长序号，例如 OD20251017000000012345
+ * String orderNo = idGenerator.nextNo("order", "OD");
+ * }</pre>
+ *
+ * @author 母婴商城开发团队
+ * @since 2025-10-17
+ * @version 1.0
+ */
+public interface IdGenerator {
+
+    /**
+     * 获取下一个ID
+     *
+     * @param bizTag 业务标识，不同业务使用独立的序列
+     * @return 全局唯一、趋势递增的ID
+     */
+    long nextId(String bizTag);
+
+    /**
+     * 获取下一个业务编号
+     *
+     * <p>格式：前缀 + 日期（yyyyMMdd）+ 12位定长序号。序号全局递增，因此编号可按字典序排序。</p>
+     *
+     * @param bizTag 业务标识
+     * @param prefix 编号前缀，例如 OD、PAY
+     * @return 业务编号
+     */
+    String nextNo(String bizTag, String prefix);
+}
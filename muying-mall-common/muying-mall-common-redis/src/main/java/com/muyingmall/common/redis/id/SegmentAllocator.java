@@ -0,0 +1,24 @@
+package com.muyingmall.common.redis.id;
+
+/**
+ * 号段分配器
+ *
+ * <p>从中心化的序列（Redis或数据库）中一次性申请一段连续的ID，
+ * 各节点在本地内存中消费号段，只有号段用尽时才访问序列。</p>
+ *
+ * @author 母婴商城开发团队
+ * @since 2025-10-17
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface SegmentAllocator {
+
+    /**
+     * 申请一个号段
+     *
+     * @param bizTag 业务标识
+     * @param step   号段长度
+     * @return 号段的最大ID（包含），号段范围为 [返回值 - step + 1, 返回值]
+     */
+    long allocate(String bizTag, int step);
+}
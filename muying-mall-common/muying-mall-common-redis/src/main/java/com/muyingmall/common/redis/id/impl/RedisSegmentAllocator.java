@@ -0,0 +1,45 @@
+package com.muyingmall.common.redis.id.impl;
+
+import com.muyingmall.common.redis.id.SegmentAllocator;
+import com.muyingmall.common.redis.properties.RedisProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * 基于Redis的号段分配器
+ *
+ * <p>使用 INCRBY 原子地推进序列，每次调用返回一个长度为 step 的独占号段。</p>
+ *
+ * @author 母婴商城开发团队
+ * @since 2025-10-17
+ * @version 1.0
+ */
+@RequiredArgsConstructor
+public class RedisSegmentAllocator implements SegmentAllocator {
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final RedisProperties redisProperties;
+
+    /**
+     * 构建序列的完整键名
+     *
+     * @param bizTag 业务标识
+     * @return 完整的序列键名
+     */
+    private String buildSequenceKey(String bizTag) {
+        String idPrefix = redisProperties.getId().getKeyPrefix();
+        if (redisProperties.isEnableKeyPrefix()) {
+            return redisProperties.getKeyPrefix() + idPrefix + bizTag;
+        }
+        return idPrefix + bizTag;
+    }
+
+    @Override
+    public long allocate(String bizTag, int step) {
+        Long max = redisTemplate.opsForValue().increment(buildSequenceKey(bizTag), step);
+        if (max == null) {
+            throw new IllegalStateException("申请号段失败: bizTag=" + bizTag);
+        }
+        return max;
+    }
+}
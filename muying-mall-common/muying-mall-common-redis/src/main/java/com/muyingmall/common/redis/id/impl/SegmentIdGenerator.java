@@ -0,0 +1,256 @@
+package com.muyingmall.common.redis.id.impl;
+
+import com.muyingmall.common.core.exception.BusinessException;
+import com.muyingmall.common.redis.id.IdGenerator;
+import com.muyingmall.common.redis.id.SegmentAllocator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 号段模式ID生成器（双缓冲）
+ *
+ * <p>每个业务标识在本地持有当前号段和预加载的下一号段：</p>
+ * <ul>
+ *   <li>取号只对当前号段做一次CAS自增，不加锁、不访问Redis</li>
+ *   <li>当前号段消费超过预加载比例时，后台线程异步申请下一号段</li>
+ *   <li>当前号段用尽时切换到下一号段；若下一号段尚未就绪，则同步申请</li>
+ *   <li>同步申请后才完成的预加载号段低于当前号段，直接丢弃，保证单节点内ID递增</li>
+ * </ul>
+ *
+ * <p>号段由 {@link SegmentAllocator} 从中心序列独占分配，因此多节点之间不会重复。
+ * 节点重启会丢弃未用完的号段，ID存在空洞但保持唯一和趋势递增。</p>
+ *
+ * @author 母婴商城开发团队
+ * @since 2025-10-17
+ * @version 1.0
+ */
+@Slf4j
+public class SegmentIdGenerator implements IdGenerator {
+
+    /**
+     * 业务编号中序号部分的长度
+     */
+    private static final int SEQUENCE_WIDTH = 12;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final SegmentAllocator segmentAllocator;
+
+    /**
+     * 号段长度
+     */
+    private final int step;
+
+    /**
+     * 当前号段消费到该比例时开始预加载下一号段
+     */
+    private final double preloadRatio;
+
+    private final ConcurrentMap<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService preloadExecutor;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+
+    private volatile DatePrefix datePrefix;
+
+    public SegmentIdGenerator(SegmentAllocator segmentAllocator, int step, double preloadRatio) {
+        this(segmentAllocator, step, preloadRatio, newPreloadExecutor());
+    }
+
+    /**
+     * @param preloadExecutor 执行号段预加载的线程池，{@link #shutdown()} 时关闭
+     */
+    public SegmentIdGenerator(SegmentAllocator segmentAllocator, int step, double preloadRatio,
+                              ExecutorService preloadExecutor) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("号段长度必须大于0");
+        }
+        if (preloadRatio <= 0 || preloadRatio >= 1) {
+            throw new IllegalArgumentException("预加载比例必须在0和1之间");
+        }
+        this.segmentAllocator = segmentAllocator;
+        this.step = step;
+        this.preloadRatio = preloadRatio;
+        this.datePrefix = DatePrefix.of(System.currentTimeMillis(), zoneId);
+        this.preloadExecutor = preloadExecutor;
+    }
+
+    private static ExecutorService newPreloadExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "id-segment-preload-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public long nextId(String bizTag) {
+        SegmentBuffer buffer = buffers.computeIfAbsent(bizTag, tag -> new SegmentBuffer(tag, allocateSegment(tag)));
+        while (true) {
+            Segment segment = buffer.current;
+            long id = segment.cursor.getAndIncrement();
+            if (id <= segment.max) {
+                if (id >= segment.preloadAt && buffer.next == null) {
+                    preloadNextSegment(buffer);
+                }
+                return id;
+            }
+            switchSegment(buffer, segment);
+        }
+    }
+
+    @Override
+    public String nextNo(String bizTag, String prefix) {
+        long id = nextId(bizTag);
+        String datePart = currentDatePrefix();
+        String digits = Long.toString(id);
+
+        StringBuilder builder = new StringBuilder(prefix.length() + datePart.length() + SEQUENCE_WIDTH);
+        builder.append(prefix).append(datePart);
+        for (int i = digits.length(); i < SEQUENCE_WIDTH; i++) {
+            builder.append('0');
+        }
+        return builder.append(digits).toString();
+    }
+
+    /**
+     * 关闭预加载线程池
+     */
+    public void shutdown() {
+        preloadExecutor.shutdown();
+    }
+
+    /**
+     * 异步预加载下一号段，同一业务标识同时只有一个预加载任务
+     */
+    private void preloadNextSegment(SegmentBuffer buffer) {
+        if (!buffer.loading.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            preloadExecutor.execute(() -> {
+                try {
+                    Segment next = allocateSegment(buffer.bizTag);
+                    synchronized (buffer) {
+                        // 预加载期间当前号段已用尽并同步申请了更新的号段时，预加载的号段已落后，装入会导致ID回退
+                        if (next.max <= buffer.current.max) {
+                            log.debug("丢弃过期的预加载号段: bizTag={}, max={}, currentMax={}",
+                                    buffer.bizTag, next.max, buffer.current.max);
+                        } else if (buffer.next == null) {
+                            buffer.next = next;
+                        }
+                    }
+                } catch (Exception e) {
+                    // 预加载失败不影响取号，号段用尽时会同步重试
+                    log.warn("预加载号段失败: bizTag={}", buffer.bizTag, e);
+                } finally {
+                    buffer.loading.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            buffer.loading.set(false);
+            log.warn("提交号段预加载任务失败: bizTag={}", buffer.bizTag, e);
+        }
+    }
+
+    /**
+     * 当前号段用尽后切换号段，只有用尽号段的线程会进入该慢路径
+     */
+    private void switchSegment(SegmentBuffer buffer, Segment exhausted) {
+        synchronized (buffer) {
+            if (buffer.current != exhausted) {
+                // 其他线程已完成切换
+                return;
+            }
+            Segment next = buffer.next;
+            if (next == null) {
+                next = allocateSegment(buffer.bizTag);
+            }
+            buffer.current = next;
+            buffer.next = null;
+        }
+    }
+
+    private Segment allocateSegment(String bizTag) {
+        long max;
+        try {
+            max = segmentAllocator.allocate(bizTag, step);
+        } catch (Exception e) {
+            log.error("申请号段失败: bizTag={}, step={}", bizTag, step, e);
+            throw new BusinessException(500, "生成ID失败，请稍后重试", e);
+        }
+        long start = max - step + 1;
+        log.debug("申请号段成功: bizTag={}, range=[{}, {}]", bizTag, start, max);
+        return new Segment(start, max, start + (long) (step * preloadRatio));
+    }
+
+    private String currentDatePrefix() {
+        DatePrefix prefix = datePrefix;
+        long now = System.currentTimeMillis();
+        if (now >= prefix.nextDayStartMillis) {
+            prefix = DatePrefix.of(now, zoneId);
+            datePrefix = prefix;
+        }
+        return prefix.text;
+    }
+
+    /**
+     * 单个业务标识的双缓冲
+     */
+    private static final class SegmentBuffer {
+        private final String bizTag;
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+        private volatile Segment current;
+        private volatile Segment next;
+
+        private SegmentBuffer(String bizTag, Segment current) {
+            this.bizTag = bizTag;
+            this.current = current;
+        }
+    }
+
+    /**
+     * 号段 [start, max]
+     */
+    private static final class Segment {
+        private final AtomicLong cursor;
+        private final long max;
+        private final long preloadAt;
+
+        private Segment(long start, long max, long preloadAt) {
+            this.cursor = new AtomicLong(start);
+            this.max = max;
+            this.preloadAt = preloadAt;
+        }
+    }
+
+    /**
+     * 按天缓存的日期前缀，避免每次取号都格式化日期
+     */
+    private static final class DatePrefix {
+        private final String text;
+        private final long nextDayStartMillis;
+
+        private DatePrefix(String text, long nextDayStartMillis) {
+            this.text = text;
+            this.nextDayStartMillis = nextDayStartMillis;
+        }
+
+        private static DatePrefix of(long epochMillis, ZoneId zoneId) {
+            LocalDate today = Instant.ofEpochMilli(epochMillis).atZone(zoneId).toLocalDate();
+            long nextDayStart = today.plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+            return new DatePrefix(today.format(DATE_FORMATTER), nextDayStart);
+        }
+    }
+}
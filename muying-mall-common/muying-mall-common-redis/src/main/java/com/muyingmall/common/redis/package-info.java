@@ -19,6 +19,8 @@
  *   <li>{@link com.muyingmall.common.redis.lock.DistributedLock} - 分布式锁接口</li>
  *   <li>{@link com.muyingmall.common.redis.lock.impl.RedisDistributedLock} - Redis分布式锁实现</li>
  *   <li>{@link com.muyingmall.common.redis.utils.RedisUtils} - Redis工具类</li>
+ *   <li>{@link com.muyingmall.common.redis.id.IdGenerator} - 分布式ID生成器接口</li>
+ *   <li>{@link com.muyingmall.common.redis.id.impl.SegmentIdGenerator} - 号段模式ID生成器实现</li>
  *   <li>{@link com.muyingmall.common.redis.config.RedisAutoConfiguration} - 自动配置类</li>
  * </ul>
  * 
@@ -39,6 +41,10 @@
  *       cache-null-values: true       # 是否缓存空值
  *       null-value-expire-time: 300   # 空值缓存时间（秒）
  *       enable-statistics: false      # 是否启用缓存统计
+ *     id:
+ *       step: 1000                    # 号段长度
+ *       preload-ratio: 0.2            # 号段预加载比例
+ *       key-prefix: "id:"             # 序列键前缀
  * }</pre>
  * 
  * <h3>使用示例</h3>
@@ -20,6 +20,9 @@ import java.time.Duration;
  *       default-expire-time: 30  # 30秒
  *       retry-count: 3
  *       retry-interval: 100  # 100毫秒
+ *     id:
+ *       step: 1000  # 每次申请的号段长度
+ *       preload-ratio: 0.2  # 消费20%后预加载下一号段
  * }</pre>
  * 
  * @author 母婴商城开发团队
@@ -55,6 +58,11 @@ public class RedisProperties {
      */
     private Cache cache = new Cache();
 
+    /**
+     * 分布式ID配置
+     */
+    private Id id = new Id();
+
     /**
      * 分布式锁配置类
      */
@@ -103,4 +111,26 @@ public class RedisProperties {
          */
         private boolean enableStatistics = false;
     }
+
+    /**
+     * 分布式ID配置类
+     */
+    @Data
+    public static class Id {
+
+        /**
+         * 每次申请的号段长度
+         */
+        private int step = 1000;
+
+        /**
+         * 当前号段消费到该比例时预加载下一号段
+         */
+        private double preloadRatio = 0.2;
+
+        /**
+         * 序列键前缀
+         */
+        private String keyPrefix = "id:";
+    }
 }
\ No newline at end of file
@@ -0,0 +1,207 @@
+package com.muyingmall.common.redis.id;
+
+import com.muyingmall.common.redis.id.impl.SegmentIdGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 号段模式ID生成器测试，含单线程和多线程取号的基准测试（基准测试默认不执行）
+ *
+ * @author 母婴商城开发团队
+ */
+class SegmentIdGeneratorTest {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 模拟Redis INCRBY 的内存号段分配器
+     */
+    private final SegmentAllocator allocator = (bizTag, step) -> sequence.addAndGet(step);
+
+    private SegmentIdGenerator idGenerator;
+
+    @AfterEach
+    void tearDown() {
+        if (idGenerator != null) {
+            idGenerator.shutdown();
+        }
+    }
+
+    @Test
+    void nextIdShouldBeUniqueAcrossThreads() throws Exception {
+        // 号段较小，确保并发过程中频繁发生号段切换和预加载
+        idGenerator = new SegmentIdGenerator(allocator, 50, 0.2);
+        int threads = 16;
+        int idsPerThread = 20_000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet(threads * idsPerThread);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[threads];
+        for (int t = 0; t < threads; t++) {
+            futures[t] = executor.submit(() -> {
+                startLatch.await();
+                for (int i = 0; i < idsPerThread; i++) {
+                    assertTrue(ids.add(idGenerator.nextId("order")), "生成了重复ID");
+                }
+                return null;
+            });
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(threads * idsPerThread, ids.size());
+    }
+
+    @Test
+    void nextIdShouldIncreaseWithinSingleThread() {
+        idGenerator = new SegmentIdGenerator(allocator, 10, 0.5);
+        long previous = idGenerator.nextId("payment");
+        for (int i = 0; i < 1_000; i++) {
+            long current = idGenerator.nextId("payment");
+            assertTrue(current > previous, "ID应当趋势递增");
+            previous = current;
+        }
+    }
+
+    @Test
+    void latePreloadShouldNotMoveIdsBackwards() throws Exception {
+        CountDownLatch preloadAllocated = new CountDownLatch(1);
+        CountDownLatch releasePreload = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        // 第2次分配为预加载：先拿到号段，再等待同步切换完成后才返回
+        SegmentAllocator slowPreload = (bizTag, step) -> {
+            long max = sequence.addAndGet(step);
+            if (calls.incrementAndGet() == 2) {
+                preloadAllocated.countDown();
+                try {
+                    releasePreload.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return max;
+        };
+        ExecutorService preloadExecutor = Executors.newSingleThreadExecutor();
+        idGenerator = new SegmentIdGenerator(slowPreload, 10, 0.5, preloadExecutor);
+
+        // 第6个ID触发预加载，预加载拿到 [11, 20] 后阻塞
+        long previous = 0;
+        for (int i = 0; i < 6; i++) {
+            previous = idGenerator.nextId("refund");
+        }
+        assertTrue(preloadAllocated.await(5, TimeUnit.SECONDS));
+
+        // 当前号段用尽，同步申请到 [21, 30]
+        for (int i = 0; i < 5; i++) {
+            long current = idGenerator.nextId("refund");
+            assertTrue(current > previous, "ID应当递增");
+            previous = current;
+        }
+        assertEquals(21, previous);
+
+        // 预加载晚于同步切换完成，其号段应被丢弃
+        releasePreload.countDown();
+        preloadExecutor.shutdown();
+        assertTrue(preloadExecutor.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 30; i++) {
+            long current = idGenerator.nextId("refund");
+            assertTrue(current > previous, "ID不应回退到过期的预加载号段");
+            previous = current;
+        }
+    }
+
+    @Test
+    void nextNoShouldUseFixedWidthSequence() {
+        idGenerator = new SegmentIdGenerator(allocator, 100, 0.2);
+        String first = idGenerator.nextNo("order", "OD");
+        String second = idGenerator.nextNo("order", "OD");
+
+        assertTrue(first.startsWith("OD"));
+        // 前缀2位 + 日期8位 + 序号12位
+        assertEquals(22, first.length());
+        assertEquals(first.length(), second.length());
+        assertTrue(first.compareTo(second) < 0, "业务编号应当可按字典序排序");
+    }
+
+    @Tag("benchmark")
+    @Test
+    void benchmarkNextId(TestReporter reporter) throws Exception {
+        idGenerator = new SegmentIdGenerator(allocator, 1000, 0.2);
+        int ids = 2_000_000;
+
+        // 预热后测量单线程取号，与改造前的时间戳+UUID方式对比
+        long checksum = 0L;
+        for (int i = 0; i < ids; i++) {
+            checksum += idGenerator.nextId("order");
+            checksum += legacyNo().length();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ids; i++) {
+            checksum += idGenerator.nextId("order");
+        }
+        long segmentNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ids; i++) {
+            checksum += legacyNo().length();
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        // 多线程竞争同一业务标识
+        int threads = 16;
+        int idsPerThread = ids / threads;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        Future<?>[] futures = new Future<?>[threads];
+        for (int t = 0; t < threads; t++) {
+            futures[t] = executor.submit(() -> {
+                startLatch.await();
+                for (int i = 0; i < idsPerThread; i++) {
+                    idGenerator.nextId("payment");
+                }
+                return null;
+            });
+        }
+        start = System.nanoTime();
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        long contendedNanos = System.nanoTime() - start;
+        executor.shutdown();
+
+        reporter.publishEntry("ids=" + ids + ", step=1000",
+                String.format("号段单线程 %.1f ns/个，时间戳+UUID %.1f ns/个，%d线程 %.1f ns/个（校验和 %d）",
+                        (double) segmentNanos / ids, (double) legacyNanos / ids,
+                        threads, (double) contendedNanos / ((long) idsPerThread * threads), checksum));
+    }
+
+    /**
+     * 改造前的订单号生成方式
+     */
+    private static String legacyNo() {
+        return "OD" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 6);
+    }
+}
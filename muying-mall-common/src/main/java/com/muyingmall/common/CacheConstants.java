@@ -16,6 +16,41 @@ public class CacheConstants {
      */
     public static final String PRODUCT_DETAIL_KEY = PRODUCT_KEY_PREFIX + "detail:";
 
+    /**
+     * 商品详情本地缓存失效通知频道，消息内容为商品ID，"*"表示全部
+     */
+    public static final String PRODUCT_DETAIL_INVALIDATE_CHANNEL = PRODUCT_KEY_PREFIX + "detail-invalidate";
+
+    /**
+     * 库存台账可用库存，后接 {productId}
+     */
+    public static final String STOCK_LEDGER_KEY = "stock:ledger:";
+
+    /**
+     * 库存台账待回写数据库的扣减量HASH，field 为商品ID
+     */
+    public static final String STOCK_LEDGER_PENDING_KEY = "stock:ledger-pending";
+
+    /**
+     * 库存台账回写中的扣减量HASH，回写事务提交后删除
+     */
+    public static final String STOCK_LEDGER_INFLIGHT_KEY = "stock:ledger-inflight";
+
+    /**
+     * 库存台账回写序号
+     */
+    public static final String STOCK_LEDGER_SEQ_KEY = "stock:ledger-seq";
+
+    /**
+     * 库存台账回写与对账锁
+     */
+    public static final String STOCK_LEDGER_LOCK_KEY = "stock:ledger-lock";
+
+    /**
+     * 分桶库存均分任务锁
+     */
+    public static final String STOCK_BUCKET_REBALANCE_LOCK_KEY = "stock:bucket-rebalance-lock";
+
     /**
      * 商品列表缓存键
      */
@@ -171,6 +206,27 @@ public class CacheConstants {
      */
     public static final String ADMIN_ORDER_LIST_KEY = ORDER_KEY_PREFIX + "admin:list:";
 
+    /**
+     * 待触发的订单超时任务（ZSET，score为超时时间戳）
+     */
+    public static final String ORDER_TIMEOUT_PENDING_KEY = ORDER_KEY_PREFIX + "timeout:pending";
+
+    /**
+     * 已被节点领取的订单超时任务（ZSET，score为租约到期时间戳）
+     */
+    public static final String ORDER_TIMEOUT_CLAIMED_KEY = ORDER_KEY_PREFIX + "timeout:claimed";
+
+    /**
+     * 订单状态计数器键（HASH，field为状态编码，另含TOTAL）
+     * 全局计数器为 order:counter:global，用户计数器为 order:counter:user:{userId}
+     */
+    public static final String ORDER_STATUS_COUNTER_KEY = ORDER_KEY_PREFIX + "counter:";
+
+    /**
+     * 订单消息消费幂等键，值为 PROCESSING（处理中）或 DONE（已处理）
+     */
+    public static final String ORDER_MQ_CONSUMED_KEY = ORDER_KEY_PREFIX + "mq:consumed:";
+
     /**
      * 订单信息缓存过期时间（秒）
      */
@@ -206,6 +262,66 @@ public class CacheConstants {
      */
     public static final String CART_SELECTED_KEY = CART_KEY_PREFIX + "selected:";
 
+    /**
+     * 用户购物车主存储（HASH），field 见 CartStore
+     */
+    public static final String CART_HASH_KEY = CART_KEY_PREFIX + "hash:";
+
+    /**
+     * 待回写数据库的购物车用户（ZSET，score为首次变更时间戳）
+     */
+    public static final String CART_DIRTY_KEY = CART_KEY_PREFIX + "dirty";
+
+    /**
+     * 已被节点领取、正在回写的购物车用户（ZSET，score为租约到期时间戳）
+     */
+    public static final String CART_FLUSHING_KEY = CART_KEY_PREFIX + "flushing";
+
+    /**
+     * 优惠券缓存前缀
+     */
+    public static final String COUPON_KEY_PREFIX = "coupon:";
+
+    /**
+     * 优惠券已领取总数（含未落库的领取），后接 {couponId}
+     */
+    public static final String COUPON_RECEIVED_KEY = COUPON_KEY_PREFIX + "received:";
+
+    /**
+     * 优惠券每个用户的已领取数量（HASH，field为用户ID），后接 {couponId}
+     */
+    public static final String COUPON_USER_CLAIMED_KEY = COUPON_KEY_PREFIX + "user-claimed:";
+
+    /**
+     * 待落库的优惠券领取记录（LIST）
+     */
+    public static final String COUPON_CLAIM_QUEUE_KEY = COUPON_KEY_PREFIX + "claim:queue";
+
+    /**
+     * 正在落库的优惠券领取记录（LIST），落库成功后删除，失败或宕机时由下一次落库重放
+     */
+    public static final String COUPON_CLAIM_PROCESSING_KEY = COUPON_KEY_PREFIX + "claim:processing";
+
+    /**
+     * 处理中队列的持有者（STRING，值为落库任务的令牌，带租约），只有持有者能删除处理中队列
+     */
+    public static final String COUPON_CLAIM_PROCESSING_OWNER_KEY = COUPON_KEY_PREFIX + "claim:processing-owner";
+
+    /**
+     * 优惠券领取记录落库锁
+     */
+    public static final String COUPON_CLAIM_FLUSH_LOCK_KEY = COUPON_KEY_PREFIX + "claim:flush-lock";
+
+    /**
+     * 优惠规则版本号（HASH，field为规则ID），规则修改时递增，各节点据此使本地编译结果失效
+     */
+    public static final String COUPON_RULE_VERSION_KEY = COUPON_KEY_PREFIX + "rule:version";
+
+    /**
+     * 优惠券批量发放任务执行锁，后接 {jobId}
+     */
+    public static final String COUPON_ISSUE_LOCK_KEY = COUPON_KEY_PREFIX + "issue:lock:";
+
     /**
      * 购物车缓存过期时间（秒）
      */
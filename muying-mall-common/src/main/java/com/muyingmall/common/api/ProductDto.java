@@ -0,0 +1,24 @@
+package com.muyingmall.common.api;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * 商品信息DTO（服务间调用），库存为当前可用库存
+ */
+@Data
+public class ProductDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long productId;
+    private String productName;
+    private String productImg;
+    private BigDecimal price;
+    private Integer stock;
+    private String status;
+    private Long categoryId;
+    private Long brandId;
+}
@@ -65,20 +65,6 @@ public interface ProductServiceApi {
     Result<java.util.List<ProductDto>> getProductsByCategory(@PathVariable("categoryId") Long categoryId);
 }
 
-/**
- * 商品信息DTO
- */
-class ProductDto {
-    private Long productId;
-    private String productName;
-    private java.math.BigDecimal price;
-    private Integer stock;
-    private String status;
-    private Long categoryId;
-    private Long brandId;
-    // getters and setters
-}
-
 /**
  * 分类信息DTO
  */
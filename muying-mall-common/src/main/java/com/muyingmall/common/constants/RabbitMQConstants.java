@@ -166,6 +166,28 @@ public class RabbitMQConstants {
      */
     public static final String ORDER_DELAY_ROUTING_KEY = "order.delay.cancel";
     
+    // ==================== 消费重试相关 ====================
+    
+    /**
+     * 订单消费延迟重试交换机前缀，完整名称为前缀 + 延迟毫秒数 + "ms"
+     */
+    public static final String ORDER_RETRY_EXCHANGE_PREFIX = "order-retry-exchange.";
+    
+    /**
+     * 订单消费延迟重试队列前缀，完整名称为前缀 + 延迟毫秒数 + "ms"
+     */
+    public static final String ORDER_RETRY_QUEUE_PREFIX = "order-retry-queue.";
+    
+    /**
+     * 订单消费重试耗尽后的停放队列
+     */
+    public static final String ORDER_PARKING_QUEUE = "order-parking-queue";
+    
+    /**
+     * 消息已重试次数头
+     */
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+    
     // ==================== TTL配置 ====================
     
     /**
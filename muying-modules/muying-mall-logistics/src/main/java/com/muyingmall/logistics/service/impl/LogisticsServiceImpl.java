@@ -8,6 +8,8 @@ import com.muyingmall.logistics.entity.LogisticsCompany;
 import com.muyingmall.logistics.entity.LogisticsTrack;
 import com.muyingmall.logistics.entity.Order;
 import com.muyingmall.common.enums.LogisticsStatus;
+import com.muyingmall.common.redis.id.IdBizTag;
+import com.muyingmall.common.redis.id.IdGenerator;
 import com.muyingmall.logistics.mapper.LogisticsMapper;
 import com.muyingmall.logistics.service.LogisticsCompanyService;
 import com.muyingmall.logistics.service.LogisticsService;
@@ -20,12 +22,10 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 
 /**
  * 物流服务实现类
@@ -38,7 +38,7 @@ public class LogisticsServiceImpl extends ServiceImpl<LogisticsMapper, Logistics
     private final LogisticsCompanyService logisticsCompanyService;
     private final LogisticsTrackService logisticsTrackService;
     private final OrderService orderService;
-    private final Random random = new Random();
+    private final IdGenerator idGenerator;
 
     /**
      * 分页获取物流列表
@@ -255,7 +255,7 @@ public class LogisticsServiceImpl extends ServiceImpl<LogisticsMapper, Logistics
 
     /**
      * 生成物流单号
-     * 格式：物流公司代码（2位大写字母）+ 日期时间（12位：年月日时分秒）+ 4位随机数
+     * 格式：物流公司代码（大写）+ 日期（8位：年月日）+ 12位全局递增序号
      *
      * @param companyCode 物流公司代码
      * @return 生成的物流单号
@@ -266,37 +266,8 @@ public class LogisticsServiceImpl extends ServiceImpl<LogisticsMapper, Logistics
             throw new IllegalArgumentException("物流公司代码不能为空");
         }
 
-        // 获取物流公司代码（保证是大写的）
-        String code = companyCode.toUpperCase();
-
-        // 获取当前日期时间的格式化字符串
-        String dateStr = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyMMddHHmmss"));
-
-        // 生成4位随机数
-        int randomNum = random.nextInt(10000);
-        String randomStr = String.format("%04d", randomNum);
-
-        // 拼接物流单号
-        String trackingNo = code + dateStr + randomStr;
-
-        // 检查单号是否已存在，如果存在则重新生成
-        if (checkTrackingNoExists(trackingNo)) {
-            return generateTrackingNo(companyCode);
-        }
-
-        return trackingNo;
-    }
-
-    /**
-     * 检查物流单号是否已存在
-     *
-     * @param trackingNo 物流单号
-     * @return 是否存在
-     */
-    private boolean checkTrackingNoExists(String trackingNo) {
-        LambdaQueryWrapper<Logistics> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Logistics::getTrackingNo, trackingNo);
-        return count(queryWrapper) > 0;
+        // 序号由号段分配，全局唯一，无需再查库判重
+        return idGenerator.nextNo(IdBizTag.TRACKING, companyCode.toUpperCase());
     }
 
     /**
@@ -0,0 +1,137 @@
+package com.muyingmall.order.archive;
+
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.order.entity.Order;
+import com.muyingmall.order.entity.OrderProduct;
+import com.muyingmall.order.mapper.OrderArchiveMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 归档订单读取
+ *
+ * <p>订单查询先查热表，只有以下情况才访问归档表：</p>
+ * <ul>
+ *   <li>按ID、订单号在热表中查不到</li>
+ *   <li>订单历史翻页时，热表结果不足一页，或本页已翻到该用户最近一笔归档订单的时间之前</li>
+ * </ul>
+ */
+@Component
+@RequiredArgsConstructor
+public class OrderArchiveReader {
+
+    /**
+     * 订单历史排序：创建时间、订单ID倒序
+     */
+    private static final Comparator<Order> HISTORY_ORDER = Comparator
+            .comparing(Order::getCreateTime, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Order::getOrderId, Comparator.reverseOrder());
+
+    private final OrderArchiveMapper orderArchiveMapper;
+
+    /**
+     * 按ID查询归档订单（含商品）
+     *
+     * @param orderId 订单ID
+     * @return 归档订单，不存在时为null
+     */
+    public Order findById(Integer orderId) {
+        Order order = orderArchiveMapper.selectById(orderId);
+        if (order != null) {
+            attachProducts(List.of(order));
+        }
+        return order;
+    }
+
+    /**
+     * 按订单号查询归档订单（含商品）
+     *
+     * @param orderNo 订单号
+     * @param userId  用户ID，可为null
+     * @return 归档订单，不存在时为null
+     */
+    public Order findByOrderNo(String orderNo, Integer userId) {
+        Order order = orderArchiveMapper.selectByOrderNo(orderNo, userId);
+        if (order != null) {
+            attachProducts(List.of(order));
+        }
+        return order;
+    }
+
+    /**
+     * 把归档订单合并进一页热表订单历史
+     *
+     * @param userId     用户ID
+     * @param status     订单状态，可为null
+     * @param cursorTime 游标创建时间，第一页为null
+     * @param cursorId   游标订单ID
+     * @param hotOrders  热表查询结果，已按创建时间、订单ID倒序
+     * @param limit      本次需要的条数（每页大小 + 1）
+     * @return 合并后的订单，归档订单已填充商品
+     */
+    public List<Order> mergeHistory(Integer userId, OrderStatus status, LocalDateTime cursorTime, Integer cursorId,
+                                    List<Order> hotOrders, int limit) {
+        if (hotOrders.size() >= limit) {
+            // 热表已满一页，归档订单都早于最近一笔归档时间，晚于该时间的页无需访问归档表
+            LocalDateTime latestArchived = orderArchiveMapper.selectLatestCreateTime(userId);
+            Order lastHot = hotOrders.get(hotOrders.size() - 1);
+            if (latestArchived == null || latestArchived.isBefore(lastHot.getCreateTime())) {
+                return hotOrders;
+            }
+        }
+
+        List<Order> archived = orderArchiveMapper.selectHistory(userId,
+                status != null ? status.getCode() : null, cursorTime, cursorId, limit);
+        if (archived.isEmpty()) {
+            return hotOrders;
+        }
+
+        // 两次查询之间刚被归档的订单可能同时出现在两边
+        Set<Integer> hotIds = hotOrders.stream().map(Order::getOrderId).collect(Collectors.toSet());
+        archived.removeIf(order -> hotIds.contains(order.getOrderId()));
+
+        List<Order> merged = new ArrayList<>(hotOrders.size() + archived.size());
+        merged.addAll(hotOrders);
+        merged.addAll(archived);
+        merged.sort(HISTORY_ORDER);
+        if (merged.size() > limit) {
+            merged = new ArrayList<>(merged.subList(0, limit));
+        }
+
+        Set<Order> archivedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        archivedSet.addAll(archived);
+        List<Order> archivedInPage = merged.stream()
+                .filter(archivedSet::contains)
+                .collect(Collectors.toList());
+        attachProducts(archivedInPage);
+        return merged;
+    }
+
+    /**
+     * 为归档订单填充商品
+     */
+    private void attachProducts(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<Integer> orderIds = orders.stream().map(Order::getOrderId).collect(Collectors.toList());
+        Map<Integer, List<OrderProduct>> productsByOrder = new HashMap<>(orders.size() * 2);
+        for (OrderProduct orderProduct : orderArchiveMapper.selectProducts(orderIds)) {
+            productsByOrder.computeIfAbsent(orderProduct.getOrderId(), k -> new ArrayList<>()).add(orderProduct);
+        }
+        for (Order order : orders) {
+            order.setProducts(productsByOrder.getOrDefault(order.getOrderId(), new ArrayList<>()));
+        }
+    }
+}
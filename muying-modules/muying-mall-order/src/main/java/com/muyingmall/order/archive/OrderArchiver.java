@@ -0,0 +1,133 @@
+package com.muyingmall.order.archive;
+
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.order.mapper.OrderArchiveMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单归档任务
+ *
+ * <p>把关闭超过保留天数的订单迁入归档表，使热表只保留活跃订单，工作集能放进 InnoDB 缓冲池：</p>
+ * <ul>
+ *   <li>只归档已完成、已取消、已退款、已退货且最后更新时间早于阈值的订单</li>
+ *   <li>每批在一个事务内锁定（SKIP LOCKED，多节点可并行）、复制订单及其商品和状态日志，再从热表删除</li>
+ *   <li>批次之间休眠限流，单次运行有批次上限，避免长时间占用主库</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class OrderArchiver {
+
+    /**
+     * 已关闭、可归档的订单状态
+     */
+    private static final List<String> CLOSED_STATUSES = Arrays.asList(
+            OrderStatus.COMPLETED.getCode(), OrderStatus.CANCELLED.getCode(),
+            OrderStatus.REFUNDED.getCode(), OrderStatus.RETURNED.getCode());
+
+    private final OrderArchiveMapper orderArchiveMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 是否启用归档任务
+     */
+    private final boolean enabled;
+
+    /**
+     * 订单关闭后在热表中保留的天数
+     */
+    private final int retainDays;
+
+    /**
+     * 每批归档的订单数
+     */
+    private final int chunkSize;
+
+    /**
+     * 批次之间的休眠时间（毫秒）
+     */
+    private final long throttleMillis;
+
+    /**
+     * 单次运行最多处理的批次数
+     */
+    private final int maxChunksPerRun;
+
+    public OrderArchiver(OrderArchiveMapper orderArchiveMapper, TransactionTemplate transactionTemplate,
+                         @Value("${muying.order.archive.enabled:false}") boolean enabled,
+                         @Value("${muying.order.archive.retain-days:180}") int retainDays,
+                         @Value("${muying.order.archive.chunk-size:500}") int chunkSize,
+                         @Value("${muying.order.archive.throttle-millis:200}") long throttleMillis,
+                         @Value("${muying.order.archive.max-chunks-per-run:2000}") int maxChunksPerRun) {
+        this.orderArchiveMapper = orderArchiveMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.retainDays = retainDays;
+        this.chunkSize = chunkSize;
+        this.throttleMillis = throttleMillis;
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
+
+    /**
+     * 定时归档
+     */
+    @Scheduled(cron = "${muying.order.archive.cron:0 0 4 * * ?}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retainDays);
+        long start = System.currentTimeMillis();
+        long archived = 0;
+        int chunks = 0;
+        try {
+            while (chunks < maxChunksPerRun) {
+                Integer count = transactionTemplate.execute(status -> archiveChunk(cutoff));
+                if (count == null || count == 0) {
+                    break;
+                }
+                archived += count;
+                chunks++;
+                if (count < chunkSize) {
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(throttleMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("订单归档任务被中断");
+        } catch (Exception e) {
+            log.error("订单归档失败", e);
+        }
+        log.info("订单归档完成: cutoff={}, orders={}, chunks={}, cost={}ms",
+                cutoff, archived, chunks, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 归档一批订单：先复制子表再删除，订单商品、状态日志的外键为级联删除
+     */
+    private int archiveChunk(LocalDateTime cutoff) {
+        List<Integer> orderIds = orderArchiveMapper.lockArchivableIds(CLOSED_STATUSES, cutoff, chunkSize);
+        if (orderIds.isEmpty()) {
+            return 0;
+        }
+        orderArchiveMapper.copyOrders(orderIds);
+        orderArchiveMapper.copyOrderProducts(orderIds);
+        orderArchiveMapper.copyStateLogs(orderIds);
+        orderArchiveMapper.deleteOrderProducts(orderIds);
+        orderArchiveMapper.deleteStateLogs(orderIds);
+        int deleted = orderArchiveMapper.deleteOrders(orderIds);
+        log.debug("归档订单批次: first={}, count={}", orderIds.get(0), deleted);
+        return orderIds.size();
+    }
+}
@@ -0,0 +1,197 @@
+package com.muyingmall.order.async;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 事务提交后的异步副作用分发器
+ *
+ * <p>订单事务中登记的缓存清理、事件发布等副作用在事务提交后才执行，不再占用请求线程：</p>
+ * <ul>
+ *   <li>在事务中调用时登记到事务同步，提交后提交到虚拟线程执行；回滚时丢弃；不在事务中时立即提交</li>
+ *   <li>同一订单的副作用按登记顺序串行执行，不同订单之间并行</li>
+ *   <li>失败按退避间隔重试，超过最大次数后记录错误，不影响已提交的订单</li>
+ *   <li>待执行任务数有上限，超过上限时在提交事务的线程上直接执行，作为背压</li>
+ * </ul>
+ * <p>另可登记事务回滚后执行的补偿（如恢复已在远程服务扣减的库存），执行方式与提交后的副作用相同。</p>
+ * <p>副作用只在内存中排队，进程退出时未执行的任务会丢失，因此只用于可丢失或有对账兜底的操作
+ * （缓存会过期，计数器定时对账）；必须可靠送达的消息走发件箱。</p>
+ */
+@Slf4j
+@Component
+public class AfterCommitDispatcher {
+
+    private final ExecutorService executor;
+
+    /**
+     * 每个订单最后一个任务，后续任务接在它之后执行
+     */
+    private final Map<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * 待执行任务数上限
+     */
+    private final int maxPending;
+
+    /**
+     * 最大尝试次数（含首次）
+     */
+    private final int maxAttempts;
+
+    /**
+     * 重试退避基数（毫秒），第 n 次重试前等待 n 倍
+     */
+    private final long retryBackoffMillis;
+
+    private final Counter succeededCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    private final Counter callerRunsCounter;
+    private final Timer latencyTimer;
+
+    public AfterCommitDispatcher(MeterRegistry meterRegistry,
+                                 @Value("${muying.order.after-commit.max-pending:10000}") int maxPending,
+                                 @Value("${muying.order.after-commit.max-attempts:3}") int maxAttempts,
+                                 @Value("${muying.order.after-commit.retry-backoff-millis:200}") long retryBackoffMillis) {
+        this.maxPending = maxPending;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("order-after-commit-", 0).factory());
+
+        this.succeededCounter = Counter.builder("muying.order.after_commit.tasks")
+                .description("事务提交后副作用执行数").tag("result", "succeeded").register(meterRegistry);
+        this.retriedCounter = Counter.builder("muying.order.after_commit.tasks")
+                .description("事务提交后副作用执行数").tag("result", "retried").register(meterRegistry);
+        this.failedCounter = Counter.builder("muying.order.after_commit.tasks")
+                .description("事务提交后副作用执行数").tag("result", "failed").register(meterRegistry);
+        this.callerRunsCounter = Counter.builder("muying.order.after_commit.tasks")
+                .description("事务提交后副作用执行数").tag("result", "caller_runs").register(meterRegistry);
+        this.latencyTimer = Timer.builder("muying.order.after_commit.latency")
+                .description("事务提交到副作用执行完成的耗时").register(meterRegistry);
+        Gauge.builder("muying.order.after_commit.pending", pending, AtomicInteger::get)
+                .description("待执行的副作用数").register(meterRegistry);
+    }
+
+    /**
+     * 登记副作用，在当前事务提交后异步执行
+     *
+     * @param name    副作用名称，用于日志
+     * @param orderId 订单ID，同一订单的副作用按登记顺序执行
+     * @param task    副作用
+     */
+    public void dispatch(String name, Object orderId, Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(name, orderId, task);
+                }
+            });
+        } else {
+            submit(name, orderId, task);
+        }
+    }
+
+    /**
+     * 登记补偿，在当前事务回滚后异步执行；提交时丢弃，不在事务中时不执行
+     *
+     * @param name    补偿名称，用于日志
+     * @param orderId 订单ID，与同一订单的其他任务按登记顺序执行
+     * @param task    补偿操作，需幂等
+     */
+    public void dispatchAfterRollback(String name, Object orderId, Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    submit(name, orderId, task);
+                }
+            }
+        });
+    }
+
+    private void submit(String name, Object orderId, Runnable task) {
+        long committedAt = System.nanoTime();
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            callerRunsCounter.increment();
+            log.warn("事务提交后副作用积压，在当前线程执行: name={}, orderId={}", name, orderId);
+            execute(name, orderId, task, committedAt);
+            return;
+        }
+        CompletableFuture<Void> future = tails.compute(orderId, (key, tail) -> tail == null
+                ? CompletableFuture.runAsync(() -> execute(name, orderId, task, committedAt), executor)
+                : tail.thenRunAsync(() -> execute(name, orderId, task, committedAt), executor));
+        future.whenComplete((result, error) -> {
+            pending.decrementAndGet();
+            tails.remove(orderId, future);
+        });
+    }
+
+    /**
+     * 执行副作用，失败时在当前虚拟线程上退避重试，异常不向外抛出，保证同一订单后续任务继续执行
+     */
+    private void execute(String name, Object orderId, Runnable task, long committedAt) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                task.run();
+                succeededCounter.increment();
+                latencyTimer.record(System.nanoTime() - committedAt, TimeUnit.NANOSECONDS);
+                return;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts) {
+                    failedCounter.increment();
+                    log.error("事务提交后副作用执行失败，已放弃: name={}, orderId={}, attempts={}",
+                            name, orderId, attempt, e);
+                    return;
+                }
+                retriedCounter.increment();
+                log.warn("事务提交后副作用执行失败，准备重试: name={}, orderId={}, attempt={}, error={}",
+                        name, orderId, attempt, e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(retryBackoffMillis * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    failedCounter.increment();
+                    return;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 给已提交的任务一点时间执行完，未执行的缓存清理等待过期，计数器由定时对账修正
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("事务提交后副作用未全部执行完成: pending={}", pending.get());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+}
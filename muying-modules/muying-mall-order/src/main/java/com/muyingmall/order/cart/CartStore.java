@@ -0,0 +1,681 @@
+package com.muyingmall.order.cart;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.order.entity.Cart;
+import com.muyingmall.order.mapper.CartMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 购物车存储
+ *
+ * <p>每个用户一个 Redis HASH 作为购物车主存储，所有修改都是字段级的 Lua 原子操作：</p>
+ * <ul>
+ *   <li>i:{cartId} 购物车项的静态信息JSON（商品、规格、价格快照等，不含数量和选中状态）</li>
+ *   <li>q:{cartId} 数量；s:{cartId} 选中状态（0/1）</li>
+ *   <li>k:{productId}:{specsHash} 商品规格到 cartId 的索引，加购时判断是否已存在</li>
+ *   <li>r:{cartId} 已删除待回写的墓碑，墓碑期间保留静态信息和索引，再次加购同一商品规格时直接复活</li>
+ *   <li>_count 商品总数量，随数量变化增减；_loaded 已从数据库加载的标记</li>
+ * </ul>
+ * <p>新增购物车项同步写库以获得 cartId；数量、选中、删除只改 HASH，并把用户记入待回写集合，
+ * 由 {@link CartWriteBehindFlusher} 批量回写数据库。HASH 不存在时从数据库加载。</p>
+ */
+@Slf4j
+@Component
+public class CartStore {
+
+    /**
+     * 购物车不在 Redis 中，需要先从数据库加载
+     */
+    private static final long NOT_LOADED = -2L;
+
+    private static final String COUNT_FIELD = "_count";
+    private static final String LOADED_FIELD = "_loaded";
+    private static final String ITEM_PREFIX = "i:";
+    private static final String QUANTITY_PREFIX = "q:";
+    private static final String SELECTED_PREFIX = "s:";
+    private static final String INDEX_PREFIX = "k:";
+    private static final String TOMBSTONE_PREFIX = "r:";
+
+    /**
+     * 标记用户待回写并刷新过期时间，供各脚本拼接
+     * KEYS[1] 购物车, KEYS[2] 待回写集合; dirtyArg 为当前时间、用户ID、过期秒数在 ARGV 中的起始下标
+     */
+    private static String touch(int dirtyArg) {
+        return "redis.call('EXPIRE', KEYS[1], ARGV[" + (dirtyArg + 2) + "]) " +
+                "redis.call('ZADD', KEYS[2], 'NX', ARGV[" + dirtyArg + "], ARGV[" + (dirtyArg + 1) + "]) ";
+    }
+
+    /**
+     * 已存在相同商品规格时累加数量并设置选中状态，已删除未回写的购物车项直接复活
+     * ARGV[1] 索引field, ARGV[2] 数量, ARGV[3] 选中, ARGV[4..6] 当前时间、用户ID、过期秒数
+     * 返回 cartId；不存在返回0；未加载返回-2
+     */
+    private static final String ADD_EXISTING_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -2 end " +
+            "local id = redis.call('HGET', KEYS[1], ARGV[1]) " +
+            "if not id then return 0 end " +
+            "if redis.call('HDEL', KEYS[1], 'r:' .. id) == 1 then " +
+            "    redis.call('HSET', KEYS[1], 'q:' .. id, ARGV[2]) " +
+            "else " +
+            "    redis.call('HINCRBY', KEYS[1], 'q:' .. id, ARGV[2]) " +
+            "end " +
+            "redis.call('HSET', KEYS[1], 's:' .. id, ARGV[3]) " +
+            "redis.call('HINCRBY', KEYS[1], '_count', ARGV[2]) " +
+            touch(4) +
+            "return tonumber(id)";
+
+    /**
+     * 放入已写库的新购物车项
+     * ARGV[1] cartId, ARGV[2] 静态信息JSON, ARGV[3] 数量, ARGV[4] 选中, ARGV[5] 索引field, ARGV[6] 过期秒数
+     */
+    private static final String PUT_NEW_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -2 end " +
+            "if redis.call('HEXISTS', KEYS[1], 'i:' .. ARGV[1]) == 1 then return 0 end " +
+            "redis.call('HSET', KEYS[1], 'i:' .. ARGV[1], ARGV[2]) " +
+            "redis.call('HSET', KEYS[1], 'q:' .. ARGV[1], ARGV[3]) " +
+            "redis.call('HSET', KEYS[1], 's:' .. ARGV[1], ARGV[4]) " +
+            "redis.call('HSET', KEYS[1], ARGV[5], ARGV[1]) " +
+            "redis.call('HINCRBY', KEYS[1], '_count', ARGV[3]) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[6]) " +
+            "return 1";
+
+    /**
+     * 设置数量
+     * ARGV[1] cartId, ARGV[2] 数量, ARGV[3..5] 当前时间、用户ID、过期秒数
+     * 返回原数量；购物车项不存在返回-1；未加载返回-2
+     */
+    private static final String SET_QUANTITY_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -2 end " +
+            "local old = redis.call('HGET', KEYS[1], 'q:' .. ARGV[1]) " +
+            "if not old then return -1 end " +
+            "redis.call('HSET', KEYS[1], 'q:' .. ARGV[1], ARGV[2]) " +
+            "redis.call('HINCRBY', KEYS[1], '_count', tonumber(ARGV[2]) - tonumber(old)) " +
+            touch(3) +
+            "return tonumber(old)";
+
+    /**
+     * 设置选中状态，cartId 为 * 时设置全部
+     * ARGV[1] cartId, ARGV[2] 选中, ARGV[3..5] 当前时间、用户ID、过期秒数
+     * 返回设置的项数；未加载返回-2
+     */
+    private static final String SET_SELECTED_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -2 end " +
+            "local n = 0 " +
+            "if ARGV[1] == '*' then " +
+            "    for _, f in ipairs(redis.call('HKEYS', KEYS[1])) do " +
+            "        if string.sub(f, 1, 2) == 's:' then redis.call('HSET', KEYS[1], f, ARGV[2]) n = n + 1 end " +
+            "    end " +
+            "elseif redis.call('HEXISTS', KEYS[1], 's:' .. ARGV[1]) == 1 then " +
+            "    redis.call('HSET', KEYS[1], 's:' .. ARGV[1], ARGV[2]) n = 1 " +
+            "end " +
+            "if n > 0 then " + touch(3) + "end " +
+            "return n";
+
+    /**
+     * 删除购物车项并记录墓碑，静态信息和索引保留到墓碑回写后，ARGV[4] 为 * 时删除全部
+     * ARGV[1..3] 当前时间、用户ID、过期秒数, ARGV[4..] cartId
+     * 返回删除的项数；未加载返回-2
+     */
+    private static final String REMOVE_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -2 end " +
+            "local ids = {} " +
+            "if ARGV[4] == '*' then " +
+            "    for _, f in ipairs(redis.call('HKEYS', KEYS[1])) do " +
+            "        if string.sub(f, 1, 2) == 'q:' then ids[#ids + 1] = string.sub(f, 3) end " +
+            "    end " +
+            "else " +
+            "    for i = 4, #ARGV do ids[#ids + 1] = ARGV[i] end " +
+            "end " +
+            "local removed = 0 " +
+            "for _, id in ipairs(ids) do " +
+            "    local q = redis.call('HGET', KEYS[1], 'q:' .. id) " +
+            "    if q then " +
+            "        redis.call('HDEL', KEYS[1], 'q:' .. id, 's:' .. id) " +
+            "        redis.call('HINCRBY', KEYS[1], '_count', -tonumber(q)) " +
+            "        redis.call('HSET', KEYS[1], 'r:' .. id, '1') " +
+            "        removed = removed + 1 " +
+            "    end " +
+            "end " +
+            "if removed > 0 then " + touch(1) + "end " +
+            "return removed";
+
+    /**
+     * 删除已回写的墓碑，墓碑期间未被复活的购物车项同时删除静态信息和索引
+     * ARGV[1..] cartId
+     */
+    private static final String CLEAR_TOMBSTONES_SCRIPT =
+            "for i = 1, #ARGV do " +
+            "    local id = ARGV[i] " +
+            "    if redis.call('HDEL', KEYS[1], 'r:' .. id) == 1 and redis.call('HEXISTS', KEYS[1], 'q:' .. id) == 0 then " +
+            "        local json = redis.call('HGET', KEYS[1], 'i:' .. id) " +
+            "        if json then " +
+            "            local item = cjson.decode(json) " +
+            "            local hash = item.specsHash " +
+            "            if type(hash) ~= 'string' then hash = '' end " +
+            "            local indexField = 'k:' .. string.format('%d', item.productId) .. ':' .. hash " +
+            "            if redis.call('HGET', KEYS[1], indexField) == id then redis.call('HDEL', KEYS[1], indexField) end " +
+            "            redis.call('HDEL', KEYS[1], 'i:' .. id) " +
+            "        end " +
+            "    end " +
+            "end " +
+            "return 0";
+
+    /**
+     * 读取选中的购物车项，只返回选中项的 cartId、静态信息JSON、数量
+     * 未加载返回 nil
+     */
+    private static final String GET_SELECTED_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return false end " +
+            "local result = {} " +
+            "for _, f in ipairs(redis.call('HKEYS', KEYS[1])) do " +
+            "    if string.sub(f, 1, 2) == 's:' and redis.call('HGET', KEYS[1], f) == '1' then " +
+            "        local id = string.sub(f, 3) " +
+            "        local values = redis.call('HMGET', KEYS[1], 'i:' .. id, 'q:' .. id) " +
+            "        if values[1] and values[2] then " +
+            "            result[#result + 1] = id " +
+            "            result[#result + 1] = values[1] " +
+            "            result[#result + 1] = values[2] " +
+            "        end " +
+            "    end " +
+            "end " +
+            "return result";
+
+    /**
+     * 从数据库加载购物车，已存在时不覆盖
+     * ARGV[1] 过期秒数, ARGV[2..] field、value 交替
+     */
+    private static final String LOAD_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1";
+
+    /**
+     * 领取一批待回写的用户：从待回写集合移入回写中集合，score 为租约到期时间
+     * 其他节点租约未到期的用户留在待回写集合，避免两个节点并发回写同一购物车时旧快照覆盖新快照
+     * KEYS[1] 待回写集合, KEYS[2] 回写中集合; ARGV[1] 最大score, ARGV[2] 批量大小, ARGV[3] 当前时间, ARGV[4] 租约到期时间
+     */
+    private static final String CLAIM_DIRTY_SCRIPT =
+            "local users = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "local claimed = {} " +
+            "for i = 1, #users do " +
+            "    local lease = redis.call('ZSCORE', KEYS[2], users[i]) " +
+            "    if not lease or tonumber(lease) <= tonumber(ARGV[3]) then " +
+            "        redis.call('ZREM', KEYS[1], users[i]) " +
+            "        redis.call('ZADD', KEYS[2], ARGV[4], users[i]) " +
+            "        claimed[#claimed + 1] = users[i] " +
+            "    end " +
+            "end " +
+            "return claimed";
+
+    /**
+     * 放回回写失败的用户：重新标记待回写并移出回写中集合
+     * KEYS[1] 待回写集合, KEYS[2] 回写中集合; ARGV[1] 当前时间, ARGV[2..] 用户ID
+     */
+    private static final String RELEASE_DIRTY_SCRIPT =
+            "for i = 2, #ARGV do " +
+            "    redis.call('ZADD', KEYS[1], 'NX', ARGV[1], ARGV[i]) " +
+            "    redis.call('ZREM', KEYS[2], ARGV[i]) " +
+            "end " +
+            "return #ARGV - 1";
+
+    /**
+     * 回收租约已过期的回写（节点在回写提交前宕机），放回待回写集合立即重新回写
+     * KEYS[1] 待回写集合, KEYS[2] 回写中集合; ARGV[1] 当前时间, ARGV[2] 批量大小
+     */
+    private static final String RECOVER_DIRTY_SCRIPT =
+            "local users = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "for i = 1, #users do " +
+            "    redis.call('ZREM', KEYS[2], users[i]) " +
+            "    redis.call('ZADD', KEYS[1], 'NX', ARGV[1], users[i]) " +
+            "end " +
+            "return #users";
+
+    private static final DefaultRedisScript<Long> ADD_EXISTING_REDIS_SCRIPT = new DefaultRedisScript<>(ADD_EXISTING_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> PUT_NEW_REDIS_SCRIPT = new DefaultRedisScript<>(PUT_NEW_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> SET_QUANTITY_REDIS_SCRIPT = new DefaultRedisScript<>(SET_QUANTITY_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> SET_SELECTED_REDIS_SCRIPT = new DefaultRedisScript<>(SET_SELECTED_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> REMOVE_REDIS_SCRIPT = new DefaultRedisScript<>(REMOVE_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> CLEAR_TOMBSTONES_REDIS_SCRIPT = new DefaultRedisScript<>(CLEAR_TOMBSTONES_SCRIPT, Long.class);
+    private static final DefaultRedisScript<List> GET_SELECTED_REDIS_SCRIPT = new DefaultRedisScript<>(GET_SELECTED_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> LOAD_REDIS_SCRIPT = new DefaultRedisScript<>(LOAD_SCRIPT, Long.class);
+    private static final DefaultRedisScript<List> CLAIM_DIRTY_REDIS_SCRIPT = new DefaultRedisScript<>(CLAIM_DIRTY_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> RELEASE_DIRTY_REDIS_SCRIPT = new DefaultRedisScript<>(RELEASE_DIRTY_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> RECOVER_DIRTY_REDIS_SCRIPT = new DefaultRedisScript<>(RECOVER_DIRTY_SCRIPT, Long.class);
+
+    private static final List<String> DIRTY_KEYS = Arrays.asList(CacheConstants.CART_DIRTY_KEY, CacheConstants.CART_FLUSHING_KEY);
+
+    /**
+     * 购物车展示顺序：后加入的在前
+     */
+    private static final Comparator<Cart> DISPLAY_ORDER = Comparator.comparing(Cart::getCartId, Comparator.reverseOrder());
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CartMapper cartMapper;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 购物车 HASH 过期时间（秒），每次修改时刷新
+     */
+    private final long expireSeconds;
+
+    public CartStore(StringRedisTemplate stringRedisTemplate, CartMapper cartMapper, ObjectMapper objectMapper,
+                     @Value("${muying.order.cart.expire-days:7}") long expireDays) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cartMapper = cartMapper;
+        this.objectMapper = objectMapper;
+        this.expireSeconds = TimeUnit.DAYS.toSeconds(expireDays);
+    }
+
+    /**
+     * 已存在相同商品规格时累加数量，已删除未回写的同规格购物车项按本次数量复活
+     *
+     * @return cartId，不存在时为null
+     */
+    public Integer incrementExisting(Integer userId, Integer productId, String specsHash, int quantity, int selected) {
+        long result = executeLoaded(userId, () -> stringRedisTemplate.execute(ADD_EXISTING_REDIS_SCRIPT, keys(userId),
+                indexField(productId, specsHash), String.valueOf(quantity), String.valueOf(selected),
+                now(), String.valueOf(userId), String.valueOf(expireSeconds)));
+        return result > 0 ? (int) result : null;
+    }
+
+    /**
+     * 放入已写库的新购物车项
+     */
+    public void putNew(Cart cart) {
+        long result = executeLoaded(cart.getUserId(), () -> stringRedisTemplate.execute(PUT_NEW_REDIS_SCRIPT,
+                keys(cart.getUserId()).subList(0, 1), String.valueOf(cart.getCartId()), toJson(cart),
+                String.valueOf(cart.getQuantity()), String.valueOf(cart.getSelected()),
+                indexField(cart.getProductId(), cart.getSpecsHash()), String.valueOf(expireSeconds)));
+        log.debug("新购物车项放入Redis: userId={}, cartId={}, result={}", cart.getUserId(), cart.getCartId(), result);
+    }
+
+    /**
+     * 设置数量
+     *
+     * @return 是否存在该购物车项
+     */
+    public boolean setQuantity(Integer userId, Integer cartId, int quantity) {
+        return executeLoaded(userId, () -> stringRedisTemplate.execute(SET_QUANTITY_REDIS_SCRIPT, keys(userId),
+                String.valueOf(cartId), String.valueOf(quantity),
+                now(), String.valueOf(userId), String.valueOf(expireSeconds))) >= 0;
+    }
+
+    /**
+     * 设置选中状态
+     *
+     * @param cartId 购物车ID，为null时设置全部
+     * @return 设置的项数
+     */
+    public int setSelected(Integer userId, Integer cartId, boolean selected) {
+        return (int) executeLoaded(userId, () -> stringRedisTemplate.execute(SET_SELECTED_REDIS_SCRIPT, keys(userId),
+                cartId != null ? String.valueOf(cartId) : "*", selected ? "1" : "0",
+                now(), String.valueOf(userId), String.valueOf(expireSeconds)));
+    }
+
+    /**
+     * 删除购物车项
+     *
+     * @param cartIds 购物车ID，为null时清空
+     * @return 删除的项数
+     */
+    public int remove(Integer userId, Collection<Integer> cartIds) {
+        if (cartIds != null && cartIds.isEmpty()) {
+            return 0;
+        }
+        List<String> args = new ArrayList<>();
+        args.add(now());
+        args.add(String.valueOf(userId));
+        args.add(String.valueOf(expireSeconds));
+        if (cartIds == null) {
+            args.add("*");
+        } else {
+            cartIds.forEach(cartId -> args.add(String.valueOf(cartId)));
+        }
+        return (int) executeLoaded(userId, () -> stringRedisTemplate.execute(REMOVE_REDIS_SCRIPT, keys(userId), args.toArray()));
+    }
+
+    /**
+     * 获取购物车商品总数量，只读取一个字段
+     */
+    public int getCount(Integer userId) {
+        String key = hashKey(userId);
+        Object count = stringRedisTemplate.opsForHash().get(key, COUNT_FIELD);
+        if (count == null) {
+            load(userId);
+            count = stringRedisTemplate.opsForHash().get(key, COUNT_FIELD);
+        }
+        return count != null ? Integer.parseInt(count.toString()) : 0;
+    }
+
+    /**
+     * 获取全部购物车项
+     */
+    public List<Cart> getAll(Integer userId) {
+        String key = hashKey(userId);
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+        if (entries.isEmpty()) {
+            load(userId);
+            entries = stringRedisTemplate.opsForHash().entries(key);
+        }
+        return toCarts(entries);
+    }
+
+    /**
+     * 获取选中的购物车项，只传输和反序列化选中项
+     */
+    public List<Cart> getSelected(Integer userId) {
+        List<?> raw = stringRedisTemplate.execute(GET_SELECTED_REDIS_SCRIPT, keys(userId).subList(0, 1));
+        if (raw == null) {
+            load(userId);
+            raw = stringRedisTemplate.execute(GET_SELECTED_REDIS_SCRIPT, keys(userId).subList(0, 1));
+        }
+        List<Cart> carts = new ArrayList<>();
+        if (raw != null) {
+            for (int i = 0; i + 2 < raw.size(); i += 3) {
+                carts.add(toCart(String.valueOf(raw.get(i + 1)), String.valueOf(raw.get(i + 2)), "1"));
+            }
+        }
+        carts.sort(DISPLAY_ORDER);
+        return carts;
+    }
+
+    /**
+     * 按ID获取购物车项，只读取对应字段
+     */
+    public List<Cart> getByIds(Integer userId, Collection<Integer> cartIds) {
+        if (cartIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String key = hashKey(userId);
+        if (Boolean.FALSE.equals(stringRedisTemplate.hasKey(key))) {
+            load(userId);
+        }
+        List<Object> fields = new ArrayList<>(cartIds.size() * 3);
+        for (Integer cartId : cartIds) {
+            fields.add(ITEM_PREFIX + cartId);
+            fields.add(QUANTITY_PREFIX + cartId);
+            fields.add(SELECTED_PREFIX + cartId);
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(key, fields);
+        List<Cart> carts = new ArrayList<>(cartIds.size());
+        for (int i = 0; i + 2 < values.size(); i += 3) {
+            if (values.get(i) != null && values.get(i + 1) != null) {
+                carts.add(toCart(values.get(i).toString(), values.get(i + 1).toString(),
+                        values.get(i + 2) != null ? values.get(i + 2).toString() : "0"));
+            }
+        }
+        carts.sort(DISPLAY_ORDER);
+        return carts;
+    }
+
+    /**
+     * 获取单个购物车项
+     */
+    public Cart get(Integer userId, Integer cartId) {
+        List<Cart> carts = getByIds(userId, List.of(cartId));
+        return carts.isEmpty() ? null : carts.get(0);
+    }
+
+    /**
+     * 领取一批待回写的用户，移入带租约的回写中集合
+     *
+     * @param dirtyBefore 只领取首次变更早于该时间戳（毫秒）的用户
+     * @param limit       批量大小
+     * @param leaseMillis 租约时长（毫秒），到期未完成的回写由 {@link #recoverExpiredFlushes} 放回
+     */
+    public List<Integer> claimDirtyUsers(long dirtyBefore, int limit, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        List<?> users = stringRedisTemplate.execute(CLAIM_DIRTY_REDIS_SCRIPT, DIRTY_KEYS, String.valueOf(dirtyBefore),
+                String.valueOf(limit), String.valueOf(now), String.valueOf(now + leaseMillis));
+        List<Integer> userIds = new ArrayList<>(users != null ? users.size() : 0);
+        if (users != null) {
+            users.forEach(user -> userIds.add(Integer.valueOf(String.valueOf(user))));
+        }
+        return userIds;
+    }
+
+    /**
+     * 回写已提交，移出回写中集合；回写期间再次变更的用户已重新记入待回写集合
+     */
+    public void completeFlush(Collection<Integer> userIds) {
+        if (!userIds.isEmpty()) {
+            stringRedisTemplate.opsForZSet().remove(CacheConstants.CART_FLUSHING_KEY,
+                    userIds.stream().map(String::valueOf).toArray());
+        }
+    }
+
+    /**
+     * 回写失败，放回待回写集合，下一轮重试
+     */
+    public void releaseDirtyUsers(Collection<Integer> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>(userIds.size() + 1);
+        args.add(now());
+        userIds.forEach(userId -> args.add(String.valueOf(userId)));
+        stringRedisTemplate.execute(RELEASE_DIRTY_REDIS_SCRIPT, DIRTY_KEYS, args.toArray());
+    }
+
+    /**
+     * 回收租约过期的回写
+     *
+     * @param limit 单次回收上限
+     * @return 回收的用户数
+     */
+    public long recoverExpiredFlushes(int limit) {
+        Long recovered = stringRedisTemplate.execute(RECOVER_DIRTY_REDIS_SCRIPT, DIRTY_KEYS, now(), String.valueOf(limit));
+        return recovered != null ? recovered : 0;
+    }
+
+    /**
+     * 读取一批用户购物车的回写快照
+     *
+     * @return 用户ID -> 快照，购物车已过期的用户不在结果中
+     */
+    public Map<Integer, CartSnapshot> snapshot(List<Integer> userIds) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Integer userId : userIds) {
+                stringConnection.hGetAll(hashKey(userId));
+            }
+            return null;
+        });
+
+        Map<Integer, CartSnapshot> snapshots = new HashMap<>(userIds.size() * 2);
+        for (int i = 0; i < userIds.size(); i++) {
+            Map<?, ?> entries = (Map<?, ?>) results.get(i);
+            if (entries == null || entries.isEmpty()) {
+                continue;
+            }
+            CartSnapshot snapshot = new CartSnapshot();
+            Map<String, String> items = new HashMap<>();
+            Map<String, String> selected = new HashMap<>();
+            Map<String, String> quantities = new HashMap<>();
+            entries.forEach((field, value) -> {
+                String name = field.toString();
+                if (name.startsWith(ITEM_PREFIX)) {
+                    items.put(name.substring(2), value.toString());
+                } else if (name.startsWith(QUANTITY_PREFIX)) {
+                    quantities.put(name.substring(2), value.toString());
+                } else if (name.startsWith(SELECTED_PREFIX)) {
+                    selected.put(name.substring(2), value.toString());
+                } else if (name.startsWith(TOMBSTONE_PREFIX)) {
+                    snapshot.getRemovedIds().add(Integer.valueOf(name.substring(2)));
+                }
+            });
+            quantities.forEach((cartId, quantity) -> {
+                String json = items.get(cartId);
+                if (json != null) {
+                    snapshot.getItems().add(toCart(json, quantity, selected.getOrDefault(cartId, "0")));
+                }
+            });
+            snapshots.put(userIds.get(i), snapshot);
+        }
+        return snapshots;
+    }
+
+    /**
+     * 删除已回写的墓碑
+     */
+    public void clearTombstones(Map<Integer, List<Integer>> removedIdsByUser) {
+        removedIdsByUser.forEach((userId, cartIds) -> {
+            if (!cartIds.isEmpty()) {
+                stringRedisTemplate.execute(CLEAR_TOMBSTONES_REDIS_SCRIPT, keys(userId).subList(0, 1),
+                        cartIds.stream().map(String::valueOf).toArray());
+            }
+        });
+    }
+
+    /**
+     * 执行需要购物车已加载的脚本，未加载时从数据库加载后重试一次
+     */
+    private long executeLoaded(Integer userId, Supplier<Long> script) {
+        Long result = script.get();
+        if (result != null && result == NOT_LOADED) {
+            load(userId);
+            result = script.get();
+        }
+        if (result == null || result == NOT_LOADED) {
+            throw new BusinessException("购物车加载失败，请稍后重试");
+        }
+        return result;
+    }
+
+    /**
+     * 从数据库加载购物车的有效项
+     */
+    private void load(Integer userId) {
+        LambdaQueryWrapper<Cart> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(Cart::getUserId, userId)
+                .eq(Cart::getStatus, 1);
+        List<Cart> carts = cartMapper.selectList(queryWrapper);
+
+        List<String> args = new ArrayList<>(carts.size() * 8 + 5);
+        args.add(String.valueOf(expireSeconds));
+        long count = 0;
+        for (Cart cart : carts) {
+            args.addAll(Arrays.asList(ITEM_PREFIX + cart.getCartId(), toJson(cart),
+                    QUANTITY_PREFIX + cart.getCartId(), String.valueOf(cart.getQuantity()),
+                    SELECTED_PREFIX + cart.getCartId(), String.valueOf(cart.getSelected() != null ? cart.getSelected() : 0),
+                    indexField(cart.getProductId(), cart.getSpecsHash()), String.valueOf(cart.getCartId())));
+            count += cart.getQuantity();
+        }
+        args.addAll(Arrays.asList(COUNT_FIELD, String.valueOf(count), LOADED_FIELD, "1"));
+        stringRedisTemplate.execute(LOAD_REDIS_SCRIPT, keys(userId).subList(0, 1), args.toArray());
+        log.debug("从数据库加载用户购物车: userId={}, items={}", userId, carts.size());
+    }
+
+    private List<Cart> toCarts(Map<Object, Object> entries) {
+        Map<String, String> items = new HashMap<>();
+        Map<String, String> quantities = new HashMap<>();
+        Map<String, String> selected = new HashMap<>();
+        entries.forEach((field, value) -> {
+            String name = field.toString();
+            if (name.startsWith(ITEM_PREFIX)) {
+                items.put(name.substring(2), value.toString());
+            } else if (name.startsWith(QUANTITY_PREFIX)) {
+                quantities.put(name.substring(2), value.toString());
+            } else if (name.startsWith(SELECTED_PREFIX)) {
+                selected.put(name.substring(2), value.toString());
+            }
+        });
+        List<Cart> carts = new ArrayList<>(items.size());
+        items.forEach((cartId, json) -> {
+            String quantity = quantities.get(cartId);
+            if (quantity != null) {
+                carts.add(toCart(json, quantity, selected.getOrDefault(cartId, "0")));
+            }
+        });
+        carts.sort(DISPLAY_ORDER);
+        return carts;
+    }
+
+    private Cart toCart(String json, String quantity, String selected) {
+        try {
+            Cart cart = objectMapper.readValue(json, Cart.class);
+            cart.setQuantity(Integer.valueOf(quantity));
+            cart.setSelected(Integer.valueOf(selected));
+            return cart;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("购物车项反序列化失败", e);
+        }
+    }
+
+    private String toJson(Cart cart) {
+        Integer quantity = cart.getQuantity();
+        Integer selected = cart.getSelected();
+        try {
+            // 数量和选中状态单独存放，静态信息中不保留
+            cart.setQuantity(null);
+            cart.setSelected(null);
+            return objectMapper.writeValueAsString(cart);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("购物车项序列化失败", e);
+        } finally {
+            cart.setQuantity(quantity);
+            cart.setSelected(selected);
+        }
+    }
+
+    private static String indexField(Integer productId, String specsHash) {
+        return INDEX_PREFIX + productId + ":" + (specsHash != null ? specsHash : "");
+    }
+
+    private static String hashKey(Integer userId) {
+        return CacheConstants.CART_HASH_KEY + userId;
+    }
+
+    private static List<String> keys(Integer userId) {
+        return Arrays.asList(hashKey(userId), CacheConstants.CART_DIRTY_KEY);
+    }
+
+    private static String now() {
+        return String.valueOf(System.currentTimeMillis());
+    }
+
+    /**
+     * 一个用户购物车的回写快照
+     */
+    public static class CartSnapshot {
+
+        /**
+         * 现存购物车项
+         */
+        private final List<Cart> items = new ArrayList<>();
+
+        /**
+         * 已删除待回写的购物车ID
+         */
+        private final List<Integer> removedIds = new ArrayList<>();
+
+        public List<Cart> getItems() {
+            return items;
+        }
+
+        public List<Integer> getRemovedIds() {
+            return removedIds;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.muyingmall.order.cart;
+
+import com.muyingmall.order.entity.Cart;
+import com.muyingmall.order.mapper.CartMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 购物车回写任务
+ *
+ * <p>把 Redis 中有变更的购物车批量回写到 cart 表：</p>
+ * <ul>
+ *   <li>只领取首次变更超过延迟时间的用户，短时间内的连续修改合并为一次回写</li>
+ *   <li>领取的用户移入带租约的回写中集合，数据库事务提交后才移出；节点在提交前宕机时租约到期后放回待回写集合</li>
+ *   <li>一批用户的 HASH 通过管道一次读取，墓碑用一条 DELETE，现存购物车项用一条 INSERT ... ON DUPLICATE KEY UPDATE</li>
+ *   <li>回写成功后删除墓碑；失败时放回待回写集合，下一轮重试</li>
+ * </ul>
+ * <p>新增购物车项在加购时已同步写库；墓碑删除后才被复活的购物车项由 upsert 按原购物车ID重新插入。</p>
+ */
+@Slf4j
+@Component
+public class CartWriteBehindFlusher {
+
+    /**
+     * 单条 SQL 的最大购物车项数
+     */
+    private static final int SQL_CHUNK_SIZE = 500;
+
+    private final CartStore cartStore;
+    private final CartMapper cartMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 首次变更后延迟回写的时间（毫秒）
+     */
+    private final long flushDelayMillis;
+
+    /**
+     * 每批回写的用户数
+     */
+    private final int batchSize;
+
+    /**
+     * 领取后的租约时长（毫秒），需远大于一批回写的耗时
+     */
+    private final long leaseMillis;
+
+    public CartWriteBehindFlusher(CartStore cartStore, CartMapper cartMapper, TransactionTemplate transactionTemplate,
+                                  @Value("${muying.order.cart.flush-delay-millis:2000}") long flushDelayMillis,
+                                  @Value("${muying.order.cart.flush-batch-size:200}") int batchSize,
+                                  @Value("${muying.order.cart.flush-lease-millis:60000}") long leaseMillis) {
+        this.cartStore = cartStore;
+        this.cartMapper = cartMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.flushDelayMillis = flushDelayMillis;
+        this.batchSize = batchSize;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 定时回写，每轮处理到没有到期的用户为止
+     */
+    @Scheduled(fixedDelayString = "${muying.order.cart.flush-interval-millis:1000}")
+    public void flush() {
+        long dirtyBefore = System.currentTimeMillis() - flushDelayMillis;
+        int flushed = 0;
+        while (true) {
+            List<Integer> userIds;
+            try {
+                userIds = cartStore.claimDirtyUsers(dirtyBefore, batchSize, leaseMillis);
+            } catch (Exception e) {
+                log.error("领取待回写购物车失败", e);
+                return;
+            }
+            if (userIds.isEmpty()) {
+                break;
+            }
+            try {
+                flushBatch(userIds);
+                flushed += userIds.size();
+            } catch (Exception e) {
+                log.error("购物车回写失败，放回待回写集合: users={}", userIds.size(), e);
+                try {
+                    cartStore.releaseDirtyUsers(userIds);
+                } catch (Exception releaseError) {
+                    // 放回失败时租约到期后回收
+                    log.error("放回待回写购物车失败: users={}", userIds.size(), releaseError);
+                }
+                return;
+            }
+            if (userIds.size() < batchSize) {
+                break;
+            }
+        }
+        if (flushed > 0) {
+            log.debug("购物车回写完成: users={}", flushed);
+        }
+    }
+
+    /**
+     * 回收其他节点租约过期未完成的回写
+     */
+    @Scheduled(fixedDelayString = "${muying.order.cart.recover-interval-millis:30000}")
+    public void recoverExpiredFlushes() {
+        try {
+            long recovered = cartStore.recoverExpiredFlushes(batchSize);
+            if (recovered > 0) {
+                log.warn("回收租约过期的购物车回写: users={}", recovered);
+            }
+        } catch (Exception e) {
+            log.error("回收购物车回写失败", e);
+        }
+    }
+
+    /**
+     * 回写一批用户的购物车，事务提交后才移出回写中集合
+     */
+    private void flushBatch(List<Integer> userIds) {
+        Map<Integer, CartStore.CartSnapshot> snapshots = cartStore.snapshot(userIds);
+        List<Cart> items = new ArrayList<>();
+        List<Integer> removedIds = new ArrayList<>();
+        Map<Integer, List<Integer>> removedIdsByUser = new HashMap<>(snapshots.size() * 2);
+        snapshots.forEach((userId, snapshot) -> {
+            items.addAll(snapshot.getItems());
+            removedIds.addAll(snapshot.getRemovedIds());
+            removedIdsByUser.put(userId, snapshot.getRemovedIds());
+        });
+        if (items.isEmpty() && removedIds.isEmpty()) {
+            cartStore.completeFlush(userIds);
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < removedIds.size(); from += SQL_CHUNK_SIZE) {
+                cartMapper.deleteByIds(removedIds.subList(from, Math.min(from + SQL_CHUNK_SIZE, removedIds.size())));
+            }
+            for (int from = 0; from < items.size(); from += SQL_CHUNK_SIZE) {
+                cartMapper.batchUpsertState(items.subList(from, Math.min(from + SQL_CHUNK_SIZE, items.size())));
+            }
+        });
+        if (!removedIds.isEmpty()) {
+            cartStore.clearTombstones(removedIdsByUser);
+        }
+        cartStore.completeFlush(userIds);
+        log.debug("回写购物车批次: users={}, items={}, removed={}", snapshots.size(), items.size(), removedIds.size());
+    }
+}
@@ -0,0 +1,162 @@
+package com.muyingmall.order.client;
+
+import com.muyingmall.common.dto.Result;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 商品信息批量加载器（DataLoader风格）
+ *
+ * <p>收集一个很短时间窗口内的并发单商品查询，合并为一次批量远程调用，
+ * 以减少购物车、结算高峰期订单服务到商品服务的调用次数。</p>
+ *
+ * <ul>
+ *   <li>第一个请求到达时开启合并窗口，窗口结束后统一发起一次批量调用</li>
+ *   <li>待处理请求达到批次上限时立即发起调用，不再等待窗口结束，同一时刻只提交一次</li>
+ *   <li>同一批次内重复的商品ID只查询一次</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class ProductBatchLoader {
+
+    private final ProductServiceClient productServiceClient;
+
+    /**
+     * 合并窗口（毫秒）
+     */
+    private final long windowMillis;
+
+    /**
+     * 单批次最大商品数量
+     */
+    private final int maxBatchSize;
+
+    private final ConcurrentLinkedQueue<PendingLoad> pendingQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean immediateFlushScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService scheduler;
+
+    public ProductBatchLoader(ProductServiceClient productServiceClient,
+                              @Value("${muying.order.product-loader.window-millis:5}") long windowMillis,
+                              @Value("${muying.order.product-loader.max-batch-size:100}") int maxBatchSize,
+                              @Value("${muying.order.product-loader.threads:2}") int threads) {
+        this.productServiceClient = productServiceClient;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "product-batch-loader-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 加载单个商品信息，实际请求会与同一窗口内的其他请求合并
+     *
+     * @param productId 商品ID
+     * @return 商品信息，商品不存在或调用失败时结果为null
+     */
+    public CompletableFuture<ProductInfo> load(Integer productId) {
+        CompletableFuture<ProductInfo> future = new CompletableFuture<>();
+        pendingQueue.add(new PendingLoad(productId, future));
+
+        if (pendingCount.incrementAndGet() >= maxBatchSize) {
+            // 已有待执行的立即批次时不再重复提交，新请求由该批次一并取出
+            if (immediateFlushScheduled.compareAndSet(false, true)) {
+                scheduler.execute(this::flush);
+            }
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * 取出当前所有待处理请求，按批次上限拆分后发起批量调用
+     */
+    private void flush() {
+        // 先复位标记再取队列，保证此后到达的请求一定会触发新的窗口
+        flushScheduled.set(false);
+        immediateFlushScheduled.set(false);
+
+        List<PendingLoad> batch = new ArrayList<>();
+        PendingLoad pending;
+        while ((pending = pendingQueue.poll()) != null) {
+            pendingCount.decrementAndGet();
+            batch.add(pending);
+            if (batch.size() >= maxBatchSize) {
+                dispatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    private void dispatch(List<PendingLoad> batch) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (PendingLoad pending : batch) {
+            ids.add(pending.productId);
+        }
+
+        Map<Integer, ProductInfo> productMap = new HashMap<>(ids.size() * 2);
+        try {
+            Result<List<ProductInfo>> result = productServiceClient.getProducts(new ArrayList<>(ids));
+            if (result != null && result.isSuccess() && result.getData() != null) {
+                for (ProductInfo productInfo : result.getData()) {
+                    if (productInfo != null && productInfo.getId() != null) {
+                        productMap.put(productInfo.getId(), productInfo);
+                    }
+                }
+            } else {
+                log.warn("合并批量获取商品信息失败: productIds={}, result={}", ids, result);
+            }
+            log.debug("合并商品查询: 请求数={}, 去重后商品数={}", batch.size(), ids.size());
+        } catch (Exception e) {
+            log.error("合并批量调用商品服务异常: productIds={}", ids, e);
+        }
+
+        for (PendingLoad pending : batch) {
+            pending.future.complete(productMap.get(pending.productId));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    /**
+     * 等待合并的单个查询请求
+     */
+    private static final class PendingLoad {
+        private final Integer productId;
+        private final CompletableFuture<ProductInfo> future;
+
+        private PendingLoad(Integer productId, CompletableFuture<ProductInfo> future) {
+            this.productId = productId;
+            this.future = future;
+        }
+    }
+}
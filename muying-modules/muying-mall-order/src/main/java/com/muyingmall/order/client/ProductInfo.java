@@ -1,17 +1,27 @@
 package com.muyingmall.order.client;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
+
 import java.math.BigDecimal;
 
 /**
  * 商品信息DTO（从商品服务返回）
+ * 批量接口返回 ProductDto，单商品接口返回Product实体，这里通过别名兼容两者的字段命名
  */
 public class ProductInfo {
+    @JsonAlias("productId")
     private Integer id;
+    @JsonAlias("productName")
     private String name;
+    @JsonAlias("productImg")
     private String mainImage;
+    @JsonAlias("priceNew")
     private BigDecimal price;
     private Integer stock;
+    @JsonAlias("productStatus")
     private String status;
+    private Integer categoryId;
+    private Integer brandId;
     
     // getters and setters
     public Integer getId() { 
@@ -61,4 +71,20 @@ public class ProductInfo {
     public void setStatus(String status) { 
         this.status = status; 
     }
+
+    public Integer getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(Integer categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public Integer getBrandId() {
+        return brandId;
+    }
+
+    public void setBrandId(Integer brandId) {
+        this.brandId = brandId;
+    }
 }
\ No newline at end of file
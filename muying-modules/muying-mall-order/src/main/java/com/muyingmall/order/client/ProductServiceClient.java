@@ -4,9 +4,14 @@ import com.muyingmall.common.dto.Result;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.List;
+import java.util.Map;
+
 @FeignClient(name = "muying-mall-product", fallback = ProductServiceFallback.class)
 public interface ProductServiceClient {
     
@@ -15,4 +20,25 @@ public interface ProductServiceClient {
     
     @PutMapping("/products/{id}/stock")
     Result<Void> updateStock(@PathVariable("id") Integer id, @RequestParam("stock") Integer stock);
+
+    @PostMapping("/product/info/batch")
+    Result<List<ProductInfo>> getProducts(@RequestBody List<Integer> ids);
+
+    @PostMapping("/inventory/orders/{orderNo}/deduct")
+    Result<Boolean> deductOrderStock(@PathVariable("orderNo") String orderNo,
+                                     @RequestBody Map<Integer, Integer> productStockMap);
+
+    @PostMapping("/inventory/orders/{orderNo}/restore")
+    Result<Boolean> restoreOrderStock(@PathVariable("orderNo") String orderNo);
+
+    @PostMapping("/inventory/reservations/{orderNo}")
+    Result<Boolean> reserveStock(@PathVariable("orderNo") String orderNo,
+                                 @RequestBody Map<Integer, Integer> productStockMap,
+                                 @RequestParam("ttlSeconds") Integer ttlSeconds);
+
+    @PostMapping("/inventory/reservations/{orderNo}/confirm")
+    Result<Boolean> confirmReservation(@PathVariable("orderNo") String orderNo);
+
+    @PostMapping("/inventory/reservations/{orderNo}/release")
+    Result<Boolean> releaseReservation(@PathVariable("orderNo") String orderNo);
 }
@@ -3,6 +3,9 @@ package com.muyingmall.order.client;
 import com.muyingmall.common.dto.Result;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Map;
+
 @Component
 public class ProductServiceFallback implements ProductServiceClient {
     
@@ -15,4 +18,34 @@ public class ProductServiceFallback implements ProductServiceClient {
     public Result<Void> updateStock(Integer id, Integer stock) {
         return Result.error("商品服务暂时不可用，无法更新库存");
     }
-}
\ No newline at end of file
+
+    @Override
+    public Result<List<ProductInfo>> getProducts(List<Integer> ids) {
+        return Result.error("商品服务暂时不可用");
+    }
+
+    @Override
+    public Result<Boolean> deductOrderStock(String orderNo, Map<Integer, Integer> productStockMap) {
+        return Result.error("商品服务暂时不可用，无法扣减库存");
+    }
+
+    @Override
+    public Result<Boolean> restoreOrderStock(String orderNo) {
+        return Result.error("商品服务暂时不可用，无法恢复库存");
+    }
+
+    @Override
+    public Result<Boolean> reserveStock(String orderNo, Map<Integer, Integer> productStockMap, Integer ttlSeconds) {
+        return Result.error("商品服务暂时不可用，无法预占库存");
+    }
+
+    @Override
+    public Result<Boolean> confirmReservation(String orderNo) {
+        return Result.error("商品服务暂时不可用，无法确认库存预占");
+    }
+
+    @Override
+    public Result<Boolean> releaseReservation(String orderNo) {
+        return Result.error("商品服务暂时不可用，无法释放库存预占");
+    }
+}
@@ -158,6 +158,38 @@ public class RabbitMQBaseConfig {
         return factory;
     }
 
+    /**
+     * 配置批量消费者容器工厂
+     * 一次向监听器交付一批消息，由监听器按批确认；预取数量不小于批量大小
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory orderBatchListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            @Value("${muying.order.consumer.concurrency:2}") int concurrency,
+            @Value("${muying.order.consumer.max-concurrency:8}") int maxConcurrency,
+            @Value("${muying.order.consumer.batch-size:50}") int batchSize,
+            @Value("${muying.order.consumer.prefetch:100}") int prefetch,
+            @Value("${muying.order.consumer.batch-receive-timeout-millis:200}") long batchReceiveTimeoutMillis) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter());
+        factory.setConcurrentConsumers(concurrency);
+        factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+        
+        // 批量消费：凑满批量大小或等待超时后交付
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchReceiveTimeoutMillis);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        
+        // 手动确认，失败消息由监听器转入延迟重试队列，不重新入队
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setDefaultRequeueRejected(false);
+        
+        return factory;
+    }
+
     /**
      * 死信交换机
      */
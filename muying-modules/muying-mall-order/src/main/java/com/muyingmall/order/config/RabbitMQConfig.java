@@ -1,10 +1,15 @@
 package com.muyingmall.order.config;
 
 import com.muyingmall.common.constants.RabbitMQConstants;
+import com.muyingmall.order.mq.BatchMessageProcessor;
 import org.springframework.amqp.core.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 订单服务RabbitMQ配置
  * 声明订单相关的交换机、队列和绑定关系
@@ -26,7 +31,8 @@ public class RabbitMQConfig {
     }
 
     /**
-     * 订单延时交换机（用于订单超时取消）
+     * 订单延时交换机
+     * 订单超时取消已改由 OrderTimeoutScheduler 调度，交换机仅保留用于消费遗留的超时消息
      */
     @Bean
     public DirectExchange orderDelayExchange() {
@@ -90,19 +96,6 @@ public class RabbitMQConfig {
                 .build();
     }
 
-    /**
-     * 订单延时队列（用于订单超时取消）
-     */
-    @Bean
-    public Queue orderDelayQueue() {
-        return QueueBuilder
-                .durable(RabbitMQConstants.ORDER_DELAY_QUEUE)
-                .withArgument("x-message-ttl", RabbitMQConstants.ORDER_TTL) // 30分钟TTL
-                .withArgument("x-dead-letter-exchange", RabbitMQConstants.ORDER_EVENT_EXCHANGE)
-                .withArgument("x-dead-letter-routing-key", RabbitMQConstants.ORDER_CANCEL_ROUTING_KEY)
-                .build();
-    }
-
     // ==================== 绑定关系声明 ====================
     
     /**
@@ -149,17 +142,6 @@ public class RabbitMQConfig {
                 .with(RabbitMQConstants.ORDER_COMPLETE_ROUTING_KEY);
     }
 
-    /**
-     * 订单延时队列绑定
-     */
-    @Bean
-    public Binding orderDelayBinding() {
-        return BindingBuilder
-                .bind(orderDelayQueue())
-                .to(orderDelayExchange())
-                .with(RabbitMQConstants.ORDER_DELAY_ROUTING_KEY);
-    }
-
     // ==================== 跨服务队列监听 ====================
 
     /**
@@ -266,4 +248,33 @@ public class RabbitMQConfig {
                 .to(new TopicExchange(RabbitMQConstants.PAYMENT_EVENT_EXCHANGE))
                 .with("payment.success.notification");
     }
-}
\ No newline at end of file
+
+    // ==================== 消费重试队列声明 ====================
+
+    /**
+     * 分级延迟重试队列与停放队列
+     * 每级一个 fanout 交换机和一个固定TTL的队列，同级消息TTL相同，不会出现队头阻塞；
+     * 队列死信到默认交换机且不改写路由键，消息到期后按重投时的路由键（原队列名）回到原队列
+     */
+    @Bean
+    public Declarables orderRetryDeclarables(
+            @Value("${muying.order.consumer.retry-delays:1000,4000,16000,64000,256000}") long[] retryDelays) {
+        List<Declarable> declarables = new ArrayList<>(retryDelays.length * 3 + 1);
+        for (long delay : retryDelays) {
+            FanoutExchange exchange = ExchangeBuilder
+                    .fanoutExchange(BatchMessageProcessor.retryExchange(delay))
+                    .durable(true)
+                    .build();
+            Queue queue = QueueBuilder
+                    .durable(BatchMessageProcessor.retryQueue(delay))
+                    .withArgument("x-message-ttl", delay)
+                    .withArgument("x-dead-letter-exchange", "")
+                    .build();
+            declarables.add(exchange);
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(exchange));
+        }
+        declarables.add(QueueBuilder.durable(RabbitMQConstants.ORDER_PARKING_QUEUE).build());
+        return new Declarables(declarables);
+    }
+}
@@ -1,7 +1,9 @@
 package com.muyingmall.order.controller;
 
 import com.muyingmall.common.dto.Result;
+import com.muyingmall.order.dto.CouponSolution;
 import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.entity.CouponIssueJob;
 import com.muyingmall.order.entity.User;
 import com.muyingmall.order.entity.UserCoupon;
 import com.muyingmall.order.service.CouponService;
@@ -125,4 +127,111 @@ public class CouponController {
         List<UserCoupon> userCoupons = couponService.getOrderCoupons(user.getUserId(), amount, productIds);
         return Result.success(userCoupons);
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取订单最优用券方案
+     *
+     * @param amount     订单金额
+     * @param productIds 商品ID列表
+     * @return 最优用券方案
+     */
+    @GetMapping("/user/coupons/order/best")
+    @Operation(summary = "获取订单最优用券方案")
+    public Result<CouponSolution> getBestCoupons(
+            @RequestParam("amount") Double amount,
+            @RequestParam(required = false) List<Integer> productIds) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || "anonymousUser".equals(authentication.getPrincipal())) {
+            return Result.error(401, "用户未认证");
+        }
+
+        String username = authentication.getName();
+        User user = userService.getByUsername(username);
+        if (user == null) {
+            return Result.error(404, "用户不存在");
+        }
+
+        return Result.success(couponService.getBestCoupons(user.getUserId(), amount, productIds));
+    }
+
+    /**
+     * 创建批次批量发放任务
+     *
+     * @param batchId    批次ID
+     * @param couponId   发放的优惠券ID
+     * @param userStatus 目标用户状态（0-禁用，1-正常），为空时不限
+     * @param maxUserId  目标用户ID上限（含），为空时不限
+     * @return 任务
+     */
+    @PostMapping("/admin/coupons/batches/{batchId}/issue-jobs")
+    @Operation(summary = "创建批次批量发放任务")
+    public Result<CouponIssueJob> createIssueJob(@PathVariable("batchId") Integer batchId,
+                                                 @RequestParam("couponId") Long couponId,
+                                                 @RequestParam(required = false) Integer userStatus,
+                                                 @RequestParam(required = false) Long maxUserId) {
+        if (!isAdmin()) {
+            return Result.error(403, "无权限");
+        }
+        return Result.success(couponService.createIssueJob(batchId, couponId, userStatus, maxUserId));
+    }
+
+    /**
+     * 查询批量发放任务进度
+     *
+     * @param jobId 任务ID
+     * @return 任务，含进度和发放速度
+     */
+    @GetMapping("/admin/coupons/issue-jobs/{jobId}")
+    @Operation(summary = "查询批量发放任务进度")
+    public Result<CouponIssueJob> getIssueJob(@PathVariable("jobId") Long jobId) {
+        if (!isAdmin()) {
+            return Result.error(403, "无权限");
+        }
+        CouponIssueJob job = couponService.getIssueJob(jobId);
+        if (job == null) {
+            return Result.error(404, "任务不存在");
+        }
+        return Result.success(job);
+    }
+
+    /**
+     * 暂停批量发放任务
+     */
+    @PostMapping("/admin/coupons/issue-jobs/{jobId}/pause")
+    @Operation(summary = "暂停批量发放任务")
+    public Result<Void> pauseIssueJob(@PathVariable("jobId") Long jobId) {
+        if (!isAdmin()) {
+            return Result.error(403, "无权限");
+        }
+        if (!couponService.pauseIssueJob(jobId)) {
+            return Result.error("任务不在执行中");
+        }
+        return Result.success("已暂停");
+    }
+
+    /**
+     * 恢复批量发放任务，从检查点继续
+     */
+    @PostMapping("/admin/coupons/issue-jobs/{jobId}/resume")
+    @Operation(summary = "恢复批量发放任务")
+    public Result<Void> resumeIssueJob(@PathVariable("jobId") Long jobId) {
+        if (!isAdmin()) {
+            return Result.error(403, "无权限");
+        }
+        if (!couponService.resumeIssueJob(jobId)) {
+            return Result.error("任务未暂停");
+        }
+        return Result.success("已恢复");
+    }
+
+    private boolean isAdmin() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return false;
+        }
+        return authentication.getAuthorities().stream()
+                .anyMatch(authority -> "admin".equalsIgnoreCase(authority.getAuthority())
+                        || "ROLE_ADMIN".equals(authority.getAuthority()));
+    }
+}
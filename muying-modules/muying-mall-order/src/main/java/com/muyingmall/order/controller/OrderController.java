@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.muyingmall.common.dto.Result;
 import com.muyingmall.order.dto.OrderCreateDTO;
 import com.muyingmall.order.dto.DirectPurchaseDTO;
+import com.muyingmall.order.dto.OrderHistoryPage;
 import com.muyingmall.order.entity.Order;
 import com.muyingmall.order.entity.OrderProduct;
 import com.muyingmall.order.entity.User;
@@ -125,6 +126,30 @@ public class OrderController {
         return Result.success(result);
     }
 
+    /**
+     * 游标分页获取订单历史
+     */
+    @GetMapping("/history")
+    @Operation(summary = "游标分页获取订单历史")
+    public Result<OrderHistoryPage> getOrderHistory(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int pageSize,
+            @RequestParam(required = false) String status) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || "anonymousUser".equals(authentication.getPrincipal())) {
+            return Result.error(401, "用户未认证");
+        }
+
+        String username = authentication.getName();
+        User user = userService.getByUsername(username);
+        if (user == null) {
+            return Result.error(404, "用户不存在");
+        }
+
+        return Result.success(orderService.getUserOrderHistory(user.getUserId(), cursor, pageSize, status));
+    }
+
     /**
      * 获取订单详情
      */
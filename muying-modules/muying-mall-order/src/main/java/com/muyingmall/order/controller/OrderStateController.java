@@ -37,6 +37,17 @@ public class OrderStateController {
         return ApiResponse.success(order);
     }
 
+    @PostMapping("/transit/batch")
+    @Operation(summary = "批量订单状态转换")
+    public ApiResponse<List<Integer>> transitOrderStates(
+            @Parameter(description = "订单ID列表") @RequestBody List<Integer> orderIds,
+            @Parameter(description = "事件") @RequestParam OrderEvent event,
+            @Parameter(description = "操作人") @RequestParam String operator,
+            @Parameter(description = "原因") @RequestParam(required = false) String reason) {
+        List<Integer> transited = orderStateService.sendEvents(orderIds, event, operator, reason);
+        return ApiResponse.success(transited);
+    }
+
     @GetMapping("/possible-states/{orderId}")
     @Operation(summary = "获取可能的下一个状态")
     public ApiResponse<List<OrderStatus>> getPossibleNextStates(
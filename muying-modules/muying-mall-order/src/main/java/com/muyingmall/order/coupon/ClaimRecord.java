@@ -0,0 +1,63 @@
+package com.muyingmall.order.coupon;
+
+/**
+ * 待落库的优惠券领取记录
+ *
+ * <p>在 Redis 队列中编码为 couponId:userId:couponCode:receiveMillis。</p>
+ */
+class ClaimRecord {
+
+    private static final char SEPARATOR = ':';
+
+    private final Long couponId;
+
+    private final Long userId;
+
+    private final String couponCode;
+
+    private final long receiveMillis;
+
+    private ClaimRecord(Long couponId, Long userId, String couponCode, long receiveMillis) {
+        this.couponId = couponId;
+        this.userId = userId;
+        this.couponCode = couponCode;
+        this.receiveMillis = receiveMillis;
+    }
+
+    static String encode(Long couponId, Integer userId, String couponCode, long receiveMillis) {
+        return String.valueOf(couponId) + SEPARATOR + userId + SEPARATOR + couponCode + SEPARATOR + receiveMillis;
+    }
+
+    /**
+     * 解析领取记录
+     *
+     * @return 领取记录，格式错误时为null
+     */
+    static ClaimRecord decode(String value) {
+        String[] parts = value.split(String.valueOf(SEPARATOR));
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new ClaimRecord(Long.valueOf(parts[0]), Long.valueOf(parts[1]), parts[2], Long.parseLong(parts[3]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    Long getCouponId() {
+        return couponId;
+    }
+
+    Long getUserId() {
+        return userId;
+    }
+
+    String getCouponCode() {
+        return couponCode;
+    }
+
+    long getReceiveMillis() {
+        return receiveMillis;
+    }
+}
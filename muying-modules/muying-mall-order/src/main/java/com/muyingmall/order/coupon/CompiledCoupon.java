@@ -0,0 +1,232 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.order.coupon.rule.CompiledRule;
+import com.muyingmall.order.coupon.rule.RuleCart;
+import com.muyingmall.order.entity.Coupon;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 预编译的优惠券
+ *
+ * <p>优惠券只在编译时解析一次：金额换算为分，适用商品ID解析为有序 int 数组，
+ * 判断适用性和计算优惠金额时不再拆分字符串、不再做 BigDecimal 运算。</p>
+ */
+@Slf4j
+public final class CompiledCoupon {
+
+    /**
+     * 百分比折扣的基数（万分比）
+     */
+    private static final long BASIS_POINTS = 10000L;
+
+    private final Coupon coupon;
+
+    private final boolean active;
+
+    private final boolean percentage;
+
+    /**
+     * 固定金额（分）或折扣万分比
+     */
+    private final long value;
+
+    /**
+     * 最低消费金额（分）
+     */
+    private final long minSpend;
+
+    /**
+     * 最大优惠金额（分），不限时为 Long.MAX_VALUE
+     */
+    private final long maxDiscount;
+
+    private final boolean stackable;
+
+    /**
+     * 适用商品ID（升序），为null时全场通用
+     */
+    private final int[] productIds;
+
+    /**
+     * 关联的优惠规则ID，为null时按面额计算优惠
+     */
+    private final Integer ruleId;
+
+    private CompiledCoupon(Coupon coupon, boolean active, boolean percentage, long value, long minSpend,
+                           long maxDiscount, boolean stackable, int[] productIds, Integer ruleId) {
+        this.coupon = coupon;
+        this.active = active;
+        this.percentage = percentage;
+        this.value = value;
+        this.minSpend = minSpend;
+        this.maxDiscount = maxDiscount;
+        this.stackable = stackable;
+        this.productIds = productIds;
+        this.ruleId = ruleId;
+    }
+
+    /**
+     * 编译优惠券
+     */
+    public static CompiledCoupon compile(Coupon coupon) {
+        boolean percentage = "PERCENTAGE".equals(coupon.getType());
+        long value = percentage ? offBasisPoints(coupon) : toCents(coupon.getValue());
+        long maxDiscount = coupon.getMaxDiscount() != null && coupon.getMaxDiscount().signum() > 0
+                ? toCents(coupon.getMaxDiscount()) : Long.MAX_VALUE;
+        return new CompiledCoupon(coupon, "ACTIVE".equals(coupon.getStatus()), percentage, value,
+                toCents(coupon.getMinSpend()), maxDiscount,
+                Integer.valueOf(1).equals(coupon.getIsStackable()), parseProductIds(coupon),
+                coupon.getRuleId());
+    }
+
+    /**
+     * 把商品ID转换为升序去重的 int 数组，供 {@link #appliesTo(int[])} 使用
+     */
+    public static int[] toSortedIds(Collection<Integer> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new int[0];
+        }
+        return ids.stream().filter(id -> id != null).mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    /**
+     * 金额换算为分，不足一分的部分舍去
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount != null ? amount.movePointRight(2).setScale(0, RoundingMode.DOWN).longValue() : 0L;
+    }
+
+    /**
+     * 是否适用于订单商品，任一商品适用即可
+     *
+     * @param sortedProductIds 订单商品ID，升序
+     */
+    public boolean appliesTo(int[] sortedProductIds) {
+        if (productIds == null) {
+            return true;
+        }
+        // 两个有序数组归并查找交集
+        int i = 0;
+        int j = 0;
+        while (i < productIds.length && j < sortedProductIds.length) {
+            int a = productIds[i];
+            int b = sortedProductIds[j];
+            if (a == b) {
+                return true;
+            }
+            if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 是否达到最低消费金额
+     *
+     * @param amount 订单金额（分）
+     */
+    public boolean meetsMinSpend(long amount) {
+        return amount >= minSpend;
+    }
+
+    /**
+     * 计算优惠金额，未达到最低消费时为0
+     *
+     * @param amount 订单金额（分）
+     * @return 优惠金额（分），不超过最大优惠金额和订单金额
+     */
+    public long discount(long amount) {
+        if (amount <= 0 || amount < minSpend) {
+            return 0L;
+        }
+        long discount = percentage ? amount * value / BASIS_POINTS : value;
+        return Math.min(Math.min(discount, maxDiscount), amount);
+    }
+
+    /**
+     * 计算优惠金额，关联了优惠规则时按规则对购物车求值，最低消费和最大优惠金额仍然生效
+     *
+     * @param cart 购物车，订单金额取 {@link RuleCart#getTotalAmount()}
+     * @param rule 关联的预编译规则，为null时按面额计算
+     * @return 优惠金额（分）
+     */
+    public long discount(RuleCart cart, CompiledRule rule) {
+        long amount = cart.getTotalAmount();
+        if (rule == null) {
+            return discount(amount);
+        }
+        if (amount <= 0 || amount < minSpend) {
+            return 0L;
+        }
+        return Math.min(Math.min(rule.evaluate(cart), maxDiscount), amount);
+    }
+
+    public Coupon getCoupon() {
+        return coupon;
+    }
+
+    public Long getId() {
+        return coupon.getId();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public boolean isStackable() {
+        return stackable;
+    }
+
+    public Integer getRuleId() {
+        return ruleId;
+    }
+
+    /**
+     * 百分比折扣券的面额是折扣率（实付比例，如 0.90 为九折），换算为减免万分比，如 0.90 -> 1000
+     * 与 {@code CompiledRule} 一致，实付比例向上取整，减免不会多算；折扣率无效时不减免
+     */
+    private static long offBasisPoints(Coupon coupon) {
+        BigDecimal rate = coupon.getValue();
+        if (rate == null || rate.signum() <= 0 || rate.compareTo(BigDecimal.ONE) >= 0) {
+            log.warn("优惠券折扣率无效，按不减免处理: couponId={}, value={}", coupon.getId(), rate);
+            return 0L;
+        }
+        return BASIS_POINTS - rate.movePointRight(4).setScale(0, RoundingMode.UP).longValue();
+    }
+
+    /**
+     * 解析逗号分隔的适用商品ID，为空时全场通用
+     */
+    private static int[] parseProductIds(Coupon coupon) {
+        String value = coupon.getProductIds();
+        if (!StringUtils.hasText(value)) {
+            return null;
+        }
+        String[] parts = value.split(",");
+        int[] ids = new int[parts.length];
+        int count = 0;
+        for (String part : parts) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            try {
+                ids[count++] = Integer.parseInt(trimmed);
+            } catch (NumberFormatException e) {
+                log.warn("忽略无效的优惠券适用商品ID: couponId={}, productId={}", coupon.getId(), trimmed);
+            }
+        }
+        int[] result = Arrays.copyOf(ids, count);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,389 @@
+package com.muyingmall.order.coupon;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.common.redis.id.IdBizTag;
+import com.muyingmall.common.redis.id.IdGenerator;
+import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.entity.UserCoupon;
+import com.muyingmall.order.mapper.CouponMapper;
+import com.muyingmall.order.mapper.UserCouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 优惠券领取引擎
+ *
+ * <p>领取时只执行一次 Redis Lua 脚本，在脚本内原子地完成：</p>
+ * <ul>
+ *   <li>检查已领取总数是否达到发行总量、用户已领取数是否达到每人限领数</li>
+ *   <li>累加已领取总数和用户已领取数</li>
+ *   <li>把领取记录追加到待落库队列，由 {@link CouponClaimPersister} 批量写入 user_coupon 并累加 received_quantity</li>
+ * </ul>
+ * <p>领取过程不访问数据库，也不锁优惠券行：优惠券信息在本地缓存几秒，已领完的优惠券在缓存有效期内直接拒绝。
+ * 发行总量作为脚本参数传入，后台调整发行总量后随本地缓存刷新生效。</p>
+ */
+@Slf4j
+@Component
+public class CouponClaimEngine {
+
+    /**
+     * 领取成功
+     */
+    private static final long CLAIMED = 1L;
+
+    /**
+     * 已领完
+     */
+    private static final long SOLD_OUT = -1L;
+
+    /**
+     * 用户已达到限领数
+     */
+    private static final long USER_LIMIT_REACHED = -2L;
+
+    /**
+     * 已领取总数未加载
+     */
+    private static final long RECEIVED_NOT_LOADED = -3L;
+
+    /**
+     * 用户已领取数未加载
+     */
+    private static final long USER_NOT_LOADED = -4L;
+
+    /**
+     * 领取优惠券
+     * KEYS[1] 已领取总数, KEYS[2] 用户已领取数HASH, KEYS[3] 待落库队列
+     * ARGV[1] 用户ID, ARGV[2] 每人限领数（0不限）, ARGV[3] 发行总量（0不限）, ARGV[4] 领取记录
+     */
+    private static final String CLAIM_SCRIPT =
+            "local received = redis.call('GET', KEYS[1]) " +
+            "if not received then return -3 end " +
+            "local claimed = redis.call('HGET', KEYS[2], ARGV[1]) " +
+            "if not claimed then return -4 end " +
+            "local limit = tonumber(ARGV[2]) " +
+            "if limit > 0 and tonumber(claimed) >= limit then return -2 end " +
+            "local total = tonumber(ARGV[3]) " +
+            "if total > 0 and tonumber(received) >= total then return -1 end " +
+            "redis.call('INCR', KEYS[1]) " +
+            "redis.call('HINCRBY', KEYS[2], ARGV[1], 1) " +
+            "redis.call('RPUSH', KEYS[3], ARGV[4]) " +
+            "return 1";
+
+    /**
+     * 加载计数，已存在时不覆盖
+     * KEYS[1] 计数键; ARGV[1] HASH field（为空时是字符串键）, ARGV[2] 值, ARGV[3] 过期时间戳（秒）
+     */
+    private static final String LOAD_SCRIPT =
+            "if ARGV[1] == '' then " +
+            "    redis.call('SET', KEYS[1], ARGV[2], 'NX') " +
+            "else " +
+            "    redis.call('HSETNX', KEYS[1], ARGV[1], ARGV[2]) " +
+            "end " +
+            "redis.call('EXPIREAT', KEYS[1], ARGV[3]) " +
+            "return 0";
+
+    /**
+     * 批量发放预占：按顺序给尚未领取过的用户各预占一张，达到发行总量时停止
+     * KEYS[1] 已领取总数, KEYS[2] 用户已领取数HASH
+     * ARGV[1] 发行总量（0不限）, ARGV[2] 过期时间戳（秒）, ARGV[3..] 用户ID
+     * 返回 {是否已领完, 预占成功的用户ID...}
+     */
+    private static final String RESERVE_BULK_SCRIPT =
+            "local received = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+            "local total = tonumber(ARGV[1]) " +
+            "local result = {0} " +
+            "for i = 3, #ARGV do " +
+            "    if total > 0 and received >= total then result[1] = 1 break end " +
+            "    local claimed = tonumber(redis.call('HGET', KEYS[2], ARGV[i]) or '0') " +
+            "    if claimed == 0 then " +
+            "        redis.call('HINCRBY', KEYS[2], ARGV[i], 1) " +
+            "        received = received + 1 " +
+            "        result[#result + 1] = ARGV[i] " +
+            "    end " +
+            "end " +
+            "if total > 0 and received >= total then result[1] = 1 end " +
+            "if #result > 1 then " +
+            "    redis.call('INCRBY', KEYS[1], #result - 1) " +
+            "    redis.call('EXPIREAT', KEYS[2], ARGV[2]) " +
+            "end " +
+            "return result";
+
+    /**
+     * 撤销批量发放预占
+     * KEYS[1] 已领取总数, KEYS[2] 用户已领取数HASH; ARGV 用户ID
+     */
+    private static final String RELEASE_BULK_SCRIPT =
+            "for i = 1, #ARGV do redis.call('HINCRBY', KEYS[2], ARGV[i], -1) end " +
+            "redis.call('DECRBY', KEYS[1], #ARGV) " +
+            "return #ARGV";
+
+    private static final DefaultRedisScript<Long> CLAIM_REDIS_SCRIPT = new DefaultRedisScript<>(CLAIM_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> LOAD_REDIS_SCRIPT = new DefaultRedisScript<>(LOAD_SCRIPT, Long.class);
+    private static final DefaultRedisScript<List> RESERVE_BULK_REDIS_SCRIPT = new DefaultRedisScript<>(RESERVE_BULK_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> RELEASE_BULK_REDIS_SCRIPT = new DefaultRedisScript<>(RELEASE_BULK_SCRIPT, Long.class);
+
+    /**
+     * 优惠券结束后计数继续保留的时间，保证落库完成前不会被重新加载
+     */
+    private static final Duration COUNTER_RETAIN_AFTER_END = Duration.ofDays(1);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CouponMapper couponMapper;
+    private final UserCouponMapper userCouponMapper;
+    private final IdGenerator idGenerator;
+
+    /**
+     * 优惠券信息本地缓存
+     */
+    private final Map<Long, CachedCoupon> couponCache = new ConcurrentHashMap<>();
+
+    /**
+     * 优惠券信息本地缓存时间（毫秒）
+     */
+    private final long couponCacheMillis;
+
+    public CouponClaimEngine(StringRedisTemplate stringRedisTemplate, CouponMapper couponMapper,
+                             UserCouponMapper userCouponMapper, IdGenerator idGenerator,
+                             @Value("${muying.order.coupon.claim.coupon-cache-millis:3000}") long couponCacheMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.couponMapper = couponMapper;
+        this.userCouponMapper = userCouponMapper;
+        this.idGenerator = idGenerator;
+        this.couponCacheMillis = couponCacheMillis;
+    }
+
+    /**
+     * 领取优惠券
+     *
+     * @param userId   用户ID
+     * @param couponId 优惠券ID
+     */
+    public void claim(Integer userId, Long couponId) {
+        CachedCoupon cached = getCoupon(couponId);
+        Coupon coupon = cached.coupon;
+
+        // 检查优惠券是否可用
+        if (!"ACTIVE".equals(coupon.getStatus())) {
+            throw new BusinessException("优惠券已下架");
+        }
+
+        // 检查优惠券是否过期
+        LocalDateTime now = LocalDateTime.now();
+        if (coupon.getEndTime().isBefore(now)) {
+            throw new BusinessException("优惠券已过期");
+        }
+
+        // 本地缓存有效期内已领完的直接拒绝，不再访问 Redis
+        if (cached.soldOut) {
+            throw new BusinessException("优惠券已被领完");
+        }
+
+        String record = ClaimRecord.encode(couponId, userId,
+                idGenerator.nextNo(IdBizTag.COUPON_CODE, "CP"), System.currentTimeMillis());
+        long result = executeClaim(userId, coupon, record);
+        if (result == RECEIVED_NOT_LOADED) {
+            loadReceived(coupon);
+            result = executeClaim(userId, coupon, record);
+        }
+        if (result == USER_NOT_LOADED) {
+            loadUserClaimed(userId, coupon);
+            result = executeClaim(userId, coupon, record);
+        }
+
+        if (result == CLAIMED) {
+            return;
+        }
+        if (result == SOLD_OUT) {
+            cached.soldOut = true;
+            throw new BusinessException("优惠券已被领完");
+        }
+        if (result == USER_LIMIT_REACHED) {
+            throw new BusinessException("您已领取过该优惠券");
+        }
+        log.error("优惠券领取脚本返回异常: userId={}, couponId={}, result={}", userId, couponId, result);
+        throw new BusinessException("领取失败，请稍后重试");
+    }
+
+    /**
+     * 批量发放预占：与用户领取共用已领取总数和用户已领取数，批量发放不会超发，也不会与用户领取重复
+     *
+     * <p>调用方在预占成功后写入 user_coupon 并累加 received_quantity；写入失败时必须调用
+     * {@link #releaseBulk(Coupon, List)} 撤销预占。已持有该优惠券（已落库）的用户应由调用方先行排除。</p>
+     *
+     * @param coupon  优惠券
+     * @param userIds 用户ID
+     * @return 预占结果
+     */
+    public BulkReservation reserveBulk(Coupon coupon, List<Long> userIds) {
+        BulkReservation reservation = new BulkReservation();
+        if (userIds.isEmpty()) {
+            return reservation;
+        }
+        // 计数已存在时不覆盖，保证包含未落库的领取
+        loadReceived(coupon);
+        List<String> args = new ArrayList<>(userIds.size() + 2);
+        args.add(String.valueOf(nullToZero(coupon.getTotalQuantity())));
+        args.add(String.valueOf(expireAt(coupon)));
+        for (Long userId : userIds) {
+            args.add(String.valueOf(userId));
+        }
+        List<?> result = stringRedisTemplate.execute(RESERVE_BULK_REDIS_SCRIPT,
+                Arrays.asList(CacheConstants.COUPON_RECEIVED_KEY + coupon.getId(),
+                        CacheConstants.COUPON_USER_CLAIMED_KEY + coupon.getId()),
+                args.toArray());
+        if (result == null || result.isEmpty()) {
+            return reservation;
+        }
+        reservation.soldOut = "1".equals(String.valueOf(result.get(0)));
+        for (int i = 1; i < result.size(); i++) {
+            reservation.userIds.add(Long.valueOf(String.valueOf(result.get(i))));
+        }
+        return reservation;
+    }
+
+    /**
+     * 撤销批量发放预占
+     *
+     * @param coupon  优惠券
+     * @param userIds {@link #reserveBulk(Coupon, List)} 预占成功的用户ID
+     */
+    public void releaseBulk(Coupon coupon, List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        Object[] args = new Object[userIds.size()];
+        for (int i = 0; i < userIds.size(); i++) {
+            args[i] = String.valueOf(userIds.get(i));
+        }
+        stringRedisTemplate.execute(RELEASE_BULK_REDIS_SCRIPT,
+                Arrays.asList(CacheConstants.COUPON_RECEIVED_KEY + coupon.getId(),
+                        CacheConstants.COUPON_USER_CLAIMED_KEY + coupon.getId()),
+                args);
+    }
+
+    /**
+     * 使优惠券信息本地缓存失效，后台修改优惠券后调用
+     */
+    public void evict(Long couponId) {
+        couponCache.remove(couponId);
+    }
+
+    private long executeClaim(Integer userId, Coupon coupon, String record) {
+        Long result = stringRedisTemplate.execute(CLAIM_REDIS_SCRIPT,
+                Arrays.asList(CacheConstants.COUPON_RECEIVED_KEY + coupon.getId(),
+                        CacheConstants.COUPON_USER_CLAIMED_KEY + coupon.getId(),
+                        CacheConstants.COUPON_CLAIM_QUEUE_KEY),
+                String.valueOf(userId), String.valueOf(nullToZero(coupon.getUserLimit())),
+                String.valueOf(nullToZero(coupon.getTotalQuantity())), record);
+        return result != null ? result : 0L;
+    }
+
+    /**
+     * 从数据库加载已领取总数，只在计数不存在时执行（首次领取，此时没有未落库的领取记录）
+     */
+    private void loadReceived(Coupon coupon) {
+        Coupon latest = couponMapper.selectById(coupon.getId());
+        int received = latest != null ? nullToZero(latest.getReceivedQuantity()) : 0;
+        stringRedisTemplate.execute(LOAD_REDIS_SCRIPT, List.of(CacheConstants.COUPON_RECEIVED_KEY + coupon.getId()),
+                "", String.valueOf(received), String.valueOf(expireAt(coupon)));
+    }
+
+    /**
+     * 从数据库加载用户已领取数，只在该用户首次领取该优惠券时执行
+     */
+    private void loadUserClaimed(Integer userId, Coupon coupon) {
+        LambdaQueryWrapper<UserCoupon> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(UserCoupon::getUserId, userId)
+                .eq(UserCoupon::getCouponId, coupon.getId());
+        long count = userCouponMapper.selectCount(queryWrapper);
+        stringRedisTemplate.execute(LOAD_REDIS_SCRIPT, List.of(CacheConstants.COUPON_USER_CLAIMED_KEY + coupon.getId()),
+                String.valueOf(userId), String.valueOf(count), String.valueOf(expireAt(coupon)));
+    }
+
+    /**
+     * 读取优惠券信息，本地缓存过期后重新查询
+     */
+    private CachedCoupon getCoupon(Long couponId) {
+        long now = System.currentTimeMillis();
+        CachedCoupon cached = couponCache.get(couponId);
+        if (cached != null && cached.expireAt > now) {
+            return cached;
+        }
+        Coupon coupon = couponMapper.selectById(couponId);
+        if (coupon == null) {
+            couponCache.remove(couponId);
+            throw new BusinessException("优惠券不存在");
+        }
+        cached = new CachedCoupon(coupon, now + couponCacheMillis);
+        couponCache.put(couponId, cached);
+        return cached;
+    }
+
+    private static long expireAt(Coupon coupon) {
+        LocalDateTime end = coupon.getEndTime().plus(COUNTER_RETAIN_AFTER_END);
+        return end.atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static int nullToZero(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    /**
+     * 批量发放预占结果
+     */
+    public static class BulkReservation {
+
+        private final List<Long> userIds = new ArrayList<>();
+
+        private boolean soldOut;
+
+        /**
+         * 预占成功的用户ID，顺序与请求一致
+         */
+        public List<Long> getUserIds() {
+            return userIds;
+        }
+
+        /**
+         * 是否已达到发行总量
+         */
+        public boolean isSoldOut() {
+            return soldOut;
+        }
+    }
+
+    /**
+     * 本地缓存的优惠券信息
+     */
+    private static class CachedCoupon {
+
+        private final Coupon coupon;
+
+        private final long expireAt;
+
+        /**
+         * 是否已领完，只在本条缓存有效期内生效
+         */
+        private volatile boolean soldOut;
+
+        private CachedCoupon(Coupon coupon, long expireAt) {
+            this.coupon = coupon;
+            this.expireAt = expireAt;
+        }
+    }
+}
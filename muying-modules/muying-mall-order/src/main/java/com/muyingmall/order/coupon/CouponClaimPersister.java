@@ -0,0 +1,253 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.entity.UserCoupon;
+import com.muyingmall.order.mapper.CouponMapper;
+import com.muyingmall.order.mapper.UserCouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 优惠券领取记录落库任务
+ *
+ * <p>把 {@link CouponClaimEngine} 写入 Redis 队列的领取记录批量持久化：</p>
+ * <ul>
+ *   <li>每批先原子地从待落库队列移到处理中队列，再在一个事务内批量插入 user_coupon、按优惠券累加 received_quantity</li>
+ *   <li>处理中队列记录持有者令牌和租约，事务提交后只有令牌一致时才删除；失败或宕机时处理中队列保留，
+ *       租约到期后由下一次落库接管重放，其他节点不会删除仍在落库的批次</li>
+ *   <li>优惠券码有唯一索引，插入使用 INSERT IGNORE，重放时只累加实际插入的行数，不会重复发放</li>
+ *   <li>多节点通过分布式锁避免同时落库，每批开始前续期锁</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class CouponClaimPersister {
+
+    /**
+     * 单条 SQL 的最大记录数
+     */
+    private static final int SQL_CHUNK_SIZE = 500;
+
+    /**
+     * 单批最大记录数，受 Lua unpack 参数个数限制
+     */
+    private static final int MAX_BATCH_SIZE = 5000;
+
+    /**
+     * 落库锁过期时间（秒）
+     */
+    private static final long LOCK_EXPIRE_SECONDS = 30;
+
+    /**
+     * 领取一批记录并设置持有者租约：处理中队列有未完成的记录时接管重放，否则从待落库队列移入新的一批
+     * 其他持有者租约未到期时不领取
+     * KEYS[1] 待落库队列, KEYS[2] 处理中队列, KEYS[3] 持有者; ARGV[1] 批量大小, ARGV[2] 令牌, ARGV[3] 租约（毫秒）
+     * 返回空表示没有可领取的记录；否则第一个元素为 replay 或 new，其后为记录
+     */
+    private static final String CLAIM_SCRIPT =
+            "local owner = redis.call('GET', KEYS[3]) " +
+            "if owner and owner ~= ARGV[2] then return {} end " +
+            "local kind = 'replay' " +
+            "local items = redis.call('LRANGE', KEYS[2], 0, -1) " +
+            "if #items == 0 then " +
+            "    kind = 'new' " +
+            "    items = redis.call('LRANGE', KEYS[1], 0, tonumber(ARGV[1]) - 1) " +
+            "    if #items == 0 then return {} end " +
+            "    redis.call('LTRIM', KEYS[1], #items, -1) " +
+            "    redis.call('RPUSH', KEYS[2], unpack(items)) " +
+            "end " +
+            "redis.call('SET', KEYS[3], ARGV[2], 'PX', ARGV[3]) " +
+            "table.insert(items, 1, kind) " +
+            "return items";
+
+    /**
+     * 落库提交后删除处理中队列，令牌不一致（租约已过期并被其他节点接管）时不删除
+     * KEYS[1] 处理中队列, KEYS[2] 持有者; ARGV[1] 令牌
+     */
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('GET', KEYS[2]) == ARGV[1] then " +
+            "    redis.call('DEL', KEYS[1], KEYS[2]) " +
+            "    return 1 " +
+            "end " +
+            "return 0";
+
+    private static final DefaultRedisScript<List> CLAIM_REDIS_SCRIPT = new DefaultRedisScript<>(CLAIM_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> RELEASE_REDIS_SCRIPT = new DefaultRedisScript<>(RELEASE_SCRIPT, Long.class);
+
+    private static final List<String> CLAIM_KEYS = Arrays.asList(CacheConstants.COUPON_CLAIM_QUEUE_KEY,
+            CacheConstants.COUPON_CLAIM_PROCESSING_KEY, CacheConstants.COUPON_CLAIM_PROCESSING_OWNER_KEY);
+    private static final List<String> RELEASE_KEYS = Arrays.asList(CacheConstants.COUPON_CLAIM_PROCESSING_KEY,
+            CacheConstants.COUPON_CLAIM_PROCESSING_OWNER_KEY);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final DistributedLock distributedLock;
+    private final UserCouponMapper userCouponMapper;
+    private final CouponMapper couponMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 每批落库的记录数
+     */
+    private final int batchSize;
+
+    /**
+     * 单次运行最多处理的批次数
+     */
+    private final int maxBatchesPerRun;
+
+    /**
+     * 处理中队列的持有者租约（毫秒），需大于一批落库的耗时
+     */
+    private final long processingLeaseMillis;
+
+    public CouponClaimPersister(StringRedisTemplate stringRedisTemplate, DistributedLock distributedLock,
+                                UserCouponMapper userCouponMapper, CouponMapper couponMapper,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${muying.order.coupon.claim.batch-size:1000}") int batchSize,
+                                @Value("${muying.order.coupon.claim.max-batches-per-run:50}") int maxBatchesPerRun,
+                                @Value("${muying.order.coupon.claim.processing-lease-millis:60000}") long processingLeaseMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.distributedLock = distributedLock;
+        this.userCouponMapper = userCouponMapper;
+        this.couponMapper = couponMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = Math.min(batchSize, MAX_BATCH_SIZE);
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.processingLeaseMillis = processingLeaseMillis;
+    }
+
+    /**
+     * 定时落库
+     */
+    @Scheduled(fixedDelayString = "${muying.order.coupon.claim.flush-interval-millis:200}")
+    public void flush() {
+        String requestId = UUID.randomUUID().toString();
+        if (!distributedLock.tryLock(CacheConstants.COUPON_CLAIM_FLUSH_LOCK_KEY, requestId,
+                LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS)) {
+            return;
+        }
+        int persisted = 0;
+        try {
+            for (int batches = 0; batches < maxBatchesPerRun; batches++) {
+                if (batches > 0 && !distributedLock.renewLock(CacheConstants.COUPON_CLAIM_FLUSH_LOCK_KEY, requestId,
+                        LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("优惠券领取记录落库锁续期失败，结束本次落库");
+                    break;
+                }
+                List<String> records = nextBatch(requestId);
+                if (records.isEmpty()) {
+                    break;
+                }
+                persist(records);
+                Long released = stringRedisTemplate.execute(RELEASE_REDIS_SCRIPT, RELEASE_KEYS, requestId);
+                if (released == null || released == 0) {
+                    // 租约已过期，处理中队列已被其他节点接管重放，由接管方删除
+                    log.warn("优惠券领取记录处理中队列已被接管: records={}", records.size());
+                    break;
+                }
+                persisted += records.size();
+                if (records.size() < batchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("优惠券领取记录落库失败，下次重放处理中队列", e);
+        } finally {
+            distributedLock.unlock(CacheConstants.COUPON_CLAIM_FLUSH_LOCK_KEY, requestId);
+        }
+        if (persisted > 0) {
+            log.debug("优惠券领取记录落库完成: records={}", persisted);
+        }
+    }
+
+    /**
+     * 以令牌领取下一批记录：处理中队列有上次未完成的记录时先重放，否则从待落库队列移入新的一批
+     */
+    private List<String> nextBatch(String token) {
+        List<?> claimed = stringRedisTemplate.execute(CLAIM_REDIS_SCRIPT, CLAIM_KEYS,
+                String.valueOf(batchSize), token, String.valueOf(processingLeaseMillis));
+        if (claimed == null || claimed.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> records = new ArrayList<>(claimed.size() - 1);
+        for (int i = 1; i < claimed.size(); i++) {
+            records.add(String.valueOf(claimed.get(i)));
+        }
+        if ("replay".equals(String.valueOf(claimed.get(0)))) {
+            log.warn("重放未完成的优惠券领取记录: records={}", records.size());
+        }
+        return records;
+    }
+
+    /**
+     * 在一个事务内持久化一批领取记录
+     */
+    private void persist(List<String> records) {
+        Map<Long, List<ClaimRecord>> recordsByCoupon = new LinkedHashMap<>();
+        for (String value : records) {
+            ClaimRecord record = ClaimRecord.decode(value);
+            if (record == null) {
+                log.error("忽略格式错误的优惠券领取记录: {}", value);
+                continue;
+            }
+            recordsByCoupon.computeIfAbsent(record.getCouponId(), k -> new ArrayList<>()).add(record);
+        }
+        if (recordsByCoupon.isEmpty()) {
+            return;
+        }
+        Map<Long, Coupon> coupons = couponMapper.selectBatchIds(recordsByCoupon.keySet()).stream()
+                .collect(Collectors.toMap(Coupon::getId, Function.identity()));
+
+        transactionTemplate.executeWithoutResult(status -> recordsByCoupon.forEach((couponId, couponRecords) -> {
+            Coupon coupon = coupons.get(couponId);
+            List<UserCoupon> userCoupons = new ArrayList<>(couponRecords.size());
+            for (ClaimRecord record : couponRecords) {
+                userCoupons.add(toUserCoupon(record, coupon));
+            }
+            int inserted = 0;
+            for (int from = 0; from < userCoupons.size(); from += SQL_CHUNK_SIZE) {
+                inserted += userCouponMapper.insertIgnoreBatch(
+                        userCoupons.subList(from, Math.min(from + SQL_CHUNK_SIZE, userCoupons.size())));
+            }
+            if (inserted > 0) {
+                couponMapper.incrementReceived(couponId, inserted);
+            }
+        }));
+    }
+
+    private UserCoupon toUserCoupon(ClaimRecord record, Coupon coupon) {
+        LocalDateTime receiveTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(record.getReceiveMillis()),
+                ZoneId.systemDefault());
+        LocalDateTime now = LocalDateTime.now();
+        UserCoupon userCoupon = new UserCoupon();
+        userCoupon.setUserId(record.getUserId());
+        userCoupon.setCouponId(record.getCouponId());
+        userCoupon.setCouponCode(record.getCouponCode());
+        userCoupon.setStatus("UNUSED");
+        userCoupon.setReceiveTime(receiveTime);
+        userCoupon.setExpireTime(coupon != null ? coupon.getEndTime() : null);
+        userCoupon.setCreateTime(now);
+        userCoupon.setUpdateTime(now);
+        return userCoupon;
+    }
+}
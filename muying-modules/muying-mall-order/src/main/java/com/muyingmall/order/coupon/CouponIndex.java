@@ -0,0 +1,88 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.mapper.CouponMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 优惠券适用性索引
+ *
+ * <p>按优惠券ID缓存 {@link CompiledCoupon}，每张优惠券只解析一次；缺失的优惠券一次批量查询后编译。
+ * 本节点修改优惠券时调用 {@link #invalidate(Long)}，其他节点的缓存在过期时间后重新编译。</p>
+ */
+@Component
+public class CouponIndex {
+
+    private final CouponMapper couponMapper;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 编译结果缓存时间（毫秒）
+     */
+    private final long ttlMillis;
+
+    public CouponIndex(CouponMapper couponMapper,
+                       @Value("${muying.order.coupon.index.ttl-millis:60000}") long ttlMillis) {
+        this.couponMapper = couponMapper;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 批量获取预编译的优惠券
+     *
+     * @param couponIds 优惠券ID
+     * @return 优惠券ID -> 预编译优惠券，不存在的优惠券不在结果中
+     */
+    public Map<Long, CompiledCoupon> getAll(Collection<Long> couponIds) {
+        long now = System.currentTimeMillis();
+        Map<Long, CompiledCoupon> result = new HashMap<>(couponIds.size() * 2);
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long couponId : couponIds) {
+            if (result.containsKey(couponId)) {
+                continue;
+            }
+            Entry entry = entries.get(couponId);
+            if (entry != null && entry.expireAt > now) {
+                result.put(couponId, entry.compiled);
+            } else {
+                missing.add(couponId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Coupon coupon : couponMapper.selectBatchIds(missing)) {
+                CompiledCoupon compiled = CompiledCoupon.compile(coupon);
+                entries.put(coupon.getId(), new Entry(compiled, now + ttlMillis));
+                result.put(coupon.getId(), compiled);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 使优惠券的编译结果失效
+     */
+    public void invalidate(Long couponId) {
+        entries.remove(couponId);
+    }
+
+    private static class Entry {
+
+        private final CompiledCoupon compiled;
+
+        private final long expireAt;
+
+        private Entry(CompiledCoupon compiled, long expireAt) {
+            this.compiled = compiled;
+            this.expireAt = expireAt;
+        }
+    }
+}
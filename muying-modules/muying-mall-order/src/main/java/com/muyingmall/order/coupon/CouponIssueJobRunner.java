@@ -0,0 +1,342 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.redis.id.IdBizTag;
+import com.muyingmall.common.redis.id.IdGenerator;
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.entity.CouponBatch;
+import com.muyingmall.order.entity.CouponIssueJob;
+import com.muyingmall.order.entity.UserCoupon;
+import com.muyingmall.order.mapper.CouponBatchMapper;
+import com.muyingmall.order.mapper.CouponIssueJobMapper;
+import com.muyingmall.order.mapper.CouponMapper;
+import com.muyingmall.order.mapper.UserCouponMapper;
+import com.muyingmall.order.mapper.UserMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 优惠券批量发放任务执行器
+ *
+ * <p>按用户ID游标分块扫描目标用户，每块：</p>
+ * <ul>
+ *   <li>排除已持有该优惠券的用户，按批次剩余数量截断</li>
+ *   <li>通过 {@link CouponClaimEngine#reserveBulk(Coupon, List)} 在 Redis 中预占，与用户领取共用计数，不会超发</li>
+ *   <li>在一个事务内多行插入 user_coupon、累加一次 received_quantity 和批次 assign_count、推进检查点</li>
+ * </ul>
+ * <p>检查点与发放结果同一事务提交，失败或宕机后从检查点继续，已提交的块不会重复发放。
+ * 同一任务通过分布式锁保证只在一个节点执行；暂停任务后检查点推进失败，执行中的块回滚并停止。</p>
+ */
+@Slf4j
+@Component
+public class CouponIssueJobRunner {
+
+    /**
+     * 单条 SQL 的最大记录数
+     */
+    private static final int SQL_CHUNK_SIZE = 500;
+
+    /**
+     * 单块最大用户数，受 Lua 参数个数和 IN 列表长度限制
+     */
+    private static final int MAX_CHUNK_SIZE = 5000;
+
+    /**
+     * 任务锁过期时间（秒），每块续期
+     */
+    private static final long LOCK_EXPIRE_SECONDS = 60;
+
+    private final CouponIssueJobMapper couponIssueJobMapper;
+    private final CouponMapper couponMapper;
+    private final CouponBatchMapper couponBatchMapper;
+    private final UserMapper userMapper;
+    private final UserCouponMapper userCouponMapper;
+    private final CouponClaimEngine couponClaimEngine;
+    private final IdGenerator idGenerator;
+    private final DistributedLock distributedLock;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter issuedCounter;
+    private final Counter skippedCounter;
+    private final Timer chunkTimer;
+
+    /**
+     * 每块扫描的用户数
+     */
+    private final int chunkSize;
+
+    private final int threads;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 本节点正在执行的任务
+     */
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+
+    public CouponIssueJobRunner(CouponIssueJobMapper couponIssueJobMapper, CouponMapper couponMapper,
+                                CouponBatchMapper couponBatchMapper, UserMapper userMapper,
+                                UserCouponMapper userCouponMapper, CouponClaimEngine couponClaimEngine,
+                                IdGenerator idGenerator, DistributedLock distributedLock,
+                                TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                                @Value("${muying.order.coupon.issue.chunk-size:1000}") int chunkSize,
+                                @Value("${muying.order.coupon.issue.threads:2}") int threads) {
+        this.couponIssueJobMapper = couponIssueJobMapper;
+        this.couponMapper = couponMapper;
+        this.couponBatchMapper = couponBatchMapper;
+        this.userMapper = userMapper;
+        this.userCouponMapper = userCouponMapper;
+        this.couponClaimEngine = couponClaimEngine;
+        this.idGenerator = idGenerator;
+        this.distributedLock = distributedLock;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+        this.threads = threads;
+
+        this.issuedCounter = Counter.builder("muying.coupon.issue.users")
+                .description("批量发放处理的用户数").tag("result", "issued").register(meterRegistry);
+        this.skippedCounter = Counter.builder("muying.coupon.issue.users")
+                .description("批量发放处理的用户数").tag("result", "skipped").register(meterRegistry);
+        this.chunkTimer = Timer.builder("muying.coupon.issue.chunk")
+                .description("批量发放单块耗时").register(meterRegistry);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "coupon-issue-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 定时拉取待执行和中断的任务
+     */
+    @Scheduled(fixedDelayString = "${muying.order.coupon.issue.poll-interval-millis:5000}")
+    public void poll() {
+        int idle = threads - runningJobs.size();
+        if (idle <= 0) {
+            return;
+        }
+        for (CouponIssueJob job : couponIssueJobMapper.selectRunnable(idle)) {
+            if (runningJobs.add(job.getId())) {
+                executor.execute(() -> {
+                    try {
+                        run(job.getId());
+                    } finally {
+                        runningJobs.remove(job.getId());
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 执行任务直到完成、暂停或出错，出错时保留检查点等待下次调度
+     *
+     * @param jobId 任务ID
+     */
+    public void run(Long jobId) {
+        String lockKey = CacheConstants.COUPON_ISSUE_LOCK_KEY + jobId;
+        String requestId = UUID.randomUUID().toString();
+        if (!distributedLock.tryLock(lockKey, requestId, LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS)) {
+            return;
+        }
+        try {
+            CouponIssueJob job = couponIssueJobMapper.selectById(jobId);
+            if (job == null) {
+                return;
+            }
+            if (job.getStatus() == CouponIssueJob.STATUS_PENDING) {
+                if (couponIssueJobMapper.transition(jobId, CouponIssueJob.STATUS_PENDING,
+                        CouponIssueJob.STATUS_RUNNING, null) == 0) {
+                    return;
+                }
+            } else if (job.getStatus() != CouponIssueJob.STATUS_RUNNING) {
+                return;
+            }
+            Coupon coupon = couponMapper.selectById(job.getCouponId());
+            if (coupon == null || couponBatchMapper.selectById(job.getBatchId()) == null) {
+                finish(jobId, CouponIssueJob.STATUS_FAILED, "优惠券或批次不存在");
+                return;
+            }
+            if (coupon.getEndTime() != null && coupon.getEndTime().isBefore(LocalDateTime.now())) {
+                finish(jobId, CouponIssueJob.STATUS_FAILED, "优惠券已过期");
+                return;
+            }
+            long lastUserId = job.getLastUserId() != null ? job.getLastUserId() : 0L;
+            while (true) {
+                distributedLock.renewLock(lockKey, requestId, LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS);
+                long afterUserId = lastUserId;
+                ChunkResult result = chunkTimer.record(() -> issueChunk(job, coupon, afterUserId));
+                if (result == null) {
+                    // 任务已暂停或被接管
+                    return;
+                }
+                if (result.scanned == 0) {
+                    finish(jobId, CouponIssueJob.STATUS_COMPLETED, null);
+                    return;
+                }
+                if (result.soldOut || result.batchExhausted) {
+                    finish(jobId, CouponIssueJob.STATUS_COMPLETED, result.soldOut ? "优惠券已领完" : "批次数量已发完");
+                    return;
+                }
+                lastUserId = result.lastUserId;
+            }
+        } catch (Exception e) {
+            log.error("优惠券批量发放失败，下次调度从检查点继续: jobId={}", jobId, e);
+            couponIssueJobMapper.recordError(jobId, abbreviate(e.getMessage()));
+        } finally {
+            distributedLock.unlock(lockKey, requestId);
+        }
+    }
+
+    /**
+     * 发放一块
+     *
+     * @return 发放结果；任务已不在执行中时返回 null
+     */
+    private ChunkResult issueChunk(CouponIssueJob job, Coupon coupon, long afterUserId) {
+        ChunkResult result = new ChunkResult();
+        List<Long> userIds = userMapper.selectIdsAfter(afterUserId, job.getMaxUserId(), job.getUserStatus(), chunkSize);
+        if (userIds.isEmpty()) {
+            return result;
+        }
+        result.scanned = userIds.size();
+        result.lastUserId = userIds.get(userIds.size() - 1);
+
+        Set<Long> holders = new HashSet<>(userCouponMapper.selectHolders(coupon.getId(), userIds));
+        List<Long> candidates = new ArrayList<>(userIds.size() - holders.size());
+        for (Long userId : userIds) {
+            if (!holders.contains(userId)) {
+                candidates.add(userId);
+            }
+        }
+        CouponBatch batch = couponBatchMapper.selectById(job.getBatchId());
+        int remaining = remaining(batch);
+        if (candidates.size() > remaining) {
+            candidates = candidates.subList(0, remaining);
+        }
+
+        CouponClaimEngine.BulkReservation reservation = couponClaimEngine.reserveBulk(coupon, candidates);
+        List<Long> granted = reservation.getUserIds();
+        result.soldOut = reservation.isSoldOut();
+        result.batchExhausted = remaining != Integer.MAX_VALUE && remaining - granted.size() <= 0;
+        result.issued = granted.size();
+        int skipped = result.scanned - result.issued;
+        try {
+            boolean advanced = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                List<UserCoupon> userCoupons = toUserCoupons(granted, coupon, job.getBatchId());
+                int inserted = 0;
+                for (int from = 0; from < userCoupons.size(); from += SQL_CHUNK_SIZE) {
+                    inserted += userCouponMapper.insertIgnoreBatch(
+                            userCoupons.subList(from, Math.min(from + SQL_CHUNK_SIZE, userCoupons.size())));
+                }
+                if (inserted > 0) {
+                    couponMapper.incrementReceived(coupon.getId(), inserted);
+                    couponBatchMapper.incrementAssigned(job.getBatchId(), inserted);
+                }
+                if (couponIssueJobMapper.advance(job.getId(), afterUserId, result.lastUserId,
+                        result.scanned, result.issued, skipped) == 0) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+                return true;
+            }));
+            if (!advanced) {
+                couponClaimEngine.releaseBulk(coupon, granted);
+                return null;
+            }
+        } catch (RuntimeException e) {
+            couponClaimEngine.releaseBulk(coupon, granted);
+            throw e;
+        }
+        issuedCounter.increment(result.issued);
+        skippedCounter.increment(skipped);
+        return result;
+    }
+
+    private List<UserCoupon> toUserCoupons(List<Long> userIds, Coupon coupon, Integer batchId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<UserCoupon> userCoupons = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            UserCoupon userCoupon = new UserCoupon();
+            userCoupon.setUserId(userId);
+            userCoupon.setCouponId(coupon.getId());
+            userCoupon.setBatchId(batchId);
+            userCoupon.setCouponCode(idGenerator.nextNo(IdBizTag.COUPON_CODE, "CP"));
+            userCoupon.setStatus("UNUSED");
+            userCoupon.setReceiveTime(now);
+            userCoupon.setExpireTime(coupon.getEndTime());
+            userCoupon.setCreateTime(now);
+            userCoupon.setUpdateTime(now);
+            userCoupons.add(userCoupon);
+        }
+        return userCoupons;
+    }
+
+    private void finish(Long jobId, int status, String message) {
+        couponIssueJobMapper.transition(jobId, CouponIssueJob.STATUS_RUNNING, status, message);
+        log.info("优惠券批量发放任务结束: jobId={}, status={}, message={}", jobId, status, message);
+    }
+
+    /**
+     * 批次剩余可分配数量，未设置总数时不限
+     */
+    private static int remaining(CouponBatch batch) {
+        if (batch == null || batch.getTotalCount() == null) {
+            return Integer.MAX_VALUE;
+        }
+        int assigned = batch.getAssignCount() != null ? batch.getAssignCount() : 0;
+        return Math.max(0, batch.getTotalCount() - assigned);
+    }
+
+    private static String abbreviate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 执行中的块未提交时回滚，检查点保留，由其他节点在锁过期后继续
+        executor.shutdownNow();
+    }
+
+    /**
+     * 单块发放结果
+     */
+    private static class ChunkResult {
+
+        private int scanned;
+
+        private int issued;
+
+        private long lastUserId;
+
+        private boolean soldOut;
+
+        private boolean batchExhausted;
+    }
+}
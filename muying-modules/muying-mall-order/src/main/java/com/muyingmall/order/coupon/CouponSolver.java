@@ -0,0 +1,96 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.order.coupon.rule.CompiledRule;
+import com.muyingmall.order.coupon.rule.RuleCart;
+import com.muyingmall.order.dto.CouponSolution;
+import com.muyingmall.order.entity.UserCoupon;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 最优用券求解
+ *
+ * <p>一次遍历用户优惠券，同时求出两种方案，取优惠金额较大者：</p>
+ * <ul>
+ *   <li>单张：任意一张可用优惠券的最大优惠</li>
+ *   <li>叠加：所有可叠加优惠券按订单金额分别计算后求和，同一优惠券只取一张，总额不超过订单金额</li>
+ * </ul>
+ * <p>只考虑状态为可用、达到最低消费且适用于订单商品的优惠券。关联了优惠规则的优惠券按规则对购物车求值，
+ * 规则互斥的优惠券不参与叠加。</p>
+ */
+public final class CouponSolver {
+
+    private CouponSolver() {
+    }
+
+    /**
+     * 求最优用券方案
+     *
+     * @param userCoupons      用户未使用、未过期的优惠券
+     * @param compiledCoupons  优惠券ID -> 预编译优惠券
+     * @param amount           订单金额（分）
+     * @param sortedProductIds 订单商品ID，升序
+     * @return 最优方案
+     */
+    public static CouponSolution solve(List<UserCoupon> userCoupons, Map<Long, CompiledCoupon> compiledCoupons,
+                                       long amount, int[] sortedProductIds) {
+        return solve(userCoupons, compiledCoupons, Collections.emptyMap(), RuleCart.ofTotal(amount), sortedProductIds);
+    }
+
+    /**
+     * 求最优用券方案，关联了优惠规则的优惠券按规则对购物车求值
+     *
+     * @param userCoupons      用户未使用、未过期的优惠券
+     * @param compiledCoupons  优惠券ID -> 预编译优惠券
+     * @param compiledRules    规则ID -> 预编译规则
+     * @param cart             购物车
+     * @param sortedProductIds 订单商品ID，升序
+     * @return 最优方案
+     */
+    public static CouponSolution solve(List<UserCoupon> userCoupons, Map<Long, CompiledCoupon> compiledCoupons,
+                                       Map<Integer, CompiledRule> compiledRules, RuleCart cart,
+                                       int[] sortedProductIds) {
+        long amount = cart.getTotalAmount();
+        UserCoupon bestSingle = null;
+        long bestSingleDiscount = 0L;
+        // 可叠加券按优惠券ID只保留一张
+        Map<Long, UserCoupon> stack = new HashMap<>();
+        long stackDiscount = 0L;
+
+        for (UserCoupon userCoupon : userCoupons) {
+            CompiledCoupon compiled = compiledCoupons.get(userCoupon.getCouponId());
+            if (compiled == null || !compiled.isActive() || !compiled.appliesTo(sortedProductIds)) {
+                continue;
+            }
+            CompiledRule rule = compiled.getRuleId() != null ? compiledRules.get(compiled.getRuleId()) : null;
+            long discount = compiled.discount(cart, rule);
+            if (discount <= 0) {
+                continue;
+            }
+            if (discount > bestSingleDiscount) {
+                bestSingle = userCoupon;
+                bestSingleDiscount = discount;
+            }
+            if (compiled.isStackable() && (rule == null || !rule.isMutex())
+                    && stack.putIfAbsent(compiled.getId(), userCoupon) == null) {
+                stackDiscount += discount;
+            }
+        }
+
+        CouponSolution solution = new CouponSolution();
+        stackDiscount = Math.min(stackDiscount, amount);
+        if (stack.size() > 1 && stackDiscount > bestSingleDiscount) {
+            solution.setUserCoupons(new ArrayList<>(stack.values()));
+            solution.setDiscountAmount(BigDecimal.valueOf(stackDiscount, 2));
+        } else if (bestSingle != null) {
+            solution.getUserCoupons().add(bestSingle);
+            solution.setDiscountAmount(BigDecimal.valueOf(bestSingleDiscount, 2));
+        }
+        return solution;
+    }
+}
@@ -0,0 +1,101 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.order.mapper.UserCouponMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户优惠券过期任务
+ *
+ * <p>把过了失效时间仍为未使用的用户优惠券标记为已过期，查询用户优惠券时只需按状态过滤：</p>
+ * <ul>
+ *   <li>每批一条 UPDATE ... ORDER BY valid_to LIMIT，最早过期的先处理，单批自动提交，锁持有时间短</li>
+ *   <li>按行数限流：每批之后休眠到不超过每秒最大行数，单次运行有批次上限，避免大促后集中过期时占满主库</li>
+ *   <li>多节点同时执行时各批锁定的行互不重叠，无需分布式锁</li>
+ * </ul>
+ * <p>两次运行之间刚过期的优惠券仍为未使用，使用优惠券时会再校验失效时间。</p>
+ */
+@Slf4j
+@Component
+public class UserCouponExpirer {
+
+    private final UserCouponMapper userCouponMapper;
+
+    /**
+     * 是否启用过期任务
+     */
+    private final boolean enabled;
+
+    /**
+     * 每批更新的行数
+     */
+    private final int chunkSize;
+
+    /**
+     * 每秒最多更新的行数
+     */
+    private final int maxRowsPerSecond;
+
+    /**
+     * 单次运行最多处理的批次数
+     */
+    private final int maxChunksPerRun;
+
+    public UserCouponExpirer(UserCouponMapper userCouponMapper,
+                             @Value("${muying.order.coupon.expire.enabled:true}") boolean enabled,
+                             @Value("${muying.order.coupon.expire.chunk-size:1000}") int chunkSize,
+                             @Value("${muying.order.coupon.expire.max-rows-per-second:5000}") int maxRowsPerSecond,
+                             @Value("${muying.order.coupon.expire.max-chunks-per-run:500}") int maxChunksPerRun) {
+        this.userCouponMapper = userCouponMapper;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.maxRowsPerSecond = Math.max(1, maxRowsPerSecond);
+        this.maxChunksPerRun = maxChunksPerRun;
+    }
+
+    /**
+     * 定时标记过期优惠券
+     */
+    @Scheduled(fixedDelayString = "${muying.order.coupon.expire.interval-millis:60000}")
+    public void expire() {
+        if (!enabled) {
+            return;
+        }
+
+        // 固定本次运行的截止时间，运行期间新过期的留给下一次
+        LocalDateTime cutoff = LocalDateTime.now();
+        long minChunkMillis = chunkSize * 1000L / maxRowsPerSecond;
+        long start = System.currentTimeMillis();
+        long expired = 0;
+        int chunks = 0;
+        try {
+            while (chunks < maxChunksPerRun) {
+                long chunkStart = System.currentTimeMillis();
+                int count = userCouponMapper.expireBefore(cutoff, chunkSize);
+                expired += count;
+                chunks++;
+                if (count < chunkSize) {
+                    break;
+                }
+                long sleepMillis = minChunkMillis - (System.currentTimeMillis() - chunkStart);
+                if (sleepMillis > 0) {
+                    TimeUnit.MILLISECONDS.sleep(sleepMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("用户优惠券过期任务被中断");
+        } catch (Exception e) {
+            log.error("标记过期用户优惠券失败", e);
+        }
+        if (expired > 0) {
+            log.info("标记过期用户优惠券完成: cutoff={}, coupons={}, chunks={}, cost={}ms",
+                    cutoff, expired, chunks, System.currentTimeMillis() - start);
+        }
+    }
+}
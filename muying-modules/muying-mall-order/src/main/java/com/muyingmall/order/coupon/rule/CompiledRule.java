@@ -0,0 +1,364 @@
+package com.muyingmall.order.coupon.rule;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.order.coupon.CompiledCoupon;
+import com.muyingmall.order.entity.CouponRule;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 预编译的优惠规则
+ *
+ * <p>规则内容（{@link CouponRule#getRuleContent()}）只在编译时解析一次，得到不可变的求值树：
+ * 作用范围 -> 门槛条件 -> 优惠计算 -> 封顶。金额统一换算为分，ID列表解析为有序 int 数组，
+ * {@link #evaluate(RuleCart)} 只做基本类型运算，不创建对象。</p>
+ *
+ * <p>规则内容格式（金额单位为元）：</p>
+ * <pre>
+ * {
+ *   "threshold": 100.00,            满额门槛，作用范围内金额达到后可用
+ *   "min_quantity": 2,              满件门槛
+ *   "amount": 15.00,                满减/直减金额
+ *   "discount": 0.90,               折扣率，0.90 为9折，仅折扣规则
+ *   "repeat": true,                 满减规则每满 threshold 减一次
+ *   "max_times": 3,                 每满减最多减免次数
+ *   "tiers": [{"threshold": 100, "amount": 10}, {"threshold": 200, "amount": 25}],
+ *                                   阶梯优惠，取达到的最高一档；可用 "quantity" 代替 "threshold" 按件数分档，
+ *                                   折扣规则用 "discount" 代替 "amount"
+ *   "use_range": 0,                 0-全场，1-指定商品，2-指定分类，3-指定品牌
+ *   "product_ids": "1,2",  "category_ids": "2,7",  "brand_ids": [3, 5],
+ *   "exclude_product_ids": "9",     排除的商品
+ *   "max_discount": 50.00,          最大优惠金额
+ *   "is_mutex": true,               是否与其他优惠券互斥
+ *   "use_started_at": "2025-03-01 00:00:00",
+ *   "use_ended_at": "2025-12-31 23:59:59"
+ * }
+ * </pre>
+ * <p>领取相关的字段（receive_count、receive_started_at 等）不参与求值。</p>
+ */
+public final class CompiledRule {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 规则类型：满减
+     */
+    public static final int TYPE_FULL_REDUCTION = 0;
+
+    /**
+     * 规则类型：直减
+     */
+    public static final int TYPE_DIRECT_REDUCTION = 1;
+
+    /**
+     * 规则类型：折扣
+     */
+    public static final int TYPE_PERCENTAGE = 2;
+
+    private static final int RANGE_ALL = 0;
+
+    private static final int RANGE_PRODUCT = 1;
+
+    private static final int RANGE_CATEGORY = 2;
+
+    private static final int RANGE_BRAND = 3;
+
+    private final Integer ruleId;
+
+    /**
+     * 编译时的规则版本，见 {@link CouponRuleCache}
+     */
+    private final long version;
+
+    /**
+     * 作用范围，为null时全部商品参与计算
+     */
+    private final RuleScope scope;
+
+    /**
+     * 满额门槛（分）
+     */
+    private final long minAmount;
+
+    private final int minQuantity;
+
+    private final RuleBenefit benefit;
+
+    /**
+     * 最大优惠金额（分），不限时为 Long.MAX_VALUE
+     */
+    private final long maxDiscount;
+
+    private final boolean mutex;
+
+    /**
+     * 使用时间范围（毫秒时间戳）
+     */
+    private final long useStart;
+
+    private final long useEnd;
+
+    private CompiledRule(Integer ruleId, long version, RuleScope scope, long minAmount, int minQuantity,
+                         RuleBenefit benefit, long maxDiscount, boolean mutex, long useStart, long useEnd) {
+        this.ruleId = ruleId;
+        this.version = version;
+        this.scope = scope;
+        this.minAmount = minAmount;
+        this.minQuantity = minQuantity;
+        this.benefit = benefit;
+        this.maxDiscount = maxDiscount;
+        this.mutex = mutex;
+        this.useStart = useStart;
+        this.useEnd = useEnd;
+    }
+
+    /**
+     * 编译规则
+     *
+     * @param rule    优惠规则
+     * @param version 规则版本
+     * @throws BusinessException 规则类型或规则内容无效
+     */
+    public static CompiledRule compile(CouponRule rule, long version) {
+        Integer type = rule.getType();
+        if (type == null || type < TYPE_FULL_REDUCTION || type > TYPE_PERCENTAGE) {
+            throw new BusinessException("优惠规则类型无效：" + type);
+        }
+        if (!StringUtils.hasText(rule.getRuleContent())) {
+            throw new BusinessException("优惠规则内容不能为空");
+        }
+        JsonNode content;
+        try {
+            content = OBJECT_MAPPER.readTree(rule.getRuleContent());
+        } catch (Exception e) {
+            throw new BusinessException("优惠规则内容不是有效的JSON");
+        }
+        if (content == null || !content.isObject()) {
+            throw new BusinessException("优惠规则内容不是有效的JSON");
+        }
+
+        long minAmount = cents(content, "threshold");
+        int minQuantity = content.path("min_quantity").asInt(0);
+        long maxDiscount = cents(content, "max_discount");
+        return new CompiledRule(rule.getRuleId(), version, parseScope(content), minAmount, minQuantity,
+                parseBenefit(type, content, minAmount), maxDiscount > 0 ? maxDiscount : Long.MAX_VALUE,
+                content.path("is_mutex").asBoolean(false),
+                parseTime(content, "use_started_at", Long.MIN_VALUE),
+                parseTime(content, "use_ended_at", Long.MAX_VALUE));
+    }
+
+    /**
+     * 规则内容无效时使用的规则，不产生任何优惠
+     */
+    public static CompiledRule disabled(Integer ruleId, long version) {
+        return new CompiledRule(ruleId, version, null, 0L, 0, new RuleBenefit.Fixed(0L), 0L, true,
+                Long.MAX_VALUE, Long.MIN_VALUE);
+    }
+
+    /**
+     * 对购物车求值
+     *
+     * @return 优惠金额（分），不可用时为0；不超过最大优惠金额和作用范围内的金额
+     */
+    public long evaluate(RuleCart cart) {
+        long now = cart.getNow();
+        if (now < useStart || now > useEnd) {
+            return 0L;
+        }
+        long amount;
+        int quantity;
+        if (scope == null) {
+            amount = cart.getTotalAmount();
+            quantity = cart.getTotalQuantity();
+        } else {
+            amount = 0L;
+            quantity = 0;
+            for (int i = 0, size = cart.size(); i < size; i++) {
+                if (scope.matches(cart, i)) {
+                    amount += cart.amountAt(i);
+                    quantity += cart.quantityAt(i);
+                }
+            }
+        }
+        if (amount <= 0 || amount < minAmount || quantity < minQuantity) {
+            return 0L;
+        }
+        return Math.min(Math.min(benefit.apply(amount, quantity), maxDiscount), amount);
+    }
+
+    public Integer getRuleId() {
+        return ruleId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 是否与其他优惠券互斥，互斥规则的优惠券不参与叠加
+     */
+    public boolean isMutex() {
+        return mutex;
+    }
+
+    private static RuleScope parseScope(JsonNode content) {
+        int range = content.path("use_range").asInt(RANGE_ALL);
+        RuleScope scope;
+        switch (range) {
+            case RANGE_ALL:
+                scope = null;
+                break;
+            case RANGE_PRODUCT:
+                scope = new RuleScope.Products(requireIds(content, "product_ids"));
+                break;
+            case RANGE_CATEGORY:
+                scope = new RuleScope.Categories(requireIds(content, "category_ids"));
+                break;
+            case RANGE_BRAND:
+                scope = new RuleScope.Brands(requireIds(content, "brand_ids"));
+                break;
+            default:
+                throw new BusinessException("优惠规则使用范围无效：" + range);
+        }
+        int[] excluded = parseIds(content.path("exclude_product_ids"));
+        return excluded.length > 0 ? new RuleScope.Excluding(scope, excluded) : scope;
+    }
+
+    private static RuleBenefit parseBenefit(int type, JsonNode content, long minAmount) {
+        JsonNode tiers = content.path("tiers");
+        if (tiers.isArray() && tiers.size() > 0) {
+            return parseTiers(type, tiers);
+        }
+        if (type == TYPE_PERCENTAGE) {
+            return new RuleBenefit.Percentage(offBasisPoints(content.path("discount")));
+        }
+        long amount = cents(content, "amount");
+        if (amount <= 0) {
+            throw new BusinessException("优惠规则缺少减免金额");
+        }
+        if (type == TYPE_FULL_REDUCTION && content.path("repeat").asBoolean(false)) {
+            if (minAmount <= 0) {
+                throw new BusinessException("每满减规则的门槛金额必须大于0");
+            }
+            long maxTimes = content.path("max_times").asLong(0L);
+            return new RuleBenefit.Repeat(minAmount, amount, maxTimes > 0 ? maxTimes : Long.MAX_VALUE);
+        }
+        return new RuleBenefit.Fixed(amount);
+    }
+
+    private static RuleBenefit parseTiers(int type, JsonNode tiers) {
+        boolean percentage = type == TYPE_PERCENTAGE;
+        boolean byQuantity = tiers.get(0).has("quantity");
+        List<long[]> parsed = new ArrayList<>(tiers.size());
+        for (JsonNode tier : tiers) {
+            if (byQuantity != tier.has("quantity")) {
+                throw new BusinessException("阶梯优惠不能混用金额门槛和件数门槛");
+            }
+            long threshold = byQuantity ? tier.path("quantity").asLong(0L) : cents(tier, "threshold");
+            long value = percentage ? offBasisPoints(tier.path("discount")) : cents(tier, "amount");
+            if (threshold <= 0 || value <= 0) {
+                throw new BusinessException("阶梯优惠的门槛和优惠必须大于0");
+            }
+            parsed.add(new long[]{threshold, value});
+        }
+        parsed.sort(Comparator.comparingLong(tier -> tier[0]));
+        long[] thresholds = new long[parsed.size()];
+        long[] values = new long[parsed.size()];
+        for (int i = 0; i < parsed.size(); i++) {
+            thresholds[i] = parsed.get(i)[0];
+            values[i] = parsed.get(i)[1];
+        }
+        return new RuleBenefit.Tiered(byQuantity, thresholds, values, percentage);
+    }
+
+    /**
+     * 折扣率换算为减免万分比，如 0.90 -> 1000
+     */
+    private static long offBasisPoints(JsonNode rate) {
+        if (!rate.isNumber() && !rate.isTextual()) {
+            throw new BusinessException("折扣规则缺少折扣率");
+        }
+        BigDecimal value;
+        try {
+            value = new BigDecimal(rate.asText());
+        } catch (NumberFormatException e) {
+            throw new BusinessException("折扣率无效：" + rate.asText());
+        }
+        if (value.signum() <= 0 || value.compareTo(BigDecimal.ONE) >= 0) {
+            throw new BusinessException("折扣率必须在0到1之间：" + value);
+        }
+        return RuleBenefit.BASIS_POINTS - value.movePointRight(4).setScale(0, RoundingMode.UP).longValue();
+    }
+
+    private static long cents(JsonNode node, String field) {
+        JsonNode value = node.path(field);
+        if (value.isMissingNode() || value.isNull()) {
+            return 0L;
+        }
+        try {
+            return CompiledCoupon.toCents(new BigDecimal(value.asText()));
+        } catch (NumberFormatException e) {
+            throw new BusinessException("优惠规则金额无效：" + field + "=" + value.asText());
+        }
+    }
+
+    private static int[] requireIds(JsonNode content, String field) {
+        int[] ids = parseIds(content.path(field));
+        if (ids.length == 0) {
+            throw new BusinessException("优惠规则缺少适用范围：" + field);
+        }
+        return ids;
+    }
+
+    /**
+     * 解析ID列表，支持JSON数组和逗号分隔的字符串，结果升序去重
+     */
+    private static int[] parseIds(JsonNode node) {
+        List<String> parts = new ArrayList<>();
+        if (node.isArray()) {
+            node.forEach(id -> parts.add(id.asText()));
+        } else if (node.isTextual() || node.isNumber()) {
+            parts.addAll(Arrays.asList(node.asText().split(",")));
+        }
+        int[] ids = new int[parts.size()];
+        int count = 0;
+        for (String part : parts) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            try {
+                ids[count++] = Integer.parseInt(trimmed);
+            } catch (NumberFormatException e) {
+                throw new BusinessException("优惠规则ID无效：" + trimmed);
+            }
+        }
+        return Arrays.stream(ids, 0, count).sorted().distinct().toArray();
+    }
+
+    private static long parseTime(JsonNode content, String field, long defaultValue) {
+        String value = content.path(field).asText("");
+        if (!StringUtils.hasText(value)) {
+            return defaultValue;
+        }
+        try {
+            return LocalDateTime.parse(value, TIME_FORMATTER).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new BusinessException("优惠规则时间格式无效：" + field + "=" + value);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.muyingmall.order.coupon.rule;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.order.entity.CouponRule;
+import com.muyingmall.order.mapper.CouponRuleMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 优惠规则编译缓存
+ *
+ * <p>按规则ID缓存 {@link CompiledRule}，每条规则只编译一次。规则的版本号保存在 Redis HASH
+ * {@link CacheConstants#COUPON_RULE_VERSION_KEY} 中，修改规则时递增；各节点定时比对本地编译结果的版本，
+ * 版本变化的规则从本地缓存移除，下次使用时重新编译。</p>
+ */
+@Slf4j
+@Component
+public class CouponRuleCache {
+
+    private final CouponRuleMapper couponRuleMapper;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final Map<Integer, CompiledRule> rules = new ConcurrentHashMap<>();
+
+    public CouponRuleCache(CouponRuleMapper couponRuleMapper, StringRedisTemplate stringRedisTemplate) {
+        this.couponRuleMapper = couponRuleMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 批量获取预编译的规则
+     *
+     * @param ruleIds 规则ID
+     * @return 规则ID -> 预编译规则，不存在的规则不在结果中
+     */
+    public Map<Integer, CompiledRule> getAll(Collection<Integer> ruleIds) {
+        Map<Integer, CompiledRule> result = new HashMap<>(ruleIds.size() * 2);
+        Set<Integer> missing = new LinkedHashSet<>();
+        for (Integer ruleId : ruleIds) {
+            if (ruleId == null || result.containsKey(ruleId)) {
+                continue;
+            }
+            CompiledRule compiled = rules.get(ruleId);
+            if (compiled != null) {
+                result.put(ruleId, compiled);
+            } else {
+                missing.add(ruleId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            // 先读版本再读规则，读取期间的修改会在下一次刷新时被发现
+            Map<Integer, Long> versions;
+            try {
+                versions = readVersions(missing);
+            } catch (Exception e) {
+                log.warn("读取优惠规则版本失败，按版本0编译: {}", e.getMessage());
+                versions = Map.of();
+            }
+            for (CouponRule rule : couponRuleMapper.selectBatchIds(missing)) {
+                long version = versions.getOrDefault(rule.getRuleId(), 0L);
+                CompiledRule compiled;
+                try {
+                    compiled = CompiledRule.compile(rule, version);
+                } catch (BusinessException e) {
+                    log.warn("优惠规则内容无效，规则不产生优惠: ruleId={}, reason={}", rule.getRuleId(), e.getMessage());
+                    compiled = CompiledRule.disabled(rule.getRuleId(), version);
+                }
+                rules.put(rule.getRuleId(), compiled);
+                result.put(rule.getRuleId(), compiled);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 校验规则内容，规则类型或内容无效时抛出 {@link BusinessException}
+     */
+    public void validate(CouponRule rule) {
+        CompiledRule.compile(rule, 0L);
+    }
+
+    /**
+     * 规则已修改：递增版本号并使本节点的编译结果失效，其他节点在下一次刷新时失效
+     */
+    public void invalidate(Integer ruleId) {
+        try {
+            stringRedisTemplate.opsForHash().increment(CacheConstants.COUPON_RULE_VERSION_KEY,
+                    String.valueOf(ruleId), 1L);
+        } catch (Exception e) {
+            log.error("递增优惠规则版本失败，其他节点将继续使用旧规则直到版本更新: ruleId={}", ruleId, e);
+        }
+        rules.remove(ruleId);
+    }
+
+    /**
+     * 比对本地编译结果与 Redis 中的版本号，移除版本已变化的规则
+     */
+    @Scheduled(fixedDelayString = "${muying.order.coupon.rule.refresh-interval-millis:5000}")
+    public void refresh() {
+        if (rules.isEmpty()) {
+            return;
+        }
+        Map<Integer, Long> versions;
+        try {
+            versions = readVersions(rules.keySet());
+        } catch (Exception e) {
+            log.warn("读取优惠规则版本失败: {}", e.getMessage());
+            return;
+        }
+        rules.values().removeIf(compiled ->
+                compiled.getVersion() != versions.getOrDefault(compiled.getRuleId(), 0L));
+    }
+
+    private Map<Integer, Long> readVersions(Collection<Integer> ruleIds) {
+        List<Integer> ids = new ArrayList<>(ruleIds);
+        List<Object> fields = new ArrayList<>(ids.size());
+        for (Integer ruleId : ids) {
+            fields.add(String.valueOf(ruleId));
+        }
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(CacheConstants.COUPON_RULE_VERSION_KEY, fields);
+        Map<Integer, Long> versions = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = values.get(i);
+            if (value != null) {
+                versions.put(ids.get(i), Long.parseLong(value.toString()));
+            }
+        }
+        return versions;
+    }
+}
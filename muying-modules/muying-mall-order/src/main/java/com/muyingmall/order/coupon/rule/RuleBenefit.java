@@ -0,0 +1,126 @@
+package com.muyingmall.order.coupon.rule;
+
+/**
+ * 规则优惠计算：根据作用范围内的金额和件数计算优惠金额
+ */
+interface RuleBenefit {
+
+    /**
+     * 万分比基数
+     */
+    long BASIS_POINTS = 10000L;
+
+    /**
+     * @param amount   作用范围内的金额（分）
+     * @param quantity 作用范围内的件数
+     * @return 优惠金额（分），未封顶
+     */
+    long apply(long amount, int quantity);
+
+    /**
+     * 固定减免
+     */
+    final class Fixed implements RuleBenefit {
+
+        private final long discount;
+
+        Fixed(long discount) {
+            this.discount = discount;
+        }
+
+        @Override
+        public long apply(long amount, int quantity) {
+            return discount;
+        }
+    }
+
+    /**
+     * 按比例减免
+     */
+    final class Percentage implements RuleBenefit {
+
+        /**
+         * 减免的万分比，如9折为1000
+         */
+        private final long offBasisPoints;
+
+        Percentage(long offBasisPoints) {
+            this.offBasisPoints = offBasisPoints;
+        }
+
+        @Override
+        public long apply(long amount, int quantity) {
+            return amount * offBasisPoints / BASIS_POINTS;
+        }
+    }
+
+    /**
+     * 每满减：每满一个门槛减一次，可限制最多减免次数
+     */
+    final class Repeat implements RuleBenefit {
+
+        /**
+         * 门槛金额（分），大于0
+         */
+        private final long step;
+
+        private final long discount;
+
+        /**
+         * 最多减免次数，不限时为 Long.MAX_VALUE
+         */
+        private final long maxTimes;
+
+        Repeat(long step, long discount, long maxTimes) {
+            this.step = step;
+            this.discount = discount;
+            this.maxTimes = maxTimes;
+        }
+
+        @Override
+        public long apply(long amount, int quantity) {
+            return Math.min(amount / step, maxTimes) * discount;
+        }
+    }
+
+    /**
+     * 阶梯优惠：取达到的最高一档
+     */
+    final class Tiered implements RuleBenefit {
+
+        /**
+         * 是否按件数分档，否则按金额分档
+         */
+        private final boolean byQuantity;
+
+        /**
+         * 各档门槛，升序
+         */
+        private final long[] thresholds;
+
+        /**
+         * 各档减免金额（分）或减免万分比
+         */
+        private final long[] values;
+
+        private final boolean percentage;
+
+        Tiered(boolean byQuantity, long[] thresholds, long[] values, boolean percentage) {
+            this.byQuantity = byQuantity;
+            this.thresholds = thresholds;
+            this.values = values;
+            this.percentage = percentage;
+        }
+
+        @Override
+        public long apply(long amount, int quantity) {
+            long reached = byQuantity ? quantity : amount;
+            for (int i = thresholds.length - 1; i >= 0; i--) {
+                if (reached >= thresholds[i]) {
+                    return percentage ? amount * values[i] / BASIS_POINTS : values[i];
+                }
+            }
+            return 0L;
+        }
+    }
+}
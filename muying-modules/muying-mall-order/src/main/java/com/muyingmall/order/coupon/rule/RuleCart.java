@@ -0,0 +1,167 @@
+package com.muyingmall.order.coupon.rule;
+
+import com.muyingmall.order.coupon.CompiledCoupon;
+import com.muyingmall.order.entity.Product;
+
+import java.util.Arrays;
+
+/**
+ * 规则求值用的购物车
+ *
+ * <p>商品明细按列存放在基本类型数组中，{@link CompiledRule#evaluate(RuleCart)} 只读数组、不创建对象。
+ * 同一个购物车可以对任意多条规则求值。分类或品牌未知时记为0，不会命中任何分类、品牌范围。</p>
+ */
+public final class RuleCart {
+
+    private int[] productIds;
+
+    private int[] categoryIds;
+
+    private int[] brandIds;
+
+    private int[] quantities;
+
+    /**
+     * 明细金额（分）
+     */
+    private long[] amounts;
+
+    private int size;
+
+    /**
+     * 订单金额（分），默认为明细金额之和
+     */
+    private long totalAmount;
+
+    private int totalQuantity;
+
+    /**
+     * 求值时间（毫秒时间戳），用于判断规则的使用时间范围
+     */
+    private long now = System.currentTimeMillis();
+
+    public RuleCart(int capacity) {
+        int initial = Math.max(capacity, 4);
+        this.productIds = new int[initial];
+        this.categoryIds = new int[initial];
+        this.brandIds = new int[initial];
+        this.quantities = new int[initial];
+        this.amounts = new long[initial];
+    }
+
+    /**
+     * 只有订单金额、没有商品明细的购物车，只有全场通用的规则能命中
+     *
+     * @param totalAmount 订单金额（分）
+     */
+    public static RuleCart ofTotal(long totalAmount) {
+        RuleCart cart = new RuleCart(0);
+        cart.totalAmount = totalAmount;
+        return cart;
+    }
+
+    /**
+     * 添加商品明细
+     *
+     * @param productId  商品ID
+     * @param categoryId 分类ID，未知时为0
+     * @param brandId    品牌ID，未知时为0
+     * @param quantity   数量
+     * @param amount     明细金额（分）
+     */
+    public RuleCart add(int productId, int categoryId, int brandId, int quantity, long amount) {
+        if (size == productIds.length) {
+            int capacity = size * 2;
+            productIds = Arrays.copyOf(productIds, capacity);
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+            brandIds = Arrays.copyOf(brandIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+        }
+        productIds[size] = productId;
+        categoryIds[size] = categoryId;
+        brandIds[size] = brandId;
+        quantities[size] = quantity;
+        amounts[size] = amount;
+        size++;
+        totalAmount += amount;
+        totalQuantity += quantity;
+        return this;
+    }
+
+    /**
+     * 按商品当前售价添加商品明细
+     *
+     * @param product  商品
+     * @param quantity 数量
+     */
+    public RuleCart add(Product product, int quantity) {
+        return add(product.getProductId().intValue(),
+                product.getCategoryId() != null ? product.getCategoryId() : 0,
+                product.getBrandId() != null ? product.getBrandId() : 0,
+                quantity, CompiledCoupon.toCents(product.getPriceNew()) * quantity);
+    }
+
+    /**
+     * 以传入的订单金额为准，用于明细金额只是估算的场景
+     *
+     * @param totalAmount 订单金额（分）
+     */
+    public RuleCart setTotalAmount(long totalAmount) {
+        this.totalAmount = totalAmount;
+        return this;
+    }
+
+    /**
+     * 指定求值时间
+     *
+     * @param now 毫秒时间戳
+     */
+    public RuleCart setNow(long now) {
+        this.now = now;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int productIdAt(int index) {
+        return productIds[index];
+    }
+
+    public int categoryIdAt(int index) {
+        return categoryIds[index];
+    }
+
+    public int brandIdAt(int index) {
+        return brandIds[index];
+    }
+
+    public int quantityAt(int index) {
+        return quantities[index];
+    }
+
+    public long amountAt(int index) {
+        return amounts[index];
+    }
+
+    /**
+     * 购物车中的商品ID，升序去重
+     */
+    public int[] sortedProductIds() {
+        return Arrays.stream(productIds, 0, size).sorted().distinct().toArray();
+    }
+
+    public long getTotalAmount() {
+        return totalAmount;
+    }
+
+    public int getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public long getNow() {
+        return now;
+    }
+}
@@ -0,0 +1,86 @@
+package com.muyingmall.order.coupon.rule;
+
+import java.util.Arrays;
+
+/**
+ * 规则作用范围：判断购物车中的一条明细是否参与规则计算
+ */
+interface RuleScope {
+
+    boolean matches(RuleCart cart, int index);
+
+    /**
+     * 指定商品
+     */
+    final class Products implements RuleScope {
+
+        private final int[] sortedIds;
+
+        Products(int[] sortedIds) {
+            this.sortedIds = sortedIds;
+        }
+
+        @Override
+        public boolean matches(RuleCart cart, int index) {
+            return Arrays.binarySearch(sortedIds, cart.productIdAt(index)) >= 0;
+        }
+    }
+
+    /**
+     * 指定分类
+     */
+    final class Categories implements RuleScope {
+
+        private final int[] sortedIds;
+
+        Categories(int[] sortedIds) {
+            this.sortedIds = sortedIds;
+        }
+
+        @Override
+        public boolean matches(RuleCart cart, int index) {
+            return Arrays.binarySearch(sortedIds, cart.categoryIdAt(index)) >= 0;
+        }
+    }
+
+    /**
+     * 指定品牌
+     */
+    final class Brands implements RuleScope {
+
+        private final int[] sortedIds;
+
+        Brands(int[] sortedIds) {
+            this.sortedIds = sortedIds;
+        }
+
+        @Override
+        public boolean matches(RuleCart cart, int index) {
+            return Arrays.binarySearch(sortedIds, cart.brandIdAt(index)) >= 0;
+        }
+    }
+
+    /**
+     * 在范围内但排除指定商品
+     */
+    final class Excluding implements RuleScope {
+
+        /**
+         * 为null时表示全部商品
+         */
+        private final RuleScope included;
+
+        private final int[] sortedExcludedIds;
+
+        Excluding(RuleScope included, int[] sortedExcludedIds) {
+            this.included = included;
+            this.sortedExcludedIds = sortedExcludedIds;
+        }
+
+        @Override
+        public boolean matches(RuleCart cart, int index) {
+            return (included == null || included.matches(cart, index))
+                    && Arrays.binarySearch(sortedExcludedIds, cart.productIdAt(index)) < 0;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.muyingmall.order.delay;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮
+ *
+ * <p>用于在内存中调度近期到期的延时任务：</p>
+ * <ul>
+ *   <li>添加、取消任务均为O(1)：添加只入无锁队列，由工作线程在下一个tick放入对应槽位</li>
+ *   <li>超出底层时间轮范围的任务放入上层时间轮，上层槽位到期时降级回底层</li>
+ *   <li>所有时间轮结构只由单个工作线程修改，无需加锁</li>
+ *   <li>到期任务交给外部执行器运行，避免阻塞时间轮推进</li>
+ * </ul>
+ *
+ * @param <K> 任务标识类型，同一标识同时只保留一个任务
+ */
+@Slf4j
+public class HierarchicalTimingWheel<K> {
+
+    /**
+     * 每个tick最多从新增队列搬运的任务数，避免突发写入时长时间占用工作线程
+     */
+    private static final int MAX_TRANSFER_PER_TICK = 100_000;
+
+    private final long tickMillis;
+    private final Level<K> rootLevel;
+    private final Consumer<K> expiredHandler;
+    private final Executor executor;
+
+    private final Queue<TimeoutTask<K>> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final Map<K, TimeoutTask<K>> activeTasks = new ConcurrentHashMap<>();
+    private final Thread workerThread;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param name           工作线程名称
+     * @param tickMillis     底层时间轮每格的时长（毫秒）
+     * @param wheelSize      每层时间轮的槽位数
+     * @param expiredHandler 任务到期回调，参数为任务标识
+     * @param executor       执行到期回调的执行器
+     */
+    public HierarchicalTimingWheel(String name, long tickMillis, int wheelSize,
+                                   Consumer<K> expiredHandler, Executor executor) {
+        this.tickMillis = tickMillis;
+        this.rootLevel = new Level<>(tickMillis, wheelSize, System.currentTimeMillis());
+        this.expiredHandler = expiredHandler;
+        this.executor = executor;
+        this.workerThread = new Thread(this::workerLoop, name);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * 添加延时任务，若同一标识已存在任务则替换
+     *
+     * @param key              任务标识
+     * @param deadlineMillis   到期时间戳（毫秒）
+     */
+    public void schedule(K key, long deadlineMillis) {
+        TimeoutTask<K> task = new TimeoutTask<>(key, deadlineMillis);
+        TimeoutTask<K> previous = activeTasks.put(key, task);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        pendingTasks.add(task);
+    }
+
+    /**
+     * 取消延时任务
+     *
+     * @param key 任务标识
+     * @return 是否取消了尚未触发的任务
+     */
+    public boolean cancel(K key) {
+        TimeoutTask<K> task = activeTasks.remove(key);
+        if (task == null) {
+            return false;
+        }
+        task.cancelled = true;
+        return true;
+    }
+
+    /**
+     * 当前尚未触发的任务数
+     */
+    public int size() {
+        return activeTasks.size();
+    }
+
+    /**
+     * 停止工作线程，未触发的任务将被丢弃
+     */
+    public void stop() {
+        running = false;
+        workerThread.interrupt();
+    }
+
+    private void workerLoop() {
+        List<TimeoutTask<K>> expired = new ArrayList<>();
+        long nextTick = System.currentTimeMillis() + tickMillis;
+        while (running) {
+            long sleepMillis = nextTick - System.currentTimeMillis();
+            if (sleepMillis > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            nextTick += tickMillis;
+
+            try {
+                transferPendingTasks(expired);
+                rootLevel.advance(System.currentTimeMillis(), task -> addOrExpire(task, expired));
+                fireExpired(expired);
+            } catch (Throwable t) {
+                log.error("时间轮推进异常", t);
+            } finally {
+                expired.clear();
+            }
+        }
+    }
+
+    private void transferPendingTasks(List<TimeoutTask<K>> expired) {
+        for (int i = 0; i < MAX_TRANSFER_PER_TICK; i++) {
+            TimeoutTask<K> task = pendingTasks.poll();
+            if (task == null) {
+                return;
+            }
+            addOrExpire(task, expired);
+        }
+    }
+
+    private void addOrExpire(TimeoutTask<K> task, List<TimeoutTask<K>> expired) {
+        if (task.cancelled) {
+            return;
+        }
+        if (!rootLevel.add(task)) {
+            expired.add(task);
+        }
+    }
+
+    private void fireExpired(List<TimeoutTask<K>> expired) {
+        for (TimeoutTask<K> task : expired) {
+            // 仅当任务仍为该标识的当前任务时才触发，防止与取消、替换竞争
+            if (task.cancelled || !activeTasks.remove(task.key, task)) {
+                continue;
+            }
+            try {
+                executor.execute(() -> expiredHandler.accept(task.key));
+            } catch (RuntimeException e) {
+                log.error("提交到期任务失败: key={}", task.key, e);
+            }
+        }
+    }
+
+    /**
+     * 延时任务
+     */
+    private static final class TimeoutTask<K> {
+        private final K key;
+        private final long deadline;
+        private volatile boolean cancelled;
+
+        private TimeoutTask(K key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * 单层时间轮，每层覆盖范围为 tickMillis * wheelSize，溢出部分交给上一层
+     */
+    private static final class Level<K> {
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long interval;
+        private final ArrayDeque<TimeoutTask<K>>[] buckets;
+        private long currentTime;
+        private Level<K> overflowLevel;
+
+        @SuppressWarnings("unchecked")
+        private Level(long tickMillis, int wheelSize, long startMillis) {
+            this.tickMillis = tickMillis;
+            this.wheelSize = wheelSize;
+            this.interval = tickMillis * wheelSize;
+            this.buckets = new ArrayDeque[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new ArrayDeque<>();
+            }
+            this.currentTime = startMillis - (startMillis % tickMillis);
+        }
+
+        /**
+         * 将任务放入对应槽位
+         *
+         * @return false 表示任务已到期，应立即执行
+         */
+        private boolean add(TimeoutTask<K> task) {
+            long deadline = task.deadline;
+            if (deadline < currentTime + tickMillis) {
+                return false;
+            }
+            if (deadline < currentTime + interval) {
+                buckets[(int) ((deadline / tickMillis) % wheelSize)].add(task);
+                return true;
+            }
+            if (overflowLevel == null) {
+                overflowLevel = new Level<>(interval, wheelSize, currentTime);
+            }
+            return overflowLevel.add(task);
+        }
+
+        /**
+         * 推进时钟，把经过的槽位中的任务交给 reinsert 重新放置（到期或降级）
+         */
+        private void advance(long timeMillis, Consumer<TimeoutTask<K>> reinsert) {
+            while (currentTime + tickMillis <= timeMillis) {
+                currentTime += tickMillis;
+                ArrayDeque<TimeoutTask<K>> bucket = buckets[(int) ((currentTime / tickMillis) % wheelSize)];
+                TimeoutTask<K> task;
+                while ((task = bucket.poll()) != null) {
+                    reinsert.accept(task);
+                }
+                if (overflowLevel != null) {
+                    overflowLevel.advance(currentTime, reinsert);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.muyingmall.order.delay;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.order.mq.OrderMessageConsumer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 订单超时调度器
+ *
+ * <p>取代基于队列TTL + 死信的超时取消方案，支持每个订单独立的超时时间：</p>
+ * <ul>
+ *   <li>Redis ZSET 作为持久化的共享存储，score 为超时时间戳，百万级待处理任务只占用少量内存</li>
+ *   <li>各节点定期用Lua脚本原子领取即将到期的一批任务，转入带租约的 claimed 集合</li>
+ *   <li>领取到的任务放入本地分层时间轮，按精确时间触发 {@link OrderMessageConsumer#processOrderTimeout}</li>
+ *   <li>节点宕机时，租约到期的任务会被其他节点放回待处理集合重新领取</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class OrderTimeoutScheduler {
+
+    /**
+     * 原子领取到期任务：从 pending 移入 claimed，claimed 的 score 为租约到期时间
+     * KEYS[1] pending, KEYS[2] claimed; ARGV[1] 领取截止时间, ARGV[2] 批量大小, ARGV[3] 租约到期时间
+     */
+    private static final String CLAIM_SCRIPT =
+            "local items = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, ARGV[2]) " +
+            "for i = 1, #items, 2 do " +
+            "    redis.call('ZREM', KEYS[1], items[i]) " +
+            "    redis.call('ZADD', KEYS[2], ARGV[3], items[i]) " +
+            "end " +
+            "return items";
+
+    /**
+     * 回收租约已过期的任务，放回 pending 立即重新领取
+     * KEYS[1] pending, KEYS[2] claimed; ARGV[1] 当前时间, ARGV[2] 批量大小
+     */
+    private static final String RECOVER_SCRIPT =
+            "local items = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) " +
+            "for i = 1, #items do " +
+            "    redis.call('ZREM', KEYS[2], items[i]) " +
+            "    redis.call('ZADD', KEYS[1], ARGV[1], items[i]) " +
+            "end " +
+            "return #items";
+
+    private static final DefaultRedisScript<List> CLAIM_REDIS_SCRIPT = new DefaultRedisScript<>(CLAIM_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> RECOVER_REDIS_SCRIPT = new DefaultRedisScript<>(RECOVER_SCRIPT, Long.class);
+
+    private static final List<String> KEYS = Arrays.asList(
+            CacheConstants.ORDER_TIMEOUT_PENDING_KEY, CacheConstants.ORDER_TIMEOUT_CLAIMED_KEY);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OrderMessageConsumer orderMessageConsumer;
+    private final HierarchicalTimingWheel<Integer> timingWheel;
+    private final ExecutorService handlerExecutor;
+
+    /**
+     * 默认订单支付超时时间（分钟）
+     */
+    private final int timeoutMinutes;
+
+    /**
+     * 每次领取未来多长时间内到期的任务（毫秒）
+     */
+    private final long lookaheadMillis;
+
+    /**
+     * 每次领取的最大任务数
+     */
+    private final int claimBatchSize;
+
+    /**
+     * 领取后的租约时长（毫秒），超过该时间仍未完成的任务会被重新领取
+     */
+    private final long leaseMillis;
+
+    public OrderTimeoutScheduler(StringRedisTemplate stringRedisTemplate,
+                                 @Lazy OrderMessageConsumer orderMessageConsumer,
+                                 @Value("${muying.order.timeout.minutes:30}") int timeoutMinutes,
+                                 @Value("${muying.order.timeout.tick-millis:100}") long tickMillis,
+                                 @Value("${muying.order.timeout.wheel-size:512}") int wheelSize,
+                                 @Value("${muying.order.timeout.lookahead-millis:10000}") long lookaheadMillis,
+                                 @Value("${muying.order.timeout.claim-batch-size:500}") int claimBatchSize,
+                                 @Value("${muying.order.timeout.lease-millis:60000}") long leaseMillis,
+                                 @Value("${muying.order.timeout.handler-threads:4}") int handlerThreads) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderMessageConsumer = orderMessageConsumer;
+        this.timeoutMinutes = timeoutMinutes;
+        this.lookaheadMillis = lookaheadMillis;
+        this.claimBatchSize = claimBatchSize;
+        this.leaseMillis = leaseMillis;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.handlerExecutor = new ThreadPoolExecutor(handlerThreads, handlerThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "order-timeout-handler-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.timingWheel = new HierarchicalTimingWheel<>("order-timeout-wheel", tickMillis, wheelSize,
+                this::fireTimeout, handlerExecutor);
+    }
+
+    /**
+     * 按默认超时时间登记订单超时任务
+     *
+     * @param orderId 订单ID
+     */
+    public void schedule(Integer orderId) {
+        schedule(orderId, System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeoutMinutes));
+    }
+
+    /**
+     * 登记订单超时任务
+     *
+     * @param orderId        订单ID
+     * @param deadlineMillis 超时时间戳（毫秒）
+     */
+    public void schedule(Integer orderId, long deadlineMillis) {
+        stringRedisTemplate.opsForZSet().add(CacheConstants.ORDER_TIMEOUT_PENDING_KEY,
+                String.valueOf(orderId), deadlineMillis);
+        log.debug("登记订单超时任务: orderId={}, deadline={}", orderId, deadlineMillis);
+    }
+
+    /**
+     * 取消订单超时任务（订单已支付或已取消时调用）
+     *
+     * @param orderId 订单ID
+     */
+    public void cancel(Integer orderId) {
+        String member = String.valueOf(orderId);
+        timingWheel.cancel(orderId);
+        try {
+            stringRedisTemplate.opsForZSet().remove(CacheConstants.ORDER_TIMEOUT_PENDING_KEY, member);
+            stringRedisTemplate.opsForZSet().remove(CacheConstants.ORDER_TIMEOUT_CLAIMED_KEY, member);
+        } catch (Exception e) {
+            // 取消失败不影响业务，超时触发时会再次检查订单状态
+            log.warn("取消订单超时任务失败: orderId={}", orderId, e);
+        }
+    }
+
+    /**
+     * 领取即将到期的任务放入本地时间轮
+     */
+    @Scheduled(fixedDelayString = "${muying.order.timeout.poll-interval-millis:1000}")
+    public void claimDueTasks() {
+        try {
+            long now = System.currentTimeMillis();
+            List<?> items;
+            do {
+                items = stringRedisTemplate.execute(CLAIM_REDIS_SCRIPT, KEYS,
+                        String.valueOf(now + lookaheadMillis),
+                        String.valueOf(claimBatchSize),
+                        String.valueOf(now + lookaheadMillis + leaseMillis));
+                if (items == null) {
+                    return;
+                }
+                for (int i = 0; i + 1 < items.size(); i += 2) {
+                    Integer orderId = Integer.valueOf(String.valueOf(items.get(i)));
+                    long deadline = (long) Double.parseDouble(String.valueOf(items.get(i + 1)));
+                    timingWheel.schedule(orderId, deadline);
+                }
+                if (!items.isEmpty()) {
+                    log.debug("领取订单超时任务: count={}", items.size() / 2);
+                }
+            } while (items.size() / 2 >= claimBatchSize);
+        } catch (Exception e) {
+            log.error("领取订单超时任务失败", e);
+        }
+    }
+
+    /**
+     * 回收其他节点租约过期未完成的任务
+     */
+    @Scheduled(fixedDelayString = "${muying.order.timeout.recover-interval-millis:30000}")
+    public void recoverExpiredClaims() {
+        try {
+            Long recovered = stringRedisTemplate.execute(RECOVER_REDIS_SCRIPT, KEYS,
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(claimBatchSize));
+            if (recovered != null && recovered > 0) {
+                log.warn("回收租约过期的订单超时任务: count={}", recovered);
+            }
+        } catch (Exception e) {
+            log.error("回收订单超时任务失败", e);
+        }
+    }
+
+    /**
+     * 时间轮到期回调，处理成功后从 claimed 集合中移除；失败则保留，租约到期后重新领取
+     */
+    private void fireTimeout(Integer orderId) {
+        try {
+            orderMessageConsumer.processOrderTimeout(orderId.longValue());
+            stringRedisTemplate.opsForZSet().remove(CacheConstants.ORDER_TIMEOUT_CLAIMED_KEY, String.valueOf(orderId));
+        } catch (Exception e) {
+            log.error("订单超时处理失败，等待租约到期后重试: orderId={}", orderId, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 本地未触发的任务仍在 claimed 集合中，租约到期后由其他节点接管
+        timingWheel.stop();
+        handlerExecutor.shutdown();
+    }
+}
@@ -0,0 +1,28 @@
+package com.muyingmall.order.dto;
+
+import com.muyingmall.order.entity.UserCoupon;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 最优用券方案
+ */
+@Data
+public class CouponSolution implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 使用的用户优惠券，单张不可叠加券或多张可叠加券；没有可用优惠券时为空
+     */
+    private List<UserCoupon> userCoupons = new ArrayList<>();
+
+    /**
+     * 优惠总金额
+     */
+    private BigDecimal discountAmount = BigDecimal.ZERO;
+}
@@ -0,0 +1,32 @@
+package com.muyingmall.order.dto;
+
+import com.muyingmall.order.entity.Order;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订单历史游标分页结果
+ */
+@Data
+public class OrderHistoryPage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 本页订单，按创建时间、订单ID倒序
+     */
+    private List<Order> list = new ArrayList<>();
+
+    /**
+     * 下一页游标，没有更多数据时为null
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有更多数据
+     */
+    private boolean hasMore;
+}
@@ -0,0 +1,139 @@
+package com.muyingmall.order.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 优惠券批量发放任务实体类
+ * 按用户ID游标分块发放，last_user_id 为检查点，与每块的发放结果在同一事务中提交
+ */
+@Data
+@TableName("coupon_issue_job")
+public class CouponIssueJob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 待执行
+     */
+    public static final int STATUS_PENDING = 0;
+
+    /**
+     * 执行中
+     */
+    public static final int STATUS_RUNNING = 1;
+
+    /**
+     * 已暂停
+     */
+    public static final int STATUS_PAUSED = 2;
+
+    /**
+     * 已完成
+     */
+    public static final int STATUS_COMPLETED = 3;
+
+    /**
+     * 失败（优惠券或批次不存在等无法继续的情况）
+     */
+    public static final int STATUS_FAILED = 4;
+
+    /**
+     * 任务ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 优惠券批次ID
+     */
+    private Integer batchId;
+
+    /**
+     * 发放的优惠券ID
+     */
+    private Long couponId;
+
+    /**
+     * 目标用户状态编码（0-禁用，1-正常），为空时不限
+     */
+    private Integer userStatus;
+
+    /**
+     * 目标用户ID上限（含），为空时不限
+     */
+    private Long maxUserId;
+
+    /**
+     * 检查点：已处理的最大用户ID
+     */
+    private Long lastUserId;
+
+    /**
+     * 创建时统计的目标用户数
+     */
+    private Long targetCount;
+
+    /**
+     * 已扫描用户数
+     */
+    private Long scannedCount;
+
+    /**
+     * 已发放数
+     */
+    private Long issuedCount;
+
+    /**
+     * 跳过数（已持有或发行量不足）
+     */
+    private Long skippedCount;
+
+    /**
+     * 状态：0-待执行，1-执行中，2-已暂停，3-已完成，4-失败
+     */
+    private Integer status;
+
+    /**
+     * 最近一次失败原因或结束说明
+     */
+    private String lastError;
+
+    /**
+     * 开始执行时间
+     */
+    private LocalDateTime startTime;
+
+    /**
+     * 结束时间
+     */
+    private LocalDateTime finishTime;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+
+    /**
+     * 进度百分比（非数据库字段）
+     */
+    @TableField(exist = false)
+    private Double progress;
+
+    /**
+     * 发放速度，张/秒（非数据库字段）
+     */
+    @TableField(exist = false)
+    private Double throughput;
+}
@@ -0,0 +1,101 @@
+package com.muyingmall.order.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 订单消息发件箱实体类
+ * 与业务数据在同一事务中写入，由投递任务异步发布到 RabbitMQ
+ */
+@Data
+@TableName("order_outbox")
+public class OrderOutbox implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 待发送
+     */
+    public static final int STATUS_PENDING = 0;
+
+    /**
+     * 已发送（Broker 已确认）
+     */
+    public static final int STATUS_SENT = 1;
+
+    /**
+     * 无法路由（Broker 已确认但退回）
+     */
+    public static final int STATUS_UNROUTABLE = 2;
+
+    /**
+     * ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 消息ID
+     */
+    private String messageId;
+
+    /**
+     * 交换机
+     */
+    private String exchange;
+
+    /**
+     * 路由键
+     */
+    private String routingKey;
+
+    /**
+     * 消息类型（消息转换器写入的类型头）
+     */
+    private String messageType;
+
+    /**
+     * 消息体JSON
+     */
+    private String payload;
+
+    /**
+     * 消息优先级（0-9）
+     */
+    private Integer priority;
+
+    /**
+     * 状态：0-待发送，1-已发送，2-无法路由
+     */
+    private Integer status;
+
+    /**
+     * 发送次数
+     */
+    private Integer attempts;
+
+    /**
+     * 下次发送时间（发送中为租约到期时间）
+     */
+    private LocalDateTime nextRetryTime;
+
+    /**
+     * 最近一次失败原因
+     */
+    private String lastError;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 确认发送时间
+     */
+    private LocalDateTime sentTime;
+}
@@ -0,0 +1,67 @@
+package com.muyingmall.order.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单销售汇总桶实体类
+ * 按小时、按天汇总已完成订单的销售额、订单数和商品件数，时间按订单创建时间归桶
+ */
+@Data
+@TableName("order_sales_bucket")
+public class OrderSalesBucket implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 小时桶
+     */
+    public static final String TYPE_HOUR = "HOUR";
+
+    /**
+     * 天桶
+     */
+    public static final String TYPE_DAY = "DAY";
+
+    /**
+     * ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 桶类型：HOUR-小时，DAY-天
+     */
+    private String bucketType;
+
+    /**
+     * 桶起始时间（整点或零点）
+     */
+    private LocalDateTime bucketTime;
+
+    /**
+     * 销售额
+     */
+    private BigDecimal salesAmount;
+
+    /**
+     * 订单数
+     */
+    private Long orderCount;
+
+    /**
+     * 商品件数
+     */
+    private Long itemCount;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
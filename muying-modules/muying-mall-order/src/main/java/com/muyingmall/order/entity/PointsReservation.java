@@ -0,0 +1,101 @@
+package com.muyingmall.order.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 积分预留实体类
+ * 与订单在同一事务中写入，订单提交后向积分服务确认扣减，确认失败或超时时补偿取消订单
+ */
+@Data
+@TableName("points_reservation")
+public class PointsReservation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 待确认：订单已提交，尚未在积分服务扣减
+     */
+    public static final int STATUS_PENDING = 0;
+
+    /**
+     * 已确认：积分服务已扣减
+     */
+    public static final int STATUS_CONFIRMED = 1;
+
+    /**
+     * 待退还：订单取消，已扣减的积分尚未退还
+     */
+    public static final int STATUS_REFUNDING = 2;
+
+    /**
+     * 已退还
+     */
+    public static final int STATUS_REFUNDED = 3;
+
+    /**
+     * 已取消：确认前订单取消或确认失败，积分未扣减
+     */
+    public static final int STATUS_CANCELLED = 4;
+
+    /**
+     * ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 订单ID
+     */
+    private Integer orderId;
+
+    /**
+     * 订单编号
+     */
+    private String orderNo;
+
+    /**
+     * 用户ID
+     */
+    private Integer userId;
+
+    /**
+     * 抵扣积分
+     */
+    private Integer points;
+
+    /**
+     * 状态：0-待确认，1-已确认，2-待退还，3-已退还，4-已取消
+     */
+    private Integer status;
+
+    /**
+     * 调用积分服务次数
+     */
+    private Integer attempts;
+
+    /**
+     * 下次处理时间（处理中为租约到期时间）
+     */
+    private LocalDateTime nextRetryTime;
+
+    /**
+     * 最近一次失败原因
+     */
+    private String lastError;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
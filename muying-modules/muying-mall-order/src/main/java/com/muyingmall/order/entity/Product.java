@@ -56,6 +56,16 @@ public class Product implements Serializable {
      */
     private String description;
 
+    /**
+     * 分类ID
+     */
+    private Integer categoryId;
+
+    /**
+     * 品牌ID
+     */
+    private Integer brandId;
+
     /**
      * 创建时间
      */
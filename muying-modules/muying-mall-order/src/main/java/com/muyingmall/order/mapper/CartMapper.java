@@ -2,11 +2,32 @@ package com.muyingmall.order.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.muyingmall.order.entity.Cart;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * 购物车Mapper接口
  */
 @Mapper
 public interface CartMapper extends BaseMapper<Cart> {
-}
\ No newline at end of file
+
+    /**
+     * 批量回写购物车项，行已存在时只更新数量和选中状态，已被删除的行按原购物车ID重新插入
+     *
+     * @param carts 购物车项
+     * @return 影响的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO `cart` (`cart_id`, `user_id`, `product_id`, `quantity`, `selected`, `specs`, `specs_hash`, " +
+            "`price_snapshot`, `status`) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.cartId}, #{item.userId}, #{item.productId}, #{item.quantity}, #{item.selected}, #{item.specs}, " +
+            "#{item.specsHash}, #{item.priceSnapshot}, #{item.status})" +
+            "</foreach> " +
+            "ON DUPLICATE KEY UPDATE `quantity` = VALUES(`quantity`), `selected` = VALUES(`selected`)" +
+            "</script>")
+    int batchUpsertState(@Param("list") List<Cart> carts);
+}
@@ -0,0 +1,25 @@
+package com.muyingmall.order.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.muyingmall.order.entity.CouponBatch;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * 优惠券批次Mapper接口
+ */
+@Mapper
+public interface CouponBatchMapper extends BaseMapper<CouponBatch> {
+
+    /**
+     * 累加批次已分配数量
+     *
+     * @param batchId 批次ID
+     * @param count   新增分配数
+     * @return 影响的行数
+     */
+    @Update("UPDATE `coupon_batch` SET `assign_count` = `assign_count` + #{count}, `update_time` = NOW() " +
+            "WHERE `batch_id` = #{batchId}")
+    int incrementAssigned(@Param("batchId") Integer batchId, @Param("count") int count);
+}
@@ -0,0 +1,72 @@
+package com.muyingmall.order.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.muyingmall.order.entity.CouponIssueJob;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+
+/**
+ * 优惠券批量发放任务 Mapper 接口
+ */
+@Mapper
+public interface CouponIssueJobMapper extends BaseMapper<CouponIssueJob> {
+
+    /**
+     * 查询待执行和执行中的任务
+     *
+     * @param limit 最大数量
+     * @return 任务
+     */
+    @Select("SELECT * FROM `coupon_issue_job` WHERE `status` IN (0, 1) ORDER BY `id` LIMIT #{limit}")
+    List<CouponIssueJob> selectRunnable(@Param("limit") int limit);
+
+    /**
+     * 推进检查点并累加统计，检查点与预期不一致或任务已不在执行中时不更新
+     *
+     * @param id                 任务ID
+     * @param expectedLastUserId 预期的当前检查点
+     * @param lastUserId         新检查点
+     * @param scanned            本块扫描的用户数
+     * @param issued             本块发放数
+     * @param skipped            本块跳过数
+     * @return 影响的行数
+     */
+    @Update("UPDATE `coupon_issue_job` SET `last_user_id` = #{lastUserId}, " +
+            "`scanned_count` = `scanned_count` + #{scanned}, `issued_count` = `issued_count` + #{issued}, " +
+            "`skipped_count` = `skipped_count` + #{skipped}, `update_time` = NOW() " +
+            "WHERE `id` = #{id} AND `last_user_id` = #{expectedLastUserId} AND `status` = 1")
+    int advance(@Param("id") Long id, @Param("expectedLastUserId") Long expectedLastUserId,
+                @Param("lastUserId") Long lastUserId, @Param("scanned") int scanned,
+                @Param("issued") int issued, @Param("skipped") int skipped);
+
+    /**
+     * 状态流转，只在当前状态为 from 时更新；进入执行中时记录开始时间，进入已完成或失败时记录结束时间
+     *
+     * @param id      任务ID
+     * @param from    当前状态
+     * @param to      目标状态
+     * @param message 失败原因或结束说明，可为空
+     * @return 影响的行数
+     */
+    @Update("<script>UPDATE `coupon_issue_job` SET `status` = #{to}, `update_time` = NOW()" +
+            "<if test='message != null'>, `last_error` = #{message}</if>" +
+            "<if test='to == 1'>, `start_time` = IFNULL(`start_time`, NOW())</if>" +
+            "<if test='to == 3 or to == 4'>, `finish_time` = NOW()</if>" +
+            " WHERE `id` = #{id} AND `status` = #{from}</script>")
+    int transition(@Param("id") Long id, @Param("from") int from, @Param("to") int to,
+                   @Param("message") String message);
+
+    /**
+     * 记录最近一次失败原因，任务保持当前状态，下次调度时从检查点继续
+     *
+     * @param id    任务ID
+     * @param error 失败原因
+     * @return 影响的行数
+     */
+    @Update("UPDATE `coupon_issue_job` SET `last_error` = #{error}, `update_time` = NOW() WHERE `id` = #{id}")
+    int recordError(@Param("id") Long id, @Param("error") String error);
+}
@@ -3,10 +3,23 @@ package com.muyingmall.order.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.muyingmall.order.entity.Coupon;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 
 /**
  * 优惠券Mapper接口
  */
 @Mapper
 public interface CouponMapper extends BaseMapper<Coupon> {
+
+    /**
+     * 累加优惠券已领取数量
+     *
+     * @param couponId 优惠券ID
+     * @param count    新增领取数
+     * @return 影响的行数
+     */
+    @Update("UPDATE `coupon` SET `received_quantity` = `received_quantity` + #{count}, `update_time` = NOW() " +
+            "WHERE `id` = #{couponId}")
+    int incrementReceived(@Param("couponId") Long couponId, @Param("count") int count);
 }
\ No newline at end of file
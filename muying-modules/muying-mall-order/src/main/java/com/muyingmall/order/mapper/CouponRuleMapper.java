@@ -0,0 +1,12 @@
+package com.muyingmall.order.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.muyingmall.order.entity.CouponRule;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 优惠券规则Mapper接口
+ */
+@Mapper
+public interface CouponRuleMapper extends BaseMapper<CouponRule> {
+}
@@ -0,0 +1,133 @@
+package com.muyingmall.order.mapper;
+
+import com.muyingmall.order.entity.Order;
+import com.muyingmall.order.entity.OrderProduct;
+import com.muyingmall.order.entity.OrderStateLog;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 订单归档 Mapper 接口
+ * 归档表 order_archive、order_product_archive、order_state_log_archive 与热表结构一致
+ */
+@Mapper
+public interface OrderArchiveMapper {
+
+        /**
+         * 锁定一批可归档的订单，已被其他节点锁定的订单直接跳过
+         *
+         * @param statuses 已关闭的状态编码
+         * @param cutoff   最后更新时间早于该时间的订单才归档
+         * @param limit    批量大小
+         * @return 订单ID列表
+         */
+        @Select("<script>SELECT `order_id` FROM `order` "
+                        + "WHERE `status` IN <foreach collection='statuses' item='st' open='(' separator=',' close=')'>#{st}</foreach> "
+                        + "AND `update_time` &lt; #{cutoff} ORDER BY `update_time` LIMIT #{limit} "
+                        + "FOR UPDATE SKIP LOCKED</script>")
+        List<Integer> lockArchivableIds(@Param("statuses") Collection<String> statuses,
+                        @Param("cutoff") LocalDateTime cutoff,
+                        @Param("limit") int limit);
+
+        /**
+         * 复制订单到归档表
+         */
+        @Insert("<script>INSERT IGNORE INTO `order_archive` SELECT * FROM `order` WHERE `order_id` IN "
+                        + "<foreach collection='orderIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+        int copyOrders(@Param("orderIds") Collection<Integer> orderIds);
+
+        /**
+         * 复制订单商品到归档表
+         */
+        @Insert("<script>INSERT IGNORE INTO `order_product_archive` SELECT * FROM `order_product` WHERE `order_id` IN "
+                        + "<foreach collection='orderIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+        int copyOrderProducts(@Param("orderIds") Collection<Integer> orderIds);
+
+        /**
+         * 复制订单状态日志到归档表
+         */
+        @Insert("<script>INSERT IGNORE INTO `order_state_log_archive` SELECT * FROM `order_state_log` WHERE `order_id` IN "
+                        + "<foreach collection='orderIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+        int copyStateLogs(@Param("orderIds") Collection<Integer> orderIds);
+
+        /**
+         * 删除热表中的订单商品
+         */
+        @Delete("<script>DELETE FROM `order_product` WHERE `order_id` IN "
+                        + "<foreach collection='orderIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+        int deleteOrderProducts(@Param("orderIds") Collection<Integer> orderIds);
+
+        /**
+         * 删除热表中的订单状态日志
+         */
+        @Delete("<script>DELETE FROM `order_state_log` WHERE `order_id` IN "
+                        + "<foreach collection='orderIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+        int deleteStateLogs(@Param("orderIds") Collection<Integer> orderIds);
+
+        /**
+         * 删除热表中的订单
+         */
+        @Delete("<script>DELETE FROM `order` WHERE `order_id` IN "
+                        + "<foreach collection='orderIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+        int deleteOrders(@Param("orderIds") Collection<Integer> orderIds);
+
+        /**
+         * 按ID查询归档订单
+         */
+        @Select("SELECT * FROM `order_archive` WHERE `order_id` = #{orderId} AND `is_deleted` = 0")
+        Order selectById(@Param("orderId") Integer orderId);
+
+        /**
+         * 按订单号查询归档订单
+         */
+        @Select("<script>SELECT * FROM `order_archive` WHERE `order_no` = #{orderNo} AND `is_deleted` = 0"
+                        + "<if test='userId != null'> AND `user_id` = #{userId}</if></script>")
+        Order selectByOrderNo(@Param("orderNo") String orderNo, @Param("userId") Integer userId);
+
+        /**
+         * 查询用户最近一笔归档订单的创建时间
+         */
+        @Select("SELECT MAX(`create_time`) FROM `order_archive` WHERE `user_id` = #{userId}")
+        LocalDateTime selectLatestCreateTime(@Param("userId") Integer userId);
+
+        /**
+         * 按 (create_time, order_id) 倒序游标查询用户归档订单
+         *
+         * @param userId     用户ID
+         * @param status     状态编码，可为null
+         * @param cursorTime 游标创建时间，为null时从最新开始
+         * @param cursorId   游标订单ID
+         * @param limit      数量
+         * @return 归档订单
+         */
+        @Select("<script>SELECT * FROM `order_archive` WHERE `user_id` = #{userId} AND `is_deleted` = 0"
+                        + "<if test='status != null'> AND `status` = #{status}</if>"
+                        + "<if test='cursorTime != null'> AND (`create_time` &lt; #{cursorTime} "
+                        + "OR (`create_time` = #{cursorTime} AND `order_id` &lt; #{cursorId}))</if>"
+                        + " ORDER BY `create_time` DESC, `order_id` DESC LIMIT #{limit}</script>")
+        List<Order> selectHistory(@Param("userId") Integer userId,
+                        @Param("status") String status,
+                        @Param("cursorTime") LocalDateTime cursorTime,
+                        @Param("cursorId") Integer cursorId,
+                        @Param("limit") int limit);
+
+        /**
+         * 查询归档订单的商品
+         */
+        @Select("<script>SELECT * FROM `order_product_archive` WHERE `order_id` IN "
+                        + "<foreach collection='orderIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+        List<OrderProduct> selectProducts(@Param("orderIds") Collection<Integer> orderIds);
+
+        /**
+         * 查询归档订单的状态变更日志
+         */
+        @Select("SELECT * FROM `order_state_log_archive` WHERE `order_id` = #{orderId} ORDER BY `create_time` DESC")
+        List<OrderStateLog> selectStateLogs(@Param("orderId") Integer orderId);
+}
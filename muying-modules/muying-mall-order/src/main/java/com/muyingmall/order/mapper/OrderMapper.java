@@ -2,11 +2,20 @@ package com.muyingmall.order.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.muyingmall.order.entity.Order;
+import com.muyingmall.order.stats.OrderSalesRecord;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 订单 Mapper 接口
@@ -55,4 +64,111 @@ public interface OrderMapper extends BaseMapper<Order> {
          */
         @Update("UPDATE `order` SET `is_commented`=#{isCommented}, `update_time`=NOW() WHERE `order_id`=#{orderId}")
         int updateOrderCommentStatus(@Param("orderId") Integer orderId, @Param("isCommented") Integer isCommented);
-}
\ No newline at end of file
+
+        /**
+         * 按状态分组统计订单数量（含归档订单）
+         * 
+         * @param userId 用户ID，为null时统计全部订单
+         * @return 每行包含 status、cnt
+         */
+        @Select("<script>SELECT t.`status` AS status, SUM(t.cnt) AS cnt FROM ("
+                        + "SELECT `status`, COUNT(*) AS cnt FROM `order` "
+                        + "<where><if test='userId != null'>`user_id` = #{userId}</if></where> GROUP BY `status` "
+                        + "UNION ALL SELECT `status`, COUNT(*) AS cnt FROM `order_archive` "
+                        + "<where><if test='userId != null'>`user_id` = #{userId}</if></where> GROUP BY `status`"
+                        + ") t GROUP BY t.`status`</script>")
+        List<Map<String, Object>> countGroupByStatus(@Param("userId") Integer userId);
+
+        /**
+         * 按用户、状态分组统计一批用户的订单数量（含归档订单）
+         * 
+         * @param userIds 用户ID集合
+         * @return 每行包含 user_id、status、cnt
+         */
+        @Select("<script>SELECT t.`user_id` AS user_id, t.`status` AS status, SUM(t.cnt) AS cnt FROM ("
+                        + "SELECT `user_id`, `status`, COUNT(*) AS cnt FROM `order` "
+                        + "WHERE `user_id` IN <foreach collection='userIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> "
+                        + "GROUP BY `user_id`, `status` "
+                        + "UNION ALL SELECT `user_id`, `status`, COUNT(*) AS cnt FROM `order_archive` "
+                        + "WHERE `user_id` IN <foreach collection='userIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> "
+                        + "GROUP BY `user_id`, `status`"
+                        + ") t GROUP BY t.`user_id`, t.`status`</script>")
+        List<Map<String, Object>> countGroupByUserAndStatus(@Param("userIds") Collection<Integer> userIds);
+
+        /**
+         * 查询单个已完成订单的销售汇总行
+         * 
+         * @param orderId 订单ID
+         * @return 汇总行，订单不存在时为null
+         */
+        @Select("SELECT o.`order_id` AS orderId, o.`create_time` AS createTime, o.`actual_amount` AS actualAmount, "
+                        + "(SELECT COALESCE(SUM(op.`quantity`), 0) FROM `order_product` op WHERE op.`order_id` = o.`order_id`) AS itemCount "
+                        + "FROM `order` o WHERE o.`order_id` = #{orderId}")
+        OrderSalesRecord selectSalesRecord(@Param("orderId") Integer orderId);
+
+        /**
+         * 流式读取时间范围内的已完成订单销售汇总行（含归档订单），用于回填或重算汇总桶
+         * fetchSize 为 Integer.MIN_VALUE 时 MySQL 驱动逐行返回结果，不会把整个结果集加载到内存，
+         * 调用方必须在事务内遍历并关闭游标
+         * 
+         * @param startTime 起始时间（含）
+         * @param endTime   结束时间（不含）
+         * @return 游标
+         */
+        @Select("SELECT o.`order_id` AS orderId, o.`create_time` AS createTime, o.`actual_amount` AS actualAmount, "
+                        + "(SELECT COALESCE(SUM(op.`quantity`), 0) FROM `order_product` op WHERE op.`order_id` = o.`order_id`) AS itemCount "
+                        + "FROM `order` o WHERE o.`status` = 'completed' "
+                        + "AND o.`create_time` >= #{startTime} AND o.`create_time` < #{endTime} "
+                        + "UNION ALL "
+                        + "SELECT a.`order_id` AS orderId, a.`create_time` AS createTime, a.`actual_amount` AS actualAmount, "
+                        + "(SELECT COALESCE(SUM(ap.`quantity`), 0) FROM `order_product_archive` ap WHERE ap.`order_id` = a.`order_id`) AS itemCount "
+                        + "FROM `order_archive` a WHERE a.`status` = 'completed' "
+                        + "AND a.`create_time` >= #{startTime} AND a.`create_time` < #{endTime}")
+        @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+        Cursor<OrderSalesRecord> streamCompletedSales(@Param("startTime") LocalDateTime startTime,
+                        @Param("endTime") LocalDateTime endTime);
+
+        /**
+         * 直接汇总时间范围内已完成订单的销售额（含归档订单），仅用于不足一小时的查询边界
+         * 
+         * @param startTime    起始时间（含）
+         * @param endTime      结束时间
+         * @param endInclusive 是否包含结束时间
+         * @return 销售额，无数据时为0
+         */
+        @Select("<script>SELECT COALESCE(SUM(t.`actual_amount`), 0) FROM ("
+                        + "SELECT `actual_amount` FROM `order` "
+                        + "WHERE `status` = 'completed' AND `create_time` &gt;= #{startTime} "
+                        + "<choose><when test='endInclusive'>AND `create_time` &lt;= #{endTime}</when>"
+                        + "<otherwise>AND `create_time` &lt; #{endTime}</otherwise></choose> "
+                        + "UNION ALL SELECT `actual_amount` FROM `order_archive` "
+                        + "WHERE `status` = 'completed' AND `create_time` &gt;= #{startTime} "
+                        + "<choose><when test='endInclusive'>AND `create_time` &lt;= #{endTime}</when>"
+                        + "<otherwise>AND `create_time` &lt; #{endTime}</otherwise></choose>"
+                        + ") t</script>")
+        BigDecimal sumCompletedSales(@Param("startTime") LocalDateTime startTime,
+                        @Param("endTime") LocalDateTime endTime,
+                        @Param("endInclusive") boolean endInclusive);
+
+        /**
+         * 批量转换订单状态，只更新当前状态在允许范围内的订单
+         * 
+         * @param orderIds     订单ID集合
+         * @param fromStatuses 允许的源状态编码
+         * @param toStatus     目标状态编码
+         * @param now          更新时间
+         * @return 影响的行数
+         */
+        @Update("<script>UPDATE `order` SET `status` = #{toStatus}, `update_time` = #{now}, `version` = `version` + 1"
+                        + "<if test=\"toStatus == 'PENDING_SHIPMENT'\">, `pay_time` = IFNULL(`pay_time`, #{now})</if>"
+                        + "<if test=\"toStatus == 'SHIPPED'\">, `shipping_time` = #{now}</if>"
+                        + "<if test=\"toStatus == 'COMPLETED'\">, `completion_time` = #{now}</if>"
+                        + "<if test=\"toStatus == 'CANCELLED'\">, `cancel_time` = #{now}</if>"
+                        + " WHERE `order_id` IN <foreach collection='orderIds' item='id' open='(' separator=',' close=')'>#{id}</foreach>"
+                        + " AND `status` IN <foreach collection='fromStatuses' item='st' open='(' separator=',' close=')'>#{st}</foreach>"
+                        + "</script>")
+        int batchTransitStatus(@Param("orderIds") Collection<Integer> orderIds,
+                        @Param("fromStatuses") Collection<String> fromStatuses,
+                        @Param("toStatus") String toStatus,
+                        @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,96 @@
+package com.muyingmall.order.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.muyingmall.order.entity.OrderOutbox;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 订单消息发件箱 Mapper 接口
+ */
+@Mapper
+public interface OrderOutboxMapper extends BaseMapper<OrderOutbox> {
+
+        /**
+         * 批量写入待发送消息
+         *
+         * @param messages 消息
+         * @return 影响的行数
+         */
+        @Insert("<script>" +
+                        "INSERT INTO `order_outbox` (`message_id`, `exchange`, `routing_key`, `message_type`, `payload`, " +
+                        "`priority`, `status`, `attempts`, `next_retry_time`, `create_time`) VALUES " +
+                        "<foreach collection='list' item='item' separator=','>" +
+                        "(#{item.messageId}, #{item.exchange}, #{item.routingKey}, #{item.messageType}, #{item.payload}, " +
+                        "#{item.priority}, 0, 0, #{item.nextRetryTime}, #{item.createTime})" +
+                        "</foreach>" +
+                        "</script>")
+        int insertBatch(@Param("list") List<OrderOutbox> messages);
+
+        /**
+         * 锁定一批到期的待发送消息，已被其他节点锁定的直接跳过
+         *
+         * @param now   当前时间
+         * @param limit 批量大小
+         * @return 消息
+         */
+        @Select("SELECT * FROM `order_outbox` WHERE `status` = 0 AND `next_retry_time` <= #{now} " +
+                        "ORDER BY `next_retry_time`, `id` LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+        List<OrderOutbox> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+        /**
+         * 领取消息：发送次数加一，下次发送时间推迟到租约到期，节点宕机时租约到期后重新发送
+         *
+         * @param ids        消息ID
+         * @param leaseUntil 租约到期时间
+         * @return 影响的行数
+         */
+        @Update("<script>UPDATE `order_outbox` SET `attempts` = `attempts` + 1, `next_retry_time` = #{leaseUntil} " +
+                        "WHERE `id` IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+                        "</script>")
+        int lease(@Param("ids") Collection<Long> ids, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+        /**
+         * 标记为已发送或无法路由
+         *
+         * @param ids    消息ID
+         * @param status 状态
+         * @param now    确认时间
+         * @return 影响的行数
+         */
+        @Update("<script>UPDATE `order_outbox` SET `status` = #{status}, `sent_time` = #{now} " +
+                        "WHERE `status` = 0 AND `id` IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+                        "</script>")
+        int markDone(@Param("ids") Collection<Long> ids, @Param("status") int status, @Param("now") LocalDateTime now);
+
+        /**
+         * 发送失败，设置下次重试时间
+         *
+         * @param id            消息ID
+         * @param nextRetryTime 下次发送时间
+         * @param lastError     失败原因
+         * @return 影响的行数
+         */
+        @Update("UPDATE `order_outbox` SET `next_retry_time` = #{nextRetryTime}, `last_error` = #{lastError} " +
+                        "WHERE `id` = #{id} AND `status` = 0")
+        int markRetry(@Param("id") Long id, @Param("nextRetryTime") LocalDateTime nextRetryTime,
+                        @Param("lastError") String lastError);
+
+        /**
+         * 清理早于指定时间已发送的消息
+         *
+         * @param before 确认时间早于该时间
+         * @param limit  单次删除上限
+         * @return 删除的行数
+         */
+        @Delete("DELETE FROM `order_outbox` WHERE `status` = 1 AND `sent_time` < #{before} LIMIT #{limit}")
+        int deleteSentBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
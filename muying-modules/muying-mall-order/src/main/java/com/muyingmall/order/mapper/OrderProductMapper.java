@@ -2,11 +2,31 @@ package com.muyingmall.order.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.muyingmall.order.entity.OrderProduct;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * 订单商品 Mapper 接口
  */
 @Mapper
 public interface OrderProductMapper extends BaseMapper<OrderProduct> {
-}
\ No newline at end of file
+
+        /**
+         * 批量插入订单商品（单条多值INSERT语句）
+         *
+         * @param orderProducts 订单商品列表
+         * @return 影响的行数
+         */
+        @Insert("<script>" +
+                        "INSERT INTO `order_product` (`order_id`, `product_id`, `product_name`, `product_img`, " +
+                        "`price`, `quantity`, `specs`, `create_time`, `update_time`) VALUES " +
+                        "<foreach collection='list' item='item' separator=','>" +
+                        "(#{item.orderId}, #{item.productId}, #{item.productName}, #{item.productImg}, " +
+                        "#{item.price}, #{item.quantity}, #{item.specs}, #{item.createTime}, #{item.updateTime})" +
+                        "</foreach>" +
+                        "</script>")
+        int insertBatch(@Param("list") List<OrderProduct> orderProducts);
+}
@@ -0,0 +1,82 @@
+package com.muyingmall.order.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.muyingmall.order.entity.OrderSalesBucket;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 订单销售汇总桶 Mapper 接口
+ */
+@Mapper
+public interface OrderSalesBucketMapper extends BaseMapper<OrderSalesBucket> {
+
+        /**
+         * 批量累加汇总桶，桶不存在时插入
+         *
+         * @param buckets 增量（金额、订单数、件数可为负数）
+         * @return 影响的行数
+         */
+        @Insert("<script>" +
+                        "INSERT INTO `order_sales_bucket` (`bucket_type`, `bucket_time`, `sales_amount`, `order_count`, " +
+                        "`item_count`, `update_time`) VALUES " +
+                        "<foreach collection='list' item='item' separator=','>" +
+                        "(#{item.bucketType}, #{item.bucketTime}, #{item.salesAmount}, #{item.orderCount}, " +
+                        "#{item.itemCount}, NOW())" +
+                        "</foreach> " +
+                        "ON DUPLICATE KEY UPDATE `sales_amount` = `sales_amount` + VALUES(`sales_amount`), " +
+                        "`order_count` = `order_count` + VALUES(`order_count`), " +
+                        "`item_count` = `item_count` + VALUES(`item_count`), `update_time` = NOW()" +
+                        "</script>")
+        int incrementBatch(@Param("list") List<OrderSalesBucket> buckets);
+
+        /**
+         * 批量写入汇总桶，已存在时覆盖
+         *
+         * @param buckets 汇总桶
+         * @return 影响的行数
+         */
+        @Insert("<script>" +
+                        "INSERT INTO `order_sales_bucket` (`bucket_type`, `bucket_time`, `sales_amount`, `order_count`, " +
+                        "`item_count`, `update_time`) VALUES " +
+                        "<foreach collection='list' item='item' separator=','>" +
+                        "(#{item.bucketType}, #{item.bucketTime}, #{item.salesAmount}, #{item.orderCount}, " +
+                        "#{item.itemCount}, NOW())" +
+                        "</foreach> " +
+                        "ON DUPLICATE KEY UPDATE `sales_amount` = VALUES(`sales_amount`), " +
+                        "`order_count` = VALUES(`order_count`), " +
+                        "`item_count` = VALUES(`item_count`), `update_time` = NOW()" +
+                        "</script>")
+        int replaceBatch(@Param("list") List<OrderSalesBucket> buckets);
+
+        /**
+         * 删除时间范围内的汇总桶（含小时桶和天桶）
+         *
+         * @param startTime 起始时间（含）
+         * @param endTime   结束时间（不含）
+         * @return 影响的行数
+         */
+        @Delete("DELETE FROM `order_sales_bucket` WHERE `bucket_time` >= #{startTime} AND `bucket_time` < #{endTime}")
+        int deleteBetween(@Param("startTime") LocalDateTime startTime, @Param("endTime") LocalDateTime endTime);
+
+        /**
+         * 汇总时间范围内某类桶的销售额
+         *
+         * @param bucketType 桶类型
+         * @param startTime  起始时间（含）
+         * @param endTime    结束时间（不含）
+         * @return 销售额，无数据时为0
+         */
+        @Select("SELECT COALESCE(SUM(`sales_amount`), 0) FROM `order_sales_bucket` "
+                        + "WHERE `bucket_type` = #{bucketType} AND `bucket_time` >= #{startTime} AND `bucket_time` < #{endTime}")
+        BigDecimal sumSalesAmount(@Param("bucketType") String bucketType,
+                        @Param("startTime") LocalDateTime startTime,
+                        @Param("endTime") LocalDateTime endTime);
+}
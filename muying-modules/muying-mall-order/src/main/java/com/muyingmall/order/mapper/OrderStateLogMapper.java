@@ -2,11 +2,31 @@ package com.muyingmall.order.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.muyingmall.order.entity.OrderStateLog;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * 订单状态变更日志Mapper接口
  */
 @Mapper
 public interface OrderStateLogMapper extends BaseMapper<OrderStateLog> {
-}
\ No newline at end of file
+
+    /**
+     * 批量插入状态变更日志（单条多值INSERT语句）
+     *
+     * @param stateLogs 状态变更日志列表
+     * @return 影响的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO `order_state_log` (`order_id`, `order_no`, `old_status`, `new_status`, `event`, " +
+            "`operator`, `reason`, `create_time`) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.orderId}, #{item.orderNo}, #{item.oldStatus}, #{item.newStatus}, #{item.event}, " +
+            "#{item.operator}, #{item.reason}, #{item.createTime})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("list") List<OrderStateLog> stateLogs);
+}
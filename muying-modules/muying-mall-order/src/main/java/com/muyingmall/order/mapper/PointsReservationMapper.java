@@ -0,0 +1,82 @@
+package com.muyingmall.order.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.muyingmall.order.entity.PointsReservation;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 积分预留 Mapper 接口
+ */
+@Mapper
+public interface PointsReservationMapper extends BaseMapper<PointsReservation> {
+
+    /**
+     * 按订单查询积分预留
+     *
+     * @param orderId 订单ID
+     * @return 积分预留，没有使用积分时为null
+     */
+    @Select("SELECT * FROM `points_reservation` WHERE `order_id` = #{orderId}")
+    PointsReservation selectByOrderId(@Param("orderId") Integer orderId);
+
+    /**
+     * 查询到期待处理（待确认、待退还）的积分预留
+     *
+     * @param now   当前时间
+     * @param limit 最大数量
+     * @return 积分预留
+     */
+    @Select("SELECT * FROM `points_reservation` WHERE `status` IN (0, 2) AND `next_retry_time` <= #{now} " +
+            "ORDER BY `next_retry_time`, `id` LIMIT #{limit}")
+    List<PointsReservation> selectDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * 领取积分预留：调用次数加一，下次处理时间推迟到租约到期；状态或调用次数与预期不一致时不更新，
+     * 保证同一时刻只有一个节点调用积分服务
+     *
+     * @param id               ID
+     * @param status           预期状态
+     * @param expectedAttempts 预期调用次数
+     * @param leaseUntil       租约到期时间
+     * @return 影响的行数
+     */
+    @Update("UPDATE `points_reservation` SET `attempts` = `attempts` + 1, `next_retry_time` = #{leaseUntil} " +
+            "WHERE `id` = #{id} AND `status` = #{status} AND `attempts` = #{expectedAttempts}")
+    int lease(@Param("id") Long id, @Param("status") int status, @Param("expectedAttempts") int expectedAttempts,
+            @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * 状态流转，只在当前状态为 from 时更新
+     *
+     * @param id      ID
+     * @param from    当前状态
+     * @param to      目标状态
+     * @param message 失败原因，可为空
+     * @return 影响的行数
+     */
+    @Update("<script>UPDATE `points_reservation` SET `status` = #{to}, `next_retry_time` = NOW(3)" +
+            "<if test='message != null'>, `last_error` = #{message}</if>" +
+            " WHERE `id` = #{id} AND `status` = #{from}</script>")
+    int transition(@Param("id") Long id, @Param("from") int from, @Param("to") int to,
+            @Param("message") String message);
+
+    /**
+     * 调用积分服务失败，设置下次重试时间
+     *
+     * @param id            ID
+     * @param status        当前状态
+     * @param nextRetryTime 下次处理时间
+     * @param lastError     失败原因
+     * @return 影响的行数
+     */
+    @Update("UPDATE `points_reservation` SET `next_retry_time` = #{nextRetryTime}, `last_error` = #{lastError} " +
+            "WHERE `id` = #{id} AND `status` = #{status}")
+    int markRetry(@Param("id") Long id, @Param("status") int status,
+            @Param("nextRetryTime") LocalDateTime nextRetryTime, @Param("lastError") String lastError);
+}
@@ -2,9 +2,14 @@ package com.muyingmall.order.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.muyingmall.order.entity.UserCoupon;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -42,4 +47,43 @@ public interface UserCouponMapper extends BaseMapper<UserCoupon> {
      * @return 即将过期的优惠券列表
      */
     List<UserCoupon> selectExpiringSoon(@Param("days") int days);
-}
\ No newline at end of file
+
+    /**
+     * 批量插入用户优惠券，优惠券码已存在的记录忽略，重放同一批领取记录不会重复发放
+     *
+     * @param userCoupons 用户优惠券
+     * @return 实际插入的行数
+     */
+    @Insert("<script>" +
+            "INSERT IGNORE INTO `user_coupon` (`user_id`, `coupon_id`, `coupon_code`, `status`, `received_time`, " +
+            "`valid_to`, `created_time`, `updated_time`, `deleted`) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.userId}, #{item.couponId}, #{item.couponCode}, #{item.status}, #{item.receivedTime}, " +
+            "#{item.validTo}, #{item.createdTime}, #{item.updatedTime}, 0)" +
+            "</foreach>" +
+            "</script>")
+    int insertIgnoreBatch(@Param("list") List<UserCoupon> userCoupons);
+
+    /**
+     * 查询一组用户中已持有指定优惠券的用户
+     *
+     * @param couponId 优惠券ID
+     * @param userIds  用户ID
+     * @return 已持有的用户ID
+     */
+    @Select("<script>SELECT DISTINCT `user_id` FROM `user_coupon` WHERE `coupon_id` = #{couponId} AND `user_id` IN " +
+            "<foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach>" +
+            "</script>")
+    List<Long> selectHolders(@Param("couponId") Long couponId, @Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 把一批已过期的未使用优惠券标记为已过期，最早过期的先处理
+     *
+     * @param cutoff 过期时间上限
+     * @param limit  本批最大行数
+     * @return 影响的行数
+     */
+    @Update("UPDATE `user_coupon` SET `status` = 'EXPIRED', `updated_time` = NOW() " +
+            "WHERE `status` = 'UNUSED' AND `valid_to` <= #{cutoff} ORDER BY `valid_to` LIMIT #{limit}")
+    int expireBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+}
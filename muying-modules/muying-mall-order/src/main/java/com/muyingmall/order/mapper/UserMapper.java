@@ -4,6 +4,9 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.muyingmall.order.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 /**
  * 用户Mapper接口
@@ -31,4 +34,33 @@ public interface UserMapper extends BaseMapper<User> {
      * @return 用户信息
      */
     User selectByPhone(@Param("phone") String phone);
-}
\ No newline at end of file
+
+    /**
+     * 按用户ID游标查询下一段目标用户ID，走主键范围扫描，任意深度的翻页代价相同
+     *
+     * @param afterId   游标，只返回大于该ID的用户
+     * @param maxUserId 用户ID上限（含），为空时不限
+     * @param status    用户状态编码（0-禁用，1-正常），为空时不限
+     * @param limit     最大数量
+     * @return 用户ID，升序
+     */
+    @Select("<script>SELECT `id` FROM `user` WHERE `id` &gt; #{afterId} AND `deleted` = 0" +
+            "<if test='maxUserId != null'> AND `id` &lt;= #{maxUserId}</if>" +
+            "<if test='status != null'> AND `status` = #{status}</if>" +
+            " ORDER BY `id` LIMIT #{limit}</script>")
+    List<Long> selectIdsAfter(@Param("afterId") Long afterId, @Param("maxUserId") Long maxUserId,
+                              @Param("status") Integer status, @Param("limit") int limit);
+
+    /**
+     * 统计目标用户数
+     *
+     * @param maxUserId 用户ID上限（含），为空时不限
+     * @param status    用户状态编码（0-禁用，1-正常），为空时不限
+     * @return 用户数
+     */
+    @Select("<script>SELECT COUNT(*) FROM `user` WHERE `deleted` = 0" +
+            "<if test='maxUserId != null'> AND `id` &lt;= #{maxUserId}</if>" +
+            "<if test='status != null'> AND `status` = #{status}</if>" +
+            "</script>")
+    long countSegment(@Param("maxUserId") Long maxUserId, @Param("status") Integer status);
+}
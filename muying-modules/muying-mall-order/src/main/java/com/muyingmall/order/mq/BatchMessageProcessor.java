@@ -0,0 +1,302 @@
+package com.muyingmall.order.mq;
+
+import com.muyingmall.common.constants.RabbitMQConstants;
+import com.muyingmall.order.rabbitmq.message.BaseMessage;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 批量消息处理器
+ *
+ * <p>供批量 {@code @RabbitListener} 使用，一批消息的处理流程：</p>
+ * <ul>
+ *   <li>按 messageId 一次性领取幂等标记，已处理的重复消息直接确认</li>
+ *   <li>逐条执行业务处理；业务异常（不可重试）记录后确认，系统异常转入延迟重试</li>
+ *   <li>延迟重试按已重试次数选择分级延迟队列（指数退避），到期后由死信路由回原队列；
+ *       重试次数耗尽后停放到停放队列，不再重新入队，避免毒消息空转</li>
+ *   <li>重投消息等到 publisher confirm 后才确认原消息；全部成功时一次 multiple ack 确认整批</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class BatchMessageProcessor {
+
+    private enum Outcome {
+        /**
+         * 处理完成或重复消息，确认
+         */
+        ACK,
+        /**
+         * 转入延迟重试队列后确认
+         */
+        RETRY,
+        /**
+         * 转入停放队列后确认
+         */
+        PARK,
+        /**
+         * 重投失败，拒绝并重新入队
+         */
+        REQUEUE
+    }
+
+    private final MessageIdempotencyStore idempotencyStore;
+    private final MessageConverter messageConverter;
+    private final RabbitTemplate rabbitTemplate;
+
+    /**
+     * 各级重试延迟（毫秒），级数即最大重试次数
+     */
+    private final long[] retryDelays;
+
+    /**
+     * 等待重投确认的超时时间（毫秒）
+     */
+    private final long republishTimeoutMillis;
+
+    public BatchMessageProcessor(MessageIdempotencyStore idempotencyStore,
+                                 ObjectProvider<MessageConverter> messageConverterProvider,
+                                 ObjectProvider<RabbitTemplate> rabbitTemplateProvider,
+                                 @Value("${muying.order.consumer.retry-delays:1000,4000,16000,64000,256000}") long[] retryDelays,
+                                 @Value("${muying.order.consumer.republish-timeout-millis:5000}") long republishTimeoutMillis) {
+        this.idempotencyStore = idempotencyStore;
+        this.messageConverter = messageConverterProvider.getIfAvailable(Jackson2JsonMessageConverter::new);
+        this.rabbitTemplate = rabbitTemplateProvider.getIfAvailable();
+        this.retryDelays = retryDelays;
+        this.republishTimeoutMillis = republishTimeoutMillis;
+    }
+
+    /**
+     * 延迟重试交换机名称
+     */
+    public static String retryExchange(long delayMillis) {
+        return RabbitMQConstants.ORDER_RETRY_EXCHANGE_PREFIX + delayMillis + "ms";
+    }
+
+    /**
+     * 延迟重试队列名称
+     */
+    public static String retryQueue(long delayMillis) {
+        return RabbitMQConstants.ORDER_RETRY_QUEUE_PREFIX + delayMillis + "ms";
+    }
+
+    /**
+     * 处理一批消息并完成确认
+     *
+     * @param messages     批量消息
+     * @param channel      信道
+     * @param type         消息类型
+     * @param handler      业务处理
+     * @param nonRetryable 判断异常是否不可重试
+     */
+    public <T extends BaseMessage> void process(List<Message> messages, Channel channel, Class<T> type,
+                                                Consumer<T> handler, Predicate<Exception> nonRetryable) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        int size = messages.size();
+        Outcome[] outcomes = new Outcome[size];
+        List<T> payloads = new ArrayList<>(size);
+        String[] ids = new String[size];
+        List<String> messageIds = new ArrayList<>(size);
+        List<Integer> idIndexes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            T payload = convert(messages.get(i), type);
+            payloads.add(payload);
+            if (payload == null) {
+                outcomes[i] = Outcome.PARK;
+                continue;
+            }
+            String messageId = payload.getMessageId() != null
+                    ? payload.getMessageId() : messages.get(i).getMessageProperties().getMessageId();
+            if (messageId != null) {
+                ids[i] = messageId;
+                messageIds.add(messageId);
+                idIndexes.add(i);
+            }
+        }
+
+        // 领取幂等标记
+        String[] claims = new String[size];
+        try {
+            List<String> result = idempotencyStore.claim(messageIds);
+            for (int j = 0; j < idIndexes.size(); j++) {
+                claims[idIndexes.get(j)] = result.get(j);
+            }
+        } catch (Exception e) {
+            // 幂等存储不可用时整批延迟重试，避免绕过幂等重复处理
+            log.error("领取消息幂等标记失败，整批延迟重试: size={}", size, e);
+            Arrays.fill(claims, MessageIdempotencyStore.PROCESSING);
+        }
+
+        List<String> doneIds = new ArrayList<>(size);
+        List<String> failedIds = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (outcomes[i] != null) {
+                continue;
+            }
+            String claim = claims[i];
+            if (MessageIdempotencyStore.DONE.equals(claim)) {
+                log.info("重复消息，跳过处理: messageId={}", ids[i]);
+                outcomes[i] = Outcome.ACK;
+                continue;
+            }
+            if (MessageIdempotencyStore.PROCESSING.equals(claim)) {
+                outcomes[i] = Outcome.RETRY;
+                continue;
+            }
+
+            String messageId = ids[i];
+            try {
+                handler.accept(payloads.get(i));
+                outcomes[i] = Outcome.ACK;
+                if (messageId != null) {
+                    doneIds.add(messageId);
+                }
+            } catch (Exception e) {
+                if (nonRetryable.test(e)) {
+                    log.error("消息处理业务异常，不再重试: messageId={}, error={}", messageId, e.getMessage());
+                    outcomes[i] = Outcome.ACK;
+                    if (messageId != null) {
+                        doneIds.add(messageId);
+                    }
+                } else {
+                    log.error("消息处理失败，转入延迟重试: messageId={}", messageId, e);
+                    outcomes[i] = Outcome.RETRY;
+                    if (messageId != null) {
+                        failedIds.add(messageId);
+                    }
+                }
+            }
+        }
+
+        try {
+            idempotencyStore.markDone(doneIds);
+        } catch (Exception e) {
+            // 处理中标记到期后，重复投递的消息会被再次处理
+            log.error("标记消息已处理失败: count={}", doneIds.size(), e);
+        }
+        idempotencyStore.release(failedIds);
+
+        republish(messages, outcomes);
+        acknowledge(messages, outcomes, channel);
+    }
+
+    private <T extends BaseMessage> T convert(Message message, Class<T> type) {
+        try {
+            message.getMessageProperties().setInferredArgumentType(type);
+            Object payload = messageConverter.fromMessage(message);
+            if (type.isInstance(payload)) {
+                return type.cast(payload);
+            }
+            log.error("消息类型不匹配，停放消息: expected={}, actual={}", type.getSimpleName(),
+                    payload != null ? payload.getClass().getName() : null);
+        } catch (Exception e) {
+            log.error("消息反序列化失败，停放消息: messageId={}", message.getMessageProperties().getMessageId(), e);
+        }
+        return null;
+    }
+
+    /**
+     * 把需要重试或停放的消息重投，并等待 publisher confirm；未确认的改为拒绝重新入队
+     */
+    private void republish(List<Message> messages, Outcome[] outcomes) {
+        CorrelationData[] confirms = new CorrelationData[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            if (outcomes[i] != Outcome.RETRY && outcomes[i] != Outcome.PARK) {
+                continue;
+            }
+            if (rabbitTemplate == null) {
+                outcomes[i] = Outcome.REQUEUE;
+                continue;
+            }
+
+            Message message = messages.get(i);
+            Object retried = message.getMessageProperties().getHeaders().get(RabbitMQConstants.RETRY_COUNT_HEADER);
+            int retryCount = retried instanceof Number ? ((Number) retried).intValue() : 0;
+            if (outcomes[i] == Outcome.RETRY && retryCount >= retryDelays.length) {
+                outcomes[i] = Outcome.PARK;
+            }
+
+            String sourceQueue = message.getMessageProperties().getConsumerQueue();
+            message.getMessageProperties().setHeader(RabbitMQConstants.RETRY_COUNT_HEADER, retryCount + 1);
+            CorrelationData correlationData = new CorrelationData(message.getMessageProperties().getMessageId());
+            try {
+                if (outcomes[i] == Outcome.RETRY) {
+                    // 分级交换机为 fanout，路由键保留原队列名，到期后经默认交换机路由回原队列
+                    rabbitTemplate.send(retryExchange(retryDelays[retryCount]), sourceQueue, message, correlationData);
+                } else {
+                    message.getMessageProperties().setHeader("x-parked-from", sourceQueue);
+                    rabbitTemplate.send("", RabbitMQConstants.ORDER_PARKING_QUEUE, message, correlationData);
+                    log.error("消息重试次数耗尽或无法解析，已停放: queue={}, messageId={}, retried={}",
+                            sourceQueue, message.getMessageProperties().getMessageId(), retryCount);
+                }
+                confirms[i] = correlationData;
+            } catch (Exception e) {
+                log.error("消息重投失败: queue={}", sourceQueue, e);
+                outcomes[i] = Outcome.REQUEUE;
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(republishTimeoutMillis);
+        for (int i = 0; i < confirms.length; i++) {
+            if (confirms[i] == null) {
+                continue;
+            }
+            try {
+                long remaining = Math.max(0L, deadline - System.nanoTime());
+                CorrelationData.Confirm confirm = confirms[i].getFuture().get(remaining, TimeUnit.NANOSECONDS);
+                if (!confirm.isAck() || confirms[i].getReturned() != null) {
+                    outcomes[i] = Outcome.REQUEUE;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                outcomes[i] = Outcome.REQUEUE;
+            } catch (Exception e) {
+                outcomes[i] = Outcome.REQUEUE;
+            }
+        }
+    }
+
+    /**
+     * 确认消息：全部可确认时一次 multiple ack，否则逐条确认或拒绝
+     */
+    private void acknowledge(List<Message> messages, Outcome[] outcomes, Channel channel) {
+        try {
+            boolean allAck = Arrays.stream(outcomes).noneMatch(outcome -> outcome == Outcome.REQUEUE);
+            if (allAck) {
+                long lastTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+                channel.basicAck(lastTag, true);
+                return;
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                long tag = messages.get(i).getMessageProperties().getDeliveryTag();
+                if (outcomes[i] == Outcome.REQUEUE) {
+                    channel.basicNack(tag, false, true);
+                } else {
+                    channel.basicAck(tag, false);
+                }
+            }
+        } catch (IOException e) {
+            // 信道异常时未确认的消息会被重新投递，由幂等标记去重
+            log.error("批量消息确认失败: size={}", messages.size(), e);
+        }
+    }
+}
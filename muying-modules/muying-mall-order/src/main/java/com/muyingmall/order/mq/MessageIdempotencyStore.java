@@ -0,0 +1,213 @@
+package com.muyingmall.order.mq;
+
+import com.muyingmall.common.CacheConstants;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 消息消费幂等存储
+ *
+ * <p>以 {@code BaseMessage.messageId} 为键，Redis 为准，本地布隆过滤器为前置：</p>
+ * <ul>
+ *   <li>领取：SET NX 写入 PROCESSING（短TTL），一批消息一次管道调用</li>
+ *   <li>完成：覆盖为 DONE（长TTL），同时记入本地布隆过滤器</li>
+ *   <li>失败：删除 PROCESSING，重试时可重新领取；消费者宕机时 PROCESSING 到期自动释放</li>
+ *   <li>本地布隆过滤器未命中的消息直接 SET NX 领取并处理，不先读取 Redis；
+ *       只有 SET NX 失败的（其他节点处理过或正在处理）才读取当前标记区分 DONE 和 PROCESSING</li>
+ *   <li>布隆过滤器命中的消息（多为重投到本节点的重复消息）用 Lua 脚本先读取复核，
+ *       键已不存在（布隆误判或已过期）时在同一脚本中领取</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class MessageIdempotencyStore {
+
+    /**
+     * 领取结果：领取成功，可以处理
+     */
+    public static final String CLAIMED = "CLAIMED";
+
+    /**
+     * 领取结果：已处理完成，属于重复消息
+     */
+    public static final String DONE = "DONE";
+
+    /**
+     * 领取结果：其他消费者正在处理
+     */
+    public static final String PROCESSING = "PROCESSING";
+
+    /**
+     * 复核并领取布隆过滤器命中的消息
+     * KEYS 为幂等键；ARGV[1] 处理中TTL（毫秒）；键存在时返回当前标记，不存在时领取
+     */
+    private static final String RECHECK_SCRIPT =
+            "local result = {} " +
+            "for i = 1, #KEYS do " +
+            "    local current = redis.call('GET', KEYS[i]) " +
+            "    if current then " +
+            "        result[i] = current " +
+            "    else " +
+            "        redis.call('SET', KEYS[i], 'PROCESSING', 'PX', ARGV[1]) " +
+            "        result[i] = 'CLAIMED' " +
+            "    end " +
+            "end " +
+            "return result";
+
+    private static final DefaultRedisScript<List> RECHECK_REDIS_SCRIPT = new DefaultRedisScript<>(RECHECK_SCRIPT, List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RotatingBloomFilter bloomFilter;
+
+    /**
+     * 处理中标记的有效期（毫秒）
+     */
+    private final long processingTtlMillis;
+
+    /**
+     * 已处理标记的有效期（毫秒）
+     */
+    private final long doneTtlMillis;
+
+    @Autowired
+    public MessageIdempotencyStore(StringRedisTemplate stringRedisTemplate,
+                                   @Value("${muying.order.consumer.idempotency.bloom-capacity:200000}") int bloomCapacity,
+                                   @Value("${muying.order.consumer.idempotency.bloom-fpp:0.001}") double bloomFpp,
+                                   @Value("${muying.order.consumer.idempotency.processing-ttl-seconds:300}") long processingTtlSeconds,
+                                   @Value("${muying.order.consumer.idempotency.done-ttl-hours:72}") long doneTtlHours) {
+        this(stringRedisTemplate, new RotatingBloomFilter(bloomCapacity, bloomFpp), processingTtlSeconds, doneTtlHours);
+    }
+
+    MessageIdempotencyStore(StringRedisTemplate stringRedisTemplate, RotatingBloomFilter bloomFilter,
+                            long processingTtlSeconds, long doneTtlHours) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.bloomFilter = bloomFilter;
+        this.processingTtlMillis = TimeUnit.SECONDS.toMillis(processingTtlSeconds);
+        this.doneTtlMillis = TimeUnit.HOURS.toMillis(doneTtlHours);
+    }
+
+    /**
+     * 批量领取消息
+     *
+     * @param messageIds 消息ID，不能为null
+     * @return 与入参一一对应的领取结果：{@link #CLAIMED}、{@link #DONE} 或 {@link #PROCESSING}
+     */
+    public List<String> claim(List<String> messageIds) {
+        String[] result = new String[messageIds.size()];
+        List<Integer> misses = new ArrayList<>(messageIds.size());
+        List<Integer> hits = new ArrayList<>();
+        for (int i = 0; i < messageIds.size(); i++) {
+            (bloomFilter.mightContain(messageIds.get(i)) ? hits : misses).add(i);
+        }
+        if (!misses.isEmpty()) {
+            claimDirectly(messageIds, misses, result);
+        }
+        if (!hits.isEmpty()) {
+            recheck(messageIds, hits, result);
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /**
+     * 布隆过滤器未命中：直接 SET NX 领取，失败的再读取当前标记
+     */
+    private void claimDirectly(List<String> messageIds, List<Integer> indexes, String[] result) {
+        Expiration expiration = Expiration.milliseconds(processingTtlMillis);
+        List<Object> claimed = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (Integer index : indexes) {
+                stringConnection.set(CacheConstants.ORDER_MQ_CONSUMED_KEY + messageIds.get(index), PROCESSING,
+                        expiration, RedisStringCommands.SetOption.SET_IF_ABSENT);
+            }
+            return null;
+        });
+        List<Integer> taken = new ArrayList<>();
+        for (int i = 0; i < indexes.size(); i++) {
+            if (Boolean.TRUE.equals(claimed.get(i))) {
+                result[indexes.get(i)] = CLAIMED;
+            } else {
+                taken.add(indexes.get(i));
+            }
+        }
+        if (taken.isEmpty()) {
+            return;
+        }
+        List<String> current = stringRedisTemplate.opsForValue().multiGet(taken.stream()
+                .map(index -> CacheConstants.ORDER_MQ_CONSUMED_KEY + messageIds.get(index))
+                .collect(Collectors.toList()));
+        for (int i = 0; i < taken.size(); i++) {
+            // 两次调用之间标记被释放或过期时按处理中返回，消息稍后重试
+            String value = current != null ? current.get(i) : null;
+            result[taken.get(i)] = value != null ? value : PROCESSING;
+        }
+    }
+
+    /**
+     * 布隆过滤器命中：读取复核，键不存在时领取
+     */
+    private void recheck(List<String> messageIds, List<Integer> indexes, String[] result) {
+        List<String> keys = indexes.stream()
+                .map(index -> CacheConstants.ORDER_MQ_CONSUMED_KEY + messageIds.get(index))
+                .collect(Collectors.toList());
+        List<?> raw = stringRedisTemplate.execute(RECHECK_REDIS_SCRIPT, keys, String.valueOf(processingTtlMillis));
+        for (int i = 0; i < indexes.size(); i++) {
+            Object value = raw != null && i < raw.size() ? raw.get(i) : null;
+            result[indexes.get(i)] = value != null ? String.valueOf(value) : PROCESSING;
+        }
+    }
+
+    /**
+     * 标记消息已处理
+     *
+     * @param messageIds 消息ID
+     */
+    public void markDone(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        Expiration expiration = Expiration.milliseconds(doneTtlMillis);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringConnection = (StringRedisConnection) connection;
+            for (String messageId : messageIds) {
+                stringConnection.set(CacheConstants.ORDER_MQ_CONSUMED_KEY + messageId, DONE,
+                        expiration, RedisStringCommands.SetOption.UPSERT);
+            }
+            return null;
+        });
+        messageIds.forEach(bloomFilter::put);
+    }
+
+    /**
+     * 释放处理中标记，使消息重试时可以重新领取
+     *
+     * @param messageIds 消息ID
+     */
+    public void release(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.delete(messageIds.stream()
+                    .map(messageId -> CacheConstants.ORDER_MQ_CONSUMED_KEY + messageId)
+                    .collect(Collectors.toList()));
+        } catch (Exception e) {
+            // 释放失败时处理中标记到期后自动失效
+            log.warn("释放消息幂等标记失败: count={}", messageIds.size(), e);
+        }
+    }
+}
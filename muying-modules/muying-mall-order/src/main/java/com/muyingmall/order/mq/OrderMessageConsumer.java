@@ -2,14 +2,18 @@ package com.muyingmall.order.mq;
 
 import com.muyingmall.common.constants.RabbitMQConstants;
 import com.muyingmall.order.rabbitmq.message.OrderMessage;
+import com.muyingmall.order.service.OrderService;
 import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.support.AmqpHeaders;
-import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * 订单消息消费者
@@ -21,109 +25,95 @@ import java.io.IOException;
 @Component
 public class OrderMessageConsumer {
     
+    /**
+     * 批量消费者容器工厂
+     */
+    private static final String BATCH_CONTAINER_FACTORY = "orderBatchListenerContainerFactory";
+    
+    /**
+     * 业务异常不重试，记录后直接确认
+     */
+    private static final Predicate<Exception> NON_RETRYABLE = e -> e instanceof BusinessException;
+    
+    @Autowired
+    private OrderService orderService;
+    
+    @Autowired
+    private BatchMessageProcessor batchMessageProcessor;
+    
     /**
      * 处理订单超时消息
+     * 超时任务已改由 OrderTimeoutScheduler 调度，此监听器仅用于消费迁移前遗留在队列中的消息
      */
-    @RabbitListener(queues = RabbitMQConstants.ORDER_TIMEOUT_QUEUE)
-    public void handleOrderTimeout(OrderMessage message, Channel channel, 
-                                  @Header(AmqpHeaders.DELIVERY_TAG) long tag) {
-        log.info("接收到订单超时检查消息: orderId={}, orderNo={}", 
-                message.getOrderId(), message.getOrderNo());
-        
-        try {
-            // 检查订单状态
-            checkAndCancelTimeoutOrder(message.getOrderId());
-            
-            // 手动确认消息
-            channel.basicAck(tag, false);
-            log.info("订单超时消息处理成功: orderId={}", message.getOrderId());
-            
-        } catch (BusinessException e) {
-            // 业务异常，不重试，直接确认
-            try {
-                channel.basicAck(tag, false);
-                log.error("订单超时处理业务异常: orderId={}, error={}", 
-                        message.getOrderId(), e.getMessage());
-            } catch (IOException ioException) {
-                log.error("消息确认失败", ioException);
-            }
-        } catch (Exception e) {
-            // 系统异常，拒绝消息，进行重试
-            try {
-                // 第三个参数true表示重新入队
-                channel.basicNack(tag, false, true);
-                log.error("订单超时处理失败，将重试: orderId={}", message.getOrderId(), e);
-            } catch (IOException ioException) {
-                log.error("消息拒绝失败", ioException);
-            }
-        }
+    @RabbitListener(queues = RabbitMQConstants.ORDER_TIMEOUT_QUEUE, containerFactory = BATCH_CONTAINER_FACTORY)
+    public void handleOrderTimeout(List<Message> messages, Channel channel) {
+        log.info("接收到订单超时检查消息: count={}", messages.size());
+        batchMessageProcessor.process(messages, channel, OrderMessage.class,
+                message -> processOrderTimeout(message.getOrderId()), NON_RETRYABLE);
+    }
+    
+    /**
+     * 执行订单超时处理，由订单超时调度器在到期时调用
+     *
+     * @param orderId 订单ID
+     */
+    public void processOrderTimeout(Long orderId) {
+        checkAndCancelTimeoutOrder(orderId);
     }
     
     /**
      * 处理支付成功消息
      */
-    @RabbitListener(queues = RabbitMQConstants.PAYMENT_SUCCESS_NOTIFICATION_QUEUE)
-    public void handlePaymentSuccess(OrderMessage message, Channel channel, 
-                                    @Header(AmqpHeaders.DELIVERY_TAG) long tag) {
-        log.info("接收到支付成功消息: orderId={}, orderNo={}", 
-                message.getOrderId(), message.getOrderNo());
-        
-        try {
+    @RabbitListener(queues = RabbitMQConstants.PAYMENT_SUCCESS_NOTIFICATION_QUEUE, containerFactory = BATCH_CONTAINER_FACTORY)
+    public void handlePaymentSuccess(List<Message> messages, Channel channel) {
+        log.info("接收到支付成功消息: count={}", messages.size());
+        batchMessageProcessor.process(messages, channel, OrderMessage.class, message -> {
             // 更新订单状态为已支付
             updateOrderPaymentStatus(message.getOrderId());
-            
-            // 手动确认消息
-            channel.basicAck(tag, false);
             log.info("支付成功消息处理成功: orderId={}", message.getOrderId());
-            
-        } catch (Exception e) {
-            handleMessageError(channel, tag, message.getOrderId(), e);
-        }
+        }, NON_RETRYABLE);
     }
     
     /**
      * 处理物流状态更新消息
      */
-    @RabbitListener(queues = RabbitMQConstants.LOGISTICS_STATUS_QUEUE)
-    public void handleLogisticsStatusUpdate(OrderMessage message, Channel channel, 
-                                           @Header(AmqpHeaders.DELIVERY_TAG) long tag) {
-        log.info("接收到物流状态更新消息: orderId={}, status={}", 
-                message.getOrderId(), message.getStatus());
-        
-        try {
+    @RabbitListener(queues = RabbitMQConstants.LOGISTICS_STATUS_QUEUE, containerFactory = BATCH_CONTAINER_FACTORY)
+    public void handleLogisticsStatusUpdate(List<Message> messages, Channel channel) {
+        log.info("接收到物流状态更新消息: count={}", messages.size());
+        batchMessageProcessor.process(messages, channel, OrderMessage.class, message -> {
             // 更新订单物流状态
             updateOrderLogisticsStatus(message.getOrderId(), message.getStatus());
-            
-            // 手动确认消息
-            channel.basicAck(tag, false);
             log.info("物流状态更新消息处理成功: orderId={}", message.getOrderId());
-            
-        } catch (Exception e) {
-            handleMessageError(channel, tag, message.getOrderId(), e);
-        }
+        }, NON_RETRYABLE);
     }
     
     /**
      * 处理死信队列消息
+     * 记录和告警失败不重新入队，整批处理完后一次确认
      */
-    @RabbitListener(queues = RabbitMQConstants.DLX_QUEUE)
-    public void handleDeadLetter(OrderMessage message, Channel channel, 
-                                @Header(AmqpHeaders.DELIVERY_TAG) long tag) {
-        log.error("接收到死信消息: messageId={}, eventType={}, source={}", 
-                message.getMessageId(), message.getEventType(), message.getSource());
+    @RabbitListener(queues = RabbitMQConstants.DLX_QUEUE, containerFactory = BATCH_CONTAINER_FACTORY)
+    public void handleDeadLetter(List<org.springframework.messaging.Message<OrderMessage>> messages, Channel channel) {
+        for (org.springframework.messaging.Message<OrderMessage> deadLetter : messages) {
+            OrderMessage message = deadLetter.getPayload();
+            log.error("接收到死信消息: messageId={}, eventType={}, source={}", 
+                    message.getMessageId(), message.getEventType(), message.getSource());
+            try {
+                // 记录死信消息到数据库
+                saveDeadLetterMessage(message);
+                
+                // 发送告警通知
+                sendAlertNotification(message);
+            } catch (Exception e) {
+                log.error("死信消息处理失败: messageId={}", message.getMessageId(), e);
+            }
+        }
         
         try {
-            // 记录死信消息到数据库
-            saveDeadLetterMessage(message);
-            
-            // 发送告警通知
-            sendAlertNotification(message);
-            
             // 确认消息
-            channel.basicAck(tag, false);
-            
+            Long lastTag = messages.get(messages.size() - 1).getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+            channel.basicAck(lastTag, true);
         } catch (IOException e) {
-            log.error("死信消息处理失败", e);
+            log.error("死信消息确认失败", e);
         }
     }
     
@@ -131,12 +121,12 @@ public class OrderMessageConsumer {
      * 检查并取消超时订单
      */
     private void checkAndCancelTimeoutOrder(Long orderId) {
-        // TODO: 实现订单超时取消逻辑
-        // 1. 查询订单状态
-        // 2. 如果未支付，则取消订单
-        // 3. 释放库存
-        // 4. 发送订单取消通知
-        log.info("检查并取消超时订单: orderId={}", orderId);
+        if (orderId == null) {
+            throw new BusinessException("订单ID为空");
+        }
+        // 仅取消仍处于待付款状态的订单，已支付或已取消的订单直接忽略
+        boolean cancelled = orderService.cancelTimeoutOrder(orderId.intValue());
+        log.info("检查并取消超时订单: orderId={}, cancelled={}", orderId, cancelled);
     }
     
     /**
@@ -172,29 +162,6 @@ public class OrderMessageConsumer {
                 message.getMessageId(), message.getEventType());
     }
     
-    /**
-     * 统一的消息错误处理
-     */
-    private void handleMessageError(Channel channel, long tag, Long orderId, Exception e) {
-        if (e instanceof BusinessException) {
-            // 业务异常，不重试
-            try {
-                channel.basicAck(tag, false);
-                log.error("消息处理业务异常: orderId={}, error={}", orderId, e.getMessage());
-            } catch (IOException ioException) {
-                log.error("消息确认失败", ioException);
-            }
-        } else {
-            // 系统异常，重试
-            try {
-                channel.basicNack(tag, false, true);
-                log.error("消息处理失败，将重试: orderId={}", orderId, e);
-            } catch (IOException ioException) {
-                log.error("消息拒绝失败", ioException);
-            }
-        }
-    }
-    
     /**
      * 自定义业务异常类
      */
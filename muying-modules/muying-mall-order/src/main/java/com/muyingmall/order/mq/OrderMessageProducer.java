@@ -1,5 +1,6 @@
 package com.muyingmall.order.mq;
 
+import com.muyingmall.order.delay.OrderTimeoutScheduler;
 import com.muyingmall.order.rabbitmq.RabbitMQUtil;
 import com.muyingmall.order.rabbitmq.message.OrderMessage;
 import lombok.extern.slf4j.Slf4j;
@@ -22,69 +23,57 @@ public class OrderMessageProducer {
     @Autowired
     private RabbitMQUtil rabbitMQUtil;
     
+    @Autowired
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    
     /**
      * 发送订单创建消息
+     * 消息写入发件箱，写入失败时抛出异常使业务事务回滚
      */
     public void sendOrderCreateMessage(Long orderId, String orderNo, Long userId, BigDecimal amount) {
-        try {
-            OrderMessage message = OrderMessage.createOrderCreateMessage(orderId, orderNo, userId, amount);
-            message.setMessageId(UUID.randomUUID().toString());
-            
-            // 发送到订单交换机
-            rabbitMQUtil.sendMessage("order.exchange", "order.create", message);
-            
-            log.info("订单创建消息发送成功: orderId={}, orderNo={}, userId={}, amount={}", 
-                    orderId, orderNo, userId, amount);
-            
-        } catch (Exception e) {
-            log.error("订单创建消息发送失败: orderId={}", orderId, e);
-            // 可以将失败的消息保存到数据库，后续重试
-            saveFailedMessage(orderId, "ORDER_CREATE", e.getMessage());
-        }
+        OrderMessage message = OrderMessage.createOrderCreateMessage(orderId, orderNo, userId, amount);
+        message.setMessageId(UUID.randomUUID().toString());
+        
+        // 写入发件箱，事务提交后发布到订单交换机
+        rabbitMQUtil.sendMessage("order.exchange", "order.create", message);
+        
+        log.info("订单创建消息已登记: orderId={}, orderNo={}, userId={}, amount={}", 
+                orderId, orderNo, userId, amount);
     }
     
     /**
      * 发送订单取消消息
+     * 消息写入发件箱，写入失败时抛出异常使业务事务回滚
      */
     public void sendOrderCancelMessage(Long orderId, String orderNo, Long userId) {
-        try {
-            OrderMessage message = OrderMessage.createOrderCancelMessage(orderId, orderNo, userId);
-            message.setMessageId(UUID.randomUUID().toString());
-            
-            // 发送到订单交换机
-            rabbitMQUtil.sendMessage("order.exchange", "order.cancel", message);
-            
-            log.info("订单取消消息发送成功: orderId={}, orderNo={}, userId={}", 
-                    orderId, orderNo, userId);
-            
-        } catch (Exception e) {
-            log.error("订单取消消息发送失败: orderId={}", orderId, e);
-            saveFailedMessage(orderId, "ORDER_CANCEL", e.getMessage());
-        }
+        OrderMessage message = OrderMessage.createOrderCancelMessage(orderId, orderNo, userId);
+        message.setMessageId(UUID.randomUUID().toString());
+        
+        // 写入发件箱，事务提交后发布到订单交换机
+        rabbitMQUtil.sendMessage("order.exchange", "order.cancel", message);
+        
+        log.info("订单取消消息已登记: orderId={}, orderNo={}, userId={}", 
+                orderId, orderNo, userId);
     }
     
     /**
      * 发送订单完成消息
+     * 消息写入发件箱，写入失败时抛出异常使业务事务回滚
      */
     public void sendOrderCompleteMessage(Long orderId, String orderNo, Long userId, BigDecimal amount) {
-        try {
-            OrderMessage message = OrderMessage.createOrderCompleteMessage(orderId, orderNo, userId, amount);
-            message.setMessageId(UUID.randomUUID().toString());
-            
-            // 发送到订单交换机
-            rabbitMQUtil.sendMessage("order.exchange", "order.complete", message);
-            
-            log.info("订单完成消息发送成功: orderId={}, orderNo={}, userId={}, amount={}", 
-                    orderId, orderNo, userId, amount);
-            
-        } catch (Exception e) {
-            log.error("订单完成消息发送失败: orderId={}", orderId, e);
-            saveFailedMessage(orderId, "ORDER_COMPLETE", e.getMessage());
-        }
+        OrderMessage message = OrderMessage.createOrderCompleteMessage(orderId, orderNo, userId, amount);
+        message.setMessageId(UUID.randomUUID().toString());
+        
+        // 写入发件箱，事务提交后发布到订单交换机
+        rabbitMQUtil.sendMessage("order.exchange", "order.complete", message);
+        
+        log.info("订单完成消息已登记: orderId={}, orderNo={}, userId={}, amount={}", 
+                orderId, orderNo, userId, amount);
     }
     
     /**
-     * 发送订单超时检查消息（延迟消息）
+     * 登记订单超时检查任务
+     * 由订单超时调度器按订单独立的到期时间触发，不再依赖延迟消息
      * 
      * @param orderId 订单ID
      * @param orderNo 订单号
@@ -92,24 +81,15 @@ public class OrderMessageProducer {
      */
     public void sendOrderTimeoutMessage(Long orderId, String orderNo, int delayMinutes) {
         try {
-            OrderMessage message = new OrderMessage();
-            message.setOrderId(orderId);
-            message.setOrderNo(orderNo);
-            message.setEventType("ORDER_TIMEOUT_CHECK");
-            message.setSource("order-service");
-            message.setMessageId(UUID.randomUUID().toString());
-            
-            // 转换为毫秒
-            long delayMillis = delayMinutes * 60 * 1000L;
-            
-            // 发送延迟消息
-            rabbitMQUtil.sendDelayMessage("order.exchange", "order.timeout", message, delayMillis);
+            long deadlineMillis = System.currentTimeMillis() + delayMinutes * 60 * 1000L;
+            orderTimeoutScheduler.schedule(orderId.intValue(), deadlineMillis);
             
-            log.info("订单超时检查消息发送成功: orderId={}, orderNo={}, delayMinutes={}", 
+            log.info("订单超时检查任务登记成功: orderId={}, orderNo={}, delayMinutes={}", 
                     orderId, orderNo, delayMinutes);
             
         } catch (Exception e) {
-            log.error("订单超时检查消息发送失败: orderId={}", orderId, e);
+            log.error("订单超时检查任务登记失败: orderId={}", orderId, e);
+            saveFailedMessage(orderId, "ORDER_TIMEOUT_CHECK", e.getMessage());
         }
     }
     
@@ -0,0 +1,110 @@
+package com.muyingmall.order.mq;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 双代轮换的本地布隆过滤器
+ *
+ * <p>当前代写满容量后整体降为上一代，查询同时检查两代，内存固定且不会因持续写入而饱和。</p>
+ * <p>线程安全：位数组使用 CAS 置位，轮换时短暂加锁。</p>
+ */
+final class RotatingBloomFilter {
+
+    private final int capacity;
+    private final int bitCount;
+    private final int hashCount;
+    private final AtomicInteger inserted = new AtomicInteger();
+
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+
+    /**
+     * @param capacity 每代容量
+     * @param fpp      单代满容量时的目标误判率
+     */
+    RotatingBloomFilter(int capacity, double fpp) {
+        if (capacity <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("布隆过滤器参数无效: capacity=" + capacity + ", fpp=" + fpp);
+        }
+        long bits = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.capacity = capacity;
+        this.bitCount = (int) Math.min(Math.max(bits, 64L), Integer.MAX_VALUE - 63L);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        this.current = newBits();
+        this.previous = newBits();
+    }
+
+    /**
+     * 是否可能包含，返回false时一定不包含
+     */
+    boolean mightContain(String value) {
+        long hash = hash64(value);
+        return contains(current, hash) || contains(previous, hash);
+    }
+
+    /**
+     * 加入元素
+     */
+    void put(String value) {
+        long hash = hash64(value);
+        AtomicLongArray bits = current;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            int index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            long mask = 1L << index;
+            int word = index >>> 6;
+            long old;
+            do {
+                old = bits.get(word);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, old, old | mask));
+        }
+        if (inserted.incrementAndGet() >= capacity) {
+            rotate(bits);
+        }
+    }
+
+    private synchronized void rotate(AtomicLongArray full) {
+        if (current != full) {
+            return;
+        }
+        previous = full;
+        current = newBits();
+        inserted.set(0);
+    }
+
+    private boolean contains(AtomicLongArray bits, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            int index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((bits.get(index >>> 6) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AtomicLongArray newBits() {
+        return new AtomicLongArray((bitCount + 63) >>> 6);
+    }
+
+    /**
+     * 64位 FNV-1a 散列，再做一次混合使高低32位都充分分布
+     */
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
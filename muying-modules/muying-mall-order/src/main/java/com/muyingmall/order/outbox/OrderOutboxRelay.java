@@ -0,0 +1,375 @@
+package com.muyingmall.order.outbox;
+
+import com.muyingmall.order.entity.OrderOutbox;
+import com.muyingmall.order.mapper.OrderOutboxMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * 订单消息发件箱投递任务
+ *
+ * <p>由单独的后台线程把 order_outbox 中的消息批量发布到 RabbitMQ，至少投递一次：</p>
+ * <ul>
+ *   <li>写入方事务提交后唤醒投递线程，等待 linger 时间攒批，否则按轮询间隔兜底扫描</li>
+ *   <li>每批在一个短事务中锁定（SKIP LOCKED，多节点可并行）并设置租约，事务外连续发布整批消息</li>
+ *   <li>发布使用异步 publisher confirm，整批发完后统一等待确认，不再逐条同步等待</li>
+ *   <li>每条消息每轮只发送一次，不使用 RabbitTemplate 的同步重试；否认、超时或发送异常写回下次发送时间，由后续轮次按指数退避重试</li>
+ *   <li>发送和等待确认都限制在租约内，租约内未发出的消息立即放回，避免租约到期后被其他节点重复领取</li>
+ *   <li>确认成功标记已发送；进程在确认前宕机时租约到期后重新发送</li>
+ * </ul>
+ * <p>同一消息可能被重复投递，消费方需按消息ID幂等处理。</p>
+ */
+@Slf4j
+@Component
+public class OrderOutboxRelay {
+
+    /**
+     * 单次清理删除的最大行数
+     */
+    private static final int PURGE_BATCH_SIZE = 1000;
+
+    /**
+     * 失败原因最大长度
+     */
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final OrderOutboxMapper orderOutboxMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final RabbitTemplate rabbitTemplate;
+    private final Semaphore wakeups = new Semaphore(0);
+
+    /**
+     * 是否启用投递任务
+     */
+    private final boolean enabled;
+
+    /**
+     * 每批发布的最大消息数
+     */
+    private final int batchSize;
+
+    /**
+     * 被唤醒后等待攒批的时间（毫秒）
+     */
+    private final long lingerMillis;
+
+    /**
+     * 未被唤醒时的轮询间隔（毫秒），用于拾取重试消息和其他节点写入的消息
+     */
+    private final long pollIntervalMillis;
+
+    /**
+     * 等待整批 publisher confirm 的超时时间（毫秒）
+     */
+    private final long confirmTimeoutMillis;
+
+    /**
+     * 领取后的租约时长（毫秒），需大于确认超时时间
+     */
+    private final long leaseMillis;
+
+    /**
+     * 首次重试间隔（毫秒）
+     */
+    private final long retryInitialMillis;
+
+    /**
+     * 最大重试间隔（毫秒）
+     */
+    private final long retryMaxMillis;
+
+    /**
+     * 已发送消息的保留小时数
+     */
+    private final int retainHours;
+
+    private volatile boolean running;
+    private Thread worker;
+
+    @Autowired
+    public OrderOutboxRelay(OrderOutboxMapper orderOutboxMapper, TransactionTemplate transactionTemplate,
+                            ObjectProvider<RabbitTemplate> rabbitTemplateProvider,
+                            @Value("${muying.order.outbox.enabled:true}") boolean enabled,
+                            @Value("${muying.order.outbox.batch-size:200}") int batchSize,
+                            @Value("${muying.order.outbox.linger-millis:20}") long lingerMillis,
+                            @Value("${muying.order.outbox.poll-interval-millis:1000}") long pollIntervalMillis,
+                            @Value("${muying.order.outbox.confirm-timeout-millis:5000}") long confirmTimeoutMillis,
+                            @Value("${muying.order.outbox.lease-millis:30000}") long leaseMillis,
+                            @Value("${muying.order.outbox.retry-initial-millis:1000}") long retryInitialMillis,
+                            @Value("${muying.order.outbox.retry-max-millis:300000}") long retryMaxMillis,
+                            @Value("${muying.order.outbox.retain-hours:72}") int retainHours) {
+        this(orderOutboxMapper, transactionTemplate, sendOnceTemplate(rabbitTemplateProvider.getIfAvailable()),
+                enabled, batchSize, lingerMillis, pollIntervalMillis, confirmTimeoutMillis, leaseMillis,
+                retryInitialMillis, retryMaxMillis, retainHours);
+    }
+
+    OrderOutboxRelay(OrderOutboxMapper orderOutboxMapper, TransactionTemplate transactionTemplate,
+                     RabbitTemplate rabbitTemplate, boolean enabled, int batchSize, long lingerMillis,
+                     long pollIntervalMillis, long confirmTimeoutMillis, long leaseMillis,
+                     long retryInitialMillis, long retryMaxMillis, int retainHours) {
+        this.orderOutboxMapper = orderOutboxMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.rabbitTemplate = rabbitTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.lingerMillis = lingerMillis;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.confirmTimeoutMillis = confirmTimeoutMillis;
+        this.leaseMillis = Math.max(leaseMillis, confirmTimeoutMillis * 2);
+        this.retryInitialMillis = retryInitialMillis;
+        this.retryMaxMillis = retryMaxMillis;
+        this.retainHours = retainHours;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (rabbitTemplate == null) {
+            log.warn("RabbitTemplate未配置，订单消息发件箱投递任务未启动");
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runLoop, "order-outbox-relay");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 唤醒投递线程，写入方事务提交后调用
+     */
+    public void wakeUp() {
+        wakeups.release();
+    }
+
+    /**
+     * 清理已发送的消息
+     */
+    @Scheduled(cron = "${muying.order.outbox.purge-cron:0 15 * * * ?}")
+    public void purgeSent() {
+        LocalDateTime before = LocalDateTime.now().minusHours(retainHours);
+        long purged = 0;
+        try {
+            int deleted;
+            do {
+                deleted = orderOutboxMapper.deleteSentBefore(before, PURGE_BATCH_SIZE);
+                purged += deleted;
+            } while (deleted >= PURGE_BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("清理订单消息发件箱失败", e);
+        }
+        if (purged > 0) {
+            log.info("清理订单消息发件箱: before={}, count={}", before, purged);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // 已领取未确认的消息在租约到期后由本节点或其他节点重新发送
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                if (wakeups.tryAcquire(pollIntervalMillis, TimeUnit.MILLISECONDS) && lingerMillis > 0) {
+                    // 等待同一时间段内提交的其他消息，凑成一批发布
+                    TimeUnit.MILLISECONDS.sleep(lingerMillis);
+                }
+                wakeups.drainPermits();
+                int published;
+                do {
+                    published = publishBatch();
+                } while (running && published >= batchSize);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("订单消息发件箱投递失败", e);
+            }
+        }
+    }
+
+    /**
+     * 共享的 RabbitTemplate 配置了同步重试，每条发送失败的消息都会阻塞数秒，整批累计远超租约；
+     * 投递任务在同一连接工厂上单独创建不重试的模板，失败的消息由后续轮次重试
+     */
+    private static RabbitTemplate sendOnceTemplate(RabbitTemplate shared) {
+        if (shared == null) {
+            return null;
+        }
+        RabbitTemplate template = new RabbitTemplate(shared.getConnectionFactory());
+        template.setMandatory(true);
+        return template;
+    }
+
+    /**
+     * 领取并发布一批消息
+     *
+     * @return 本批领取的消息数
+     */
+    int publishBatch() throws InterruptedException {
+        LocalDateTime now = LocalDateTime.now();
+        long claimedAt = System.nanoTime();
+        List<OrderOutbox> batch = transactionTemplate.execute(status -> claim(now));
+        if (batch == null || batch.isEmpty()) {
+            return 0;
+        }
+
+        // 租约到期后消息可能被其他节点重新领取：发送须给等待确认留出时间，等待确认不超过租约
+        long leaseDeadline = claimedAt + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        long sendDeadline = leaseDeadline - TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        List<CorrelationData> confirms = new ArrayList<>(batch.size());
+        String[] errors = new String[batch.size()];
+        List<Long> deferredIds = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            OrderOutbox outbox = batch.get(i);
+            if (System.nanoTime() - sendDeadline >= 0) {
+                confirms.add(null);
+                deferredIds.add(outbox.getId());
+                continue;
+            }
+            CorrelationData correlationData = new CorrelationData(outbox.getMessageId());
+            try {
+                rabbitTemplate.send(outbox.getExchange(), outbox.getRoutingKey(), toMessage(outbox), correlationData);
+                confirms.add(correlationData);
+            } catch (Exception e) {
+                confirms.add(null);
+                errors[i] = "发送异常: " + e.getMessage();
+            }
+        }
+
+        // 整批发完后统一等待确认，总等待时间不超过确认超时时间，也不超过租约
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMillis);
+        if (deadline - leaseDeadline > 0) {
+            deadline = leaseDeadline;
+        }
+        List<Long> sentIds = new ArrayList<>(batch.size());
+        List<Long> unroutableIds = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            CorrelationData correlationData = confirms.get(i);
+            if (correlationData == null) {
+                continue;
+            }
+            try {
+                long remaining = Math.max(0L, deadline - System.nanoTime());
+                CorrelationData.Confirm confirm = correlationData.getFuture().get(remaining, TimeUnit.NANOSECONDS);
+                if (!confirm.isAck()) {
+                    errors[i] = "Broker否认: " + confirm.getReason();
+                } else if (correlationData.getReturned() != null) {
+                    unroutableIds.add(batch.get(i).getId());
+                } else {
+                    sentIds.add(batch.get(i).getId());
+                }
+            } catch (TimeoutException e) {
+                errors[i] = "等待确认超时";
+            } catch (ExecutionException e) {
+                errors[i] = "等待确认失败: " + e.getCause();
+            }
+        }
+
+        LocalDateTime confirmedAt = LocalDateTime.now();
+        if (!sentIds.isEmpty()) {
+            orderOutboxMapper.markDone(sentIds, OrderOutbox.STATUS_SENT, confirmedAt);
+        }
+        if (!unroutableIds.isEmpty()) {
+            // 路由配置问题重试也无法送达，单独标记以便排查
+            orderOutboxMapper.markDone(unroutableIds, OrderOutbox.STATUS_UNROUTABLE, confirmedAt);
+            log.error("订单消息无法路由: ids={}", unroutableIds);
+        }
+        for (Long id : deferredIds) {
+            // 租约内未发出，不计退避，下一轮立即领取
+            orderOutboxMapper.markRetry(id, confirmedAt, "租约内未发送");
+        }
+        if (!deferredIds.isEmpty()) {
+            log.warn("订单消息发布超出租约，剩余消息放回: batch={}, deferred={}", batch.size(), deferredIds.size());
+        }
+        int failed = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (errors[i] != null) {
+                OrderOutbox outbox = batch.get(i);
+                orderOutboxMapper.markRetry(outbox.getId(), confirmedAt.plusNanos(
+                        TimeUnit.MILLISECONDS.toNanos(retryDelayMillis(outbox.getAttempts() + 1))), truncate(errors[i]));
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            log.warn("订单消息发布失败，等待重试: batch={}, failed={}", batch.size(), failed);
+        }
+        log.debug("订单消息批量发布: batch={}, sent={}, unroutable={}, failed={}, deferred={}",
+                batch.size(), sentIds.size(), unroutableIds.size(), failed, deferredIds.size());
+        return batch.size();
+    }
+
+    /**
+     * 锁定一批到期消息并设置租约
+     */
+    private List<OrderOutbox> claim(LocalDateTime now) {
+        List<OrderOutbox> batch = orderOutboxMapper.lockDue(now, batchSize);
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = batch.stream().map(OrderOutbox::getId).collect(Collectors.toList());
+        orderOutboxMapper.lease(ids, now.plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMillis)));
+        return batch;
+    }
+
+    /**
+     * 按消息转换器的格式还原消息，消费方无需感知发件箱
+     */
+    private Message toMessage(OrderOutbox outbox) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        properties.setMessageId(outbox.getMessageId());
+        properties.setCorrelationId(outbox.getMessageId());
+        if (outbox.getMessageType() != null) {
+            properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, outbox.getMessageType());
+        }
+        if (outbox.getPriority() != null) {
+            properties.setPriority(outbox.getPriority());
+        }
+        return new Message(outbox.getPayload().getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    /**
+     * 指数退避：首次重试间隔 * 2^(发送次数-1)，不超过最大重试间隔
+     */
+    private long retryDelayMillis(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+        return Math.min(retryInitialMillis << exponent, retryMaxMillis);
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
@@ -0,0 +1,121 @@
+package com.muyingmall.order.outbox;
+
+import com.muyingmall.order.entity.OrderOutbox;
+import com.muyingmall.order.mapper.OrderOutboxMapper;
+import com.muyingmall.order.rabbitmq.message.BaseMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 订单消息发件箱写入
+ *
+ * <p>消息按消息转换器的格式序列化后写入 order_outbox，不单独开启事务：</p>
+ * <ul>
+ *   <li>在业务事务中调用时随业务数据一起提交或回滚，不会出现数据已提交而消息丢失，或消息已发出而数据回滚</li>
+ *   <li>事务提交后唤醒投递任务，消息无需等到下一轮轮询</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class OrderOutboxWriter {
+
+    /**
+     * 单条 INSERT 写入的最大消息数
+     */
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private final OrderOutboxMapper orderOutboxMapper;
+    private final OrderOutboxRelay orderOutboxRelay;
+    private final MessageConverter messageConverter;
+
+    public OrderOutboxWriter(OrderOutboxMapper orderOutboxMapper, OrderOutboxRelay orderOutboxRelay,
+                             ObjectProvider<MessageConverter> messageConverterProvider) {
+        this.orderOutboxMapper = orderOutboxMapper;
+        this.orderOutboxRelay = orderOutboxRelay;
+        this.messageConverter = messageConverterProvider.getIfAvailable(Jackson2JsonMessageConverter::new);
+    }
+
+    /**
+     * 写入一条消息
+     *
+     * @param exchange   交换机
+     * @param routingKey 路由键
+     * @param message    消息对象
+     */
+    public void enqueue(String exchange, String routingKey, BaseMessage message) {
+        enqueueBatch(exchange, routingKey, List.of(message));
+    }
+
+    /**
+     * 批量写入消息
+     *
+     * @param exchange   交换机
+     * @param routingKey 路由键
+     * @param messages   消息列表
+     */
+    public void enqueueBatch(String exchange, String routingKey, List<? extends BaseMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<OrderOutbox> rows = new ArrayList<>(messages.size());
+        for (BaseMessage message : messages) {
+            rows.add(toOutbox(exchange, routingKey, message, now));
+        }
+        for (int from = 0; from < rows.size(); from += INSERT_BATCH_SIZE) {
+            orderOutboxMapper.insertBatch(rows.subList(from, Math.min(from + INSERT_BATCH_SIZE, rows.size())));
+        }
+        log.debug("消息写入发件箱 - Exchange: {}, RoutingKey: {}, Count: {}", exchange, routingKey, rows.size());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    orderOutboxRelay.wakeUp();
+                }
+            });
+        } else {
+            orderOutboxRelay.wakeUp();
+        }
+    }
+
+    private OrderOutbox toOutbox(String exchange, String routingKey, BaseMessage message, LocalDateTime now) {
+        if (message.getMessageId() == null) {
+            message.setMessageId(UUID.randomUUID().toString());
+        }
+        if (message.getTimestamp() == null) {
+            message.setTimestamp(new Date());
+        }
+
+        Message converted = messageConverter.toMessage(message, new MessageProperties());
+        Object typeId = converted.getMessageProperties().getHeaders().get(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+
+        OrderOutbox outbox = new OrderOutbox();
+        outbox.setMessageId(message.getMessageId());
+        outbox.setExchange(exchange);
+        outbox.setRoutingKey(routingKey);
+        outbox.setMessageType(typeId != null ? typeId.toString() : null);
+        outbox.setPayload(new String(converted.getBody(), StandardCharsets.UTF_8));
+        Object priority = message.getMetadata("priority");
+        outbox.setPriority(priority instanceof Integer ? (Integer) priority : null);
+        outbox.setNextRetryTime(now);
+        outbox.setCreateTime(now);
+        return outbox;
+    }
+}
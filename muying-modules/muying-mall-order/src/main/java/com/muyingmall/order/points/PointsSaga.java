@@ -0,0 +1,274 @@
+package com.muyingmall.order.points;
+
+import com.muyingmall.order.async.AfterCommitDispatcher;
+import com.muyingmall.order.entity.PointsReservation;
+import com.muyingmall.order.mapper.PointsReservationMapper;
+import com.muyingmall.order.service.OrderService;
+import com.muyingmall.order.service.PointsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 积分抵扣 Saga
+ *
+ * <p>订单事务中不再远程扣减积分，改为预留、确认、补偿三步：</p>
+ * <ul>
+ *   <li>预留：与订单在同一事务中写入待确认的 points_reservation，只是一次本地插入；订单回滚时预留随之消失</li>
+ *   <li>确认：订单提交后异步调用积分服务扣减，成功后标记已确认；订单在积分确认前不可支付</li>
+ *   <li>补偿：积分服务拒绝扣减，或多次调用失败超过最大次数时，取消订单（恢复库存）；
+ *       无法确定是否已扣减时先退还积分</li>
+ *   <li>订单取消：未确认的预留直接取消，确认中的调用完成后发现已取消会退还；已确认的转为待退还并调用积分服务退还</li>
+ *   <li>恢复：定时扫描到期的待确认、待退还记录重新处理，覆盖进程在调用积分服务前后宕机的情况</li>
+ * </ul>
+ * <p>同一预留可能被重复确认或退还，积分服务需按订单ID幂等处理消费和退还，未消费的订单退还时不增加积分。</p>
+ */
+@Slf4j
+@Component
+public class PointsSaga {
+
+    /**
+     * 失败原因最大长度
+     */
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final PointsReservationMapper pointsReservationMapper;
+    private final PointsService pointsService;
+    private final AfterCommitDispatcher afterCommitDispatcher;
+    private final OrderService orderService;
+
+    /**
+     * 每次扫描处理的最大记录数
+     */
+    private final int batchSize;
+
+    /**
+     * 领取后的租约时长（毫秒），租约内扫描任务不会重复处理
+     */
+    private final long leaseMillis;
+
+    /**
+     * 确认的最大调用次数，超过后补偿取消订单
+     */
+    private final int maxConfirmAttempts;
+
+    /**
+     * 首次重试间隔（毫秒）
+     */
+    private final long retryInitialMillis;
+
+    /**
+     * 最大重试间隔（毫秒）
+     */
+    private final long retryMaxMillis;
+
+    public PointsSaga(PointsReservationMapper pointsReservationMapper, PointsService pointsService,
+                      AfterCommitDispatcher afterCommitDispatcher, @Lazy OrderService orderService,
+                      @Value("${muying.order.points.saga.batch-size:100}") int batchSize,
+                      @Value("${muying.order.points.saga.lease-millis:30000}") long leaseMillis,
+                      @Value("${muying.order.points.saga.max-confirm-attempts:5}") int maxConfirmAttempts,
+                      @Value("${muying.order.points.saga.retry-initial-millis:1000}") long retryInitialMillis,
+                      @Value("${muying.order.points.saga.retry-max-millis:60000}") long retryMaxMillis) {
+        this.pointsReservationMapper = pointsReservationMapper;
+        this.pointsService = pointsService;
+        this.afterCommitDispatcher = afterCommitDispatcher;
+        this.orderService = orderService;
+        this.batchSize = batchSize;
+        this.leaseMillis = leaseMillis;
+        this.maxConfirmAttempts = Math.max(1, maxConfirmAttempts);
+        this.retryInitialMillis = retryInitialMillis;
+        this.retryMaxMillis = retryMaxMillis;
+    }
+
+    /**
+     * 预留积分，需在创建订单的事务中、订单保存后调用，事务提交后异步确认
+     *
+     * @param orderId 订单ID
+     * @param orderNo 订单编号
+     * @param userId  用户ID
+     * @param points  抵扣积分
+     */
+    public void reserve(Integer orderId, String orderNo, Integer userId, int points) {
+        PointsReservation reservation = new PointsReservation();
+        reservation.setOrderId(orderId);
+        reservation.setOrderNo(orderNo);
+        reservation.setUserId(userId);
+        reservation.setPoints(points);
+        reservation.setStatus(PointsReservation.STATUS_PENDING);
+        reservation.setAttempts(0);
+        // 提交后由分发器立即确认，扫描任务只在租约到期后兜底
+        reservation.setNextRetryTime(LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMillis)));
+        reservation.setCreateTime(LocalDateTime.now());
+        pointsReservationMapper.insert(reservation);
+
+        afterCommitDispatcher.dispatch("confirm-points", orderId, () -> process(reservation));
+        log.info("预留订单抵扣积分: orderId={}, orderNo={}, userId={}, points={}", orderId, orderNo, userId, points);
+    }
+
+    /**
+     * 订单取消时释放积分，需在取消订单的事务中调用
+     *
+     * @param orderId 订单ID
+     */
+    public void cancel(Integer orderId) {
+        PointsReservation reservation = pointsReservationMapper.selectByOrderId(orderId);
+        if (reservation == null) {
+            return;
+        }
+        if (pointsReservationMapper.transition(reservation.getId(), PointsReservation.STATUS_PENDING,
+                PointsReservation.STATUS_CANCELLED, null) > 0) {
+            log.info("订单取消，积分预留已取消: orderId={}", orderId);
+            return;
+        }
+        if (pointsReservationMapper.transition(reservation.getId(), PointsReservation.STATUS_CONFIRMED,
+                PointsReservation.STATUS_REFUNDING, null) > 0) {
+            reservation.setStatus(PointsReservation.STATUS_REFUNDING);
+            afterCommitDispatcher.dispatch("refund-points", orderId, () -> process(reservation));
+            log.info("订单取消，待退还积分: orderId={}, points={}", orderId, reservation.getPoints());
+        }
+    }
+
+    /**
+     * 订单抵扣的积分是否已确认扣减，未使用积分的订单视为已确认
+     *
+     * @param orderId 订单ID
+     */
+    public boolean isSettled(Integer orderId) {
+        PointsReservation reservation = pointsReservationMapper.selectByOrderId(orderId);
+        return reservation == null || reservation.getStatus() == PointsReservation.STATUS_CONFIRMED;
+    }
+
+    /**
+     * 扫描到期的待确认、待退还记录重新处理
+     */
+    @Scheduled(fixedDelayString = "${muying.order.points.saga.scan-interval-millis:10000}")
+    public void recover() {
+        try {
+            List<PointsReservation> due;
+            do {
+                due = pointsReservationMapper.selectDue(LocalDateTime.now(), batchSize);
+                for (PointsReservation reservation : due) {
+                    process(reservation);
+                }
+            } while (due.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("积分预留恢复扫描失败", e);
+        }
+    }
+
+    /**
+     * 领取后按状态确认或退还；领取失败说明已被其他线程或节点处理
+     */
+    private void process(PointsReservation reservation) {
+        int status = reservation.getStatus();
+        int attempts = reservation.getAttempts();
+        LocalDateTime leaseUntil = LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMillis));
+        if (pointsReservationMapper.lease(reservation.getId(), status, attempts, leaseUntil) == 0) {
+            return;
+        }
+        reservation.setAttempts(attempts + 1);
+        if (status == PointsReservation.STATUS_PENDING) {
+            confirm(reservation);
+        } else if (status == PointsReservation.STATUS_REFUNDING) {
+            refund(reservation);
+        }
+    }
+
+    private void confirm(PointsReservation reservation) {
+        boolean consumed;
+        try {
+            consumed = pointsService.consumePoints(reservation.getUserId().longValue(),
+                    BigDecimal.valueOf(reservation.getPoints()), reservation.getOrderId().longValue(),
+                    "订单抵扣:" + reservation.getOrderNo());
+        } catch (Exception e) {
+            if (reservation.getAttempts() >= maxConfirmAttempts) {
+                // 无法确定积分服务是否已扣减，先转为待退还再取消订单
+                compensate(reservation, PointsReservation.STATUS_REFUNDING, "积分确认超时: " + e.getMessage());
+            } else {
+                retryLater(reservation, PointsReservation.STATUS_PENDING, "积分确认失败: " + e.getMessage());
+            }
+            return;
+        }
+
+        if (!consumed) {
+            compensate(reservation, PointsReservation.STATUS_CANCELLED, "积分服务拒绝扣减");
+            return;
+        }
+        if (pointsReservationMapper.transition(reservation.getId(), PointsReservation.STATUS_PENDING,
+                PointsReservation.STATUS_CONFIRMED, null) > 0) {
+            log.info("订单抵扣积分已确认: orderId={}, points={}", reservation.getOrderId(), reservation.getPoints());
+            return;
+        }
+        // 确认期间订单已取消，退还刚扣减的积分
+        if (pointsReservationMapper.transition(reservation.getId(), PointsReservation.STATUS_CANCELLED,
+                PointsReservation.STATUS_REFUNDING, null) > 0) {
+            refund(reservation);
+        }
+    }
+
+    /**
+     * 补偿：结束预留后取消订单；取消事务提交后按订单号恢复商品服务已扣减的库存并移除超时任务，
+     * 取消失败时订单仍由超时任务取消
+     */
+    private void compensate(PointsReservation reservation, int to, String reason) {
+        if (pointsReservationMapper.transition(reservation.getId(), PointsReservation.STATUS_PENDING, to,
+                truncate(reason)) == 0) {
+            return;
+        }
+        log.warn("订单抵扣积分确认失败，取消订单: orderId={}, orderNo={}, reason={}",
+                reservation.getOrderId(), reservation.getOrderNo(), reason);
+        try {
+            if (!orderService.cancelTimeoutOrder(reservation.getOrderId())) {
+                log.warn("积分补偿取消订单未生效，订单已不是待支付状态: orderId={}", reservation.getOrderId());
+            }
+        } catch (Exception e) {
+            log.error("积分补偿取消订单失败: orderId={}", reservation.getOrderId(), e);
+        }
+        if (to == PointsReservation.STATUS_REFUNDING) {
+            refund(reservation);
+        }
+    }
+
+    private void refund(PointsReservation reservation) {
+        try {
+            if (pointsService.refundPoints(reservation.getUserId().longValue(),
+                    BigDecimal.valueOf(reservation.getPoints()), reservation.getOrderId().longValue(),
+                    "订单取消退还:" + reservation.getOrderNo())) {
+                pointsReservationMapper.transition(reservation.getId(), PointsReservation.STATUS_REFUNDING,
+                        PointsReservation.STATUS_REFUNDED, null);
+                log.info("订单抵扣积分已退还: orderId={}, points={}", reservation.getOrderId(), reservation.getPoints());
+                return;
+            }
+            retryLater(reservation, PointsReservation.STATUS_REFUNDING, "积分服务拒绝退还");
+        } catch (Exception e) {
+            retryLater(reservation, PointsReservation.STATUS_REFUNDING, "积分退还失败: " + e.getMessage());
+        }
+    }
+
+    private void retryLater(PointsReservation reservation, int status, String error) {
+        LocalDateTime next = LocalDateTime.now().plusNanos(
+                TimeUnit.MILLISECONDS.toNanos(retryDelayMillis(reservation.getAttempts())));
+        pointsReservationMapper.markRetry(reservation.getId(), status, next, truncate(error));
+        log.warn("积分预留处理失败，等待重试: orderId={}, attempts={}, error={}",
+                reservation.getOrderId(), reservation.getAttempts(), error);
+    }
+
+    /**
+     * 指数退避：首次重试间隔 * 2^(调用次数-1)，不超过最大重试间隔
+     */
+    private long retryDelayMillis(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), 20);
+        return Math.min(retryInitialMillis << exponent, retryMaxMillis);
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
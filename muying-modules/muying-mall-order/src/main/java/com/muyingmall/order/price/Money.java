@@ -0,0 +1,32 @@
+package com.muyingmall.order.price;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 金额换算工具
+ *
+ * <p>订单金额在计算过程中以 long 分表示，只在接口和持久化边界与 BigDecimal 元互相换算。</p>
+ */
+public final class Money {
+
+    private Money() {
+    }
+
+    /**
+     * 元换算为分，不足一分的部分四舍五入，为null时为0
+     */
+    public static long toCents(BigDecimal yuan) {
+        if (yuan == null) {
+            return 0L;
+        }
+        return yuan.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * 分换算为元，保留两位小数
+     */
+    public static BigDecimal toYuan(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
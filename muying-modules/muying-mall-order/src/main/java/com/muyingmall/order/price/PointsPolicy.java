@@ -0,0 +1,57 @@
+package com.muyingmall.order.price;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 积分抵扣规则
+ *
+ * <p>多少积分抵扣1元、单笔订单最多抵扣多少元均可配置，默认与原有规则一致：100积分抵扣1元，最多抵扣50元。</p>
+ */
+@Component
+public class PointsPolicy {
+
+    /**
+     * 抵扣1元所需的积分
+     */
+    private final long pointsPerYuan;
+
+    /**
+     * 单笔订单最多抵扣金额（分），0表示不限
+     */
+    private final long maxDeductCents;
+
+    public PointsPolicy(@Value("${muying.order.points.points-per-yuan:100}") long pointsPerYuan,
+                        @Value("${muying.order.points.max-deduct-cents:5000}") long maxDeductCents) {
+        if (pointsPerYuan <= 0) {
+            throw new IllegalArgumentException("pointsPerYuan must be positive: " + pointsPerYuan);
+        }
+        this.pointsPerYuan = pointsPerYuan;
+        this.maxDeductCents = maxDeductCents;
+    }
+
+    /**
+     * 积分可抵扣的金额（分），不足一分的部分舍去
+     */
+    public long toCents(long points) {
+        return points * 100L / pointsPerYuan;
+    }
+
+    /**
+     * 抵扣不超过指定金额时最多可使用的积分，同时受单笔上限约束
+     *
+     * @param payableCents 可被积分抵扣的金额（分）
+     */
+    public long maxPoints(long payableCents) {
+        long cents = maxDeductCents > 0 ? Math.min(payableCents, maxDeductCents) : payableCents;
+        return Math.max(0L, cents) * pointsPerYuan / 100L;
+    }
+
+    public long getPointsPerYuan() {
+        return pointsPerYuan;
+    }
+
+    public long getMaxDeductCents() {
+        return maxDeductCents;
+    }
+}
@@ -0,0 +1,225 @@
+package com.muyingmall.order.price;
+
+import java.util.Arrays;
+
+/**
+ * 订单价格计算单
+ *
+ * <p>金额一律为 long 分，订单行按列存放在基本类型数组中。添加订单行、使用优惠券、积分抵扣和分摊
+ * 都只读写数组，不创建对象；调用 {@link #reset()} 后可重复使用同一个计算单。</p>
+ *
+ * <p>优惠券和积分的抵扣金额按订单行金额比例分摊到各行（累计取整），各行分摊之和恰好等于抵扣总额，
+ * 部分退款时按行的实付金额退款。分摊只依赖订单行金额和抵扣总额，退款时可按订单数据重新计算得到相同结果。</p>
+ *
+ * <p>订单行金额与抵扣金额的乘积需在 long 范围内，即商品总额不超过约三千万元。</p>
+ */
+public final class PriceSheet {
+
+    private long[] unitPrices;
+
+    private int[] quantities;
+
+    private long[] lineAmounts;
+
+    private long[] couponShares;
+
+    private long[] pointsShares;
+
+    /**
+     * 积分分摊基数：订单行扣除优惠券后的金额
+     */
+    private long[] weights;
+
+    private int size;
+
+    private long goodsAmount;
+
+    private long shippingFee;
+
+    private long couponDiscount;
+
+    private long pointsDiscount;
+
+    private long pointsUsed;
+
+    public PriceSheet(int capacity) {
+        int initial = Math.max(capacity, 4);
+        this.unitPrices = new long[initial];
+        this.quantities = new int[initial];
+        this.lineAmounts = new long[initial];
+        this.couponShares = new long[initial];
+        this.pointsShares = new long[initial];
+        this.weights = new long[initial];
+    }
+
+    /**
+     * 清空计算单，保留已分配的数组
+     */
+    public PriceSheet reset() {
+        size = 0;
+        goodsAmount = 0L;
+        shippingFee = 0L;
+        couponDiscount = 0L;
+        pointsDiscount = 0L;
+        pointsUsed = 0L;
+        return this;
+    }
+
+    /**
+     * 添加订单行，添加后已使用的优惠券和积分需重新应用
+     *
+     * @param unitPrice 单价（分）
+     * @param quantity  数量
+     * @return 订单行下标
+     */
+    public int addLine(long unitPrice, int quantity) {
+        if (size == unitPrices.length) {
+            int capacity = size * 2;
+            unitPrices = Arrays.copyOf(unitPrices, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            lineAmounts = Arrays.copyOf(lineAmounts, capacity);
+            couponShares = Arrays.copyOf(couponShares, capacity);
+            pointsShares = Arrays.copyOf(pointsShares, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        long amount = Math.multiplyExact(unitPrice, (long) quantity);
+        unitPrices[size] = unitPrice;
+        quantities[size] = quantity;
+        lineAmounts[size] = amount;
+        couponShares[size] = 0L;
+        pointsShares[size] = 0L;
+        goodsAmount = Math.addExact(goodsAmount, amount);
+        return size++;
+    }
+
+    /**
+     * 设置运费（分），运费不参与优惠券和积分抵扣
+     */
+    public PriceSheet setShippingFee(long shippingFee) {
+        this.shippingFee = Math.max(0L, shippingFee);
+        return this;
+    }
+
+    /**
+     * 使用优惠券，抵扣金额不超过商品总额，按订单行金额比例分摊
+     *
+     * @param discount 优惠金额（分）
+     * @return 实际抵扣金额（分）
+     */
+    public long applyCoupon(long discount) {
+        couponDiscount = Math.max(0L, Math.min(discount, goodsAmount));
+        allocate(couponDiscount, lineAmounts, couponShares);
+        return couponDiscount;
+    }
+
+    /**
+     * 使用积分抵扣，抵扣金额不超过使用优惠券后的商品金额和单笔上限，按订单行剩余金额比例分摊
+     *
+     * @param requestedPoints 用户要使用的积分
+     * @param policy          积分抵扣规则
+     * @return 实际使用的积分，可能少于要使用的积分
+     */
+    public long applyPoints(long requestedPoints, PointsPolicy policy) {
+        long payable = goodsAmount - couponDiscount;
+        pointsUsed = Math.max(0L, Math.min(requestedPoints, policy.maxPoints(payable)));
+        pointsDiscount = policy.toCents(pointsUsed);
+        for (int i = 0; i < size; i++) {
+            weights[i] = lineAmounts[i] - couponShares[i];
+        }
+        allocate(pointsDiscount, weights, pointsShares);
+        return pointsUsed;
+    }
+
+    /**
+     * 按权重分摊金额（累计取整）：第 i 行分摊 floor(前 i 行累计权重 * 金额 / 总权重) 减去前 i-1 行的值，
+     * 各行分摊之和恰好等于金额，与按比例的精确值相差不到一分，每行只做一次除法
+     */
+    private void allocate(long amount, long[] basis, long[] shares) {
+        long total = 0L;
+        for (int i = 0; i < size; i++) {
+            total += basis[i];
+        }
+        if (amount <= 0L || total <= 0L) {
+            Arrays.fill(shares, 0, size, 0L);
+            return;
+        }
+        long cumulative = 0L;
+        long allocated = 0L;
+        for (int i = 0; i < size; i++) {
+            cumulative += basis[i];
+            long upTo = Math.multiplyExact(cumulative, amount) / total;
+            shares[i] = upTo - allocated;
+            allocated = upTo;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long unitPriceAt(int index) {
+        return unitPrices[index];
+    }
+
+    public int quantityAt(int index) {
+        return quantities[index];
+    }
+
+    /**
+     * 订单行金额（分）
+     */
+    public long lineAmountAt(int index) {
+        return lineAmounts[index];
+    }
+
+    /**
+     * 订单行分摊的优惠券金额（分）
+     */
+    public long couponShareAt(int index) {
+        return couponShares[index];
+    }
+
+    /**
+     * 订单行分摊的积分抵扣金额（分）
+     */
+    public long pointsShareAt(int index) {
+        return pointsShares[index];
+    }
+
+    /**
+     * 订单行实付金额（分），不含运费
+     */
+    public long linePayableAt(int index) {
+        return lineAmounts[index] - couponShares[index] - pointsShares[index];
+    }
+
+    /**
+     * 商品总额（分）
+     */
+    public long getGoodsAmount() {
+        return goodsAmount;
+    }
+
+    public long getShippingFee() {
+        return shippingFee;
+    }
+
+    public long getCouponDiscount() {
+        return couponDiscount;
+    }
+
+    public long getPointsDiscount() {
+        return pointsDiscount;
+    }
+
+    public long getPointsUsed() {
+        return pointsUsed;
+    }
+
+    /**
+     * 实付金额（分）：商品总额 + 运费 - 优惠券 - 积分抵扣
+     */
+    public long getPayable() {
+        return goodsAmount + shippingFee - couponDiscount - pointsDiscount;
+    }
+}
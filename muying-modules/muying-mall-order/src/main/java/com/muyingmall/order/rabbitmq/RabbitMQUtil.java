@@ -1,5 +1,6 @@
 package com.muyingmall.order.rabbitmq;
 
+import com.muyingmall.order.outbox.OrderOutboxWriter;
 import com.muyingmall.order.rabbitmq.message.BaseMessage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
@@ -24,53 +25,26 @@ public class RabbitMQUtil {
     @Autowired(required = false)
     private RabbitTemplate rabbitTemplate;
     
+    @Autowired
+    private OrderOutboxWriter orderOutboxWriter;
+    
     /**
      * 发送消息
+     * 消息写入订单消息发件箱，随当前事务提交后由投递任务批量发布
      * 
      * @param exchange 交换机
      * @param routingKey 路由键
      * @param message 消息对象
      */
     public void sendMessage(String exchange, String routingKey, BaseMessage message) {
-        if (rabbitTemplate == null) {
-            log.warn("RabbitTemplate未配置，消息发送失败");
-            return;
-        }
-        
         try {
-            // 设置消息ID
-            if (message.getMessageId() == null) {
-                message.setMessageId(UUID.randomUUID().toString());
-            }
-            
-            // 设置时间戳
-            if (message.getTimestamp() == null) {
-                message.setTimestamp(new java.util.Date());
-            }
-            
-            // 创建关联数据
-            CorrelationData correlationData = new CorrelationData(message.getMessageId());
+            orderOutboxWriter.enqueue(exchange, routingKey, message);
             
-            // 发送消息
-            rabbitTemplate.convertAndSend(exchange, routingKey, message, msg -> {
-                // 设置消息持久化
-                msg.getMessageProperties().setDeliveryMode(MessageDeliveryMode.PERSISTENT);
-                msg.getMessageProperties().setMessageId(message.getMessageId());
-                msg.getMessageProperties().setCorrelationId(message.getMessageId());
-                
-                // 设置消息优先级（0-9）
-                if (message.getMetadata("priority") != null) {
-                    msg.getMessageProperties().setPriority((Integer) message.getMetadata("priority"));
-                }
-                
-                return msg;
-            }, correlationData);
-            
-            log.info("消息发送成功 - Exchange: {}, RoutingKey: {}, MessageId: {}", 
+            log.info("消息已写入发件箱 - Exchange: {}, RoutingKey: {}, MessageId: {}", 
                     exchange, routingKey, message.getMessageId());
             
         } catch (Exception e) {
-            log.error("消息发送失败 - Exchange: {}, RoutingKey: {}, Message: {}", 
+            log.error("消息写入发件箱失败 - Exchange: {}, RoutingKey: {}, Message: {}", 
                     exchange, routingKey, message, e);
             throw new RuntimeException("消息发送失败", e);
         }
@@ -138,6 +112,7 @@ public class RabbitMQUtil {
     
     /**
      * 批量发送消息
+     * 整批消息一次写入发件箱，由投递任务批量发布
      * 
      * @param exchange 交换机
      * @param routingKey 路由键
@@ -148,8 +123,16 @@ public class RabbitMQUtil {
             return;
         }
         
-        for (BaseMessage message : messages) {
-            sendMessage(exchange, routingKey, message);
+        try {
+            orderOutboxWriter.enqueueBatch(exchange, routingKey, messages);
+            
+            log.info("批量消息已写入发件箱 - Exchange: {}, RoutingKey: {}, Count: {}", 
+                    exchange, routingKey, messages.size());
+            
+        } catch (Exception e) {
+            log.error("批量消息写入发件箱失败 - Exchange: {}, RoutingKey: {}, Count: {}", 
+                    exchange, routingKey, messages.size(), e);
+            throw new RuntimeException("批量消息发送失败", e);
         }
     }
     
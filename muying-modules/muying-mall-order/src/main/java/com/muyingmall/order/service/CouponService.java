@@ -2,11 +2,15 @@ package com.muyingmall.order.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.muyingmall.order.coupon.rule.RuleCart;
+import com.muyingmall.order.dto.CouponSolution;
 import com.muyingmall.order.entity.Coupon;
 import com.muyingmall.order.entity.CouponBatch;
+import com.muyingmall.order.entity.CouponIssueJob;
 import com.muyingmall.order.entity.CouponRule;
 import com.muyingmall.order.entity.UserCoupon;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
 
@@ -50,6 +54,25 @@ public interface CouponService extends IService<Coupon> {
      * @return 可用优惠券列表
      */
     List<UserCoupon> getOrderCoupons(Integer userId, Double amount, List<Integer> productIds);
+
+    /**
+     * 获取订单最优用券方案（单张或可叠加组合）
+     *
+     * @param userId     用户ID
+     * @param amount     订单金额
+     * @param productIds 商品ID列表
+     * @return 最优用券方案
+     */
+    CouponSolution getBestCoupons(Integer userId, Double amount, List<Integer> productIds);
+
+    /**
+     * 计算优惠券对购物车的优惠金额，关联了优惠规则时按规则求值
+     *
+     * @param coupon 优惠券
+     * @param cart   购物车
+     * @return 优惠金额，不满足使用条件时为0
+     */
+    BigDecimal calculateDiscount(Coupon coupon, RuleCart cart);
     
     /**
      * 管理员分页查询优惠券列表
@@ -122,6 +145,41 @@ public interface CouponService extends IService<Coupon> {
      */
     CouponBatch getCouponBatchDetail(Integer batchId);
 
+    /**
+     * 创建批次批量发放任务，由 {@link com.muyingmall.order.coupon.CouponIssueJobRunner} 异步分块执行
+     *
+     * @param batchId    批次ID
+     * @param couponId   发放的优惠券ID
+     * @param userStatus 目标用户状态（0-禁用，1-正常），为空时不限
+     * @param maxUserId  目标用户ID上限（含），为空时不限
+     * @return 任务
+     */
+    CouponIssueJob createIssueJob(Integer batchId, Long couponId, Integer userStatus, Long maxUserId);
+
+    /**
+     * 查询批量发放任务，含进度和发放速度
+     *
+     * @param jobId 任务ID
+     * @return 任务，不存在时为null
+     */
+    CouponIssueJob getIssueJob(Long jobId);
+
+    /**
+     * 暂停批量发放任务，执行中的块回滚，检查点保留
+     *
+     * @param jobId 任务ID
+     * @return 是否成功
+     */
+    boolean pauseIssueJob(Long jobId);
+
+    /**
+     * 恢复已暂停的批量发放任务，从检查点继续
+     *
+     * @param jobId 任务ID
+     * @return 是否成功
+     */
+    boolean resumeIssueJob(Long jobId);
+
     /**
      * 分页查询优惠券规则
      *
@@ -2,6 +2,7 @@ package com.muyingmall.order.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.muyingmall.order.dto.OrderHistoryPage;
 import com.muyingmall.order.entity.Order;
 
 import java.math.BigDecimal;
@@ -70,6 +71,17 @@ public interface OrderService extends IService<Order> {
      */
     Page<Order> getUserOrders(Integer userId, int page, int size, String status);
 
+    /**
+     * 游标分页获取用户订单历史，按 (创建时间, 订单ID) 倒序定位，不统计总数
+     * 
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标，为空时查询第一页
+     * @param size   每页大小
+     * @param status 订单状态，可为null
+     * @return 订单历史分页
+     */
+    OrderHistoryPage getUserOrderHistory(Integer userId, String cursor, int size, String status);
+
     /**
      * 取消订单
      * 
@@ -79,6 +91,29 @@ public interface OrderService extends IService<Order> {
      */
     boolean cancelOrder(Integer orderId, Integer userId);
 
+    /**
+     * 取消超时未支付的订单（由订单超时调度触发）
+     * 
+     * @param orderId 订单ID
+     * @return 是否取消成功，订单不存在或已不是待付款状态时返回false
+     */
+    boolean cancelTimeoutOrder(Integer orderId);
+
+    /**
+     * 状态已批量更新为已取消的订单的补偿：取消超时任务、恢复库存、释放积分、退回优惠券、清除缓存；
+     * 状态变更通知由批量转换发送，这里不重复发送。需在更新状态的同一事务中调用
+     *
+     * @param orders 已取消的订单，需包含订单ID、订单号、用户ID和优惠券ID
+     */
+    void compensateCancelledOrders(List<Order> orders);
+
+    /**
+     * 状态已批量更新为已支付的订单：事务提交后确认下单时在商品服务预占的库存。需在更新状态的同一事务中调用
+     *
+     * @param orders 已支付的订单，需包含订单ID和订单号
+     */
+    void confirmPaidOrders(List<Order> orders);
+
     /**
      * 支付订单
      * 
@@ -5,6 +5,8 @@ import com.muyingmall.common.enums.OrderStatus;
 import com.muyingmall.statemachine.OrderEvent;
 import com.muyingmall.statemachine.OrderStateContext;
 
+import java.util.List;
+
 /**
  * 订单状态服务接口
  */
@@ -40,6 +42,18 @@ public interface OrderStateService {
      */
     Order sendEvent(OrderStateContext context);
 
+    /**
+     * 批量订单状态转换
+     * 只转换订单状态并记录日志，取消等事件涉及的库存、优惠券回退仍由订单服务处理
+     *
+     * @param orderIds 订单ID列表
+     * @param event    事件
+     * @param operator 操作者
+     * @param reason   原因
+     * @return 成功转换的订单ID列表，当前状态不支持该事件的订单会被跳过
+     */
+    List<Integer> sendEvents(List<Integer> orderIds, OrderEvent event, String operator, String reason);
+
     /**
      * 判断订单状态是否可以转换
      *
@@ -2,6 +2,9 @@ package com.muyingmall.order.service;
 
 import com.muyingmall.order.entity.Product;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * 商品服务接口（订单服务中的简化版本）
  */
@@ -14,6 +17,13 @@ public interface ProductService {
      */
     Product getById(Long productId);
 
+    /**
+     * 批量获取商品信息（一次远程调用）
+     * @param productIds 商品ID集合
+     * @return 商品ID到商品信息的映射，不存在的商品不包含在结果中
+     */
+    Map<Long, Product> getByIds(Collection<Long> productIds);
+
     /**
      * 检查商品库存
      * @param productId 商品ID
@@ -37,6 +47,45 @@ public interface ProductService {
      * @return 是否恢复成功
      */
     boolean restoreStock(Long productId, Integer quantity);
+
+    /**
+     * 按订单批量扣减库存（一次远程调用，任一商品库存不足则整体失败，同一订单重复调用只扣减一次）
+     * @param orderNo 订单号
+     * @param productQuantities 商品ID到扣减数量的映射
+     * @return 是否全部扣减成功
+     */
+    boolean reduceOrderStock(String orderNo, Map<Long, Integer> productQuantities);
+
+    /**
+     * 恢复订单扣减的库存（一次远程调用，按订单号幂等，订单未扣减过库存时不做任何变更）
+     * @param orderNo 订单号
+     * @return 是否恢复成功
+     */
+    boolean restoreOrderStock(String orderNo);
+
+    /**
+     * 按订单预占库存（一次远程调用，任一商品可用库存不足则整体失败，同一订单重复调用只预占一次），
+     * 支付后确认，取消时释放，到期未确认由商品服务释放
+     * @param orderNo 订单号
+     * @param productQuantities 商品ID到预占数量的映射
+     * @param ttlSeconds 预占有效期（秒），需长于订单支付超时
+     * @return 是否全部预占成功
+     */
+    boolean reserveStock(String orderNo, Map<Long, Integer> productQuantities, int ttlSeconds);
+
+    /**
+     * 确认订单的库存预占（支付成功后调用，按订单号幂等，预占已过期或已释放时失败）
+     * @param orderNo 订单号
+     * @return 是否确认成功
+     */
+    boolean confirmReservation(String orderNo);
+
+    /**
+     * 释放订单未确认的库存预占（未支付订单取消或下单回滚时调用，按订单号幂等）
+     * @param orderNo 订单号
+     * @return 是否释放成功
+     */
+    boolean releaseReservation(String orderNo);
     
     /**
      * 更新商品信息（兼容方法）
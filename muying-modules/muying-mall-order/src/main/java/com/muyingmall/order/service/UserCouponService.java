@@ -34,6 +34,14 @@ public interface UserCouponService extends IService<UserCoupon> {
      */
     boolean useCoupon(Long couponId, Long orderId);
 
+    /**
+     * 退回订单使用的优惠券（订单取消时调用），只退回该订单使用中的优惠券，重复调用不会重复退回
+     * @param couponId 优惠券ID
+     * @param orderId 订单ID
+     * @return 是否退回
+     */
+    boolean returnCoupon(Long couponId, Long orderId);
+
     /**
      * 计算优惠券折扣金额
      * @param userCoupon 用户优惠券
@@ -1,12 +1,10 @@
 package com.muyingmall.order.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.muyingmall.common.CacheConstants;
 import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.order.cart.CartStore;
 import com.muyingmall.order.dto.CartAddDTO;
 import com.muyingmall.order.dto.CartUpdateDTO;
 import com.muyingmall.order.entity.Cart;
@@ -14,20 +12,16 @@ import com.muyingmall.order.entity.Product;
 import com.muyingmall.order.mapper.CartMapper;
 import com.muyingmall.order.service.CartService;
 import com.muyingmall.order.service.ProductService;
-import com.muyingmall.common.utils.RedisUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
 /**
  * 购物车服务实现类
+ * 购物车以 {@link CartStore} 中的 Redis HASH 为主存储，新增项同步写库，其余修改由回写任务批量持久化
  */
 @Service
 @RequiredArgsConstructor
@@ -36,11 +30,9 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements Ca
 
     private final ProductService productService;
     private final ObjectMapper objectMapper;
-    private final RedisUtil redisUtil;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final CartStore cartStore;
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Cart addCart(Integer userId, CartAddDTO cartAddDTO) {
         // 查询商品是否存在
         Product product = productService.getById(cartAddDTO.getProductId().longValue());
@@ -73,41 +65,28 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements Ca
             }
         }
 
-        // 查询购物车是否已存在相同商品规格
-        LambdaQueryWrapper<Cart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Cart::getUserId, userId)
-                .eq(Cart::getProductId, cartAddDTO.getProductId())
-                .eq(Cart::getSpecsHash, specsHash);
-        Cart existCart = getOne(queryWrapper);
-
-        if (existCart != null) {
-            // 购物车已存在相同商品规格，更新数量
-            existCart.setQuantity(existCart.getQuantity() + cartAddDTO.getQuantity());
-            existCart.setSelected(cartAddDTO.getSelected());
-            updateById(existCart);
-            
-            // 清除购物车缓存
-            clearCartCache(userId);
-            
-            return existCart;
-        } else {
-            // 购物车不存在相同商品规格，创建新的购物车项
-            Cart cart = new Cart();
-            cart.setUserId(userId);
-            cart.setProductId(cartAddDTO.getProductId());
-            cart.setQuantity(cartAddDTO.getQuantity());
-            cart.setSelected(cartAddDTO.getSelected());
-            cart.setSpecs(specsJson);
-            cart.setSpecsHash(specsHash);
-            cart.setPriceSnapshot(product.getPriceNew()); // 记录当前价格
-            cart.setStatus(1); // 有效
-            save(cart);
-            
-            // 清除购物车缓存
-            clearCartCache(userId);
-            
-            return cart;
+        // 购物车已存在相同商品规格时直接累加数量
+        int selected = cartAddDTO.getSelected() != null ? cartAddDTO.getSelected() : 1;
+        Integer existCartId = cartStore.incrementExisting(userId, cartAddDTO.getProductId(), specsHash,
+                cartAddDTO.getQuantity(), selected);
+        if (existCartId != null) {
+            return cartStore.get(userId, existCartId);
         }
+
+        // 购物车不存在相同商品规格，创建新的购物车项，同步写库以获得购物车ID
+        Cart cart = new Cart();
+        cart.setUserId(userId);
+        cart.setProductId(cartAddDTO.getProductId());
+        cart.setQuantity(cartAddDTO.getQuantity());
+        cart.setSelected(selected);
+        cart.setSpecs(specsJson);
+        cart.setSpecsHash(specsHash);
+        cart.setPriceSnapshot(product.getPriceNew()); // 记录当前价格
+        cart.setStatus(1); // 有效
+        save(cart);
+
+        cartStore.putNew(cart);
+        return cart;
     }
 
     @Override
@@ -115,43 +94,13 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements Ca
         if (userId == null) {
             return null;
         }
-        
-        // 构建缓存键
-        String cacheKey = CacheConstants.USER_CART_KEY + userId;
-        
-        // 查询缓存
-        Object cacheResult = redisUtil.get(cacheKey);
-        if (cacheResult != null) {
-            log.debug("从缓存中获取用户购物车: userId={}", userId);
-            return (List<Cart>) cacheResult;
-        }
-        
-        // 缓存未命中，从数据库查询
-        log.debug("缓存未命中，从数据库查询用户购物车: userId={}", userId);
-        LambdaQueryWrapper<Cart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Cart::getUserId, userId)
-                .eq(Cart::getStatus, 1) // 只查询有效的购物车项
-                .orderByDesc(Cart::getUpdateTime);
-        List<Cart> cartList = list(queryWrapper);
-        
-        // 缓存结果
-        if (cartList != null && !cartList.isEmpty()) {
-            redisUtil.set(cacheKey, cartList, CacheConstants.CART_EXPIRE_TIME);
-            log.debug("将用户购物车缓存到Redis: userId={}", userId);
-        }
-        
-        return cartList;
+        return cartStore.getAll(userId);
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Cart updateCart(Integer userId, CartUpdateDTO cartUpdateDTO) {
         // 查询购物车项是否存在
-        LambdaQueryWrapper<Cart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Cart::getCartId, cartUpdateDTO.getCartId())
-                .eq(Cart::getUserId, userId);
-        Cart cart = getOne(queryWrapper);
-
+        Cart cart = cartStore.get(userId, cartUpdateDTO.getCartId());
         if (cart == null) {
             return null;
         }
@@ -169,107 +118,42 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements Ca
                 throw new BusinessException("库存不足");
             }
 
+            if (!cartStore.setQuantity(userId, cart.getCartId(), cartUpdateDTO.getQuantity())) {
+                return null;
+            }
             cart.setQuantity(cartUpdateDTO.getQuantity());
         }
 
         if (cartUpdateDTO.getSelected() != null) {
+            cartStore.setSelected(userId, cart.getCartId(), cartUpdateDTO.getSelected() == 1);
             cart.setSelected(cartUpdateDTO.getSelected());
         }
 
-        updateById(cart);
-        
-        // 清除购物车缓存
-        clearCartCache(userId);
-        
         return cart;
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public boolean deleteCart(Integer userId, Integer cartId) {
-        LambdaQueryWrapper<Cart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Cart::getCartId, cartId)
-                .eq(Cart::getUserId, userId);
-        boolean result = remove(queryWrapper);
-        
-        // 清除购物车缓存
-        if (result) {
-            clearCartCache(userId);
-        }
-        
-        return result;
+        return cartStore.remove(userId, List.of(cartId)) > 0;
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void clearCart(Integer userId) {
-        LambdaQueryWrapper<Cart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Cart::getUserId, userId);
-        boolean result = remove(queryWrapper);
-        
-        // 清除购物车缓存
-        if (result) {
-            clearCartCache(userId);
-        }
+        cartStore.remove(userId, null);
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void selectAllCarts(Integer userId, Boolean selected) {
-        LambdaUpdateWrapper<Cart> updateWrapper = new LambdaUpdateWrapper<>();
-        updateWrapper.eq(Cart::getUserId, userId)
-                .set(Cart::getSelected, selected);
-        boolean result = update(updateWrapper);
-        
-        // 清除购物车缓存
-        if (result) {
-            clearCartCache(userId);
-        }
+        cartStore.setSelected(userId, null, Boolean.TRUE.equals(selected));
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void selectCartItem(Integer userId, Integer cartId, Boolean selected) {
-        LambdaUpdateWrapper<Cart> updateWrapper = new LambdaUpdateWrapper<>();
-        updateWrapper.eq(Cart::getUserId, userId)
-                .eq(Cart::getCartId, cartId)
-                .set(Cart::getSelected, selected);
-        boolean result = update(updateWrapper);
-        
-        // 清除购物车缓存
-        if (result) {
-            clearCartCache(userId);
-        }
-    }
-    
-    /**
-     * 清除购物车相关缓存
-     *
-     * @param userId 用户ID
-     */
-    private void clearCartCache(Integer userId) {
-        if (userId == null) {
-            return;
-        }
-        
-        // 清除用户购物车缓存
-        String cartCacheKey = CacheConstants.USER_CART_KEY + userId;
-        redisUtil.delete(cartCacheKey);
-        log.debug("清除用户购物车缓存: userId={}", userId);
-        
-        // 清除购物车数量缓存
-        String cartCountCacheKey = CacheConstants.CART_COUNT_KEY + userId;
-        redisUtil.delete(cartCountCacheKey);
-        log.debug("清除用户购物车数量缓存: userId={}", userId);
-        
-        // 清除购物车选中项缓存
-        String cartSelectedCacheKey = CacheConstants.CART_SELECTED_KEY + userId;
-        redisUtil.delete(cartSelectedCacheKey);
-        log.debug("清除用户购物车选中项缓存: userId={}", userId);
+        cartStore.setSelected(userId, cartId, Boolean.TRUE.equals(selected));
     }
 
     /**
-     * 获取用户购物车商品总数
+     * 获取用户购物车商品总数，只读取购物车 HASH 中的计数字段
      *
      * @param userId 用户ID
      * @return 购物车商品总数
@@ -279,46 +163,11 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements Ca
         if (userId == null) {
             return 0;
         }
-
-        // 构建缓存键
-        String cacheKey = CacheConstants.CART_COUNT_KEY + userId;
-        
-        // 查询缓存
-        Object cacheResult = redisUtil.get(cacheKey);
-        if (cacheResult != null) {
-            log.debug("从缓存中获取用户购物车商品数量: userId={}", userId);
-            return (int) cacheResult;
-        }
-        
-        // 缓存未命中，从数据库查询
-        log.debug("缓存未命中，从数据库查询用户购物车商品数量: userId={}", userId);
-        
-        // 查询购物车商品总数
-        LambdaQueryWrapper<Cart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Cart::getUserId, userId)
-                .eq(Cart::getStatus, 1); // 只计算有效的购物车项
-        
-        // 获取购物车列表
-        List<Cart> cartList = list(queryWrapper);
-        
-        // 计算商品总数
-        int totalCount = 0;
-        if (cartList != null && !cartList.isEmpty()) {
-            for (Cart cart : cartList) {
-                totalCount += cart.getQuantity();
-            }
-        }
-        
-        // 缓存结果
-        redisUtil.set(cacheKey, totalCount, CacheConstants.CART_COUNT_EXPIRE_TIME);
-        log.debug("将用户购物车商品数量缓存到Redis: userId={}, count={}, 过期时间={}秒", 
-                userId, totalCount, CacheConstants.CART_COUNT_EXPIRE_TIME);
-        
-        return totalCount;
+        return cartStore.getCount(userId);
     }
-    
+
     /**
-     * 获取用户购物车中选中的商品
+     * 获取用户购物车中选中的商品，只传输和反序列化选中项
      *
      * @param userId 用户ID
      * @return 选中的购物车项列表
@@ -328,35 +177,6 @@ public class CartServiceImpl extends ServiceImpl<CartMapper, Cart> implements Ca
         if (userId == null) {
             return null;
         }
-        
-        // 构建缓存键
-        String cacheKey = CacheConstants.CART_SELECTED_KEY + userId;
-        
-        // 查询缓存
-        Object cacheResult = redisUtil.get(cacheKey);
-        if (cacheResult != null) {
-            log.debug("从缓存中获取用户购物车选中项: userId={}", userId);
-            return (List<Cart>) cacheResult;
-        }
-        
-        // 缓存未命中，从数据库查询
-        log.debug("缓存未命中，从数据库查询用户购物车选中项: userId={}", userId);
-        
-        // 查询选中的购物车项
-        LambdaQueryWrapper<Cart> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(Cart::getUserId, userId)
-                .eq(Cart::getStatus, 1) // 只查询有效的购物车项
-                .eq(Cart::getSelected, 1) // 只查询选中的购物车项
-                .orderByDesc(Cart::getUpdateTime);
-        
-        List<Cart> selectedCarts = list(queryWrapper);
-        
-        // 缓存结果
-        if (selectedCarts != null && !selectedCarts.isEmpty()) {
-            redisUtil.set(cacheKey, selectedCarts, CacheConstants.CART_EXPIRE_TIME);
-            log.debug("将用户购物车选中项缓存到Redis: userId={}, count={}", userId, selectedCarts.size());
-        }
-        
-        return selectedCarts;
+        return cartStore.getSelected(userId);
     }
-}
\ No newline at end of file
+}
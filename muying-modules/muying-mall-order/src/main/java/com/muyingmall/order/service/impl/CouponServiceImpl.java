@@ -3,26 +3,46 @@ package com.muyingmall.order.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.order.coupon.CompiledCoupon;
+import com.muyingmall.order.coupon.CouponClaimEngine;
+import com.muyingmall.order.coupon.CouponIndex;
+import com.muyingmall.order.coupon.CouponSolver;
+import com.muyingmall.order.coupon.rule.CompiledRule;
+import com.muyingmall.order.coupon.rule.CouponRuleCache;
+import com.muyingmall.order.coupon.rule.RuleCart;
+import com.muyingmall.order.dto.CouponSolution;
 import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.entity.CouponIssueJob;
+import com.muyingmall.order.entity.Product;
 import com.muyingmall.order.entity.UserCoupon;
+import com.muyingmall.order.mapper.CouponBatchMapper;
+import com.muyingmall.order.mapper.CouponIssueJobMapper;
 import com.muyingmall.order.mapper.CouponMapper;
+import com.muyingmall.order.mapper.CouponRuleMapper;
 import com.muyingmall.order.mapper.UserCouponMapper;
+import com.muyingmall.order.mapper.UserMapper;
 import com.muyingmall.order.service.CouponService;
+import com.muyingmall.order.service.ProductService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.muyingmall.order.entity.CouponBatch;
 import com.muyingmall.order.entity.CouponRule;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 优惠券服务实现类
@@ -33,6 +53,14 @@ import java.util.Map;
 public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> implements CouponService {
 
     private final UserCouponMapper userCouponMapper;
+    private final CouponClaimEngine couponClaimEngine;
+    private final CouponIndex couponIndex;
+    private final CouponRuleMapper couponRuleMapper;
+    private final CouponRuleCache couponRuleCache;
+    private final ProductService productService;
+    private final CouponBatchMapper couponBatchMapper;
+    private final CouponIssueJobMapper couponIssueJobMapper;
+    private final UserMapper userMapper;
 
     @Override
     public List<Coupon> getAvailableCoupons(Integer userId) {
@@ -69,15 +97,9 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
         LambdaQueryWrapper<UserCoupon> queryWrapper = new LambdaQueryWrapper<>();
         queryWrapper.eq(UserCoupon::getUserId, userId);
 
-        // 根据状态筛选
-        if ("UNUSED".equals(status)) {
-            queryWrapper.eq(UserCoupon::getStatus, "UNUSED")
-                    .gt(UserCoupon::getExpireTime, LocalDateTime.now());
-        } else if ("USED".equals(status)) {
-            queryWrapper.eq(UserCoupon::getStatus, "USED");
-        } else if ("EXPIRED".equals(status)) {
-            queryWrapper.eq(UserCoupon::getStatus, "UNUSED")
-                    .le(UserCoupon::getExpireTime, LocalDateTime.now());
+        // 根据状态筛选，过期状态由 UserCouponExpirer 定时维护
+        if ("UNUSED".equals(status) || "USED".equals(status) || "EXPIRED".equals(status)) {
+            queryWrapper.eq(UserCoupon::getStatus, status);
         }
 
         queryWrapper.orderByDesc(UserCoupon::getCreateTime);
@@ -108,138 +130,126 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
         return userCoupons;
     }
 
+    /**
+     * 领取优惠券，库存和每人限领数由 Redis Lua 脚本原子校验，领取记录异步批量落库
+     */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public boolean receiveCoupon(Integer userId, Long couponId) {
-        // 查询优惠券是否存在
-        Coupon coupon = getById(couponId);
-        if (coupon == null) {
-            throw new BusinessException("优惠券不存在");
-        }
-
-        // 检查优惠券是否可用
-        if (!"ACTIVE".equals(coupon.getStatus())) {
-            throw new BusinessException("优惠券已下架");
-        }
-
-        // 检查优惠券是否过期
-        if (coupon.getEndTime().isBefore(LocalDateTime.now())) {
-            throw new BusinessException("优惠券已过期");
-        }
-
-        // 检查是否已达到发放数量上限
-        if (coupon.getTotalQuantity() > 0 && coupon.getReceivedQuantity() >= coupon.getTotalQuantity()) {
-            throw new BusinessException("优惠券已被领完");
-        }
-
-        // 检查用户是否已领取过该优惠券
-        LambdaQueryWrapper<UserCoupon> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(UserCoupon::getUserId, userId)
-                .eq(UserCoupon::getCouponId, couponId);
-
-        long count = userCouponMapper.selectCount(queryWrapper);
-        if (count >= coupon.getUserLimit()) {
-            throw new BusinessException("您已领取过该优惠券");
-        }
-
-        // 创建用户优惠券记录
-        UserCoupon userCoupon = new UserCoupon();
-        userCoupon.setUserId(userId.longValue());
-        userCoupon.setCouponId(couponId);
-        userCoupon.setBatchId(coupon.getBatchId());
-        userCoupon.setStatus("UNUSED");
-        userCoupon.setReceiveTime(LocalDateTime.now());
-        userCoupon.setExpireTime(coupon.getEndTime());
-        userCoupon.setCreateTime(LocalDateTime.now());
-        userCoupon.setUpdateTime(LocalDateTime.now());
-
-        userCouponMapper.insert(userCoupon);
-
-        // 更新优惠券领取数量
-        coupon.setReceivedQuantity(coupon.getReceivedQuantity() + 1);
-        updateById(coupon);
-
+        couponClaimEngine.claim(userId, couponId);
         return true;
     }
 
     @Override
     public List<UserCoupon> getOrderCoupons(Integer userId, Double amount, List<Integer> productIds) {
-        // 查询用户未使用的优惠券
-        LambdaQueryWrapper<UserCoupon> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(UserCoupon::getUserId, userId)
-                .eq(UserCoupon::getStatus, "UNUSED")
-                .gt(UserCoupon::getExpireTime, LocalDateTime.now());
-
-        List<UserCoupon> userCoupons = userCouponMapper.selectList(queryWrapper);
+        List<UserCoupon> userCoupons = listUsableUserCoupons(userId);
         if (userCoupons.isEmpty()) {
             return new ArrayList<>();
         }
 
-        // 查询优惠券详情
-        List<Long> couponIds = userCoupons.stream()
-                .map(UserCoupon::getCouponId)
-                .toList();
-
-        LambdaQueryWrapper<Coupon> couponQuery = new LambdaQueryWrapper<>();
-        couponQuery.in(Coupon::getId, couponIds);
+        // 优惠券和优惠规则从缓存中获取，每张优惠券、每条规则只解析一次
+        Map<Long, CompiledCoupon> compiledCoupons = couponIndex.getAll(
+                userCoupons.stream().map(UserCoupon::getCouponId).collect(Collectors.toSet()));
+        Map<Integer, CompiledRule> compiledRules = getCompiledRules(compiledCoupons);
+        long orderAmount = CompiledCoupon.toCents(BigDecimal.valueOf(amount));
+        int[] sortedProductIds = CompiledCoupon.toSortedIds(productIds);
+        RuleCart cart = buildRuleCart(orderAmount, productIds, compiledRules);
 
-        List<Coupon> coupons = list(couponQuery);
-
-        // 筛选符合订单金额条件的优惠券
+        // 筛选符合订单金额条件、商品适用范围和优惠规则的优惠券
         List<UserCoupon> availableCoupons = new ArrayList<>();
-        BigDecimal orderAmount = BigDecimal.valueOf(amount);
-
         for (UserCoupon userCoupon : userCoupons) {
-            coupons.stream()
-                    .filter(c -> c.getId().equals(userCoupon.getCouponId()))
-                    .findFirst()
-                    .ifPresent(coupon -> {
-                        userCoupon.setCoupon(coupon);
-
-                        // 检查最低使用金额
-                        if (orderAmount.compareTo(coupon.getMinSpend()) >= 0) {
-                            // 检查商品适用范围
-                            if (checkProductApplicable(coupon, productIds)) {
-                                availableCoupons.add(userCoupon);
-                            }
-                        }
-                    });
+            CompiledCoupon compiled = compiledCoupons.get(userCoupon.getCouponId());
+            if (compiled == null || !compiled.meetsMinSpend(orderAmount) || !compiled.appliesTo(sortedProductIds)) {
+                continue;
+            }
+            CompiledRule rule = compiled.getRuleId() != null ? compiledRules.get(compiled.getRuleId()) : null;
+            if (rule != null && compiled.discount(cart, rule) <= 0) {
+                continue;
+            }
+            userCoupon.setCoupon(compiled.getCoupon());
+            availableCoupons.add(userCoupon);
         }
 
         // 按优惠券金额从大到小排序
-        availableCoupons.sort((a, b) -> {
-            if (a.getCoupon() instanceof Coupon && b.getCoupon() instanceof Coupon) {
-                return ((Coupon) b.getCoupon()).getValue().compareTo(((Coupon) a.getCoupon()).getValue());
-            }
-            return 0;
-        });
+        availableCoupons.sort(Comparator.comparing(
+                (UserCoupon userCoupon) -> ((Coupon) userCoupon.getCoupon()).getValue(),
+                Comparator.nullsLast(Comparator.reverseOrder())));
 
         return availableCoupons;
     }
 
+    @Override
+    public CouponSolution getBestCoupons(Integer userId, Double amount, List<Integer> productIds) {
+        List<UserCoupon> userCoupons = listUsableUserCoupons(userId);
+        if (userCoupons.isEmpty()) {
+            return new CouponSolution();
+        }
+        Map<Long, CompiledCoupon> compiledCoupons = couponIndex.getAll(
+                userCoupons.stream().map(UserCoupon::getCouponId).collect(Collectors.toSet()));
+        Map<Integer, CompiledRule> compiledRules = getCompiledRules(compiledCoupons);
+        RuleCart cart = buildRuleCart(CompiledCoupon.toCents(BigDecimal.valueOf(amount)), productIds, compiledRules);
+        CouponSolution solution = CouponSolver.solve(userCoupons, compiledCoupons, compiledRules, cart,
+                CompiledCoupon.toSortedIds(productIds));
+        for (UserCoupon userCoupon : solution.getUserCoupons()) {
+            userCoupon.setCoupon(compiledCoupons.get(userCoupon.getCouponId()).getCoupon());
+        }
+        return solution;
+    }
+
+    @Override
+    public BigDecimal calculateDiscount(Coupon coupon, RuleCart cart) {
+        CompiledCoupon compiled = CompiledCoupon.compile(coupon);
+        if (!compiled.isActive() || !compiled.appliesTo(cart.sortedProductIds())) {
+            return BigDecimal.ZERO;
+        }
+        CompiledRule rule = coupon.getRuleId() != null
+                ? couponRuleCache.getAll(List.of(coupon.getRuleId())).get(coupon.getRuleId()) : null;
+        return BigDecimal.valueOf(compiled.discount(cart, rule), 2);
+    }
+
     /**
-     * 检查优惠券是否适用于指定商品
+     * 获取优惠券关联的预编译规则
      */
-    private boolean checkProductApplicable(Coupon coupon, List<Integer> productIds) {
-        // 全场通用，没有商品限制
-        if (coupon.getProductIds() == null || coupon.getProductIds().isEmpty()) {
-            return true;
-        }
+    private Map<Integer, CompiledRule> getCompiledRules(Map<Long, CompiledCoupon> compiledCoupons) {
+        Set<Integer> ruleIds = compiledCoupons.values().stream()
+                .map(CompiledCoupon::getRuleId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        return ruleIds.isEmpty() ? Map.of() : couponRuleCache.getAll(ruleIds);
+    }
 
-        // 商品限制
-        if (productIds != null && !productIds.isEmpty()) {
-            // 解析优惠券适用的商品ID
-            String[] couponProductIds = coupon.getProductIds().split(",");
-            for (String cpId : couponProductIds) {
-                for (Integer pid : productIds) {
-                    if (cpId.equals(String.valueOf(pid))) {
-                        return true; // 只要有一个商品适用即可
-                    }
-                }
+    /**
+     * 构建规则求值用的购物车
+     *
+     * <p>查询可用优惠券时只有订单金额和商品ID，没有规则时不查询商品；有规则时按商品单价、数量1估算明细，
+     * 用于判断分类、品牌等适用范围，订单金额仍以传入的金额为准。下单时按实际购买数量精确计算。</p>
+     */
+    private RuleCart buildRuleCart(long orderAmount, List<Integer> productIds, Map<Integer, CompiledRule> rules) {
+        if (rules.isEmpty() || productIds == null || productIds.isEmpty()) {
+            return RuleCart.ofTotal(orderAmount);
+        }
+        Set<Long> ids = productIds.stream()
+                .filter(Objects::nonNull)
+                .map(Integer::longValue)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<Long, Product> products = productService.getByIds(ids);
+        RuleCart cart = new RuleCart(ids.size());
+        for (Long id : ids) {
+            Product product = products.get(id);
+            if (product != null) {
+                cart.add(product, 1);
             }
         }
+        return cart.setTotalAmount(orderAmount);
+    }
 
-        return false;
+    /**
+     * 查询用户未使用的优惠券，已过期的由 UserCouponExpirer 标记为 EXPIRED
+     */
+    private List<UserCoupon> listUsableUserCoupons(Integer userId) {
+        LambdaQueryWrapper<UserCoupon> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(UserCoupon::getUserId, userId)
+                .eq(UserCoupon::getStatus, "UNUSED");
+        return userCouponMapper.selectList(queryWrapper);
     }
 
     @Override
@@ -276,12 +286,18 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
     @Override
     public boolean updateCoupon(Coupon coupon) {
         coupon.setUpdateTime(LocalDateTime.now());
-        return updateById(coupon);
+        boolean updated = updateById(coupon);
+        couponClaimEngine.evict(coupon.getId());
+        couponIndex.invalidate(coupon.getId());
+        return updated;
     }
 
     @Override
     public boolean deleteCoupon(Long id) {
-        return removeById(id);
+        boolean removed = removeById(id);
+        couponClaimEngine.evict(id);
+        couponIndex.invalidate(id);
+        return removed;
     }
 
     @Override
@@ -293,45 +309,154 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
 
         coupon.setStatus(status);
         coupon.setUpdateTime(LocalDateTime.now());
-        return updateById(coupon);
+        boolean updated = updateById(coupon);
+        couponClaimEngine.evict(id);
+        couponIndex.invalidate(id);
+        return updated;
     }
 
     @Override
     public Page<CouponBatch> listCouponBatches(Integer page, Integer size, String couponName) {
-        // 为简化返回模拟数据，实际项目中应查询数据库
-        Page<CouponBatch> result = new Page<>(page, size, 0);
-        return result;
+        LambdaQueryWrapper<CouponBatch> queryWrapper = new LambdaQueryWrapper<>();
+        if (StringUtils.hasText(couponName)) {
+            queryWrapper.like(CouponBatch::getCouponName, couponName);
+        }
+        queryWrapper.orderByDesc(CouponBatch::getCreateTime);
+        return couponBatchMapper.selectPage(new Page<>(page, size), queryWrapper);
     }
 
     @Override
     public boolean saveCouponBatch(CouponBatch batch) {
-        // 为简化返回成功，实际项目中应保存到数据库
-        return true;
+        batch.setAssignCount(0);
+        batch.setCreateTime(LocalDateTime.now());
+        batch.setUpdateTime(LocalDateTime.now());
+        return couponBatchMapper.insert(batch) > 0;
     }
 
     @Override
     public CouponBatch getCouponBatchDetail(Integer batchId) {
-        // 为简化返回null，实际项目中应查询数据库
-        return null;
+        CouponBatch batch = couponBatchMapper.selectById(batchId);
+        if (batch != null && batch.getRuleId() != null) {
+            batch.setCouponRule(couponRuleMapper.selectById(batch.getRuleId()));
+        }
+        return batch;
+    }
+
+    @Override
+    public CouponIssueJob createIssueJob(Integer batchId, Long couponId, Integer userStatus, Long maxUserId) {
+        if (userStatus != null && userStatus != 0 && userStatus != 1) {
+            throw new BusinessException("目标用户状态无效");
+        }
+        CouponBatch batch = couponBatchMapper.selectById(batchId);
+        if (batch == null) {
+            throw new BusinessException("优惠券批次不存在");
+        }
+        Coupon coupon = getById(couponId);
+        if (coupon == null) {
+            throw new BusinessException("优惠券不存在");
+        }
+        if (!"ACTIVE".equals(coupon.getStatus())) {
+            throw new BusinessException("优惠券已下架");
+        }
+        if (coupon.getEndTime() != null && coupon.getEndTime().isBefore(LocalDateTime.now())) {
+            throw new BusinessException("优惠券已过期");
+        }
+        if (coupon.getRuleId() != null && batch.getRuleId() != null && !coupon.getRuleId().equals(batch.getRuleId())) {
+            throw new BusinessException("优惠券与批次的优惠规则不一致");
+        }
+
+        CouponIssueJob job = new CouponIssueJob();
+        job.setBatchId(batchId);
+        job.setCouponId(couponId);
+        job.setUserStatus(userStatus);
+        job.setMaxUserId(maxUserId);
+        job.setLastUserId(0L);
+        job.setTargetCount(userMapper.countSegment(job.getMaxUserId(), job.getUserStatus()));
+        job.setScannedCount(0L);
+        job.setIssuedCount(0L);
+        job.setSkippedCount(0L);
+        job.setStatus(CouponIssueJob.STATUS_PENDING);
+        job.setCreateTime(LocalDateTime.now());
+        job.setUpdateTime(LocalDateTime.now());
+        couponIssueJobMapper.insert(job);
+        log.info("创建优惠券批量发放任务: jobId={}, batchId={}, couponId={}, targetCount={}",
+                job.getId(), batchId, couponId, job.getTargetCount());
+        return job;
+    }
+
+    @Override
+    public CouponIssueJob getIssueJob(Long jobId) {
+        CouponIssueJob job = couponIssueJobMapper.selectById(jobId);
+        if (job == null) {
+            return null;
+        }
+        long target = job.getTargetCount() != null ? job.getTargetCount() : 0L;
+        long scanned = job.getScannedCount() != null ? job.getScannedCount() : 0L;
+        if (job.getStatus() == CouponIssueJob.STATUS_COMPLETED) {
+            job.setProgress(100.0);
+        } else {
+            job.setProgress(target > 0 ? Math.min(100.0, scanned * 100.0 / target) : 0.0);
+        }
+        if (job.getStartTime() != null) {
+            LocalDateTime end = job.getFinishTime() != null ? job.getFinishTime() : LocalDateTime.now();
+            long seconds = Math.max(1L, Duration.between(job.getStartTime(), end).getSeconds());
+            long issued = job.getIssuedCount() != null ? job.getIssuedCount() : 0L;
+            job.setThroughput((double) issued / seconds);
+        }
+        return job;
+    }
+
+    @Override
+    public boolean pauseIssueJob(Long jobId) {
+        return couponIssueJobMapper.transition(jobId, CouponIssueJob.STATUS_RUNNING,
+                CouponIssueJob.STATUS_PAUSED, null) > 0
+                || couponIssueJobMapper.transition(jobId, CouponIssueJob.STATUS_PENDING,
+                CouponIssueJob.STATUS_PAUSED, null) > 0;
+    }
+
+    @Override
+    public boolean resumeIssueJob(Long jobId) {
+        return couponIssueJobMapper.transition(jobId, CouponIssueJob.STATUS_PAUSED,
+                CouponIssueJob.STATUS_PENDING, null) > 0;
     }
 
     @Override
     public Page<CouponRule> listCouponRules(Integer page, Integer size, String name) {
-        // 为简化返回模拟数据，实际项目中应查询数据库
-        Page<CouponRule> result = new Page<>(page, size, 0);
-        return result;
+        LambdaQueryWrapper<CouponRule> queryWrapper = new LambdaQueryWrapper<>();
+        if (StringUtils.hasText(name)) {
+            queryWrapper.like(CouponRule::getName, name);
+        }
+        queryWrapper.orderByDesc(CouponRule::getUpdateTime);
+        return couponRuleMapper.selectPage(new Page<>(page, size), queryWrapper);
     }
 
     @Override
     public boolean saveCouponRule(CouponRule rule) {
-        // 为简化返回成功，实际项目中应保存到数据库
-        return true;
+        // 保存前编译一次，规则内容无效时直接拒绝
+        couponRuleCache.validate(rule);
+        rule.setCreateTime(LocalDateTime.now());
+        rule.setUpdateTime(LocalDateTime.now());
+        return couponRuleMapper.insert(rule) > 0;
     }
 
     @Override
     public boolean updateCouponRule(CouponRule rule) {
-        // 为简化返回成功，实际项目中应更新数据库
-        return true;
+        CouponRule existing = couponRuleMapper.selectById(rule.getRuleId());
+        if (existing == null) {
+            return false;
+        }
+
+        // 按修改后的完整规则校验，只修改名称时也能通过
+        CouponRule merged = new CouponRule();
+        merged.setRuleId(existing.getRuleId());
+        merged.setType(rule.getType() != null ? rule.getType() : existing.getType());
+        merged.setRuleContent(rule.getRuleContent() != null ? rule.getRuleContent() : existing.getRuleContent());
+        couponRuleCache.validate(merged);
+
+        rule.setUpdateTime(LocalDateTime.now());
+        boolean updated = couponRuleMapper.updateById(rule) > 0;
+        couponRuleCache.invalidate(rule.getRuleId());
+        return updated;
     }
 
     @Override
@@ -353,8 +478,7 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
 
         // 查询已过期的优惠券数量
         LambdaQueryWrapper<UserCoupon> expiredQuery = new LambdaQueryWrapper<>();
-        expiredQuery.eq(UserCoupon::getStatus, "UNUSED")
-                .le(UserCoupon::getExpireTime, LocalDateTime.now());
+        expiredQuery.eq(UserCoupon::getStatus, "EXPIRED");
         long expiredCoupons = userCouponMapper.selectCount(expiredQuery);
 
         stats.put("totalCoupons", totalCoupons);
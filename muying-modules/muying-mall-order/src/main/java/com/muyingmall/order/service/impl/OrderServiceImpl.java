@@ -3,10 +3,10 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.muyingmall.common.CacheConstants;
 import com.muyingmall.common.exception.BusinessException;
 import com.muyingmall.order.dto.OrderCreateDTO;
+import com.muyingmall.order.dto.OrderHistoryPage;
 import com.muyingmall.order.entity.Cart;
 import com.muyingmall.order.entity.Order;
 import com.muyingmall.order.entity.OrderProduct;
@@ -20,11 +20,21 @@ import com.muyingmall.common.enums.OrderStatus;
 import com.muyingmall.common.enums.PaymentStatus;
 import com.muyingmall.event.OrderCompletedEvent;
 import com.muyingmall.event.OrderStatusChangedEvent;
-import com.muyingmall.order.mapper.CartMapper;
+import com.muyingmall.order.archive.OrderArchiveReader;
+import com.muyingmall.order.async.AfterCommitDispatcher;
+import com.muyingmall.order.cart.CartStore;
+import com.muyingmall.order.coupon.rule.RuleCart;
+import com.muyingmall.order.delay.OrderTimeoutScheduler;
 import com.muyingmall.order.mapper.OrderMapper;
 import com.muyingmall.order.mapper.OrderProductMapper;
 import com.muyingmall.order.mapper.UserAddressMapper;
 import com.muyingmall.order.mapper.UserMapper;
+import com.muyingmall.order.points.PointsSaga;
+import com.muyingmall.order.price.Money;
+import com.muyingmall.order.price.PointsPolicy;
+import com.muyingmall.order.price.PriceSheet;
+import com.muyingmall.order.stats.OrderSalesRollup;
+import com.muyingmall.order.stats.OrderStatusCounter;
 import com.muyingmall.order.service.OrderService;
 import com.muyingmall.order.service.PaymentService;
 import com.muyingmall.order.service.ProductService;
@@ -33,26 +43,32 @@ import com.muyingmall.order.service.CouponService;
 import com.muyingmall.order.service.UserCouponService;
 import com.muyingmall.common.util.EnumUtil;
 import com.muyingmall.common.utils.RedisUtil;
+import com.muyingmall.common.redis.id.IdBizTag;
+import com.muyingmall.common.redis.id.IdGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import java.util.stream.Collectors;
-import java.util.Set;
 
 /**
  * 订单服务实现类
@@ -69,9 +85,12 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     private static final String ORDER_STATUS_COMPLETED = "completed"; // 已完成
     private static final String ORDER_STATUS_CANCELLED = "cancelled"; // 已取消
 
+    // 订单历史每页最大数量
+    private static final int MAX_HISTORY_PAGE_SIZE = 50;
+
     private final UserMapper userMapper;
     private final UserAddressMapper addressMapper;
-    private final CartMapper cartMapper;
+    private final CartStore cartStore;
     private final OrderProductMapper orderProductMapper;
     private final ProductService productService;
     private final PaymentService paymentService;
@@ -82,6 +101,20 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     private final ObjectMapper objectMapper;
     private final CouponService couponService;
     private final UserCouponService userCouponService;
+    private final IdGenerator idGenerator;
+    private final OrderTimeoutScheduler orderTimeoutScheduler;
+    private final OrderStatusCounter orderStatusCounter;
+    private final OrderSalesRollup orderSalesRollup;
+    private final OrderArchiveReader orderArchiveReader;
+    private final PointsPolicy pointsPolicy;
+    private final AfterCommitDispatcher afterCommitDispatcher;
+    private final PointsSaga pointsSaga;
+
+    /**
+     * 下单预占库存的有效期（秒），需长于支付超时：未支付订单由超时取消释放预占，商品服务的到期释放只做兜底
+     */
+    @Value("${muying.order.stock.reservation-ttl-seconds:2100}")
+    private int stockReservationTtlSeconds;
 
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -95,7 +128,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
 
         // 校验地址
         UserAddress address = addressMapper.selectById(addressId);
-        if (address == null || !address.getUserId().equals(userId)) {
+        if (address == null || !Long.valueOf(userId).equals(address.getUserId())) {
             throw new BusinessException("收货地址不存在或不属于当前用户");
         }
 
@@ -104,20 +137,14 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
 
         // 如果指定了cartIds，则使用这些ID查询购物车
         if (cartIds != null && !cartIds.isEmpty()) {
-            LambdaQueryWrapper<Cart> cartQueryWrapper = new LambdaQueryWrapper<>();
-            cartQueryWrapper.eq(Cart::getUserId, userId)
-                    .in(Cart::getCartId, cartIds);
-            cartList = cartMapper.selectList(cartQueryWrapper);
+            cartList = cartStore.getByIds(userId, cartIds);
 
             if (cartList.size() != cartIds.size()) {
                 log.warn("部分购物车项不存在，请求数量:{}, 查询到数量:{}", cartIds.size(), cartList.size());
             }
         } else {
             // 否则，获取购物车中已选中的商品
-            LambdaQueryWrapper<Cart> cartQueryWrapper = new LambdaQueryWrapper<>();
-            cartQueryWrapper.eq(Cart::getUserId, userId)
-                    .eq(Cart::getSelected, 1);
-            cartList = cartMapper.selectList(cartQueryWrapper);
+            cartList = cartStore.getSelected(userId);
         }
 
         if (cartList.isEmpty()) {
@@ -148,23 +175,38 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         order.setCreateTime(LocalDateTime.now());
         order.setUpdateTime(LocalDateTime.now());
 
-        // 计算订单总金额
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        List<OrderProduct> orderProducts = new ArrayList<>();
-
+        // 汇总每个商品的购买数量（同一商品可能因规格不同占多条购物车记录）
+        Map<Long, Integer> productQuantities = new LinkedHashMap<>();
         for (Cart cart : cartList) {
-            Product product = productService.getById(cart.getProductId().longValue());
+            productQuantities.merge(cart.getProductId().longValue(), cart.getQuantity(), Integer::sum);
+        }
+
+        // 一次性批量获取商品价格和库存
+        Map<Long, Product> productMap = productService.getByIds(productQuantities.keySet());
+
+        for (Map.Entry<Long, Integer> entry : productQuantities.entrySet()) {
+            Product product = productMap.get(entry.getKey());
             if (product == null) {
-                throw new BusinessException("商品不存在：" + cart.getProductId());
+                throw new BusinessException("商品不存在：" + entry.getKey());
             }
 
-            if (!"上架".equals(product.getProductStatus())) {
+            if (product.getProductStatus() != 1) {
                 throw new BusinessException("商品已下架：" + product.getProductName());
             }
 
-            if (product.getStock() < cart.getQuantity()) {
+            if (product.getStock() == null || product.getStock() < entry.getValue()) {
                 throw new BusinessException("商品库存不足：" + product.getProductName());
             }
+        }
+
+        // 计算订单金额，计算过程以分为单位
+        PriceSheet priceSheet = new PriceSheet(cartList.size());
+        List<OrderProduct> orderProducts = new ArrayList<>(cartList.size());
+        RuleCart ruleCart = new RuleCart(cartList.size());
+        LocalDateTime now = LocalDateTime.now();
+
+        for (Cart cart : cartList) {
+            Product product = productMap.get(cart.getProductId().longValue());
 
             // 创建订单商品项
             OrderProduct orderProduct = new OrderProduct();
@@ -173,29 +215,18 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             orderProduct.setProductImg(product.getProductImg());
             orderProduct.setPrice(product.getPriceNew());
             orderProduct.setQuantity(cart.getQuantity());
-            orderProduct.setCreateTime(LocalDateTime.now());
-            orderProduct.setUpdateTime(LocalDateTime.now());
+            orderProduct.setCreateTime(now);
+            orderProduct.setUpdateTime(now);
             orderProducts.add(orderProduct);
 
-            // 累加金额
-            BigDecimal itemTotal = product.getPriceNew().multiply(new BigDecimal(cart.getQuantity()));
-            totalAmount = totalAmount.add(itemTotal);
+            priceSheet.addLine(Money.toCents(product.getPriceNew()), cart.getQuantity());
+            ruleCart.add(product, cart.getQuantity());
         }
 
-        // 设置订单金额
-        order.setTotalAmount(totalAmount);
-        order.setActualAmount(totalAmount);
-
-        // 设置运费，使用传入的运费参数
-        order.setShippingFee(shippingFee != null ? shippingFee : BigDecimal.ZERO);
-
-        // 如果有运费，将其加入实际支付金额
-        if (shippingFee != null && shippingFee.compareTo(BigDecimal.ZERO) > 0) {
-            order.setActualAmount(order.getActualAmount().add(shippingFee));
-        }
-
-        // 计算优惠金额
-        BigDecimal couponAmount = BigDecimal.ZERO;
+        // 设置订单金额和运费
+        priceSheet.setShippingFee(Money.toCents(shippingFee));
+        order.setTotalAmount(Money.toYuan(priceSheet.getGoodsAmount()));
+        order.setShippingFee(Money.toYuan(priceSheet.getShippingFee()));
 
         // 处理优惠券（如果有）
         if (couponId != null && couponId > 0) {
@@ -206,12 +237,13 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 // 获取优惠券信息
                 Coupon coupon = couponService.getById(userCoupon.getCouponId());
                 if (coupon != null && "ACTIVE".equals(coupon.getStatus())) {
-                    // 验证优惠券是否可用
-                    if (order.getTotalAmount().compareTo(coupon.getMinSpend()) >= 0) {
-                        couponAmount = coupon.getValue();
+                    // 按优惠券面额或关联的优惠规则计算优惠金额，不满足使用条件时为0
+                    long discount = priceSheet.applyCoupon(
+                            Money.toCents(couponService.calculateDiscount(coupon, ruleCart)));
+                    if (discount > 0) {
                         // 记录使用的优惠券
                         order.setCouponId(couponId);
-                        order.setCouponAmount(couponAmount);
+                        order.setCouponAmount(Money.toYuan(discount));
 
                         // 更新优惠券状态
                         userCoupon.setStatus("USED");
@@ -226,16 +258,13 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                             order.setCouponId(couponId); // 保存优惠券ID，后续可根据需要更新
                         }
                     } else {
-                        log.warn("优惠券不可用于此订单，最低消费金额不足: 订单总额={}, 优惠券最低金额={}",
-                                order.getTotalAmount(), coupon.getMinSpend());
+                        log.warn("优惠券不可用于此订单，不满足使用条件: 订单总额={}, 优惠券最低金额={}, 规则ID={}",
+                                order.getTotalAmount(), coupon.getMinSpend(), coupon.getRuleId());
                     }
                 }
             }
         }
 
-        // 计算积分抵扣金额
-        BigDecimal pointsAmount = BigDecimal.ZERO;
-
         // 处理积分抵扣（如果有）
         if (pointsUsed != null && pointsUsed > 0) {
             // 获取用户当前积分
@@ -245,37 +274,20 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 throw new BusinessException("积分不足，当前积分：" + userPoints);
             }
 
-            // 计算积分抵扣金额（每100积分抵扣1元）
-            pointsAmount = new BigDecimal(pointsUsed).divide(new BigDecimal("100"), 2, RoundingMode.DOWN);
+            // 按积分抵扣规则计算，超出单笔上限或订单金额的积分不使用
+            int actualPoints = (int) priceSheet.applyPoints(pointsUsed, pointsPolicy);
+            if (actualPoints > 0) {
+                // 记录使用的积分
+                order.setPointsUsed(actualPoints);
+                order.setPointsDiscount(Money.toYuan(priceSheet.getPointsDiscount()));
 
-            // 限制最大抵扣金额为50元
-            BigDecimal maxDiscount = new BigDecimal("50");
-            if (pointsAmount.compareTo(maxDiscount) > 0) {
-                pointsAmount = maxDiscount;
-                // 重新计算实际使用的积分
-                pointsUsed = 5000; // 最多使用5000积分
+                // 积分在订单保存后预留，事务提交后再向积分服务确认扣减
+                log.info("订单 {} 使用积分 {} 抵扣金额 {}", orderNo, actualPoints, order.getPointsDiscount());
             }
-
-            // 记录使用的积分
-            order.setPointsUsed(pointsUsed);
-            order.setPointsDiscount(pointsAmount);
-
-            // 扣减用户积分
-            boolean deductSuccess = pointsService.deductPoints(userId, pointsUsed, "order", orderNo, "订单抵扣");
-            if (!deductSuccess) {
-                throw new BusinessException("积分扣减失败");
-            }
-
-            log.info("订单 {} 使用积分 {} 抵扣金额 {}", orderNo, pointsUsed, pointsAmount);
         }
 
         // 计算实际支付金额
-        BigDecimal actualAmount = order.getTotalAmount()
-                .add(order.getShippingFee())
-                .subtract(couponAmount)
-                .subtract(pointsAmount);
-        // 确保金额不为负数
-        order.setActualAmount(actualAmount.max(BigDecimal.ZERO));
+        order.setActualAmount(Money.toYuan(priceSheet.getPayable()));
 
         // 保存订单
         save(order);
@@ -307,23 +319,31 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             throw new BusinessException(500, "创建订单失败：订单ID为null");
         }
 
-        // 保存订单商品
+        // 预留抵扣积分，与订单一同提交或回滚
+        if (order.getPointsUsed() != null && order.getPointsUsed() > 0) {
+            pointsSaga.reserve(order.getOrderId(), orderNo, userId, order.getPointsUsed());
+        }
+
+        // 批量保存订单商品
         for (OrderProduct orderProduct : orderProducts) {
             orderProduct.setOrderId(order.getOrderId());
-            orderProductMapper.insert(orderProduct);
         }
+        orderProductMapper.insertBatch(orderProducts);
 
-        // 减少商品库存
-        for (Cart cart : cartList) {
-            productService.update(
-                    new LambdaUpdateWrapper<Product>()
-                            .eq(Product::getProductId, cart.getProductId())
-                            .setSql("stock = stock - " + cart.getQuantity()));
-        }
+        // 批量清空购物车中已购买的商品
+        List<Integer> purchasedCartIds = cartList.stream()
+                .map(Cart::getCartId)
+                .collect(Collectors.toList());
+        // 购物车以 Redis 为主存储，事务提交后再移除，回滚时购物车保持不变
+        afterCommitDispatcher.dispatch("remove-cart", order.getOrderId(),
+                () -> cartStore.remove(userId, purchasedCartIds));
 
-        // 清空购物车中已购买的商品
-        for (Cart cart : cartList) {
-            cartMapper.deleteById(cart.getCartId());
+        // 批量预占商品库存（放在本地写操作之后，任一商品可用库存不足则整体失败并回滚本地事务），支付后确认；
+        // 预占请求超时或后续步骤失败导致回滚时，按订单号释放可能已在商品服务提交的预占
+        afterCommitDispatcher.dispatchAfterRollback("release-stock", order.getOrderId(),
+                () -> releaseStockReservation(orderNo));
+        if (!productService.reserveStock(orderNo, productQuantities, stockReservationTtlSeconds)) {
+            throw new BusinessException("商品库存不足，请刷新购物车后重试");
         }
 
         // 返回结果
@@ -335,7 +355,11 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         result.put("orderNumber", order.getOrderNo());
 
         // 清除用户订单列表缓存
-        clearUserOrderListCache(userId);
+        clearOrderCache(order.getOrderId(), userId);
+
+        // 登记订单支付超时任务，超时未支付将自动取消
+        orderTimeoutScheduler.schedule(order.getOrderId());
+        publishOrderCreatedEvent(order);
 
         // 订单ID获取成功后，处理之前因为订单ID为null而未完成的优惠券状态更新
         if (couponId != null && couponId > 0) {
@@ -375,9 +399,12 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             return cachedOrder;
         }
 
-        // 缓存未命中，从数据库查询
+        // 缓存未命中，从数据库查询，热表没有时再查归档表
         log.debug("缓存未命中，从数据库查询订单详情: orderId={}", orderId);
         Order order = getById(orderId);
+        if (order == null) {
+            order = orderArchiveReader.findById(orderId);
+        }
 
         if (order == null) {
             return null;
@@ -389,10 +416,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         }
 
         // 获取订单商品
-        LambdaQueryWrapper<OrderProduct> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(OrderProduct::getOrderId, orderId);
-        List<OrderProduct> orderProducts = orderProductMapper.selectList(queryWrapper);
-        order.setProducts(orderProducts);
+        attachOrderProducts(Collections.singletonList(order), false);
 
         // 缓存结果
         redisUtil.set(cacheKey, order, CacheConstants.ORDER_EXPIRE_TIME);
@@ -453,40 +477,75 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         log.info("查询到订单总数: {}", orderPage.getTotal());
 
         // 查询订单商品
-        List<Order> orders = orderPage.getRecords();
-        if (!orders.isEmpty()) {
-            List<Integer> orderIds = orders.stream()
-                    .map(Order::getOrderId)
-                    .collect(Collectors.toList());
+        attachOrderProducts(orderPage.getRecords(), true);
 
-            log.info("开始查询订单商品，订单ID: {}", orderIds);
-
-            LambdaQueryWrapper<OrderProduct> productQueryWrapper = new LambdaQueryWrapper<>();
-            productQueryWrapper.in(OrderProduct::getOrderId, orderIds);
-            List<OrderProduct> allOrderProducts = orderProductMapper.selectList(productQueryWrapper);
-
-            log.info("查询到 {} 条订单商品记录", allOrderProducts.size());
-
-            // 为每个订单设置商品
-            for (Order order : orders) {
-                List<OrderProduct> orderProducts = allOrderProducts.stream()
-                        .filter(op -> op.getOrderId().equals(order.getOrderId()))
-                        .peek(this::processOrderProductSpecs)
-                        .collect(Collectors.toList());
+        // 缓存结果
+        redisUtil.set(cacheKey.toString(), orderPage, CacheConstants.ORDER_LIST_EXPIRE_TIME);
+        log.debug("将用户订单列表缓存到Redis: userId={}, page={}, size={}, status={}", userId, page, size, status);
 
-                if (orderProducts.isEmpty()) {
-                    log.warn("订单ID {} 没有关联商品数据", order.getOrderId());
-                }
+        return orderPage;
+    }
 
-                order.setProducts(orderProducts);
+    @Override
+    public OrderHistoryPage getUserOrderHistory(Integer userId, String cursor, int size, String status) {
+        if (userId == null) {
+            return new OrderHistoryPage();
+        }
+        int pageSize = Math.max(1, Math.min(size, MAX_HISTORY_PAGE_SIZE));
+        String normalizedStatus = StringUtils.hasText(status) ? normalizeOrderStatus(status) : null;
+        boolean firstPage = !StringUtils.hasText(cursor);
+
+        // 只缓存每个状态的第一页，后续页按游标定位，查询代价与第一页相同
+        String cacheKey = CacheConstants.USER_ORDER_LIST_KEY + userId + "_history_"
+                + (normalizedStatus != null ? normalizedStatus : "all") + "_size_" + pageSize;
+        if (firstPage) {
+            Object cacheResult = redisUtil.get(cacheKey);
+            if (cacheResult instanceof OrderHistoryPage) {
+                return (OrderHistoryPage) cacheResult;
             }
         }
 
-        // 缓存结果
-        redisUtil.set(cacheKey.toString(), orderPage, CacheConstants.ORDER_LIST_EXPIRE_TIME);
-        log.debug("将用户订单列表缓存到Redis: userId={}, page={}, size={}, status={}", userId, page, size, status);
+        OrderStatus orderStatus = null;
+        if (normalizedStatus != null) {
+            try {
+                orderStatus = OrderStatus.fromCode(normalizedStatus.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new BusinessException("无效的订单状态: " + status);
+            }
+        }
+        HistoryCursor position = firstPage ? null : decodeHistoryCursor(cursor);
 
-        return orderPage;
+        LambdaQueryWrapper<Order> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(Order::getUserId, userId)
+                .eq(orderStatus != null, Order::getStatus, orderStatus);
+        if (position != null) {
+            // (create_time, order_id) < (游标时间, 游标订单ID)
+            queryWrapper.and(w -> w.lt(Order::getCreateTime, position.createTime)
+                    .or(o -> o.eq(Order::getCreateTime, position.createTime)
+                            .lt(Order::getOrderId, position.orderId)));
+        }
+        // 多取一条判断是否还有下一页，不再执行COUNT查询
+        queryWrapper.orderByDesc(Order::getCreateTime, Order::getOrderId)
+                .last("LIMIT " + (pageSize + 1));
+
+        // 先查热表，需要时再合并归档订单
+        List<Order> orders = orderArchiveReader.mergeHistory(userId, orderStatus,
+                position != null ? position.createTime : null, position != null ? position.orderId : null,
+                list(queryWrapper), pageSize + 1);
+        OrderHistoryPage result = new OrderHistoryPage();
+        if (orders.size() > pageSize) {
+            orders = new ArrayList<>(orders.subList(0, pageSize));
+            Order last = orders.get(orders.size() - 1);
+            result.setHasMore(true);
+            result.setNextCursor(encodeHistoryCursor(last.getCreateTime(), last.getOrderId()));
+        }
+        attachOrderProducts(orders, true);
+        result.setList(orders);
+
+        if (firstPage) {
+            redisUtil.set(cacheKey, result, CacheConstants.ORDER_LIST_EXPIRE_TIME);
+        }
+        return result;
     }
 
     @Override
@@ -518,26 +577,126 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         boolean result = updateById(order);
 
         if (result) {
-            // 恢复库存
-            LambdaQueryWrapper<OrderProduct> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(OrderProduct::getOrderId, orderId);
-            List<OrderProduct> orderProducts = orderProductMapper.selectList(queryWrapper);
-
-            for (OrderProduct orderProduct : orderProducts) {
-                productService.update(
-                        new LambdaUpdateWrapper<Product>()
-                                .eq(Product::getProductId, orderProduct.getProductId())
-                                .setSql("stock = stock + " + orderProduct.getQuantity()));
-            }
+            // 订单已取消，不再需要超时检查
+            orderTimeoutScheduler.cancel(orderId);
+            handleOrderCancelled(order, oldStatus);
+        }
 
-            // 清除订单缓存
-            clearOrderCache(orderId, userId);
+        return result;
+    }
 
-            // 发送订单状态变更消息通知
-            sendOrderStatusChangeNotification(order, oldStatus, ORDER_STATUS_CANCELLED);
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean cancelTimeoutOrder(Integer orderId) {
+        Order order = getById(orderId);
+        if (order == null || !OrderStatus.PENDING_PAYMENT.equals(order.getStatus())) {
+            return false;
         }
 
-        return result;
+        String oldStatus = order.getStatus().getCode();
+        LocalDateTime now = LocalDateTime.now();
+
+        // 带状态条件更新，避免与支付回调并发时误取消已支付的订单
+        boolean updated = update(new LambdaUpdateWrapper<Order>()
+                .eq(Order::getOrderId, orderId)
+                .eq(Order::getStatus, OrderStatus.PENDING_PAYMENT)
+                .set(Order::getStatus, OrderStatus.CANCELLED)
+                .set(Order::getCancelTime, now)
+                .set(Order::getUpdateTime, now));
+        if (!updated) {
+            return false;
+        }
+
+        order.setStatus(OrderStatus.CANCELLED);
+        order.setCancelTime(now);
+        order.setUpdateTime(now);
+        // 积分补偿等非超时触发的取消，提交后移除超时任务；回滚时保留，由超时任务兜底
+        afterCommitDispatcher.dispatch("cancel-timeout", orderId, () -> orderTimeoutScheduler.cancel(orderId));
+        handleOrderCancelled(order, oldStatus);
+
+        log.info("订单超时未支付，已自动取消: orderId={}, orderNo={}", orderId, order.getOrderNo());
+        return true;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void compensateCancelledOrders(List<Order> orders) {
+        for (Order order : orders) {
+            Integer orderId = order.getOrderId();
+            afterCommitDispatcher.dispatch("cancel-timeout", orderId, () -> orderTimeoutScheduler.cancel(orderId));
+            releaseCancelledOrder(order, order.getStatus());
+        }
+    }
+
+    @Override
+    public void confirmPaidOrders(List<Order> orders) {
+        for (Order order : orders) {
+            String orderNo = order.getOrderNo();
+            afterCommitDispatcher.dispatch("confirm-stock", order.getOrderId(), () -> confirmStockReservation(orderNo));
+        }
+    }
+
+    /**
+     * 订单取消后的处理：恢复库存、释放积分、退回优惠券、清除缓存、发送状态变更通知
+     */
+    private void handleOrderCancelled(Order order, String oldStatus) {
+        releaseCancelledOrder(order, OrderStatus.fromCode(oldStatus));
+
+        // 发送订单状态变更消息通知
+        sendOrderStatusChangeNotification(order, oldStatus, ORDER_STATUS_CANCELLED);
+    }
+
+    /**
+     * 释放已取消订单占用的库存、积分和优惠券，并清除缓存
+     *
+     * @param previousStatus 取消前的订单状态
+     */
+    private void releaseCancelledOrder(Order order, OrderStatus previousStatus) {
+        // 事务提交后按订单号处理库存：未支付的订单释放预占；已支付的预占已确认，按明细退回。均可重复调用
+        String orderNo = order.getOrderNo();
+        if (OrderStatus.PENDING_PAYMENT.equals(previousStatus)) {
+            afterCommitDispatcher.dispatch("release-stock", order.getOrderId(), () -> releaseStockReservation(orderNo));
+        } else {
+            afterCommitDispatcher.dispatch("restore-stock", order.getOrderId(), () -> restoreOrderStock(orderNo));
+        }
+
+        // 释放抵扣积分：未确认的直接取消，已确认的提交后退还
+        pointsSaga.cancel(order.getOrderId());
+
+        // 退回使用的优惠券，与订单状态一同提交
+        if (order.getCouponId() != null) {
+            userCouponService.returnCoupon(order.getCouponId(), order.getOrderId().longValue());
+        }
+
+        // 清除订单缓存
+        clearOrderCache(order.getOrderId(), order.getUserId());
+    }
+
+    /**
+     * 恢复订单在商品服务扣减的库存，失败时抛出异常由分发器重试
+     */
+    private void restoreOrderStock(String orderNo) {
+        if (!productService.restoreOrderStock(orderNo)) {
+            throw new BusinessException("恢复订单库存失败: " + orderNo);
+        }
+    }
+
+    /**
+     * 释放订单在商品服务的库存预占，失败时抛出异常由分发器重试；重试耗尽后由商品服务到期释放
+     */
+    private void releaseStockReservation(String orderNo) {
+        if (!productService.releaseReservation(orderNo)) {
+            throw new BusinessException("释放订单库存预占失败: " + orderNo);
+        }
+    }
+
+    /**
+     * 确认已支付订单的库存预占，失败时抛出异常由分发器重试；预占已过期时重试也无法成功，需人工补货或退款
+     */
+    private void confirmStockReservation(String orderNo) {
+        if (!productService.confirmReservation(orderNo)) {
+            throw new BusinessException("确认订单库存预占失败: " + orderNo);
+        }
     }
 
     @Override
@@ -558,6 +717,11 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             throw new BusinessException("当前订单状态不可支付");
         }
 
+        // 抵扣积分确认扣减后才可支付
+        if (!pointsSaga.isSettled(orderId)) {
+            throw new BusinessException("积分抵扣确认中，请稍后再试");
+        }
+
         // 创建支付记录
         Payment payment = new Payment();
         payment.setPaymentNo(generatePaymentNo());
@@ -687,24 +851,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         Page<Order> orderPage = page(pageParam, queryWrapper);
 
         // 查询订单商品
-        List<Order> orders = orderPage.getRecords();
-        if (!orders.isEmpty()) {
-            List<Integer> orderIds = orders.stream()
-                    .map(Order::getOrderId)
-                    .collect(Collectors.toList());
-
-            LambdaQueryWrapper<OrderProduct> productQueryWrapper = new LambdaQueryWrapper<>();
-            productQueryWrapper.in(OrderProduct::getOrderId, orderIds);
-            List<OrderProduct> allOrderProducts = orderProductMapper.selectList(productQueryWrapper);
-
-            // 为每个订单设置商品
-            for (Order order : orders) {
-                List<OrderProduct> orderProducts = allOrderProducts.stream()
-                        .filter(op -> op.getOrderId().equals(order.getOrderId()))
-                        .collect(Collectors.toList());
-                order.setProducts(orderProducts);
-            }
-        }
+        attachOrderProducts(orderPage.getRecords(), false);
 
         return orderPage;
     }
@@ -712,15 +859,15 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     @Override
     public Order getOrderDetailByAdmin(Integer orderId) {
         Order order = getById(orderId);
+        if (order == null) {
+            order = orderArchiveReader.findById(orderId);
+        }
         if (order == null) {
             throw new BusinessException("订单不存在");
         }
 
         // 查询订单商品
-        LambdaQueryWrapper<OrderProduct> queryWrapper = new LambdaQueryWrapper<>();
-        queryWrapper.eq(OrderProduct::getOrderId, orderId);
-        List<OrderProduct> orderProducts = orderProductMapper.selectList(queryWrapper);
-        order.setProducts(orderProducts);
+        attachOrderProducts(Collections.singletonList(order), false);
 
         // 查询支付信息，并将支付信息的关键字段添加到订单实体中
         if (order.getPaymentId() != null) {
@@ -828,10 +975,10 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
 
         if (order != null) {
             // 查询订单商品
-            LambdaQueryWrapper<OrderProduct> productQueryWrapper = new LambdaQueryWrapper<>();
-            productQueryWrapper.eq(OrderProduct::getOrderId, order.getOrderId());
-            List<OrderProduct> orderProducts = orderProductMapper.selectList(productQueryWrapper);
-            order.setProducts(orderProducts);
+            attachOrderProducts(Collections.singletonList(order), false);
+        } else {
+            // 热表没有时再查归档表
+            order = orderArchiveReader.findByOrderNo(orderNo, userId);
         }
 
         return order;
@@ -839,86 +986,24 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
 
     @Override
     public Map<String, Object> getOrderStatistics(Integer userId) {
-        Map<String, Object> statistics = new HashMap<>();
-
-        LambdaQueryWrapper<Order> queryWrapper = new LambdaQueryWrapper<>();
-        if (userId != null) {
-            queryWrapper.eq(Order::getUserId, userId);
-        }
-
-        // 总订单数
-        long totalCount = count(queryWrapper);
-        statistics.put("totalCount", totalCount);
-
-        // 待付款订单数
-        LambdaQueryWrapper<Order> pendingPaymentWrapper = new LambdaQueryWrapper<>();
-        if (userId != null) {
-            pendingPaymentWrapper.eq(Order::getUserId, userId);
-        }
-        pendingPaymentWrapper.eq(Order::getStatus, OrderStatus.PENDING_PAYMENT);
-        long pendingPaymentCount = count(pendingPaymentWrapper);
-        statistics.put("pendingPaymentCount", pendingPaymentCount);
-
-        // 待发货订单数
-        LambdaQueryWrapper<Order> pendingShipmentWrapper = new LambdaQueryWrapper<>();
-        if (userId != null) {
-            pendingShipmentWrapper.eq(Order::getUserId, userId);
-        }
-        pendingShipmentWrapper.eq(Order::getStatus, OrderStatus.PENDING_SHIPMENT);
-        long pendingShipmentCount = count(pendingShipmentWrapper);
-        statistics.put("pendingShipmentCount", pendingShipmentCount);
-
-        // 已发货订单数
-        LambdaQueryWrapper<Order> shippedWrapper = new LambdaQueryWrapper<>();
-        if (userId != null) {
-            shippedWrapper.eq(Order::getUserId, userId);
-        }
-        shippedWrapper.eq(Order::getStatus, OrderStatus.SHIPPED);
-        long shippedCount = count(shippedWrapper);
-        statistics.put("shippedCount", shippedCount);
-
-        // 已完成订单数
-        LambdaQueryWrapper<Order> completedWrapper = new LambdaQueryWrapper<>();
-        if (userId != null) {
-            completedWrapper.eq(Order::getUserId, userId);
-        }
-        completedWrapper.eq(Order::getStatus, OrderStatus.COMPLETED);
-        long completedCount = count(completedWrapper);
-        statistics.put("completedCount", completedCount);
-
-        // 已取消订单数
-        LambdaQueryWrapper<Order> cancelledWrapper = new LambdaQueryWrapper<>();
-        if (userId != null) {
-            cancelledWrapper.eq(Order::getUserId, userId);
-        }
-        cancelledWrapper.eq(Order::getStatus, OrderStatus.CANCELLED);
-        long cancelledCount = count(cancelledWrapper);
-        statistics.put("cancelledCount", cancelledCount);
+        // 计数器随订单创建和状态变更增量维护，读取只需一次Redis访问
+        Map<String, Long> counts = orderStatusCounter.getCounts(userId);
 
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("totalCount", counts.getOrDefault(OrderStatusCounter.TOTAL_FIELD, 0L));
+        statistics.put("pendingPaymentCount", counts.getOrDefault(OrderStatus.PENDING_PAYMENT.getCode(), 0L));
+        statistics.put("pendingShipmentCount", counts.getOrDefault(OrderStatus.PENDING_SHIPMENT.getCode(), 0L));
+        statistics.put("shippedCount", counts.getOrDefault(OrderStatus.SHIPPED.getCode(), 0L));
+        statistics.put("completedCount", counts.getOrDefault(OrderStatus.COMPLETED.getCode(), 0L));
+        statistics.put("cancelledCount", counts.getOrDefault(OrderStatus.CANCELLED.getCode(), 0L));
         return statistics;
     }
 
     @Override
     public BigDecimal getSalesBetween(LocalDateTime startTime, LocalDateTime endTime) {
         try {
-            // 查询指定时间段内的已完成订单
-            QueryWrapper<Order> queryWrapper = new QueryWrapper<>();
-            queryWrapper.eq("status", "completed") // 假设status=completed表示已完成
-                    .between("create_time", startTime, endTime);
-
-            List<Order> orders = this.list(queryWrapper);
-
-            // 计算总销售额
-            BigDecimal totalSales = BigDecimal.ZERO;
-            if (orders != null && !orders.isEmpty()) {
-                for (Order order : orders) {
-                    if (order.getActualAmount() != null) {
-                        totalSales = totalSales.add(order.getActualAmount());
-                    }
-                }
-            }
-
-            return totalSales;
+            // 读取小时/天汇总桶，只有不足一小时的边界直接聚合订单表
+            return orderSalesRollup.getSalesBetween(startTime, endTime);
         } catch (Exception e) {
             log.error("获取时间段销售额失败", e);
             return BigDecimal.ZERO;
@@ -929,14 +1014,14 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
      * 生成订单号
      */
     private String generateOrderNo() {
-        return "OD" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 6);
+        return idGenerator.nextNo(IdBizTag.ORDER, "OD");
     }
 
     /**
      * 生成支付号
      */
     private String generatePaymentNo() {
-        return "PY" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 6);
+        return idGenerator.nextNo(IdBizTag.PAYMENT, "PY");
     }
 
     /**
@@ -967,6 +1052,83 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         }
     }
 
+    /**
+     * 批量查询订单商品并一次遍历按订单分组，回填到尚未填充商品的订单
+     *
+     * @param orders       订单列表
+     * @param processSpecs 是否处理商品规格信息
+     */
+    private void attachOrderProducts(List<Order> orders, boolean processSpecs) {
+        if (orders == null || orders.isEmpty()) {
+            return;
+        }
+        // 归档订单的商品已由归档表填充
+        orders = orders.stream()
+                .filter(order -> order.getProducts() == null)
+                .collect(Collectors.toList());
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<Integer> orderIds = orders.stream()
+                .map(Order::getOrderId)
+                .collect(Collectors.toList());
+
+        LambdaQueryWrapper<OrderProduct> productQueryWrapper = new LambdaQueryWrapper<>();
+        productQueryWrapper.in(OrderProduct::getOrderId, orderIds);
+        List<OrderProduct> allOrderProducts = orderProductMapper.selectList(productQueryWrapper);
+
+        Map<Integer, List<OrderProduct>> productsByOrder = new HashMap<>(orders.size() * 2);
+        for (OrderProduct orderProduct : allOrderProducts) {
+            if (processSpecs) {
+                processOrderProductSpecs(orderProduct);
+            }
+            productsByOrder.computeIfAbsent(orderProduct.getOrderId(), k -> new ArrayList<>()).add(orderProduct);
+        }
+
+        for (Order order : orders) {
+            List<OrderProduct> orderProducts = productsByOrder.getOrDefault(order.getOrderId(), new ArrayList<>());
+            if (orderProducts.isEmpty()) {
+                log.warn("订单ID {} 没有关联商品数据", order.getOrderId());
+            }
+            order.setProducts(orderProducts);
+        }
+    }
+
+    /**
+     * 生成订单历史游标：Base64(创建时间,订单ID)
+     */
+    private String encodeHistoryCursor(LocalDateTime createTime, Integer orderId) {
+        String raw = createTime + "," + orderId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析订单历史游标
+     */
+    private HistoryCursor decodeHistoryCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(',');
+            return new HistoryCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Integer.valueOf(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new BusinessException("无效的分页游标");
+        }
+    }
+
+    /**
+     * 订单历史游标位置
+     */
+    private static final class HistoryCursor {
+        private final LocalDateTime createTime;
+        private final Integer orderId;
+
+        private HistoryCursor(LocalDateTime createTime, Integer orderId) {
+            this.createTime = createTime;
+            this.orderId = orderId;
+        }
+    }
+
     /**
      * 标准化订单状态，确保与前端期望的格式一致
      */
@@ -1007,7 +1169,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     }
 
     /**
-     * 清除订单相关缓存
+     * 清除订单相关缓存，事务提交后异步执行，避免提交前被并发读取回填旧数据
      *
      * @param orderId 订单ID
      * @param userId  用户ID
@@ -1016,76 +1178,90 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         if (orderId == null) {
             return;
         }
+        afterCommitDispatcher.dispatch("clear-order-cache", orderId, () -> {
+            // 清除订单详情缓存
+            redisUtil.delete(CacheConstants.ORDER_DETAIL_KEY + orderId);
+            log.debug("清除订单详情缓存: orderId={}", orderId);
 
-        // 清除订单详情缓存
-        String orderDetailCacheKey = CacheConstants.ORDER_DETAIL_KEY + orderId;
-        redisUtil.delete(orderDetailCacheKey);
-        log.debug("清除订单详情缓存: orderId={}", orderId);
-
-        // 清除用户订单列表缓存
-        if (userId != null) {
-            clearUserOrderListCache(userId);
-        }
-
-        // 清除订单统计缓存
-        String orderStatsCacheKey = CacheConstants.ORDER_STATS_KEY + "*";
-        Set<String> statsKeys = redisTemplate.keys(orderStatsCacheKey);
-        if (statsKeys != null && !statsKeys.isEmpty()) {
-            redisTemplate.delete(statsKeys);
-            log.debug("清除订单统计缓存");
-        }
+            // 清除用户订单列表缓存
+            if (userId != null) {
+                clearUserOrderListCache(userId);
+            }
+        });
     }
 
     /**
-     * 清除用户订单列表缓存
+     * 清除用户订单列表缓存，按前缀 SCAN 查找，不使用阻塞 Redis 的 KEYS
      *
      * @param userId 用户ID
      */
     private void clearUserOrderListCache(Integer userId) {
-        if (userId == null) {
-            return;
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(CacheConstants.USER_ORDER_LIST_KEY + userId + "*").count(100).build();
+        List<String> keys = new ArrayList<>();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                keys.add(cursor.next());
+            }
         }
-
-        // 清除用户订单列表缓存
-        String userOrderListCacheKey = CacheConstants.USER_ORDER_LIST_KEY + userId + "*";
-        Set<String> keys = redisTemplate.keys(userOrderListCacheKey);
-        if (keys != null && !keys.isEmpty()) {
+        if (!keys.isEmpty()) {
             redisTemplate.delete(keys);
-            log.debug("清除用户订单列表缓存: userId={}", userId);
+            log.debug("清除用户订单列表缓存: userId={}, keys={}", userId, keys.size());
         }
     }
 
     /**
-     * 更新订单状态后发送消息通知
+     * 更新订单状态后发送消息通知，事务提交后异步发布
      *
      * @param order     订单
      * @param oldStatus 原状态
      * @param newStatus 新状态
      */
     private void sendOrderStatusChangeNotification(Order order, String oldStatus, String newStatus) {
+        Integer orderId = order.getOrderId();
+        Integer userId = order.getUserId();
         try {
             String extra = String.format("{\"orderId\":%d,\"oldStatus\":\"%s\",\"newStatus\":\"%s\"}",
-                    order.getOrderId(), oldStatus, newStatus);
-
-            // 暂时注释以测试RedisUtil
-            // OrderStatusChangedEvent event = new OrderStatusChangedEvent(
-            //         this,
-            //         order.getUserId(),
-            //         order.getOrderId(),
-            //         order.getOrderNo(),
-            //         oldStatus,
-            //         newStatus,
-            //         extra);
-            //
-            // eventPublisher.publishEvent(event);
-            log.info("已发送订单状态变更消息通知: orderId={}, userId={}, oldStatus={}, newStatus={}",
-                    order.getOrderId(), order.getUserId(), oldStatus, newStatus);
+                    orderId, oldStatus, newStatus);
+
+            // 事件在当前线程构造，异步任务不再读取可能被后续逻辑修改的订单对象
+            OrderStatusChangedEvent event = new OrderStatusChangedEvent(
+                    orderId.longValue(),
+                    order.getOrderNo(),
+                    userId.longValue(),
+                    OrderStatus.fromCode(oldStatus.toUpperCase()),
+                    OrderStatus.fromCode(newStatus.toUpperCase()));
+            event.setChangeReason(extra);
+            event.setOperatorType("SYSTEM");
+
+            afterCommitDispatcher.dispatch("order-status-changed", orderId, () -> {
+                eventPublisher.publishEvent(event);
+                log.info("已发送订单状态变更消息通知: orderId={}, userId={}, oldStatus={}, newStatus={}",
+                        orderId, userId, oldStatus, newStatus);
+            });
         } catch (Exception e) {
             log.error("发送订单状态变更消息通知失败: orderId={}, error={}",
-                    order.getOrderId(), e.getMessage(), e);
+                    orderId, e.getMessage(), e);
         }
     }
 
+    /**
+     * 新订单创建后发布事件（原状态为空），用于维护订单状态计数，事务提交后异步发布
+     *
+     * @param order 新创建的订单
+     */
+    private void publishOrderCreatedEvent(Order order) {
+        OrderStatusChangedEvent event = new OrderStatusChangedEvent(
+                order.getOrderId().longValue(),
+                order.getOrderNo(),
+                order.getUserId().longValue(),
+                null,
+                order.getStatus());
+        event.setChangeReason("订单创建");
+        event.setOperatorType("USER");
+        afterCommitDispatcher.dispatch("order-created", order.getOrderId(), () -> eventPublisher.publishEvent(event));
+    }
+
     @Override
     public boolean isOrderCommented(Integer orderId) {
         Order order = this.getById(orderId);
@@ -1154,7 +1330,11 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             Order order = new Order();
             order.setUserId(userId);
             order.setOrderNo(generateOrderNo());
-            order.setTotalAmount(product.getPriceNew().multiply(new BigDecimal(quantity)));
+            // 计算订单金额，计算过程以分为单位
+            PriceSheet priceSheet = new PriceSheet(1);
+            priceSheet.addLine(Money.toCents(product.getPriceNew()), quantity);
+            priceSheet.setShippingFee(Money.toCents(shippingFee));
+            order.setTotalAmount(Money.toYuan(priceSheet.getGoodsAmount()));
             order.setStatus(OrderStatus.PENDING_PAYMENT);
             // 设置订单其他属性
             order.setAddressId(addressId);
@@ -1167,14 +1347,10 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             order.setReceiverZip(address.getZip());
             order.setRemark(remark);
             order.setPaymentMethod(paymentMethod);
-            order.setShippingFee(shippingFee != null ? shippingFee : BigDecimal.ZERO);
+            order.setShippingFee(Money.toYuan(priceSheet.getShippingFee()));
             order.setCreateTime(LocalDateTime.now());
             order.setUpdateTime(LocalDateTime.now());
 
-            // 计算优惠金额
-            BigDecimal couponAmount = BigDecimal.ZERO;
-            BigDecimal pointsAmount = BigDecimal.ZERO;
-
             // 处理优惠券
             if (couponId != null && couponId > 0) {
                 // 获取用户优惠券
@@ -1184,12 +1360,13 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                     // 获取优惠券信息
                     Coupon coupon = couponService.getById(userCoupon.getCouponId());
                     if (coupon != null && "ACTIVE".equals(coupon.getStatus())) {
-                        // 验证优惠券是否可用
-                        if (order.getTotalAmount().compareTo(coupon.getMinSpend()) >= 0) {
-                            couponAmount = coupon.getValue();
+                        // 按优惠券面额或关联的优惠规则计算优惠金额，不满足使用条件时为0
+                        long discount = priceSheet.applyCoupon(Money.toCents(
+                                couponService.calculateDiscount(coupon, new RuleCart(1).add(product, quantity))));
+                        if (discount > 0) {
                             // 记录使用的优惠券
                             order.setCouponId(couponId);
-                            order.setCouponAmount(couponAmount);
+                            order.setCouponAmount(Money.toYuan(discount));
 
                             // 更新优惠券状态
                             userCoupon.setStatus("USED");
@@ -1204,8 +1381,8 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                                 order.setCouponId(couponId); // 保存优惠券ID，后续可根据需要更新
                             }
                         } else {
-                            log.warn("优惠券不可用于此订单，最低消费金额不足: 订单总额={}, 优惠券最低金额={}",
-                                    order.getTotalAmount(), coupon.getMinSpend());
+                            log.warn("优惠券不可用于此订单，不满足使用条件: 订单总额={}, 优惠券最低金额={}, 规则ID={}",
+                                    order.getTotalAmount(), coupon.getMinSpend(), coupon.getRuleId());
                         }
                     }
                 }
@@ -1216,30 +1393,17 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 // 检查用户积分是否足够
                 BigDecimal userPointsDecimal = pointsService.getUserPoints(userId);
                 Integer userPoints = userPointsDecimal.intValue();
-                if (userPoints >= pointsUsed) {
-                    // 计算积分抵扣金额，通常100积分=1元
-                    pointsAmount = new BigDecimal(pointsUsed).divide(new BigDecimal("100"), 2, RoundingMode.DOWN);
-
+                // 按积分抵扣规则计算，超出单笔上限或订单金额的积分不使用
+                int actualPoints = userPoints >= pointsUsed ? (int) priceSheet.applyPoints(pointsUsed, pointsPolicy) : 0;
+                if (actualPoints > 0) {
                     // 记录使用的积分
-                    order.setPointsUsed(pointsUsed);
-                    order.setPointsDiscount(pointsAmount);
-
-                    // 扣减用户积分
-                    boolean deductSuccess = pointsService.deductPoints(userId, pointsUsed, "order", order.getOrderNo(),
-                            "订单抵扣");
-                    if (!deductSuccess) {
-                        throw new BusinessException(400, "积分扣减失败");
-                    }
+                    order.setPointsUsed(actualPoints);
+                    order.setPointsDiscount(Money.toYuan(priceSheet.getPointsDiscount()));
                 }
             }
 
             // 计算实际支付金额
-            BigDecimal actualAmount = order.getTotalAmount()
-                    .add(order.getShippingFee())
-                    .subtract(couponAmount)
-                    .subtract(pointsAmount);
-            // 确保金额不为负数
-            order.setActualAmount(actualAmount.max(BigDecimal.ZERO));
+            order.setActualAmount(Money.toYuan(priceSheet.getPayable()));
 
             // 保存订单
             save(order);
@@ -1284,6 +1448,11 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 }
             }
 
+            // 预留抵扣积分，与订单一同提交或回滚
+            if (order.getPointsUsed() != null && order.getPointsUsed() > 0) {
+                pointsSaga.reserve(order.getOrderId(), order.getOrderNo(), userId, order.getPointsUsed());
+            }
+
             // 创建订单商品
             OrderProduct orderProduct = new OrderProduct();
             orderProduct.setOrderId(order.getOrderId());
@@ -1299,12 +1468,14 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             // 保存订单商品
             orderProductMapper.insert(orderProduct);
 
-            // 更新商品库存
-            productService.update(
-                    new LambdaUpdateWrapper<Product>()
-                            .eq(Product::getProductId, productId)
-                            .setSql("stock = stock - " + quantity)
-                            .setSql("sales = sales + " + quantity));
+            // 预占商品库存，回滚时按订单号释放可能已在商品服务提交的预占
+            String orderNo = order.getOrderNo();
+            afterCommitDispatcher.dispatchAfterRollback("release-stock", order.getOrderId(),
+                    () -> releaseStockReservation(orderNo));
+            if (!productService.reserveStock(orderNo, Collections.singletonMap(productId.longValue(), quantity),
+                    stockReservationTtlSeconds)) {
+                throw new BusinessException(400, "商品库存不足");
+            }
 
             // 创建支付记录 - 如果有支付服务
             if (paymentService != null) {
@@ -1342,9 +1513,15 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             result.put("pointsDiscount", order.getPointsDiscount());
 
             // 清除用户订单列表缓存
-            clearUserOrderListCache(userId);
+            clearOrderCache(order.getOrderId(), userId);
+
+            // 登记支付超时任务并更新订单状态计数
+            orderTimeoutScheduler.schedule(order.getOrderId());
+            publishOrderCreatedEvent(order);
 
             return result;
+        } catch (BusinessException e) {
+            throw e;
         } catch (Exception e) {
             log.error("直接购买失败", e);
             // 记录更详细的错误信息
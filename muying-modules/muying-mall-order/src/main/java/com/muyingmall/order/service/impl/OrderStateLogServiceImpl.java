@@ -3,9 +3,11 @@ package com.muyingmall.order.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.muyingmall.order.entity.OrderStateLog;
+import com.muyingmall.order.mapper.OrderArchiveMapper;
 import com.muyingmall.order.mapper.OrderStateLogMapper;
 import com.muyingmall.order.service.OrderStateLogService;
 import com.muyingmall.statemachine.OrderStateContext;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -16,9 +18,12 @@ import java.util.List;
  * 订单状态变更日志服务实现类
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class OrderStateLogServiceImpl extends ServiceImpl<OrderStateLogMapper, OrderStateLog> implements OrderStateLogService {
 
+    private final OrderArchiveMapper orderArchiveMapper;
+
     @Override
     public OrderStateLog recordStateChange(OrderStateContext context) {
         if (context == null || context.getOrderId() == null) {
@@ -55,6 +60,10 @@ public class OrderStateLogServiceImpl extends ServiceImpl<OrderStateLogMapper, O
                 .orderByDesc(OrderStateLog::getCreateTime);
 
         List<OrderStateLog> logs = list(queryWrapper);
+        if (logs.isEmpty()) {
+            // 订单已归档时状态日志随之迁入归档表
+            logs = orderArchiveMapper.selectStateLogs(orderId);
+        }
         log.debug("查询订单状态变更历史: orderId={}, count={}", orderId, logs.size());
         return logs;
     }
@@ -1,16 +1,32 @@
 package com.muyingmall.order.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.event.OrderStatusChangedEvent;
 import com.muyingmall.order.entity.Order;
+import com.muyingmall.order.entity.OrderStateLog;
+import com.muyingmall.order.mapper.OrderMapper;
+import com.muyingmall.order.mapper.OrderStateLogMapper;
 import com.muyingmall.order.service.OrderService;
 import com.muyingmall.order.service.OrderStateService;
+import com.muyingmall.order.statemachine.OrderTransitionTable;
 import com.muyingmall.statemachine.OrderEvent;
 import com.muyingmall.statemachine.OrderStateContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 订单状态服务实现类
@@ -20,16 +36,28 @@ import java.time.LocalDateTime;
 @Slf4j
 public class OrderStateServiceImpl implements OrderStateService {
 
+    /**
+     * 批量转换时每个事务处理的订单数
+     */
+    private static final int TRANSIT_BATCH_SIZE = 500;
+
     private final OrderService orderService;
+    private final OrderMapper orderMapper;
+    private final OrderStateLogMapper orderStateLogMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
 
     @Override
     public Order sendEvent(Integer orderId, OrderEvent event, String operator, String reason) {
+        if (orderId == null || event == null) {
+            return null;
+        }
+        sendEvents(Collections.singletonList(orderId), event, operator, reason);
         Order order = orderService.getById(orderId);
         if (order == null) {
             log.warn("订单不存在: orderId={}", orderId);
-            return null;
         }
-        return sendEvent(order, event, operator, reason);
+        return order;
     }
 
     @Override
@@ -37,16 +65,7 @@ public class OrderStateServiceImpl implements OrderStateService {
         if (order == null || event == null) {
             return null;
         }
-
-        OrderStateContext context = new OrderStateContext();
-        context.setOrderId(order.getOrderId().longValue());
-        context.setOrderNo(order.getOrderNo());
-        context.setUserId(order.getUserId().longValue());
-        context.setOperatorType(operator != null ? operator : "SYSTEM");
-        context.setEventDescription(reason != null ? reason : "");
-        context.setEventTime(LocalDateTime.now());
-
-        return sendEvent(context);
+        return sendEvent(order.getOrderId(), event, operator, reason);
     }
 
     @Override
@@ -61,64 +80,120 @@ public class OrderStateServiceImpl implements OrderStateService {
             return null;
         }
 
-        // 简单的状态转换逻辑，实际应用中会更复杂
-        // 这里只是记录日志并返回订单
-        log.info("处理订单状态转换事件: orderId={}, operator={}, description={}", 
+        // 上下文不携带事件，只记录日志并返回订单
+        log.info("处理订单状态转换事件: orderId={}, operator={}, description={}",
                 context.getOrderId(), context.getOperatorType(), context.getEventDescription());
 
         return order;
     }
 
     @Override
-    public boolean canTransit(OrderStatus currentStatus, OrderStatus targetStatus) {
-        if (currentStatus == null || targetStatus == null) {
-            return false;
+    public List<Integer> sendEvents(List<Integer> orderIds, OrderEvent event, String operator, String reason) {
+        if (orderIds == null || orderIds.isEmpty() || event == null) {
+            return Collections.emptyList();
         }
 
-        // 简化版本，允许所有状态转换
-        // 实际应用中应该有更严格的状态机逻辑
-        return true;
+        List<Integer> distinctIds = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        List<Integer> transited = new ArrayList<>(distinctIds.size());
+        for (int from = 0; from < distinctIds.size(); from += TRANSIT_BATCH_SIZE) {
+            List<Integer> batch = distinctIds.subList(from, Math.min(from + TRANSIT_BATCH_SIZE, distinctIds.size()));
+            List<Integer> result = transactionTemplate.execute(status -> transitBatch(batch, event, operator, reason));
+            if (result != null) {
+                transited.addAll(result);
+            }
+        }
+
+        log.info("批量订单状态转换完成: event={}, requested={}, transited={}", event, distinctIds.size(), transited.size());
+        return transited;
     }
 
     @Override
-    public OrderStatus[] getPossibleNextStates(OrderStatus currentStatus) {
-        if (currentStatus == null) {
-            return new OrderStatus[0];
-        }
+    public boolean canTransit(OrderStatus currentStatus, OrderStatus targetStatus) {
+        return OrderTransitionTable.canTransit(currentStatus, targetStatus);
+    }
 
-        // 根据当前状态返回可能的下一个状态
-        switch (currentStatus) {
-            case PENDING_PAYMENT:
-                return new OrderStatus[]{OrderStatus.PAID, OrderStatus.CANCELLED};
-            case PAID:
-                return new OrderStatus[]{OrderStatus.PENDING_SHIPMENT, OrderStatus.CANCELLED, OrderStatus.REFUNDING};
-            case PENDING_SHIPMENT:
-                return new OrderStatus[]{OrderStatus.SHIPPED, OrderStatus.CANCELLED, OrderStatus.REFUNDING};
-            case SHIPPED:
-                return new OrderStatus[]{OrderStatus.PENDING_RECEIPT, OrderStatus.RETURNING};
-            case PENDING_RECEIPT:
-                return new OrderStatus[]{OrderStatus.COMPLETED, OrderStatus.RETURNING};
-            case COMPLETED:
-                return new OrderStatus[]{OrderStatus.RETURNING};
-            case REFUNDING:
-                return new OrderStatus[]{OrderStatus.REFUNDED, OrderStatus.CANCELLED};
-            case RETURNING:
-                return new OrderStatus[]{OrderStatus.RETURNED, OrderStatus.CANCELLED};
-            default:
-                return new OrderStatus[0];
-        }
+    @Override
+    public OrderStatus[] getPossibleNextStates(OrderStatus currentStatus) {
+        return OrderTransitionTable.nextStates(currentStatus).toArray(new OrderStatus[0]);
     }
 
     /**
-     * 根据当前状态和事件获取目标状态
-     * 简化版本，只做示例
+     * 在一个事务内转换一批订单：锁定订单后在内存中校验，每个目标状态一条条件UPDATE，日志一次批量插入
      */
-    private OrderStatus getTargetStatus(OrderStatus currentStatus, OrderEvent event) {
-        if (currentStatus == null || event == null) {
-            return null;
+    private List<Integer> transitBatch(List<Integer> orderIds, OrderEvent event, String operator, String reason) {
+        LambdaQueryWrapper<Order> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(Order::getOrderId, Order::getOrderNo, Order::getUserId, Order::getStatus, Order::getCouponId)
+                .in(Order::getOrderId, orderIds)
+                .last("FOR UPDATE");
+        List<Order> orders = orderMapper.selectList(queryWrapper);
+
+        Map<OrderStatus, List<Order>> ordersByTarget = new EnumMap<>(OrderStatus.class);
+        for (Order order : orders) {
+            OrderStatus target = OrderTransitionTable.targetOf(order.getStatus(), event);
+            if (target == null) {
+                log.warn("订单当前状态不支持该事件: orderId={}, status={}, event={}",
+                        order.getOrderId(), order.getStatus(), event);
+                continue;
+            }
+            ordersByTarget.computeIfAbsent(target, t -> new ArrayList<>()).add(order);
+        }
+        if (ordersByTarget.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        String operatorName = operator != null ? operator : "SYSTEM";
+        String reasonText = reason != null ? reason : event.getDescription();
+        List<Integer> transited = new ArrayList<>(orders.size());
+        List<OrderStateLog> stateLogs = new ArrayList<>(orders.size());
+        List<OrderStatusChangedEvent> changedEvents = new ArrayList<>(orders.size());
+
+        for (Map.Entry<OrderStatus, List<Order>> entry : ordersByTarget.entrySet()) {
+            OrderStatus target = entry.getKey();
+            List<Order> targetOrders = entry.getValue();
+            Set<String> fromStatuses = OrderTransitionTable.sourcesOf(event, target).stream()
+                    .map(OrderStatus::getCode)
+                    .collect(Collectors.toSet());
+            List<Integer> targetIds = targetOrders.stream().map(Order::getOrderId).collect(Collectors.toList());
+
+            // 订单已加锁，状态条件用于兜底防止越权转换
+            int updated = orderMapper.batchTransitStatus(targetIds, fromStatuses, target.getCode(), now);
+            if (updated != targetIds.size()) {
+                log.warn("批量状态转换影响行数不一致: event={}, target={}, expected={}, updated={}",
+                        event, target, targetIds.size(), updated);
+            }
+
+            for (Order order : targetOrders) {
+                OrderStateLog stateLog = OrderStateLog.of(order.getOrderId(), order.getOrderNo(),
+                        order.getStatus(), target, event, operatorName, reasonText);
+                stateLog.setCreateTime(now);
+                stateLogs.add(stateLog);
+
+                OrderStatusChangedEvent changedEvent = new OrderStatusChangedEvent(order.getOrderId().longValue(),
+                        order.getOrderNo(), order.getUserId().longValue(), order.getStatus(), target);
+                changedEvent.setChangeReason(reasonText);
+                changedEvent.setOperatorType(operatorName);
+                changedEvents.add(changedEvent);
+                transited.add(order.getOrderId());
+            }
+        }
+
+        orderStateLogMapper.insertBatch(stateLogs);
+
+        // 取消与单笔取消一样需要恢复库存、释放积分和优惠券，在同一事务中完成补偿
+        List<Order> cancelled = ordersByTarget.get(OrderStatus.CANCELLED);
+        if (cancelled != null) {
+            orderService.compensateCancelledOrders(cancelled);
+        }
+
+        // 支付成功的订单提交后确认下单时的库存预占
+        List<Order> paid = event == OrderEvent.PAY ? ordersByTarget.get(OrderStatus.PENDING_SHIPMENT) : null;
+        if (paid != null) {
+            orderService.confirmPaidOrders(paid);
         }
 
-        // 简化版本，直接返回当前状态
-        return currentStatus;
+        // 监听器均为事务提交后执行，回滚时不会生效
+        changedEvents.forEach(eventPublisher::publishEvent);
+        return transited;
     }
-}
\ No newline at end of file
+}
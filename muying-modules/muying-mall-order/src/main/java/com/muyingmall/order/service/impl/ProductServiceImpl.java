@@ -2,6 +2,7 @@ package com.muyingmall.order.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.muyingmall.common.dto.Result;
+import com.muyingmall.order.client.ProductBatchLoader;
 import com.muyingmall.order.client.ProductInfo;
 import com.muyingmall.order.client.ProductServiceClient;
 import com.muyingmall.order.entity.Product;
@@ -10,6 +11,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 /**
  * 商品服务实现类（通过Feign调用远程商品服务）
  */
@@ -18,7 +28,13 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class ProductServiceImpl implements ProductService {
 
+    /**
+     * 等待合并批量查询结果的超时时间（毫秒）
+     */
+    private static final long LOAD_TIMEOUT_MILLIS = 3000;
+
     private final ProductServiceClient productServiceClient;
+    private final ProductBatchLoader productBatchLoader;
 
     @Override
     public Product getById(Long productId) {
@@ -27,19 +43,59 @@ public class ProductServiceImpl implements ProductService {
         }
 
         try {
-            Result<ProductInfo> result = productServiceClient.getProduct(productId.intValue());
-            if (result != null && result.isSuccess() && result.getData() != null) {
-                return convertToProduct(result.getData());
+            // 单商品查询经加载器合并为批量调用，减少高并发下的远程调用次数
+            ProductInfo productInfo = productBatchLoader.load(productId.intValue())
+                    .get(LOAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (productInfo != null) {
+                return convertToProduct(productInfo);
             } else {
-                log.warn("从商品服务获取商品信息失败: productId={}, result={}", productId, result);
+                log.warn("从商品服务获取商品信息失败: productId={}", productId);
                 return null;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("获取商品信息被中断: productId={}", productId, e);
+            return null;
         } catch (Exception e) {
             log.error("调用商品服务异常: productId={}", productId, e);
             return null;
         }
     }
 
+    @Override
+    public Map<Long, Product> getByIds(Collection<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<Integer> ids = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            if (productId != null) {
+                ids.add(productId.intValue());
+            }
+        }
+
+        try {
+            Result<List<ProductInfo>> result = productServiceClient.getProducts(ids);
+            if (result == null || !result.isSuccess() || result.getData() == null) {
+                log.warn("批量获取商品信息失败: productIds={}, result={}", ids, result);
+                return Collections.emptyMap();
+            }
+
+            Map<Long, Product> productMap = new HashMap<>(result.getData().size() * 2);
+            for (ProductInfo productInfo : result.getData()) {
+                Product product = convertToProduct(productInfo);
+                if (product != null && product.getId() != null) {
+                    productMap.put(product.getId(), product);
+                }
+            }
+            return productMap;
+        } catch (Exception e) {
+            log.error("批量调用商品服务异常: productIds={}", ids, e);
+            return Collections.emptyMap();
+        }
+    }
+
     @Override
     public boolean checkStock(Long productId, Integer quantity) {
         if (productId == null || quantity == null || quantity <= 0) {
@@ -129,6 +185,114 @@ public class ProductServiceImpl implements ProductService {
         }
     }
 
+    @Override
+    public boolean reduceOrderStock(String orderNo, Map<Long, Integer> productQuantities) {
+        if (orderNo == null) {
+            return false;
+        }
+        Map<Integer, Integer> productStockMap = toProductStockMap(productQuantities);
+        if (productStockMap == null) {
+            return false;
+        }
+
+        try {
+            Result<Boolean> result = productServiceClient.deductOrderStock(orderNo, productStockMap);
+            if (result != null && result.isSuccess() && Boolean.TRUE.equals(result.getData())) {
+                log.info("订单库存扣减成功: orderNo={}, items={}", orderNo, productStockMap);
+                return true;
+            }
+            log.warn("订单库存扣减失败: orderNo={}, items={}, result={}", orderNo, productStockMap, result);
+            return false;
+        } catch (Exception e) {
+            log.error("订单库存扣减异常: orderNo={}, items={}", orderNo, productStockMap, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean restoreOrderStock(String orderNo) {
+        if (orderNo == null) {
+            return false;
+        }
+
+        try {
+            Result<Boolean> result = productServiceClient.restoreOrderStock(orderNo);
+            if (result != null && result.isSuccess()) {
+                log.info("订单库存恢复成功: orderNo={}", orderNo);
+                return true;
+            }
+            log.warn("订单库存恢复失败: orderNo={}, result={}", orderNo, result);
+            return false;
+        } catch (Exception e) {
+            log.error("订单库存恢复异常: orderNo={}", orderNo, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean reserveStock(String orderNo, Map<Long, Integer> productQuantities, int ttlSeconds) {
+        if (orderNo == null) {
+            return false;
+        }
+        Map<Integer, Integer> productStockMap = toProductStockMap(productQuantities);
+        if (productStockMap == null) {
+            return false;
+        }
+
+        try {
+            Result<Boolean> result = productServiceClient.reserveStock(orderNo, productStockMap, ttlSeconds);
+            if (result != null && result.isSuccess() && Boolean.TRUE.equals(result.getData())) {
+                log.info("订单库存预占成功: orderNo={}, items={}, ttlSeconds={}", orderNo, productStockMap, ttlSeconds);
+                return true;
+            }
+            log.warn("订单库存预占失败: orderNo={}, items={}, result={}", orderNo, productStockMap, result);
+            return false;
+        } catch (Exception e) {
+            log.error("订单库存预占异常: orderNo={}, items={}", orderNo, productStockMap, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean confirmReservation(String orderNo) {
+        if (orderNo == null) {
+            return false;
+        }
+
+        try {
+            Result<Boolean> result = productServiceClient.confirmReservation(orderNo);
+            if (result != null && result.isSuccess() && Boolean.TRUE.equals(result.getData())) {
+                log.info("订单库存预占确认成功: orderNo={}", orderNo);
+                return true;
+            }
+            log.warn("订单库存预占确认失败: orderNo={}, result={}", orderNo, result);
+            return false;
+        } catch (Exception e) {
+            log.error("订单库存预占确认异常: orderNo={}", orderNo, e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean releaseReservation(String orderNo) {
+        if (orderNo == null) {
+            return false;
+        }
+
+        try {
+            Result<Boolean> result = productServiceClient.releaseReservation(orderNo);
+            if (result != null && result.isSuccess()) {
+                log.info("订单库存预占释放成功: orderNo={}", orderNo);
+                return true;
+            }
+            log.warn("订单库存预占释放失败: orderNo={}, result={}", orderNo, result);
+            return false;
+        } catch (Exception e) {
+            log.error("订单库存预占释放异常: orderNo={}", orderNo, e);
+            return false;
+        }
+    }
+
     @Override
     public boolean update(LambdaUpdateWrapper<Product> updateWrapper) {
         // 这个方法在微服务架构中不太适用，因为我们不直接操作数据库
@@ -137,6 +301,25 @@ public class ProductServiceImpl implements ProductService {
         return false;
     }
 
+    /**
+     * 转换为商品服务的商品ID到数量映射，同一商品的数量合并；参数无效时返回null
+     */
+    private Map<Integer, Integer> toProductStockMap(Map<Long, Integer> productQuantities) {
+        if (productQuantities == null || productQuantities.isEmpty()) {
+            return null;
+        }
+
+        Map<Integer, Integer> productStockMap = new LinkedHashMap<>(productQuantities.size() * 2);
+        for (Map.Entry<Long, Integer> entry : productQuantities.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null || entry.getValue() <= 0) {
+                log.warn("订单库存参数无效: productId={}, quantity={}", entry.getKey(), entry.getValue());
+                return null;
+            }
+            productStockMap.merge(entry.getKey().intValue(), entry.getValue(), Integer::sum);
+        }
+        return productStockMap;
+    }
+
     /**
      * 将远程服务返回的ProductInfo转换为本地Product实体
      */
@@ -151,6 +334,8 @@ public class ProductServiceImpl implements ProductService {
         product.setPrice(productInfo.getPrice());
         product.setStock(productInfo.getStock());
         product.setImage(productInfo.getMainImage());
+        product.setCategoryId(productInfo.getCategoryId());
+        product.setBrandId(productInfo.getBrandId());
         
         // 状态转换：远程服务可能返回不同的状态值
         if ("上架".equals(productInfo.getStatus())) {
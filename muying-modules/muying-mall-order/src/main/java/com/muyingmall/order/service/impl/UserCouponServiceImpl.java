@@ -1,6 +1,7 @@
 package com.muyingmall.order.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.muyingmall.order.entity.UserCoupon;
 import com.muyingmall.order.mapper.UserCouponMapper;
@@ -98,6 +99,27 @@ public class UserCouponServiceImpl extends ServiceImpl<UserCouponMapper, UserCou
         return result;
     }
 
+    @Override
+    public boolean returnCoupon(Long couponId, Long orderId) {
+        if (couponId == null || orderId == null) {
+            return false;
+        }
+
+        // 带状态和订单条件更新，已退回或被其他订单使用时不更新
+        boolean result = update(new LambdaUpdateWrapper<UserCoupon>()
+                .eq(UserCoupon::getId, couponId)
+                .eq(UserCoupon::getOrderId, orderId)
+                .eq(UserCoupon::getStatus, "USED")
+                .set(UserCoupon::getStatus, "UNUSED")
+                .set(UserCoupon::getUsedTime, null)
+                .set(UserCoupon::getOrderId, null)
+                .set(UserCoupon::getUpdatedTime, LocalDateTime.now()));
+        if (result) {
+            log.info("退回优惠券成功: couponId={}, orderId={}", couponId, orderId);
+        }
+        return result;
+    }
+
     @Override
     public BigDecimal calculateDiscountAmount(UserCoupon userCoupon, BigDecimal orderAmount) {
         if (userCoupon == null || orderAmount == null || orderAmount.compareTo(BigDecimal.ZERO) <= 0) {
@@ -0,0 +1,129 @@
+package com.muyingmall.order.statemachine;
+
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.statemachine.OrderEvent;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 订单状态转换表
+ *
+ * <p>类加载时预先构建，运行期只读，查询均为 EnumMap/EnumSet 的位运算：</p>
+ * <ul>
+ *   <li>状态图：当前状态 -> 允许的下一状态集合</li>
+ *   <li>事件表：事件 -> (源状态 -> 目标状态)，每条事件转换都必须是状态图中的一条边</li>
+ *   <li>反向索引：(事件, 目标状态) -> 允许的源状态集合，供批量条件更新使用</li>
+ * </ul>
+ */
+public final class OrderTransitionTable {
+
+    private static final Map<OrderStatus, Set<OrderStatus>> NEXT_STATES = new EnumMap<>(OrderStatus.class);
+    private static final Map<OrderEvent, Map<OrderStatus, OrderStatus>> EVENT_TARGETS = new EnumMap<>(OrderEvent.class);
+    private static final Map<OrderEvent, Map<OrderStatus, Set<OrderStatus>>> EVENT_SOURCES = new EnumMap<>(OrderEvent.class);
+
+    static {
+        for (OrderStatus status : OrderStatus.values()) {
+            NEXT_STATES.put(status, EnumSet.noneOf(OrderStatus.class));
+        }
+        edges(OrderStatus.PENDING_PAYMENT, OrderStatus.PAID, OrderStatus.PENDING_SHIPMENT, OrderStatus.CANCELLED);
+        edges(OrderStatus.PAID, OrderStatus.PENDING_SHIPMENT, OrderStatus.CANCELLED, OrderStatus.REFUNDING);
+        edges(OrderStatus.PENDING_SHIPMENT, OrderStatus.SHIPPED, OrderStatus.CANCELLED, OrderStatus.REFUNDING);
+        edges(OrderStatus.SHIPPED, OrderStatus.PENDING_RECEIPT, OrderStatus.COMPLETED, OrderStatus.RETURNING);
+        edges(OrderStatus.PENDING_RECEIPT, OrderStatus.COMPLETED, OrderStatus.RETURNING);
+        edges(OrderStatus.COMPLETED, OrderStatus.RETURNING);
+        edges(OrderStatus.REFUNDING, OrderStatus.REFUNDED, OrderStatus.CANCELLED);
+        edges(OrderStatus.RETURNING, OrderStatus.RETURNED, OrderStatus.CANCELLED);
+
+        // 支付成功后订单直接进入待发货
+        on(OrderEvent.PAY, OrderStatus.PENDING_SHIPMENT, OrderStatus.PENDING_PAYMENT);
+        on(OrderEvent.SHIP, OrderStatus.SHIPPED, OrderStatus.PENDING_SHIPMENT);
+        on(OrderEvent.RECEIVE, OrderStatus.COMPLETED, OrderStatus.SHIPPED, OrderStatus.PENDING_RECEIPT);
+        on(OrderEvent.COMPLETE, OrderStatus.COMPLETED, OrderStatus.SHIPPED, OrderStatus.PENDING_RECEIPT);
+        on(OrderEvent.CANCEL, OrderStatus.CANCELLED,
+                OrderStatus.PENDING_PAYMENT, OrderStatus.PAID, OrderStatus.PENDING_SHIPMENT);
+        on(OrderEvent.REFUND, OrderStatus.REFUNDING, OrderStatus.PAID, OrderStatus.PENDING_SHIPMENT);
+        on(OrderEvent.CONFIRM_REFUND, OrderStatus.REFUNDED, OrderStatus.REFUNDING);
+        on(OrderEvent.RETURN, OrderStatus.RETURNING,
+                OrderStatus.SHIPPED, OrderStatus.PENDING_RECEIPT, OrderStatus.COMPLETED);
+        on(OrderEvent.CONFIRM_RETURN, OrderStatus.RETURNED, OrderStatus.RETURNING);
+    }
+
+    private OrderTransitionTable() {
+    }
+
+    /**
+     * 判断状态是否可以直接转换
+     *
+     * @param currentStatus 当前状态
+     * @param targetStatus  目标状态
+     * @return 是否可以转换
+     */
+    public static boolean canTransit(OrderStatus currentStatus, OrderStatus targetStatus) {
+        return currentStatus != null && targetStatus != null && NEXT_STATES.get(currentStatus).contains(targetStatus);
+    }
+
+    /**
+     * 获取允许的下一状态集合（只读）
+     *
+     * @param currentStatus 当前状态
+     * @return 下一状态集合
+     */
+    public static Set<OrderStatus> nextStates(OrderStatus currentStatus) {
+        if (currentStatus == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(NEXT_STATES.get(currentStatus));
+    }
+
+    /**
+     * 获取事件作用于当前状态后的目标状态
+     *
+     * @param currentStatus 当前状态
+     * @param event         事件
+     * @return 目标状态，事件在当前状态下不可用时为null
+     */
+    public static OrderStatus targetOf(OrderStatus currentStatus, OrderEvent event) {
+        if (currentStatus == null || event == null) {
+            return null;
+        }
+        Map<OrderStatus, OrderStatus> targets = EVENT_TARGETS.get(event);
+        return targets != null ? targets.get(currentStatus) : null;
+    }
+
+    /**
+     * 获取事件转换到目标状态时允许的源状态集合（只读）
+     *
+     * @param event        事件
+     * @param targetStatus 目标状态
+     * @return 源状态集合
+     */
+    public static Set<OrderStatus> sourcesOf(OrderEvent event, OrderStatus targetStatus) {
+        Map<OrderStatus, Set<OrderStatus>> sources = EVENT_SOURCES.get(event);
+        if (sources == null || !sources.containsKey(targetStatus)) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(sources.get(targetStatus));
+    }
+
+    private static void edges(OrderStatus from, OrderStatus... targets) {
+        Set<OrderStatus> next = NEXT_STATES.get(from);
+        Collections.addAll(next, targets);
+    }
+
+    private static void on(OrderEvent event, OrderStatus target, OrderStatus... sources) {
+        Map<OrderStatus, OrderStatus> targets = EVENT_TARGETS.computeIfAbsent(event, e -> new EnumMap<>(OrderStatus.class));
+        Set<OrderStatus> sourceSet = EVENT_SOURCES.computeIfAbsent(event, e -> new EnumMap<>(OrderStatus.class))
+                .computeIfAbsent(target, t -> EnumSet.noneOf(OrderStatus.class));
+        for (OrderStatus source : sources) {
+            if (!canTransit(source, target)) {
+                throw new IllegalStateException("事件转换不在状态图中: " + event + " " + source + " -> " + target);
+            }
+            targets.put(source, target);
+            sourceSet.add(source);
+        }
+    }
+}
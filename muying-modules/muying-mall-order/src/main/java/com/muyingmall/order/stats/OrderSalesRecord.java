@@ -0,0 +1,33 @@
+package com.muyingmall.order.stats;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 销售汇总使用的订单精简行，只包含归桶所需的字段
+ */
+@Data
+public class OrderSalesRecord {
+
+    /**
+     * 订单ID
+     */
+    private Integer orderId;
+
+    /**
+     * 订单创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 实付金额
+     */
+    private BigDecimal actualAmount;
+
+    /**
+     * 商品件数
+     */
+    private Long itemCount;
+}
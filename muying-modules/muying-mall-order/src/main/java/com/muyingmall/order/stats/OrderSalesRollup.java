@@ -0,0 +1,237 @@
+package com.muyingmall.order.stats;
+
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.event.OrderStatusChangedEvent;
+import com.muyingmall.order.entity.OrderSalesBucket;
+import com.muyingmall.order.mapper.OrderMapper;
+import com.muyingmall.order.mapper.OrderSalesBucketMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 订单销售汇总
+ *
+ * <p>按订单创建时间把已完成订单汇总到小时桶和天桶，区间销售额查询不再加载订单明细：</p>
+ * <ul>
+ *   <li>订单进入或离开已完成状态时，在事务提交后按订单金额、件数增减对应的小时桶和天桶</li>
+ *   <li>区间查询拆分为：中间整天读天桶，首尾整小时读小时桶，不足一小时的边界直接聚合订单表，
+ *       任意跨度读取的桶不超过 2 * 23 个小时桶加区间内的天数</li>
+ *   <li>回填与重算通过流式游标逐行读取订单，只在内存中保留按小时聚合的结果</li>
+ *   <li>定时重算最近几天，修正其他服务直接改库或事件丢失造成的偏差</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class OrderSalesRollup {
+
+    /**
+     * 每批写入的汇总桶数
+     */
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    private final OrderMapper orderMapper;
+    private final OrderSalesBucketMapper orderSalesBucketMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * 定时重算覆盖的天数（含当天）
+     */
+    private final int reconcileDays;
+
+    public OrderSalesRollup(OrderMapper orderMapper, OrderSalesBucketMapper orderSalesBucketMapper,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${muying.order.sales-rollup.reconcile-days:2}") int reconcileDays) {
+        this.orderMapper = orderMapper;
+        this.orderSalesBucketMapper = orderSalesBucketMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.reconcileDays = reconcileDays;
+    }
+
+    /**
+     * 订单进入已完成状态时累加，离开已完成状态（如完成后退货）时扣减
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, rollbackFor = Exception.class)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        boolean completed = event.getNewStatus() == OrderStatus.COMPLETED;
+        boolean reverted = event.getOldStatus() == OrderStatus.COMPLETED;
+        if (event.getOrderId() == null || completed == reverted) {
+            return;
+        }
+
+        try {
+            OrderSalesRecord record = orderMapper.selectSalesRecord(event.getOrderId().intValue());
+            if (record == null || record.getCreateTime() == null) {
+                return;
+            }
+            int sign = completed ? 1 : -1;
+            BigDecimal amount = record.getActualAmount() != null ? record.getActualAmount() : BigDecimal.ZERO;
+            long items = record.getItemCount() != null ? record.getItemCount() : 0L;
+            LocalDateTime createTime = record.getCreateTime();
+
+            orderSalesBucketMapper.incrementBatch(Arrays.asList(
+                    bucket(OrderSalesBucket.TYPE_HOUR, createTime.truncatedTo(ChronoUnit.HOURS),
+                            amount.multiply(BigDecimal.valueOf(sign)), sign, items * sign),
+                    bucket(OrderSalesBucket.TYPE_DAY, createTime.truncatedTo(ChronoUnit.DAYS),
+                            amount.multiply(BigDecimal.valueOf(sign)), sign, items * sign)));
+        } catch (Exception e) {
+            // 汇总失败不影响订单流程，由定时重算修正
+            log.warn("更新销售汇总失败: orderId={}, {} -> {}",
+                    event.getOrderId(), event.getOldStatus(), event.getNewStatus(), e);
+        }
+    }
+
+    /**
+     * 获取时间段内已完成订单的销售额（按订单创建时间，包含首尾时间点）
+     *
+     * @param startTime 开始时间
+     * @param endTime   结束时间
+     * @return 销售额
+     */
+    public BigDecimal getSalesBetween(LocalDateTime startTime, LocalDateTime endTime) {
+        if (startTime == null || endTime == null || startTime.isAfter(endTime)) {
+            return BigDecimal.ZERO;
+        }
+
+        // [firstHour, lastHour) 为区间内的完整小时
+        LocalDateTime firstHour = ceilTo(startTime, ChronoUnit.HOURS);
+        LocalDateTime lastHour = endTime.truncatedTo(ChronoUnit.HOURS);
+        if (!firstHour.isBefore(lastHour)) {
+            return orderMapper.sumCompletedSales(startTime, endTime, true);
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+        if (startTime.isBefore(firstHour)) {
+            total = total.add(orderMapper.sumCompletedSales(startTime, firstHour, false));
+        }
+        total = total.add(orderMapper.sumCompletedSales(lastHour, endTime, true));
+
+        // [firstDay, lastDay) 为完整小时范围内的完整天
+        LocalDateTime firstDay = ceilTo(firstHour, ChronoUnit.DAYS);
+        LocalDateTime lastDay = lastHour.truncatedTo(ChronoUnit.DAYS);
+        if (firstDay.isBefore(lastDay)) {
+            total = total.add(sumBuckets(OrderSalesBucket.TYPE_HOUR, firstHour, firstDay));
+            total = total.add(sumBuckets(OrderSalesBucket.TYPE_DAY, firstDay, lastDay));
+            total = total.add(sumBuckets(OrderSalesBucket.TYPE_HOUR, lastDay, lastHour));
+        } else {
+            total = total.add(sumBuckets(OrderSalesBucket.TYPE_HOUR, firstHour, lastHour));
+        }
+        return total;
+    }
+
+    /**
+     * 重算日期范围内的汇总桶，用于首次回填或修正偏差
+     * 订单通过流式游标逐行读取，内存中只保留按小时聚合的结果
+     *
+     * @param startDate 开始日期（含）
+     * @param endDate   结束日期（含）
+     * @return 参与汇总的订单数
+     */
+    public long rebuild(LocalDate startDate, LocalDate endDate) {
+        // 游标只能在事务持有的会话内遍历，定时任务内部调用时同样需要事务
+        Long orders = transactionTemplate.execute(status -> doRebuild(startDate, endDate));
+        return orders != null ? orders : 0L;
+    }
+
+    private long doRebuild(LocalDate startDate, LocalDate endDate) {
+        LocalDateTime startTime = startDate.atStartOfDay();
+        LocalDateTime endTime = endDate.plusDays(1).atStartOfDay();
+        long begin = System.currentTimeMillis();
+
+        Map<LocalDateTime, OrderSalesBucket> hourBuckets = new TreeMap<>();
+        Map<LocalDateTime, OrderSalesBucket> dayBuckets = new TreeMap<>();
+        long orders = 0;
+        try (Cursor<OrderSalesRecord> cursor = orderMapper.streamCompletedSales(startTime, endTime)) {
+            for (OrderSalesRecord record : cursor) {
+                BigDecimal amount = record.getActualAmount() != null ? record.getActualAmount() : BigDecimal.ZERO;
+                long items = record.getItemCount() != null ? record.getItemCount() : 0L;
+                accumulate(hourBuckets, OrderSalesBucket.TYPE_HOUR,
+                        record.getCreateTime().truncatedTo(ChronoUnit.HOURS), amount, items);
+                accumulate(dayBuckets, OrderSalesBucket.TYPE_DAY,
+                        record.getCreateTime().truncatedTo(ChronoUnit.DAYS), amount, items);
+                orders++;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("流式读取订单销售数据失败", e);
+        }
+
+        // 游标关闭后再写入，流式结果集未读完前同一连接不能执行其他语句
+        orderSalesBucketMapper.deleteBetween(startTime, endTime);
+        List<OrderSalesBucket> buckets = new ArrayList<>(hourBuckets.size() + dayBuckets.size());
+        buckets.addAll(hourBuckets.values());
+        buckets.addAll(dayBuckets.values());
+        for (int from = 0; from < buckets.size(); from += WRITE_BATCH_SIZE) {
+            orderSalesBucketMapper.replaceBatch(buckets.subList(from, Math.min(from + WRITE_BATCH_SIZE, buckets.size())));
+        }
+
+        log.info("重算销售汇总完成: {} ~ {}, orders={}, buckets={}, cost={}ms",
+                startDate, endDate, orders, buckets.size(), System.currentTimeMillis() - begin);
+        return orders;
+    }
+
+    /**
+     * 定时重算最近几天的汇总桶
+     */
+    @Scheduled(cron = "${muying.order.sales-rollup.reconcile-cron:0 30 3 * * ?}")
+    public void reconcile() {
+        LocalDate today = LocalDate.now();
+        try {
+            rebuild(today.minusDays(Math.max(reconcileDays, 1) - 1L), today);
+        } catch (Exception e) {
+            log.error("销售汇总定时重算失败", e);
+        }
+    }
+
+    private BigDecimal sumBuckets(String bucketType, LocalDateTime startTime, LocalDateTime endTime) {
+        if (!startTime.isBefore(endTime)) {
+            return BigDecimal.ZERO;
+        }
+        return orderSalesBucketMapper.sumSalesAmount(bucketType, startTime, endTime);
+    }
+
+    private void accumulate(Map<LocalDateTime, OrderSalesBucket> buckets, String bucketType,
+                            LocalDateTime bucketTime, BigDecimal amount, long items) {
+        OrderSalesBucket bucket = buckets.computeIfAbsent(bucketTime,
+                time -> bucket(bucketType, time, BigDecimal.ZERO, 0, 0));
+        bucket.setSalesAmount(bucket.getSalesAmount().add(amount));
+        bucket.setOrderCount(bucket.getOrderCount() + 1);
+        bucket.setItemCount(bucket.getItemCount() + items);
+    }
+
+    private OrderSalesBucket bucket(String bucketType, LocalDateTime bucketTime,
+                                    BigDecimal amount, long orders, long items) {
+        OrderSalesBucket bucket = new OrderSalesBucket();
+        bucket.setBucketType(bucketType);
+        bucket.setBucketTime(bucketTime);
+        bucket.setSalesAmount(amount);
+        bucket.setOrderCount(orders);
+        bucket.setItemCount(items);
+        return bucket;
+    }
+
+    /**
+     * 向上取整到指定时间单位
+     */
+    private LocalDateTime ceilTo(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? truncated : truncated.plus(1, unit);
+    }
+}
@@ -0,0 +1,254 @@
+package com.muyingmall.order.stats;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.event.OrderStatusChangedEvent;
+import com.muyingmall.order.mapper.OrderMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单状态计数器
+ *
+ * <p>为"我的订单"角标和后台统计维护按状态的订单数量，读取时只需一次 HGETALL：</p>
+ * <ul>
+ *   <li>每个用户一个 HASH，另有一个全局 HASH，field 为状态编码，TOTAL 为订单总数</li>
+ *   <li>订单创建和每次 {@link OrderStatusChangedEvent} 在事务提交后用Lua脚本原子地增减计数</li>
+ *   <li>计数器不存在时只增减已存在的 HASH，读取时用一次 GROUP BY 查询重建</li>
+ *   <li>定时对账任务用 GROUP BY 结果覆盖计数器，修正其他服务直接改库造成的偏差</li>
+ *   <li>重建和对账用一个Lua脚本整体替换 HASH，不会出现计数器被删除后、写入前的空窗</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class OrderStatusCounter {
+
+    /**
+     * 订单总数字段
+     */
+    public static final String TOTAL_FIELD = "TOTAL";
+
+    private static final String GLOBAL_KEY = CacheConstants.ORDER_STATUS_COUNTER_KEY + "global";
+    private static final String USER_KEY_PREFIX = CacheConstants.ORDER_STATUS_COUNTER_KEY + "user:";
+
+    /**
+     * 对账时每批处理的用户数
+     */
+    private static final int RECONCILE_BATCH_SIZE = 200;
+
+    /**
+     * 仅对已存在的计数器增减，ARGV 为 field、delta 交替排列
+     */
+    private static final String INCREMENT_SCRIPT =
+            "for k = 1, #KEYS do " +
+            "    if redis.call('EXISTS', KEYS[k]) == 1 then " +
+            "        for i = 1, #ARGV, 2 do " +
+            "            redis.call('HINCRBY', KEYS[k], ARGV[i], ARGV[i + 1]) " +
+            "        end " +
+            "    end " +
+            "end " +
+            "return 1";
+
+    private static final DefaultRedisScript<Long> INCREMENT_REDIS_SCRIPT = new DefaultRedisScript<>(INCREMENT_SCRIPT, Long.class);
+
+    /**
+     * 整体替换计数器：删除、写入和设置过期在同一脚本中完成，并发的 HINCRBY 不会落在删除与写入之间
+     * ARGV[1] 为过期秒数（0 表示不过期），其后为 field、value 交替排列
+     */
+    private static final String REPLACE_SCRIPT =
+            "redis.call('DEL', KEYS[1]) " +
+            "for i = 2, #ARGV, 2 do " +
+            "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) " +
+            "end " +
+            "if tonumber(ARGV[1]) > 0 then " +
+            "    redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "end " +
+            "return 1";
+
+    private static final DefaultRedisScript<Long> REPLACE_REDIS_SCRIPT = new DefaultRedisScript<>(REPLACE_SCRIPT, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OrderMapper orderMapper;
+
+    /**
+     * 用户计数器过期时间（小时），不活跃用户的计数器自动淘汰，下次读取时重建
+     */
+    private final long userCounterExpireHours;
+
+    public OrderStatusCounter(StringRedisTemplate stringRedisTemplate, OrderMapper orderMapper,
+                              @Value("${muying.order.counter.user-expire-hours:168}") long userCounterExpireHours) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderMapper = orderMapper;
+        this.userCounterExpireHours = userCounterExpireHours;
+    }
+
+    /**
+     * 订单状态变更（含创建）后更新计数，oldStatus 为 null 表示新建订单
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onOrderStatusChanged(OrderStatusChangedEvent event) {
+        if (event.getUserId() == null || event.getNewStatus() == null
+                || event.getNewStatus() == event.getOldStatus()) {
+            return;
+        }
+
+        List<String> args = new ArrayList<>(4);
+        if (event.getOldStatus() == null) {
+            args.add(TOTAL_FIELD);
+            args.add("1");
+        } else {
+            args.add(event.getOldStatus().getCode());
+            args.add("-1");
+        }
+        args.add(event.getNewStatus().getCode());
+        args.add("1");
+
+        try {
+            stringRedisTemplate.execute(INCREMENT_REDIS_SCRIPT,
+                    Arrays.asList(userKey(event.getUserId().intValue()), GLOBAL_KEY),
+                    args.toArray());
+        } catch (Exception e) {
+            // 计数失败不影响订单流程，由对账任务修正
+            log.warn("更新订单状态计数失败: orderId={}, {} -> {}",
+                    event.getOrderId(), event.getOldStatus(), event.getNewStatus(), e);
+        }
+    }
+
+    /**
+     * 获取订单状态计数
+     *
+     * @param userId 用户ID，为null时获取全局计数
+     * @return 状态编码 -> 数量，含 TOTAL
+     */
+    public Map<String, Long> getCounts(Integer userId) {
+        String key = userId != null ? userKey(userId) : GLOBAL_KEY;
+        try {
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+            if (!entries.isEmpty()) {
+                Map<String, Long> counts = new HashMap<>(entries.size() * 2);
+                entries.forEach((field, value) -> counts.put(String.valueOf(field), Long.parseLong(String.valueOf(value))));
+                return counts;
+            }
+        } catch (Exception e) {
+            log.warn("读取订单状态计数失败，回退到数据库统计: userId={}", userId, e);
+            return toCounts(orderMapper.countGroupByStatus(userId));
+        }
+
+        // 计数器缺失，用一次 GROUP BY 重建
+        Map<String, Long> counts = toCounts(orderMapper.countGroupByStatus(userId));
+        writeCounts(key, counts, userId != null);
+        return counts;
+    }
+
+    /**
+     * 定时对账：用数据库统计结果覆盖全局计数器和已缓存的用户计数器
+     */
+    @Scheduled(cron = "${muying.order.counter.reconcile-cron:0 15 * * * ?}")
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+        try {
+            writeCounts(GLOBAL_KEY, toCounts(orderMapper.countGroupByStatus(null)), false);
+
+            int reconciled = 0;
+            List<Integer> batch = new ArrayList<>(RECONCILE_BATCH_SIZE);
+            ScanOptions options = ScanOptions.scanOptions().match(USER_KEY_PREFIX + "*").count(1000).build();
+            try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    batch.add(Integer.valueOf(cursor.next().substring(USER_KEY_PREFIX.length())));
+                    if (batch.size() >= RECONCILE_BATCH_SIZE) {
+                        reconciled += reconcileUsers(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                reconciled += reconcileUsers(batch);
+            }
+            log.info("订单状态计数对账完成: users={}, cost={}ms", reconciled, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("订单状态计数对账失败", e);
+        }
+    }
+
+    private int reconcileUsers(List<Integer> userIds) {
+        Map<Integer, Map<String, Long>> countsByUser = new HashMap<>(userIds.size() * 2);
+        for (Integer userId : userIds) {
+            countsByUser.put(userId, new HashMap<>());
+        }
+        for (Map<String, Object> row : orderMapper.countGroupByUserAndStatus(userIds)) {
+            Integer userId = ((Number) row.get("user_id")).intValue();
+            accumulate(countsByUser.get(userId), row);
+        }
+        countsByUser.forEach((userId, counts) -> writeCounts(userKey(userId), withTotal(counts), true));
+        return userIds.size();
+    }
+
+    private void writeCounts(String key, Map<String, Long> counts, boolean expire) {
+        try {
+            List<String> args = new ArrayList<>(counts.size() * 2 + 1);
+            args.add(expire ? String.valueOf(TimeUnit.HOURS.toSeconds(userCounterExpireHours)) : "0");
+            counts.forEach((field, value) -> {
+                args.add(field);
+                args.add(String.valueOf(value));
+            });
+            // 整体替换，避免残留已不存在的状态字段
+            stringRedisTemplate.execute(REPLACE_REDIS_SCRIPT, Collections.singletonList(key), args.toArray());
+        } catch (Exception e) {
+            log.warn("写入订单状态计数失败: key={}", key, e);
+        }
+    }
+
+    private Map<String, Long> toCounts(List<Map<String, Object>> rows) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            accumulate(counts, row);
+        }
+        return withTotal(counts);
+    }
+
+    /**
+     * 累加一行统计结果，数据库中的状态值统一转换为枚举编码
+     */
+    private void accumulate(Map<String, Long> counts, Map<String, Object> row) {
+        Object status = row.get("status");
+        long count = ((Number) row.get("cnt")).longValue();
+        if (status == null) {
+            return;
+        }
+        try {
+            String code = OrderStatus.fromCode(String.valueOf(status).toUpperCase()).getCode();
+            counts.merge(code, count, Long::sum);
+        } catch (IllegalArgumentException e) {
+            log.warn("忽略无法识别的订单状态: {}", status);
+        }
+    }
+
+    private Map<String, Long> withTotal(Map<String, Long> counts) {
+        long total = 0;
+        for (Long value : counts.values()) {
+            total += value;
+        }
+        counts.put(TOTAL_FIELD, total);
+        return counts;
+    }
+
+    private String userKey(Integer userId) {
+        return USER_KEY_PREFIX + userId;
+    }
+}
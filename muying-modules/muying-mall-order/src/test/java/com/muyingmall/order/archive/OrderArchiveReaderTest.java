@@ -0,0 +1,126 @@
+package com.muyingmall.order.archive;
+
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.order.entity.Order;
+import com.muyingmall.order.entity.OrderProduct;
+import com.muyingmall.order.mapper.OrderArchiveMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 归档订单读取测试：热表满页时跳过归档表，不足一页时合并、去重、截断，只为归档订单填充商品
+ *
+ * @author 母婴商城开发团队
+ */
+class OrderArchiveReaderTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2026, 10, 1, 12, 0);
+
+    private OrderArchiveMapper orderArchiveMapper;
+
+    private OrderArchiveReader reader;
+
+    @BeforeEach
+    void setUp() {
+        orderArchiveMapper = mock(OrderArchiveMapper.class);
+        reader = new OrderArchiveReader(orderArchiveMapper);
+    }
+
+    @Test
+    void fullHotPageNewerThanArchiveShouldSkipArchive() {
+        List<Order> hot = List.of(order(30, 30), order(29, 29), order(28, 28));
+        when(orderArchiveMapper.selectLatestCreateTime(1)).thenReturn(BASE.plusMinutes(20));
+
+        assertSame(hot, reader.mergeHistory(1, null, null, null, hot, 3));
+
+        verify(orderArchiveMapper, never()).selectHistory(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void fullHotPageReachingArchiveShouldMerge() {
+        List<Order> hot = new ArrayList<>(List.of(order(30, 30), order(10, 10), order(9, 9)));
+        when(orderArchiveMapper.selectLatestCreateTime(1)).thenReturn(BASE.plusMinutes(20));
+        when(orderArchiveMapper.selectHistory(1, null, null, null, 3))
+                .thenReturn(new ArrayList<>(List.of(order(20, 20), order(19, 19), order(18, 18))));
+
+        List<Order> merged = reader.mergeHistory(1, null, null, null, hot, 3);
+
+        assertEquals(List.of(30, 20, 19), ids(merged));
+    }
+
+    @Test
+    void shortHotPageShouldMergeDeduplicateAndTruncate() {
+        Order hot12 = order(12, 12);
+        List<Order> hot = new ArrayList<>(List.of(order(15, 15), hot12));
+        // 12 在两次查询之间被归档，两边都能查到
+        when(orderArchiveMapper.selectHistory(1, OrderStatus.COMPLETED.getCode(), BASE.plusMinutes(16), 16, 4))
+                .thenReturn(new ArrayList<>(List.of(order(12, 12), order(11, 11), order(10, 10), order(9, 9))));
+        when(orderArchiveMapper.selectProducts(anyCollection())).thenAnswer(invocation -> {
+            List<OrderProduct> products = new ArrayList<>();
+            for (Object orderId : invocation.getArgument(0, java.util.Collection.class)) {
+                OrderProduct product = new OrderProduct();
+                product.setOrderId((Integer) orderId);
+                products.add(product);
+            }
+            return products;
+        });
+
+        List<Order> merged = reader.mergeHistory(1, OrderStatus.COMPLETED, BASE.plusMinutes(16), 16, hot, 4);
+
+        assertEquals(List.of(15, 12, 11, 10), ids(merged));
+        assertSame(hot12, merged.get(1));
+        // 只为本页中的归档订单查询商品
+        verify(orderArchiveMapper).selectProducts(List.of(11, 10));
+        assertNull(merged.get(0).getProducts());
+        assertEquals(1, merged.get(2).getProducts().size());
+    }
+
+    @Test
+    void emptyArchiveShouldReturnHotOrders() {
+        List<Order> hot = new ArrayList<>(List.of(order(5, 5)));
+
+        assertSame(hot, reader.mergeHistory(1, null, null, null, hot, 4));
+
+        verify(orderArchiveMapper, never()).selectProducts(anyCollection());
+    }
+
+    @Test
+    void findByIdShouldAttachProducts() {
+        when(orderArchiveMapper.selectById(7)).thenReturn(order(7, 7));
+        OrderProduct product = new OrderProduct();
+        product.setOrderId(7);
+        when(orderArchiveMapper.selectProducts(List.of(7))).thenReturn(List.of(product));
+
+        assertEquals(List.of(product), reader.findById(7).getProducts());
+        assertNull(reader.findById(8));
+    }
+
+    private static List<Integer> ids(List<Order> orders) {
+        return orders.stream().map(Order::getOrderId).collect(Collectors.toList());
+    }
+
+    private static Order order(int orderId, int minute) {
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setUserId(1);
+        order.setCreateTime(BASE.plusMinutes(minute));
+        order.setStatus(OrderStatus.COMPLETED);
+        return order;
+    }
+}
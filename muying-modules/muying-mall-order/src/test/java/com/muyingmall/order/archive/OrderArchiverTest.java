@@ -0,0 +1,108 @@
+package com.muyingmall.order.archive;
+
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.order.mapper.OrderArchiveMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单归档任务测试：先复制再删除、按批次数量结束、批次上限和开关
+ *
+ * @author 母婴商城开发团队
+ */
+class OrderArchiverTest {
+
+    private OrderArchiveMapper orderArchiveMapper;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        orderArchiveMapper = mock(OrderArchiveMapper.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+    }
+
+    @Test
+    void chunkShouldCopyBeforeDeleting() {
+        List<Integer> ids = List.of(1, 2, 3);
+        when(orderArchiveMapper.lockArchivableIds(anyCollection(), any(), anyInt())).thenReturn(ids);
+
+        newArchiver(true, 10, 100).archive();
+
+        InOrder inOrder = inOrder(orderArchiveMapper);
+        inOrder.verify(orderArchiveMapper).lockArchivableIds(anyCollection(), any(), eq(10));
+        inOrder.verify(orderArchiveMapper).copyOrders(ids);
+        inOrder.verify(orderArchiveMapper).copyOrderProducts(ids);
+        inOrder.verify(orderArchiveMapper).copyStateLogs(ids);
+        inOrder.verify(orderArchiveMapper).deleteOrderProducts(ids);
+        inOrder.verify(orderArchiveMapper).deleteStateLogs(ids);
+        inOrder.verify(orderArchiveMapper).deleteOrders(ids);
+        // 不足一批说明已归档完，不再继续
+        verify(transactionTemplate, times(1)).execute(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldOnlyLockClosedOrdersOlderThanRetention() {
+        LocalDateTime before = LocalDateTime.now().minusDays(180);
+        List<Collection<String>> statuses = new ArrayList<>();
+        List<LocalDateTime> cutoffs = new ArrayList<>();
+        when(orderArchiveMapper.lockArchivableIds(anyCollection(), any(), anyInt())).thenAnswer(invocation -> {
+            statuses.add(invocation.getArgument(0));
+            cutoffs.add(invocation.getArgument(1));
+            return List.of();
+        });
+
+        newArchiver(true, 10, 100).archive();
+
+        assertEquals(List.of(OrderStatus.COMPLETED.getCode(), OrderStatus.CANCELLED.getCode(),
+                OrderStatus.REFUNDED.getCode(), OrderStatus.RETURNED.getCode()), new ArrayList<>(statuses.get(0)));
+        assertTrue(!cutoffs.get(0).isBefore(before) && cutoffs.get(0).isBefore(before.plusMinutes(1)));
+        verify(orderArchiveMapper, never()).copyOrders(anyCollection());
+    }
+
+    @Test
+    void fullChunksShouldContinueUntilChunkLimit() {
+        when(orderArchiveMapper.lockArchivableIds(anyCollection(), any(), anyInt())).thenReturn(List.of(1, 2));
+
+        newArchiver(true, 2, 3).archive();
+
+        verify(transactionTemplate, times(3)).execute(any());
+        verify(orderArchiveMapper, times(3)).deleteOrders(anyCollection());
+    }
+
+    @Test
+    void disabledArchiverShouldDoNothing() {
+        newArchiver(false, 10, 100).archive();
+
+        verify(transactionTemplate, never()).execute(any());
+    }
+
+    private OrderArchiver newArchiver(boolean enabled, int chunkSize, int maxChunks) {
+        return new OrderArchiver(orderArchiveMapper, transactionTemplate, enabled, 180, chunkSize, 0, maxChunks);
+    }
+}
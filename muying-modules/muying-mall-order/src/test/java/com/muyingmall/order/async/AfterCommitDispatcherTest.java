@@ -0,0 +1,226 @@
+package com.muyingmall.order.async;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 事务提交后副作用分发器测试：同一订单按登记顺序执行、失败重试、积压时在提交线程执行，以及事务提交和回滚后的分发
+ *
+ * @author 母婴商城开发团队
+ */
+class AfterCommitDispatcherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AfterCommitDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void tasksOfSameOrderShouldRunInDispatchOrder() throws Exception {
+        dispatcher = new AfterCommitDispatcher(meterRegistry, 10000, 1, 0);
+        List<Integer> first = new CopyOnWriteArrayList<>();
+        List<Integer> second = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(200);
+
+        // 两个订单交替登记，每个任务随机耗时，不同订单的任务并行执行
+        for (int i = 0; i < 100; i++) {
+            int seq = i;
+            dispatcher.dispatch("first", 1L, () -> {
+                sleepRandomly();
+                first.add(seq);
+                done.countDown();
+            });
+            dispatcher.dispatch("second", 2L, () -> {
+                sleepRandomly();
+                second.add(seq);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        List<Integer> expected = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        assertEquals(expected, first);
+        assertEquals(expected, second);
+    }
+
+    @Test
+    void blockedOrderShouldNotDelayOtherOrders() throws Exception {
+        dispatcher = new AfterCommitDispatcher(meterRegistry, 10000, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherDone = new CountDownLatch(1);
+        AtomicInteger sameOrderRuns = new AtomicInteger();
+
+        dispatcher.dispatch("blocked", 1L, () -> await(release));
+        dispatcher.dispatch("queued", 1L, sameOrderRuns::incrementAndGet);
+        dispatcher.dispatch("other", 2L, otherDone::countDown);
+
+        assertTrue(otherDone.await(1, TimeUnit.SECONDS));
+        assertEquals(0, sameOrderRuns.get());
+        release.countDown();
+        awaitCount("succeeded", 3);
+        assertEquals(1, sameOrderRuns.get());
+    }
+
+    @Test
+    void failedTaskShouldBeRetriedUntilSuccess() throws Exception {
+        dispatcher = new AfterCommitDispatcher(meterRegistry, 10000, 3, 10);
+        AtomicInteger attempts = new AtomicInteger();
+
+        dispatcher.dispatch("flaky", 1L, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("暂时失败");
+            }
+        });
+
+        awaitCount("succeeded", 1);
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, count("retried"));
+        assertEquals(0.0, count("failed"));
+    }
+
+    @Test
+    void exhaustedTaskShouldNotBlockLaterTasksOfSameOrder() throws Exception {
+        dispatcher = new AfterCommitDispatcher(meterRegistry, 10000, 3, 10);
+        AtomicInteger attempts = new AtomicInteger();
+        CountDownLatch next = new CountDownLatch(1);
+
+        dispatcher.dispatch("broken", 1L, () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("持续失败");
+        });
+        dispatcher.dispatch("next", 1L, next::countDown);
+
+        assertTrue(next.await(2, TimeUnit.SECONDS));
+        assertEquals(3, attempts.get());
+        assertEquals(1.0, count("failed"));
+        assertEquals(2.0, count("retried"));
+    }
+
+    @Test
+    void saturatedDispatcherShouldRunOnCallerThread() throws Exception {
+        dispatcher = new AfterCommitDispatcher(meterRegistry, 1, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> overflowThread = new AtomicReference<>();
+
+        dispatcher.dispatch("blocked", 1L, () -> await(release));
+        dispatcher.dispatch("overflow", 2L, () -> overflowThread.set(Thread.currentThread()));
+
+        // 超过上限的任务在 dispatch 返回前已在调用线程上执行完
+        assertSame(Thread.currentThread(), overflowThread.get());
+        assertEquals(1.0, count("caller_runs"));
+        release.countDown();
+        awaitPending(0);
+
+        // 积压消除后恢复异步执行
+        AtomicReference<Thread> asyncThread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch("async", 3L, () -> {
+            asyncThread.set(Thread.currentThread());
+            done.countDown();
+        });
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertTrue(asyncThread.get().isVirtual());
+        assertEquals(1.0, count("caller_runs"));
+    }
+
+    @Test
+    void tasksShouldWaitForTransactionOutcome() throws Exception {
+        dispatcher = new AfterCommitDispatcher(meterRegistry, 10000, 1, 0);
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger compensated = new AtomicInteger();
+
+        TransactionSynchronizationManager.initSynchronization();
+        dispatcher.dispatch("commit", 1L, committed::incrementAndGet);
+        dispatcher.dispatchAfterRollback("compensate", 1L, compensated::incrementAndGet);
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertEquals(0, committed.get());
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+        awaitCount("succeeded", 1);
+        assertEquals(1, committed.get());
+        assertEquals(0, compensated.get());
+
+        // 回滚时丢弃提交后的副作用，只执行补偿
+        TransactionSynchronizationManager.initSynchronization();
+        dispatcher.dispatch("commit", 2L, committed::incrementAndGet);
+        dispatcher.dispatchAfterRollback("compensate", 2L, compensated::incrementAndGet);
+        synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+        awaitCount("succeeded", 2);
+        assertEquals(1, committed.get());
+        assertEquals(1, compensated.get());
+        assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("muying.order.after_commit.tasks").tag("result", result).counter().count();
+    }
+
+    private void awaitCount(String result, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (count(result) < expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        assertEquals(expected, count(result));
+    }
+
+    private void awaitPending(double expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (pending() != expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+        assertEquals(expected, pending());
+    }
+
+    private double pending() {
+        return meterRegistry.get("muying.order.after_commit.pending").gauge().value();
+    }
+
+    private static void sleepRandomly() {
+        try {
+            TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextInt(500));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
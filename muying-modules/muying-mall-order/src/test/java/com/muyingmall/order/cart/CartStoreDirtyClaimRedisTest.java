@@ -0,0 +1,130 @@
+package com.muyingmall.order.cart;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.order.mapper.CartMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 购物车待回写领取测试：在真实 Redis 上校验租约领取、提交后移出、失败放回和租约过期回收
+ *
+ * @author 母婴商城开发团队
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class CartStoreDirtyClaimRedisTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    private CartStore cartStore;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+        cartStore = new CartStore(redisTemplate, mock(CartMapper.class), new ObjectMapper(), 7);
+    }
+
+    @Test
+    void claimShouldMoveUsersUnderLease() {
+        long now = System.currentTimeMillis();
+        dirty(1, now - 5000);
+        dirty(2, now - 4000);
+        dirty(3, now);
+
+        List<Integer> claimed = cartStore.claimDirtyUsers(now - 1000, 10, 60000);
+
+        assertEquals(List.of(1, 2), claimed);
+        assertNull(redisTemplate.opsForZSet().score(CacheConstants.CART_DIRTY_KEY, "1"));
+        Double lease = redisTemplate.opsForZSet().score(CacheConstants.CART_FLUSHING_KEY, "1");
+        assertNotNull(lease);
+        assertTrue(lease >= now + 60000 && lease < now + 70000);
+        assertNotNull(redisTemplate.opsForZSet().score(CacheConstants.CART_DIRTY_KEY, "3"));
+    }
+
+    @Test
+    void userUnderActiveLeaseShouldNotBeClaimedTwice() {
+        long now = System.currentTimeMillis();
+        dirty(1, now - 5000);
+        assertEquals(List.of(1), cartStore.claimDirtyUsers(now, 10, 60000));
+
+        // 回写期间再次变更
+        dirty(1, now - 100);
+        assertEquals(List.of(), cartStore.claimDirtyUsers(now, 10, 60000));
+
+        // 提交后移出回写中集合，再次变更的部分可以被领取
+        cartStore.completeFlush(List.of(1));
+        assertNull(redisTemplate.opsForZSet().score(CacheConstants.CART_FLUSHING_KEY, "1"));
+        assertEquals(List.of(1), cartStore.claimDirtyUsers(System.currentTimeMillis(), 10, 60000));
+    }
+
+    @Test
+    void releaseShouldReturnUsersToDirtySet() {
+        long now = System.currentTimeMillis();
+        dirty(1, now - 5000);
+        cartStore.claimDirtyUsers(now, 10, 60000);
+
+        cartStore.releaseDirtyUsers(List.of(1));
+
+        assertNull(redisTemplate.opsForZSet().score(CacheConstants.CART_FLUSHING_KEY, "1"));
+        assertNotNull(redisTemplate.opsForZSet().score(CacheConstants.CART_DIRTY_KEY, "1"));
+    }
+
+    @Test
+    void expiredLeaseShouldBeRecovered() {
+        long now = System.currentTimeMillis();
+        dirty(1, now - 5000);
+        dirty(2, now - 5000);
+        cartStore.claimDirtyUsers(now, 1, -1);
+        cartStore.claimDirtyUsers(now, 1, 60000);
+
+        // 用户1的租约已过期（节点在提交前宕机），用户2仍在回写
+        assertEquals(1, cartStore.recoverExpiredFlushes(10));
+
+        assertNotNull(redisTemplate.opsForZSet().score(CacheConstants.CART_DIRTY_KEY, "1"));
+        assertNull(redisTemplate.opsForZSet().score(CacheConstants.CART_FLUSHING_KEY, "1"));
+        assertNotNull(redisTemplate.opsForZSet().score(CacheConstants.CART_FLUSHING_KEY, "2"));
+    }
+
+    private static void dirty(int userId, long firstChange) {
+        redisTemplate.opsForZSet().add(CacheConstants.CART_DIRTY_KEY, String.valueOf(userId), firstChange);
+    }
+}
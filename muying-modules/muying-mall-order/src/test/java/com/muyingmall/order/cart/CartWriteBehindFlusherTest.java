@@ -0,0 +1,128 @@
+package com.muyingmall.order.cart;
+
+import com.muyingmall.order.entity.Cart;
+import com.muyingmall.order.mapper.CartMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 购物车回写任务测试：领取带租约，事务提交后才移出回写中集合，失败时放回待回写集合
+ *
+ * @author 母婴商城开发团队
+ */
+class CartWriteBehindFlusherTest {
+
+    private static final long LEASE_MILLIS = 60000;
+
+    private CartStore cartStore;
+
+    private CartMapper cartMapper;
+
+    private TransactionTemplate transactionTemplate;
+
+    private CartWriteBehindFlusher flusher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        cartStore = mock(CartStore.class);
+        cartMapper = mock(CartMapper.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<Object>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        flusher = new CartWriteBehindFlusher(cartStore, cartMapper, transactionTemplate, 2000, 10, LEASE_MILLIS);
+    }
+
+    @Test
+    void claimShouldBeRemovedOnlyAfterCommit() {
+        when(cartStore.claimDirtyUsers(anyLong(), eq(10), eq(LEASE_MILLIS))).thenReturn(List.of(1, 2));
+        when(cartStore.snapshot(List.of(1, 2))).thenReturn(Map.of(1, snapshot(11, 12), 2, snapshot(21)));
+
+        flusher.flush();
+
+        InOrder inOrder = inOrder(cartMapper, cartStore);
+        inOrder.verify(cartMapper).deleteByIds(List.of(12));
+        inOrder.verify(cartMapper).batchUpsertState(anyList());
+        inOrder.verify(cartStore).clearTombstones(anyMap());
+        inOrder.verify(cartStore).completeFlush(List.of(1, 2));
+        verify(cartStore, never()).releaseDirtyUsers(anyList());
+    }
+
+    @Test
+    void failedFlushShouldReleaseClaimWithoutCompleting() {
+        when(cartStore.claimDirtyUsers(anyLong(), anyInt(), anyLong())).thenReturn(List.of(1));
+        when(cartStore.snapshot(List.of(1))).thenReturn(Map.of(1, snapshot(11)));
+        doThrow(new IllegalStateException("deadlock")).when(cartMapper).batchUpsertState(anyList());
+
+        flusher.flush();
+
+        verify(cartStore, never()).completeFlush(anyList());
+        verify(cartStore, never()).clearTombstones(anyMap());
+        verify(cartStore).releaseDirtyUsers(List.of(1));
+    }
+
+    @Test
+    void expiredCartsShouldCompleteWithoutWriting() {
+        when(cartStore.claimDirtyUsers(anyLong(), anyInt(), anyLong())).thenReturn(List.of(3));
+        when(cartStore.snapshot(List.of(3))).thenReturn(Map.of());
+
+        flusher.flush();
+
+        verify(transactionTemplate, never()).executeWithoutResult(any());
+        verify(cartStore).completeFlush(List.of(3));
+    }
+
+    @Test
+    void fullBatchesShouldKeepClaiming() {
+        List<Integer> full = List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        when(cartStore.claimDirtyUsers(anyLong(), anyInt(), anyLong())).thenReturn(full, List.of(11));
+        when(cartStore.snapshot(anyList())).thenReturn(Map.of());
+
+        flusher.flush();
+
+        verify(cartStore).completeFlush(full);
+        verify(cartStore).completeFlush(List.of(11));
+    }
+
+    @Test
+    void recoveryShouldDelegateToStore() {
+        flusher.recoverExpiredFlushes();
+
+        verify(cartStore).recoverExpiredFlushes(10);
+    }
+
+    /**
+     * 第一个ID为现存购物车项，其余为墓碑
+     */
+    private static CartStore.CartSnapshot snapshot(int cartId, Integer... removedIds) {
+        CartStore.CartSnapshot snapshot = new CartStore.CartSnapshot();
+        Cart cart = new Cart();
+        cart.setCartId(cartId);
+        cart.setQuantity(1);
+        snapshot.getItems().add(cart);
+        snapshot.getRemovedIds().addAll(List.of(removedIds));
+        return snapshot;
+    }
+}
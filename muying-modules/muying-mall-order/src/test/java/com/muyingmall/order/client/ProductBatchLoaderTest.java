@@ -0,0 +1,98 @@
+package com.muyingmall.order.client;
+
+import com.muyingmall.common.dto.Result;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品信息批量加载器测试：窗口内合并去重、达到批次上限立即调用、调用失败时返回null
+ *
+ * @author 母婴商城开发团队
+ */
+class ProductBatchLoaderTest {
+
+    private final ProductServiceClient productServiceClient = mock(ProductServiceClient.class);
+
+    private ProductBatchLoader loader;
+
+    @AfterEach
+    void tearDown() {
+        loader.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void loadsInOneWindowShouldShareOneDeduplicatedCall() throws Exception {
+        when(productServiceClient.getProducts(anyList())).thenReturn(Result.success(List.of(info(1), info(2))));
+        loader = new ProductBatchLoader(productServiceClient, 200, 100, 1);
+
+        CompletableFuture<ProductInfo> first = loader.load(1);
+        CompletableFuture<ProductInfo> second = loader.load(2);
+        CompletableFuture<ProductInfo> repeated = loader.load(1);
+
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).getId());
+        assertEquals(2, second.get(5, TimeUnit.SECONDS).getId());
+        assertSame(first.get(), repeated.get(5, TimeUnit.SECONDS));
+
+        ArgumentCaptor<List<Integer>> ids = ArgumentCaptor.forClass(List.class);
+        verify(productServiceClient).getProducts(ids.capture());
+        assertEquals(List.of(1, 2), ids.getValue());
+    }
+
+    @Test
+    void fullBatchShouldBeDispatchedWithoutWaitingForWindow() throws Exception {
+        when(productServiceClient.getProducts(anyList())).thenReturn(Result.success(List.of(info(1), info(2))));
+        // 窗口远大于测试超时，只有达到批次上限的立即调用才能让结果按时返回
+        loader = new ProductBatchLoader(productServiceClient, 60_000, 2, 1);
+
+        List<CompletableFuture<ProductInfo>> futures = new ArrayList<>();
+        futures.add(loader.load(1));
+        futures.add(loader.load(2));
+
+        for (CompletableFuture<ProductInfo> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        verify(productServiceClient, timeout(1000)).getProducts(List.of(1, 2));
+    }
+
+    @Test
+    void failedCallShouldCompleteWithNull() throws Exception {
+        when(productServiceClient.getProducts(anyList())).thenThrow(new IllegalStateException("product service down"));
+        loader = new ProductBatchLoader(productServiceClient, 1, 100, 1);
+
+        assertNull(loader.load(1).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void missingProductShouldCompleteWithNull() throws Exception {
+        when(productServiceClient.getProducts(anyList())).thenReturn(Result.success(List.of(info(1))));
+        loader = new ProductBatchLoader(productServiceClient, 1, 100, 1);
+
+        CompletableFuture<ProductInfo> present = loader.load(1);
+        CompletableFuture<ProductInfo> missing = loader.load(3);
+
+        assertEquals(1, present.get(5, TimeUnit.SECONDS).getId());
+        assertNull(missing.get(5, TimeUnit.SECONDS));
+    }
+
+    private static ProductInfo info(Integer id) {
+        ProductInfo productInfo = new ProductInfo();
+        productInfo.setId(id);
+        return productInfo;
+    }
+}
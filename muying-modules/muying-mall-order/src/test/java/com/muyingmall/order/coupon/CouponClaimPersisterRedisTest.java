@@ -0,0 +1,154 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.mapper.CouponMapper;
+import com.muyingmall.order.mapper.UserCouponMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 优惠券领取记录落库测试：在真实 Redis 上校验处理中队列的持有者租约、接管重放和按令牌删除
+ *
+ * @author 母婴商城开发团队
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class CouponClaimPersisterRedisTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    private CouponMapper couponMapper;
+
+    private UserCouponMapper userCouponMapper;
+
+    private CouponClaimPersister persister;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+        DistributedLock distributedLock = mock(DistributedLock.class);
+        when(distributedLock.tryLock(anyString(), anyString(), anyLong(), any())).thenReturn(true);
+        when(distributedLock.renewLock(anyString(), anyString(), anyLong(), any())).thenReturn(true);
+        couponMapper = mock(CouponMapper.class);
+        Coupon coupon = new Coupon();
+        coupon.setId(7L);
+        when(couponMapper.selectBatchIds(anyCollection())).thenReturn(List.of(coupon));
+        userCouponMapper = mock(UserCouponMapper.class);
+        when(userCouponMapper.insertIgnoreBatch(anyList())).thenAnswer(invocation -> invocation.getArgument(0, List.class).size());
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<Object>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        persister = new CouponClaimPersister(redisTemplate, distributedLock, userCouponMapper, couponMapper,
+                transactionTemplate, 10, 10, 60000);
+    }
+
+    @Test
+    void queuedRecordsShouldBePersistedAndProcessingCleared() {
+        redisTemplate.opsForList().rightPushAll(CacheConstants.COUPON_CLAIM_QUEUE_KEY, record(1), record(2), record(3));
+
+        persister.flush();
+
+        verify(couponMapper).incrementReceived(7L, 3);
+        assertEquals(0L, redisTemplate.opsForList().size(CacheConstants.COUPON_CLAIM_QUEUE_KEY));
+        assertFalse(redisTemplate.hasKey(CacheConstants.COUPON_CLAIM_PROCESSING_KEY));
+        assertFalse(redisTemplate.hasKey(CacheConstants.COUPON_CLAIM_PROCESSING_OWNER_KEY));
+    }
+
+    @Test
+    void batchUnderAnotherOwnersLeaseShouldBeLeftAlone() {
+        redisTemplate.opsForList().rightPushAll(CacheConstants.COUPON_CLAIM_PROCESSING_KEY, record(1));
+        redisTemplate.opsForValue().set(CacheConstants.COUPON_CLAIM_PROCESSING_OWNER_KEY, "other", 60, TimeUnit.SECONDS);
+        redisTemplate.opsForList().rightPushAll(CacheConstants.COUPON_CLAIM_QUEUE_KEY, record(2));
+
+        persister.flush();
+
+        verify(userCouponMapper, never()).insertIgnoreBatch(anyList());
+        assertEquals(1L, redisTemplate.opsForList().size(CacheConstants.COUPON_CLAIM_PROCESSING_KEY));
+        assertEquals(1L, redisTemplate.opsForList().size(CacheConstants.COUPON_CLAIM_QUEUE_KEY));
+    }
+
+    @Test
+    void expiredOwnerShouldBeTakenOverAndReplayed() {
+        redisTemplate.opsForList().rightPushAll(CacheConstants.COUPON_CLAIM_PROCESSING_KEY, record(1), record(2));
+        // 持有者已宕机，租约已过期
+        redisTemplate.opsForList().rightPushAll(CacheConstants.COUPON_CLAIM_QUEUE_KEY, record(3));
+
+        persister.flush();
+
+        verify(couponMapper).incrementReceived(7L, 2);
+        verify(couponMapper).incrementReceived(7L, 1);
+        assertFalse(redisTemplate.hasKey(CacheConstants.COUPON_CLAIM_PROCESSING_KEY));
+    }
+
+    @Test
+    void batchTakenOverDuringPersistShouldNotBeDeleted() {
+        redisTemplate.opsForList().rightPushAll(CacheConstants.COUPON_CLAIM_QUEUE_KEY, record(1));
+        // 落库期间租约过期，其他节点接管了处理中队列
+        when(couponMapper.selectBatchIds(anyCollection())).thenAnswer(invocation -> {
+            redisTemplate.opsForValue().set(CacheConstants.COUPON_CLAIM_PROCESSING_OWNER_KEY, "other", 60, TimeUnit.SECONDS);
+            return List.of();
+        });
+
+        persister.flush();
+
+        assertEquals(1L, redisTemplate.opsForList().size(CacheConstants.COUPON_CLAIM_PROCESSING_KEY));
+        assertEquals("other", redisTemplate.opsForValue().get(CacheConstants.COUPON_CLAIM_PROCESSING_OWNER_KEY));
+    }
+
+    private static String record(int userId) {
+        return ClaimRecord.encode(7L, userId, "C" + userId, System.currentTimeMillis());
+    }
+}
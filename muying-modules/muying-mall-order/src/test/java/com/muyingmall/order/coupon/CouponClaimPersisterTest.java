@@ -0,0 +1,176 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.mapper.CouponMapper;
+import com.muyingmall.order.mapper.UserCouponMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 优惠券领取记录落库测试：以令牌领取批次，提交后按令牌删除处理中队列，被接管或续期失败时停止
+ *
+ * @author 母婴商城开发团队
+ */
+class CouponClaimPersisterTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private DistributedLock distributedLock;
+
+    private UserCouponMapper userCouponMapper;
+
+    private CouponMapper couponMapper;
+
+    private CouponClaimPersister persister;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        distributedLock = mock(DistributedLock.class);
+        userCouponMapper = mock(UserCouponMapper.class);
+        couponMapper = mock(CouponMapper.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<Object>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(distributedLock.tryLock(eq(CacheConstants.COUPON_CLAIM_FLUSH_LOCK_KEY), anyString(), anyLong(), any()))
+                .thenReturn(true);
+        when(distributedLock.renewLock(eq(CacheConstants.COUPON_CLAIM_FLUSH_LOCK_KEY), anyString(), anyLong(), any()))
+                .thenReturn(true);
+        Coupon coupon = new Coupon();
+        coupon.setId(7L);
+        when(couponMapper.selectBatchIds(anyCollection())).thenReturn(List.of(coupon));
+        when(userCouponMapper.insertIgnoreBatch(anyList())).thenAnswer(invocation -> invocation.getArgument(0, List.class).size());
+        persister = new CouponClaimPersister(stringRedisTemplate, distributedLock, userCouponMapper, couponMapper,
+                transactionTemplate, 2, 10, 60000);
+    }
+
+    @Test
+    void batchShouldBeReleasedWithRunTokenAfterCommit() {
+        givenClaims(batch("new", 2), batch("new", 1), List.of());
+        givenRelease(1L);
+
+        persister.flush();
+
+        verify(couponMapper).incrementReceived(7L, 2);
+        verify(couponMapper).incrementReceived(7L, 1);
+        List<String> tokens = releaseTokens(2);
+        String lockToken = lockToken();
+        assertEquals(List.of(lockToken, lockToken), tokens);
+        verify(distributedLock).unlock(CacheConstants.COUPON_CLAIM_FLUSH_LOCK_KEY, lockToken);
+    }
+
+    @Test
+    void failedPersistShouldKeepProcessingQueue() {
+        givenClaims(batch("new", 2));
+        doThrow(new IllegalStateException("db down")).when(userCouponMapper).insertIgnoreBatch(anyList());
+
+        persister.flush();
+
+        releaseTokens(0);
+        verify(distributedLock).unlock(eq(CacheConstants.COUPON_CLAIM_FLUSH_LOCK_KEY), anyString());
+    }
+
+    @Test
+    void takenOverBatchShouldStopRun() {
+        givenClaims(batch("new", 2), batch("new", 2));
+        givenRelease(0L);
+
+        persister.flush();
+
+        // 租约过期被其他节点接管后不再领取新批次
+        verify(stringRedisTemplate, times(1)).execute(any(RedisScript.class), claimKeys(), any(Object[].class));
+    }
+
+    @Test
+    void failedLockRenewalShouldStopBeforeNextBatch() {
+        givenClaims(batch("new", 2), batch("new", 2));
+        givenRelease(1L);
+        when(distributedLock.renewLock(anyString(), anyString(), anyLong(), any())).thenReturn(false);
+
+        persister.flush();
+
+        verify(userCouponMapper, times(1)).insertIgnoreBatch(anyList());
+    }
+
+    @Test
+    void lockHeldElsewhereShouldSkipRun() {
+        when(distributedLock.tryLock(anyString(), anyString(), anyLong(), any())).thenReturn(false);
+
+        persister.flush();
+
+        verify(stringRedisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private void givenClaims(List<String> first, List<String>... rest) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), claimKeys(), any(Object[].class)))
+                .thenReturn(first, (Object[]) rest);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void givenRelease(Long result) {
+        when(stringRedisTemplate.execute(any(RedisScript.class), releaseKeys(), any(Object[].class))).thenReturn(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> releaseTokens(int times) {
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(stringRedisTemplate, times(times)).execute(any(RedisScript.class), releaseKeys(), args.capture());
+        List<String> tokens = new ArrayList<>();
+        args.getAllValues().forEach(values -> tokens.add(String.valueOf(values[0])));
+        return tokens;
+    }
+
+    private String lockToken() {
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+        verify(distributedLock).tryLock(eq(CacheConstants.COUPON_CLAIM_FLUSH_LOCK_KEY), token.capture(), anyLong(), any());
+        return token.getValue();
+    }
+
+    private static List<String> claimKeys() {
+        return argThat(keys -> keys != null && keys.contains(CacheConstants.COUPON_CLAIM_QUEUE_KEY));
+    }
+
+    private static List<String> releaseKeys() {
+        return argThat(keys -> keys != null && !keys.contains(CacheConstants.COUPON_CLAIM_QUEUE_KEY));
+    }
+
+    private static List<String> batch(String kind, int size) {
+        List<String> result = new ArrayList<>();
+        result.add(kind);
+        for (int i = 0; i < size; i++) {
+            result.add(ClaimRecord.encode(7L, 100 + i, "C" + System.nanoTime() + i, System.currentTimeMillis()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,173 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.common.redis.id.IdGenerator;
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.entity.CouponBatch;
+import com.muyingmall.order.entity.CouponIssueJob;
+import com.muyingmall.order.entity.UserCoupon;
+import com.muyingmall.order.mapper.CouponBatchMapper;
+import com.muyingmall.order.mapper.CouponIssueJobMapper;
+import com.muyingmall.order.mapper.CouponMapper;
+import com.muyingmall.order.mapper.UserCouponMapper;
+import com.muyingmall.order.mapper.UserMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 优惠券批量发放测试：按用户ID游标分块，块边界不重不漏，状态按编码过滤
+ *
+ * @author 母婴商城开发团队
+ */
+class CouponIssueJobRunnerTest {
+
+    private static final int CHUNK_SIZE = 3;
+
+    /**
+     * 内存用户表：用户ID -> 状态编码
+     */
+    private final Map<Long, Integer> users = new TreeMap<>();
+
+    private final List<Long> issued = new ArrayList<>();
+
+    private final List<Long> checkpoints = new ArrayList<>();
+
+    private CouponIssueJobMapper couponIssueJobMapper;
+
+    private UserMapper userMapper;
+
+    private CouponIssueJobRunner runner;
+
+    private CouponIssueJob job;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        couponIssueJobMapper = mock(CouponIssueJobMapper.class);
+        CouponMapper couponMapper = mock(CouponMapper.class);
+        CouponBatchMapper couponBatchMapper = mock(CouponBatchMapper.class);
+        userMapper = mock(UserMapper.class);
+        UserCouponMapper userCouponMapper = mock(UserCouponMapper.class);
+        CouponClaimEngine couponClaimEngine = mock(CouponClaimEngine.class);
+        DistributedLock distributedLock = mock(DistributedLock.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+        when(distributedLock.tryLock(anyString(), anyString(), anyLong(), any())).thenReturn(true);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(mock(TransactionStatus.class)));
+
+        job = new CouponIssueJob();
+        job.setId(1L);
+        job.setBatchId(2);
+        job.setCouponId(3L);
+        job.setLastUserId(0L);
+        job.setStatus(CouponIssueJob.STATUS_RUNNING);
+        when(couponIssueJobMapper.selectById(1L)).thenReturn(job);
+        when(couponIssueJobMapper.advance(eq(1L), anyLong(), anyLong(), anyInt(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> {
+                    checkpoints.add(invocation.getArgument(2));
+                    return 1;
+                });
+        Coupon coupon = new Coupon();
+        coupon.setId(3L);
+        when(couponMapper.selectById(3L)).thenReturn(coupon);
+        when(couponBatchMapper.selectById(2)).thenReturn(new CouponBatch());
+
+        when(userMapper.selectIdsAfter(anyLong(), any(), any(), anyInt())).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            Long maxUserId = invocation.getArgument(1);
+            Integer status = invocation.getArgument(2);
+            int limit = invocation.getArgument(3);
+            return users.entrySet().stream()
+                    .filter(user -> user.getKey() > afterId)
+                    .filter(user -> maxUserId == null || user.getKey() <= maxUserId)
+                    .filter(user -> status == null || status.equals(user.getValue()))
+                    .map(Map.Entry::getKey)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        });
+        when(userCouponMapper.selectHolders(anyLong(), anyList())).thenReturn(List.of());
+        when(couponClaimEngine.reserveBulk(any(), anyList())).thenAnswer(invocation -> {
+            CouponClaimEngine.BulkReservation reservation = new CouponClaimEngine.BulkReservation();
+            reservation.getUserIds().addAll(invocation.getArgument(1));
+            return reservation;
+        });
+        when(userCouponMapper.insertIgnoreBatch(anyList())).thenAnswer(invocation -> {
+            List<UserCoupon> userCoupons = invocation.getArgument(0);
+            userCoupons.forEach(userCoupon -> issued.add(userCoupon.getUserId()));
+            return userCoupons.size();
+        });
+
+        runner = new CouponIssueJobRunner(couponIssueJobMapper, couponMapper, couponBatchMapper, userMapper,
+                userCouponMapper, couponClaimEngine, mock(IdGenerator.class), distributedLock, transactionTemplate,
+                new SimpleMeterRegistry(), CHUNK_SIZE, 1);
+    }
+
+    @Test
+    void chunksShouldCoverEveryUserOnceAcrossBoundaries() {
+        // 用户ID有空洞，块边界正好落在 3、7 上
+        for (long userId : new long[]{1, 2, 3, 5, 6, 7, 10, 11}) {
+            users.put(userId, 1);
+        }
+
+        runner.run(1L);
+
+        assertEquals(List.of(1L, 2L, 3L, 5L, 6L, 7L, 10L, 11L), issued);
+        assertEquals(List.of(3L, 7L, 11L), checkpoints);
+        verify(userMapper).selectIdsAfter(0L, null, null, CHUNK_SIZE);
+        verify(userMapper).selectIdsAfter(3L, null, null, CHUNK_SIZE);
+        verify(userMapper).selectIdsAfter(7L, null, null, CHUNK_SIZE);
+        verify(userMapper).selectIdsAfter(11L, null, null, CHUNK_SIZE);
+        verify(couponIssueJobMapper).transition(1L, CouponIssueJob.STATUS_RUNNING, CouponIssueJob.STATUS_COMPLETED, null);
+    }
+
+    @Test
+    void statusCodeAndMaxUserIdShouldBoundTheScan() {
+        for (long userId = 1; userId <= 9; userId++) {
+            users.put(userId, userId % 3 == 0 ? 0 : 1);
+        }
+        job.setUserStatus(1);
+        // 上限 7 含本身，且正好是一块的最后一个
+        job.setMaxUserId(7L);
+
+        runner.run(1L);
+
+        assertEquals(List.of(1L, 2L, 4L, 5L, 7L), issued);
+        verify(userMapper).selectIdsAfter(0L, 7L, 1, CHUNK_SIZE);
+        verify(userMapper).selectIdsAfter(4L, 7L, 1, CHUNK_SIZE);
+        verify(userMapper).selectIdsAfter(7L, 7L, 1, CHUNK_SIZE);
+    }
+
+    @Test
+    void resumedJobShouldStartAfterCheckpoint() {
+        for (long userId = 1; userId <= 5; userId++) {
+            users.put(userId, 1);
+        }
+        job.setLastUserId(3L);
+
+        runner.run(1L);
+
+        assertEquals(List.of(4L, 5L), issued);
+    }
+}
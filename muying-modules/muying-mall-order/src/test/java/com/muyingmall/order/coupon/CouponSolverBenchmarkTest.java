@@ -0,0 +1,273 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.order.dto.CouponSolution;
+import com.muyingmall.order.entity.Coupon;
+import com.muyingmall.order.entity.UserCoupon;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 优惠券索引与最优用券求解测试，含持有 200+ 张优惠券用户的基准对比（基准测试默认不执行）
+ *
+ * @author 母婴商城开发团队
+ */
+class CouponSolverBenchmarkTest {
+
+    private static final int COUPONS = 2000;
+
+    private static final int USERS = 200;
+
+    private static final int COUPONS_PER_USER = 250;
+
+    private static final int PRODUCTS_PER_ORDER = 8;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void compiledCouponShouldParseProductsOnce() {
+        Coupon coupon = coupon(1L, "FIXED", "10", "100", null, " 30,7,, x ,12");
+
+        CompiledCoupon compiled = CompiledCoupon.compile(coupon);
+
+        assertTrue(compiled.appliesTo(new int[]{5, 12}));
+        assertTrue(compiled.appliesTo(new int[]{7}));
+        assertFalse(compiled.appliesTo(new int[]{1, 8, 31}));
+        assertFalse(compiled.appliesTo(new int[0]));
+        assertTrue(CompiledCoupon.compile(coupon(2L, "FIXED", "10", "0", null, "")).appliesTo(new int[0]));
+    }
+
+    @Test
+    void discountShouldRespectMinSpendAndCaps() {
+        CompiledCoupon fixed = CompiledCoupon.compile(coupon(1L, "FIXED", "20", "100", null, null));
+        // 面额为实付比例：0.85 即 85 折，减免 15%
+        CompiledCoupon percentage = CompiledCoupon.compile(coupon(2L, "PERCENTAGE", "0.85", "0", "30", null));
+
+        assertEquals(0L, fixed.discount(9999));
+        assertEquals(2000L, fixed.discount(10000));
+        assertEquals(1500L, percentage.discount(10000));
+        assertEquals(3000L, percentage.discount(50000));
+        assertEquals(1000L, CompiledCoupon.compile(coupon(3L, "FIXED", "50", "0", null, null)).discount(1000));
+    }
+
+    @Test
+    void percentageValueShouldBePayRate() {
+        // 初始化数据中的“全场9折”：满 100 元，最多减 50 元
+        CompiledCoupon ninetyPercent = CompiledCoupon.compile(coupon(5L, "PERCENTAGE", "0.90", "100", "50", null));
+
+        assertEquals(1000L, ninetyPercent.discount(10000));
+        assertEquals(5000L, ninetyPercent.discount(100000));
+        // 不足一分的减免舍去
+        assertEquals(33L, CompiledCoupon.compile(coupon(6L, "PERCENTAGE", "0.875", "0", null, null)).discount(265));
+        // 折扣率不在 (0, 1) 内时不减免
+        assertEquals(0L, CompiledCoupon.compile(coupon(7L, "PERCENTAGE", "15", "0", null, null)).discount(10000));
+        assertEquals(0L, CompiledCoupon.compile(coupon(8L, "PERCENTAGE", "0", "0", null, null)).discount(10000));
+    }
+
+    @Test
+    void solverShouldPickBetterOfSingleAndStack() {
+        Coupon single = coupon(1L, "FIXED", "30", "0", null, null);
+        Coupon stackA = coupon(2L, "FIXED", "20", "0", null, null);
+        Coupon stackB = coupon(3L, "PERCENTAGE", "0.90", "0", null, null);
+        stackA.setIsStackable(1);
+        stackB.setIsStackable(1);
+        Map<Long, CompiledCoupon> compiled = compileAll(List.of(single, stackA, stackB));
+        List<UserCoupon> userCoupons = List.of(userCoupon(11L, 1L), userCoupon(12L, 2L),
+                userCoupon(13L, 2L), userCoupon(14L, 3L));
+
+        // 订单 200 元：单张 30，叠加 20 + 20 = 40，同一优惠券只取一张
+        CouponSolution stacked = CouponSolver.solve(userCoupons, compiled, 20000, new int[]{1});
+        assertEquals(new BigDecimal("40.00"), stacked.getDiscountAmount());
+        assertEquals(2, stacked.getUserCoupons().size());
+
+        // 订单 50 元：单张 30，叠加 20 + 9折减 5 = 25
+        CouponSolution best = CouponSolver.solve(userCoupons, compiled, 5000, new int[]{1});
+        assertEquals(new BigDecimal("30.00"), best.getDiscountAmount());
+        assertEquals(11L, best.getUserCoupons().get(0).getId());
+    }
+
+    @Test
+    void indexShouldMatchLegacyFilter() {
+        Workload workload = new Workload();
+        for (int u = 0; u < USERS; u++) {
+            List<UserCoupon> wallet = workload.wallets.get(u);
+            List<Integer> productIds = workload.orders.get(u);
+            assertEquals(legacyFilter(wallet, workload.coupons, workload.amount, productIds),
+                    indexedFilter(wallet, workload.compiled, workload.amount, productIds));
+        }
+    }
+
+    @Tag("benchmark")
+    @Test
+    void benchmarkIndexAgainstLegacyFilter(TestReporter reporter) {
+        Workload workload = new Workload();
+        int rounds = 20;
+        long legacyMatches = 0;
+        long indexedMatches = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int u = 0; u < USERS; u++) {
+                legacyMatches += legacyFilter(workload.wallets.get(u), workload.coupons, workload.amount,
+                        workload.orders.get(u)).size();
+            }
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int u = 0; u < USERS; u++) {
+                indexedMatches += indexedFilter(workload.wallets.get(u), workload.compiled, workload.amount,
+                        workload.orders.get(u)).size();
+                CouponSolver.solve(workload.wallets.get(u), workload.compiled, CompiledCoupon.toCents(workload.amount),
+                        CompiledCoupon.toSortedIds(workload.orders.get(u)));
+            }
+        }
+        long indexedNanos = System.nanoTime() - start;
+
+        int requests = rounds * USERS;
+        assertEquals(legacyMatches, indexedMatches);
+        reporter.publishEntry("coupons/user=" + COUPONS_PER_USER, String.format("逐张扫描 %.1f us/次，索引+求解 %.1f us/次",
+                TimeUnit.NANOSECONDS.toMicros(legacyNanos) / (double) requests,
+                TimeUnit.NANOSECONDS.toMicros(indexedNanos) / (double) requests));
+    }
+
+    /**
+     * 基准数据：2000 张优惠券，200 个用户各持有 250 张，每单 8 个商品
+     */
+    private final class Workload {
+        private final List<Coupon> coupons = new ArrayList<>(COUPONS);
+        private final List<List<UserCoupon>> wallets = new ArrayList<>(USERS);
+        private final List<List<Integer>> orders = new ArrayList<>(USERS);
+        private final BigDecimal amount = new BigDecimal("399.00");
+        private final Map<Long, CompiledCoupon> compiled;
+
+        private Workload() {
+            for (long id = 1; id <= COUPONS; id++) {
+                coupons.add(randomCoupon(id));
+            }
+            long userCouponId = 1;
+            for (int u = 0; u < USERS; u++) {
+                List<UserCoupon> wallet = new ArrayList<>(COUPONS_PER_USER);
+                for (int i = 0; i < COUPONS_PER_USER; i++) {
+                    wallet.add(userCoupon(userCouponId++, (long) (1 + random.nextInt(COUPONS))));
+                }
+                wallets.add(wallet);
+                List<Integer> productIds = new ArrayList<>(PRODUCTS_PER_ORDER);
+                for (int i = 0; i < PRODUCTS_PER_ORDER; i++) {
+                    productIds.add(1 + random.nextInt(5000));
+                }
+                orders.add(productIds);
+            }
+            compiled = compileAll(coupons);
+        }
+    }
+
+    /**
+     * 改造前的筛选方式：每张用户优惠券在整个优惠券列表中查找，每次拆分适用商品字符串
+     */
+    private static List<Long> legacyFilter(List<UserCoupon> userCoupons, List<Coupon> coupons,
+                                           BigDecimal orderAmount, List<Integer> productIds) {
+        List<Long> result = new ArrayList<>();
+        for (UserCoupon userCoupon : userCoupons) {
+            coupons.stream()
+                    .filter(c -> c.getId().equals(userCoupon.getCouponId()))
+                    .findFirst()
+                    .ifPresent(coupon -> {
+                        if (orderAmount.compareTo(coupon.getMinSpend()) >= 0
+                                && legacyApplicable(coupon, productIds)) {
+                            result.add(userCoupon.getId());
+                        }
+                    });
+        }
+        return result;
+    }
+
+    private static boolean legacyApplicable(Coupon coupon, List<Integer> productIds) {
+        if (coupon.getProductIds() == null || coupon.getProductIds().isEmpty()) {
+            return true;
+        }
+        for (String cpId : coupon.getProductIds().split(",")) {
+            for (Integer pid : productIds) {
+                if (cpId.equals(String.valueOf(pid))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<Long> indexedFilter(List<UserCoupon> userCoupons, Map<Long, CompiledCoupon> compiled,
+                                            BigDecimal orderAmount, List<Integer> productIds) {
+        long amount = CompiledCoupon.toCents(orderAmount);
+        int[] sortedProductIds = CompiledCoupon.toSortedIds(productIds);
+        List<Long> result = new ArrayList<>();
+        for (UserCoupon userCoupon : userCoupons) {
+            CompiledCoupon coupon = compiled.get(userCoupon.getCouponId());
+            if (coupon != null && coupon.meetsMinSpend(amount) && coupon.appliesTo(sortedProductIds)) {
+                result.add(userCoupon.getId());
+            }
+        }
+        return result;
+    }
+
+    private Coupon randomCoupon(long id) {
+        String productIds = null;
+        if (random.nextInt(3) > 0) {
+            StringJoiner joiner = new StringJoiner(",");
+            int count = 1 + random.nextInt(50);
+            for (int i = 0; i < count; i++) {
+                joiner.add(String.valueOf(1 + random.nextInt(5000)));
+            }
+            productIds = joiner.toString();
+        }
+        boolean percentage = random.nextBoolean();
+        Coupon coupon = coupon(id, percentage ? "PERCENTAGE" : "FIXED",
+                percentage ? "0." + (66 + random.nextInt(30)) : String.valueOf(5 + random.nextInt(100)),
+                String.valueOf(random.nextInt(600)), percentage ? "50" : null, productIds);
+        coupon.setIsStackable(random.nextInt(4) == 0 ? 1 : 0);
+        return coupon;
+    }
+
+    private static Map<Long, CompiledCoupon> compileAll(List<Coupon> coupons) {
+        Map<Long, CompiledCoupon> compiled = new HashMap<>(coupons.size() * 2);
+        for (Coupon coupon : coupons) {
+            compiled.put(coupon.getId(), CompiledCoupon.compile(coupon));
+        }
+        return compiled;
+    }
+
+    private static Coupon coupon(Long id, String type, String value, String minSpend, String maxDiscount,
+                                 String productIds) {
+        Coupon coupon = new Coupon();
+        coupon.setId(id);
+        coupon.setType(type);
+        coupon.setValue(new BigDecimal(value));
+        coupon.setMinSpend(new BigDecimal(minSpend));
+        coupon.setMaxDiscount(maxDiscount != null ? new BigDecimal(maxDiscount) : null);
+        coupon.setStatus("ACTIVE");
+        coupon.setIsStackable(0);
+        coupon.setProductIds(productIds);
+        return coupon;
+    }
+
+    private static UserCoupon userCoupon(Long id, Long couponId) {
+        UserCoupon userCoupon = new UserCoupon();
+        userCoupon.setId(id);
+        userCoupon.setCouponId(couponId);
+        userCoupon.setStatus("UNUSED");
+        return userCoupon;
+    }
+}
@@ -0,0 +1,122 @@
+package com.muyingmall.order.coupon;
+
+import com.muyingmall.order.entity.UserCoupon;
+import com.muyingmall.order.mapper.UserCouponMapper;
+import org.apache.ibatis.annotations.Update;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用户优惠券过期任务测试：用内存用户优惠券表执行 expireBefore，校验分批标记、固定截止时间和批次上限
+ *
+ * @author 母婴商城开发团队
+ */
+class UserCouponExpirerTest {
+
+    private static final int CHUNK_SIZE = 10;
+
+    private final List<UserCoupon> coupons = new ArrayList<>();
+
+    private UserCouponMapper userCouponMapper;
+
+    @BeforeEach
+    void setUp() {
+        userCouponMapper = mock(UserCouponMapper.class);
+        when(userCouponMapper.expireBefore(any(), anyInt())).thenAnswer(invocation ->
+                expireBefore(invocation.getArgument(0), invocation.getArgument(1)));
+
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 1; i <= 25; i++) {
+            coupons.add(coupon("UNUSED", now.minusDays(i)));
+        }
+        coupons.add(coupon("USED", now.minusDays(3)));
+        coupons.add(coupon("UNUSED", now.plusDays(1)));
+    }
+
+    @Test
+    void expireShouldMarkInChunksUntilShortChunk() {
+        newExpirer(true, 500).expire();
+
+        ArgumentCaptor<LocalDateTime> cutoffs = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(userCouponMapper, times(3)).expireBefore(cutoffs.capture(), anyInt());
+        // 同一次运行内截止时间固定
+        assertEquals(1, cutoffs.getAllValues().stream().distinct().count());
+        assertEquals(25, countByStatus("EXPIRED"));
+        assertEquals(1, countByStatus("USED"));
+        assertEquals(1, countByStatus("UNUSED"));
+    }
+
+    @Test
+    void expireShouldStopAtMaxChunksPerRun() {
+        newExpirer(true, 2).expire();
+
+        verify(userCouponMapper, times(2)).expireBefore(any(), anyInt());
+        assertEquals(20, countByStatus("EXPIRED"));
+        // 最早过期的先处理，留到下一次的是最近过期的
+        assertTrue(coupons.stream()
+                .filter(coupon -> "UNUSED".equals(coupon.getStatus()) && coupon.getValidTo().isBefore(LocalDateTime.now()))
+                .allMatch(coupon -> coupon.getValidTo().isAfter(LocalDateTime.now().minusDays(6))));
+    }
+
+    @Test
+    void disabledExpirerShouldNotTouchCoupons() {
+        newExpirer(false, 500).expire();
+
+        verify(userCouponMapper, never()).expireBefore(any(), anyInt());
+    }
+
+    @Test
+    void expireBeforeShouldOnlyMarkUnusedCouponsPastCutoffOldestFirst() throws Exception {
+        String sql = String.join("", UserCouponMapper.class
+                .getMethod("expireBefore", LocalDateTime.class, int.class)
+                .getAnnotation(Update.class).value());
+
+        assertTrue(sql.contains("SET `status` = 'EXPIRED'"), sql);
+        assertTrue(sql.contains("WHERE `status` = 'UNUSED' AND `valid_to` <= #{cutoff}"), sql);
+        assertTrue(sql.endsWith("ORDER BY `valid_to` LIMIT #{limit}"), sql);
+    }
+
+    private UserCouponExpirer newExpirer(boolean enabled, int maxChunksPerRun) {
+        return new UserCouponExpirer(userCouponMapper, enabled, CHUNK_SIZE, 1_000_000, maxChunksPerRun);
+    }
+
+    /**
+     * 与 expireBefore 的 UPDATE 语义一致：未使用且失效时间不晚于截止时间，按失效时间从早到晚取 limit 行
+     */
+    private int expireBefore(LocalDateTime cutoff, int limit) {
+        List<UserCoupon> batch = coupons.stream()
+                .filter(coupon -> "UNUSED".equals(coupon.getStatus()) && !coupon.getValidTo().isAfter(cutoff))
+                .sorted(Comparator.comparing(UserCoupon::getValidTo))
+                .limit(limit)
+                .toList();
+        batch.forEach(coupon -> coupon.setStatus("EXPIRED"));
+        return batch.size();
+    }
+
+    private long countByStatus(String status) {
+        return coupons.stream().filter(coupon -> status.equals(coupon.getStatus())).count();
+    }
+
+    private static UserCoupon coupon(String status, LocalDateTime validTo) {
+        UserCoupon coupon = new UserCoupon();
+        coupon.setStatus(status);
+        coupon.setValidTo(validTo);
+        return coupon;
+    }
+}
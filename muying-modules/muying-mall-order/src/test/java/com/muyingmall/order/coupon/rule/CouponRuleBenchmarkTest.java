@@ -0,0 +1,228 @@
+package com.muyingmall.order.coupon.rule;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.order.entity.CouponRule;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 优惠规则编译与求值测试，含全部规则对购物车求值的基准对比（基准测试默认不执行）
+ *
+ * @author 母婴商城开发团队
+ */
+class CouponRuleBenchmarkTest {
+
+    private static final int RULES = 200;
+
+    private static final int CARTS = 500;
+
+    private static final int ITEMS_PER_CART = 10;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void shouldEvaluateSeedRuleFormat() {
+        // 与 muying_mall.sql 中的规则内容格式一致
+        CompiledRule fullReduction = compile(1, 0, "{\"threshold\": 100.00, \"amount\": 15.00, \"use_range\": 0,"
+                + " \"receive_count\": 1, \"is_mutex\": true}");
+        CompiledRule categoryPercentage = compile(2, 2, "{\"threshold\": 200.00, \"discount\": 0.85,"
+                + " \"max_discount\": 100.00, \"use_range\": 2, \"category_ids\": \"1,2,3,4,5\"}");
+
+        RuleCart cart = new RuleCart(2)
+                .add(1, 2, 0, 2, 15000)
+                .add(2, 9, 0, 1, 8000);
+        assertEquals(1500L, fullReduction.evaluate(cart));
+        assertTrue(fullReduction.isMutex());
+        // 分类范围内只有 150 元，未达到 200 元门槛
+        assertEquals(0L, categoryPercentage.evaluate(cart));
+        // 分类范围内 300 元，85折减 45 元
+        assertEquals(4500L, categoryPercentage.evaluate(cart.add(3, 5, 0, 1, 15000)));
+        // 分类范围内 1000 元，减 150 元封顶 100 元
+        assertEquals(10000L, categoryPercentage.evaluate(new RuleCart(1).add(4, 1, 0, 1, 100000)));
+    }
+
+    @Test
+    void shouldEvaluateTiersRepeatAndLimits() {
+        CompiledRule tiered = compile(1, 0, "{\"tiers\": [{\"threshold\": 200, \"amount\": 30},"
+                + " {\"threshold\": 100, \"amount\": 10}], \"use_range\": 3, \"brand_ids\": [7]}");
+        CompiledRule quantityTiers = compile(2, 2, "{\"tiers\": [{\"quantity\": 2, \"discount\": 0.9},"
+                + " {\"quantity\": 3, \"discount\": 0.8}], \"exclude_product_ids\": \"99\"}");
+        CompiledRule repeat = compile(3, 0, "{\"threshold\": 100, \"amount\": 10, \"repeat\": true,"
+                + " \"max_times\": 3, \"min_quantity\": 2}");
+        CompiledRule expired = compile(4, 1, "{\"amount\": 5, \"use_ended_at\": \"2020-01-01 00:00:00\"}");
+
+        RuleCart cart = new RuleCart(3)
+                .add(1, 1, 7, 1, 12000)
+                .add(2, 1, 7, 1, 9000)
+                .add(99, 1, 8, 1, 50000);
+        assertEquals(3000L, tiered.evaluate(cart));
+        // 排除商品99后2件，按210元打9折
+        assertEquals(2100L, quantityTiers.evaluate(cart));
+        // 710元每满100减10，最多3次
+        assertEquals(3000L, repeat.evaluate(cart));
+        assertEquals(0L, repeat.evaluate(new RuleCart(1).add(1, 1, 7, 1, 50000)));
+        assertEquals(0L, expired.evaluate(cart));
+        // 只有订单金额的购物车不会命中指定范围的规则
+        assertEquals(0L, tiered.evaluate(RuleCart.ofTotal(50000)));
+    }
+
+    @Test
+    void shouldRejectInvalidContent() {
+        assertThrows(BusinessException.class, () -> compile(1, 0, "not json"));
+        assertThrows(BusinessException.class, () -> compile(1, 2, "{\"discount\": 1.5}"));
+        assertThrows(BusinessException.class, () -> compile(1, 0, "{\"threshold\": 100}"));
+        assertThrows(BusinessException.class, () -> compile(1, 1, "{\"amount\": 5, \"use_range\": 2}"));
+        assertThrows(BusinessException.class, () -> compile(1, 9, "{\"amount\": 5}"));
+    }
+
+    @Test
+    void compiledRulesShouldMatchParsedRules() throws Exception {
+        Workload workload = new Workload();
+        ObjectMapper objectMapper = new ObjectMapper();
+        long legacyTotal = 0L;
+        for (RuleCart cart : workload.carts) {
+            for (CouponRule rule : workload.rules) {
+                legacyTotal += legacyEvaluate(objectMapper, rule, cart);
+            }
+        }
+        assertEquals(legacyTotal, evaluateAll(workload.compiledRules, workload.carts));
+    }
+
+    @Tag("benchmark")
+    @Test
+    void benchmarkCompiledRulesAgainstParsing(TestReporter reporter) throws Exception {
+        Workload workload = new Workload();
+        ObjectMapper objectMapper = new ObjectMapper();
+        long start = System.nanoTime();
+        for (RuleCart cart : workload.carts) {
+            for (CouponRule rule : workload.rules) {
+                legacyEvaluate(objectMapper, rule, cart);
+            }
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        // 预热后测量
+        evaluateAll(workload.compiledRules, workload.carts);
+        int rounds = 20;
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            evaluateAll(workload.compiledRules, workload.carts);
+        }
+        long compiledNanos = (System.nanoTime() - start) / rounds;
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        evaluateAll(workload.compiledRules, workload.carts);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        reporter.publishEntry("rules=" + RULES + ", carts=" + CARTS,
+                String.format("每次解析 %.1f us/购物车，预编译 %.2f us/购物车，一轮求值分配 %d B",
+                        TimeUnit.NANOSECONDS.toMicros(legacyNanos) / (double) CARTS,
+                        compiledNanos / 1000.0 / CARTS, allocated));
+    }
+
+    /**
+     * 基准数据：200 条随机规则，500 个各含 10 件商品的购物车
+     */
+    private final class Workload {
+        private final List<CouponRule> rules = new ArrayList<>(RULES);
+        private final CompiledRule[] compiledRules = new CompiledRule[RULES];
+        private final RuleCart[] carts = new RuleCart[CARTS];
+
+        private Workload() {
+            for (int i = 0; i < RULES; i++) {
+                CouponRule rule = randomRule(i + 1);
+                rules.add(rule);
+                compiledRules[i] = CompiledRule.compile(rule, 0L);
+            }
+            for (int c = 0; c < CARTS; c++) {
+                RuleCart cart = new RuleCart(ITEMS_PER_CART);
+                for (int i = 0; i < ITEMS_PER_CART; i++) {
+                    cart.add(1 + random.nextInt(5000), 1 + random.nextInt(20), 1 + random.nextInt(50),
+                            1 + random.nextInt(3), 1000 + random.nextInt(30000));
+                }
+                carts[c] = cart;
+            }
+        }
+    }
+
+    private static long evaluateAll(CompiledRule[] rules, RuleCart[] carts) {
+        long total = 0L;
+        for (RuleCart cart : carts) {
+            for (CompiledRule rule : rules) {
+                total += rule.evaluate(cart);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 改造前的做法：每次求值都解析规则内容JSON，金额用 BigDecimal 计算
+     */
+    private static long legacyEvaluate(ObjectMapper objectMapper, CouponRule rule, RuleCart cart) throws Exception {
+        JsonNode content = objectMapper.readTree(rule.getRuleContent());
+        List<String> categoryIds = content.has("category_ids")
+                ? List.of(content.get("category_ids").asText().split(",")) : null;
+        BigDecimal amount = BigDecimal.ZERO;
+        for (int i = 0; i < cart.size(); i++) {
+            if (categoryIds == null || categoryIds.contains(String.valueOf(cart.categoryIdAt(i)))) {
+                amount = amount.add(BigDecimal.valueOf(cart.amountAt(i), 2));
+            }
+        }
+        if (amount.signum() <= 0 || amount.compareTo(new BigDecimal(content.get("threshold").asText())) < 0) {
+            return 0L;
+        }
+        BigDecimal discount = rule.getType() == CompiledRule.TYPE_PERCENTAGE
+                ? amount.subtract(amount.multiply(new BigDecimal(content.get("discount").asText())))
+                : new BigDecimal(content.get("amount").asText());
+        if (content.has("max_discount")) {
+            discount = discount.min(new BigDecimal(content.get("max_discount").asText()));
+        }
+        return discount.min(amount).movePointRight(2).setScale(0, java.math.RoundingMode.DOWN).longValue();
+    }
+
+    private CouponRule randomRule(int ruleId) {
+        boolean percentage = random.nextBoolean();
+        StringBuilder content = new StringBuilder("{\"threshold\": ").append(50 + random.nextInt(400));
+        if (percentage) {
+            content.append(", \"discount\": 0.").append(70 + random.nextInt(25))
+                    .append(", \"max_discount\": ").append(20 + random.nextInt(100));
+        } else {
+            content.append(", \"amount\": ").append(5 + random.nextInt(50));
+        }
+        if (random.nextBoolean()) {
+            content.append(", \"use_range\": 2, \"category_ids\": \"")
+                    .append(1 + random.nextInt(20)).append(',').append(1 + random.nextInt(20)).append('"');
+        }
+        content.append('}');
+        CouponRule rule = new CouponRule();
+        rule.setRuleId(ruleId);
+        rule.setType(percentage ? CompiledRule.TYPE_PERCENTAGE : CompiledRule.TYPE_FULL_REDUCTION);
+        rule.setRuleContent(content.toString());
+        return rule;
+    }
+
+    private static CompiledRule compile(int ruleId, int type, String content) {
+        CouponRule rule = new CouponRule();
+        rule.setRuleId(ruleId);
+        rule.setType(type);
+        rule.setRuleContent(content);
+        return CompiledRule.compile(rule, 0L);
+    }
+}
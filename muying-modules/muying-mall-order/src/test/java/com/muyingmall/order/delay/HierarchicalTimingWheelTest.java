@@ -0,0 +1,194 @@
+package com.muyingmall.order.delay;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分层时间轮测试：上层时间轮降级、已到期任务触发、取消和替换与到期触发的竞争
+ *
+ * @author 母婴商城开发团队
+ */
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK_MILLIS = 10;
+
+    /**
+     * 底层覆盖 40ms，第二层 160ms，第三层 640ms
+     */
+    private static final int WHEEL_SIZE = 4;
+
+    private final Map<Integer, Long> firedAt = new ConcurrentHashMap<>();
+
+    private final Map<Integer, AtomicInteger> fireCounts = new ConcurrentHashMap<>();
+
+    private HierarchicalTimingWheel<Integer> wheel;
+
+    @AfterEach
+    void tearDown() {
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void expiredTaskShouldFireOnNextTick() throws Exception {
+        CountDownLatch fired = newWheel(1);
+
+        wheel.schedule(1, System.currentTimeMillis() - 1000);
+
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void overflowTaskShouldBeDemotedAndFireOnTime() throws Exception {
+        CountDownLatch fired = newWheel(2);
+        long now = System.currentTimeMillis();
+        // 分别落在第二层和第三层，需要逐层降级回底层后才会到期
+        long secondLevelDeadline = now + 120;
+        long thirdLevelDeadline = now + 500;
+
+        wheel.schedule(1, secondLevelDeadline);
+        wheel.schedule(2, thirdLevelDeadline);
+
+        assertTrue(fired.await(3, TimeUnit.SECONDS));
+        assertOnTime(secondLevelDeadline, firedAt.get(1));
+        assertOnTime(thirdLevelDeadline, firedAt.get(2));
+    }
+
+    @Test
+    void cancelledTaskShouldNotFire() throws Exception {
+        newWheel(1);
+
+        wheel.schedule(1, System.currentTimeMillis() + 50);
+        assertTrue(wheel.cancel(1));
+        assertFalse(wheel.cancel(1));
+
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertTrue(firedAt.isEmpty());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void replacedTaskShouldFireOnlyAtNewDeadline() throws Exception {
+        CountDownLatch fired = newWheel(1);
+        long now = System.currentTimeMillis();
+
+        wheel.schedule(1, now + 30);
+        long newDeadline = now + 300;
+        wheel.schedule(1, newDeadline);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals(1, fireCounts.get(1).get());
+        assertOnTime(newDeadline, firedAt.get(1));
+    }
+
+    @Test
+    void cancelWhileFiringShouldWinOverExpiry() throws Exception {
+        GatedKey key = new GatedKey();
+        AtomicInteger fires = new AtomicInteger();
+        HierarchicalTimingWheel<GatedKey> gatedWheel = new HierarchicalTimingWheel<>("timing-wheel-test",
+                TICK_MILLIS, WHEEL_SIZE, k -> fires.incrementAndGet(), Runnable::run);
+        try {
+            gatedWheel.schedule(key, System.currentTimeMillis() - 1);
+            // 工作线程已通过取消标记检查，停在移除当前任务之前
+            assertTrue(key.awaitWorker());
+
+            assertTrue(gatedWheel.cancel(key));
+            key.releaseWorker();
+
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertEquals(0, fires.get());
+            assertEquals(0, gatedWheel.size());
+        } finally {
+            gatedWheel.stop();
+        }
+    }
+
+    @Test
+    void replaceWhileFiringShouldKeepNewTask() throws Exception {
+        GatedKey key = new GatedKey();
+        AtomicInteger fires = new AtomicInteger();
+        HierarchicalTimingWheel<GatedKey> gatedWheel = new HierarchicalTimingWheel<>("timing-wheel-test",
+                TICK_MILLIS, WHEEL_SIZE, k -> fires.incrementAndGet(), Runnable::run);
+        try {
+            gatedWheel.schedule(key, System.currentTimeMillis() - 1);
+            assertTrue(key.awaitWorker());
+
+            // 旧任务触发前被替换为远期任务：旧任务不能触发，也不能把新任务移除
+            gatedWheel.schedule(key, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+            key.releaseWorker();
+
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertEquals(0, fires.get());
+            assertEquals(1, gatedWheel.size());
+            assertTrue(gatedWheel.cancel(key));
+        } finally {
+            gatedWheel.stop();
+        }
+    }
+
+    private CountDownLatch newWheel(int expectedFires) {
+        CountDownLatch latch = new CountDownLatch(expectedFires);
+        wheel = new HierarchicalTimingWheel<>("timing-wheel-test", TICK_MILLIS, WHEEL_SIZE, key -> {
+            firedAt.putIfAbsent(key, System.currentTimeMillis());
+            fireCounts.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            latch.countDown();
+        }, Runnable::run);
+        return latch;
+    }
+
+    /**
+     * 槽位按 tick 对齐，允许提前不足一个 tick 触发；上限给调度抖动留出余量
+     */
+    private static void assertOnTime(long deadline, Long fired) {
+        assertTrue(fired != null, "任务未触发");
+        assertTrue(fired >= deadline - TICK_MILLIS, "任务提前触发: 早了 " + (deadline - fired) + "ms");
+        assertTrue(fired <= deadline + 200, "任务触发过晚: 晚了 " + (fired - deadline) + "ms");
+    }
+
+    /**
+     * 工作线程第一次计算哈希值（即到期触发时移除当前任务）时阻塞，用于在该时间窗口内插入取消或替换
+     */
+    private static final class GatedKey {
+        private final CountDownLatch workerEntered = new CountDownLatch(1);
+        private final CountDownLatch workerReleased = new CountDownLatch(1);
+
+        private boolean awaitWorker() throws InterruptedException {
+            return workerEntered.await(1, TimeUnit.SECONDS);
+        }
+
+        private void releaseWorker() {
+            workerReleased.countDown();
+        }
+
+        @Override
+        public int hashCode() {
+            if ("timing-wheel-test".equals(Thread.currentThread().getName()) && workerEntered.getCount() > 0) {
+                workerEntered.countDown();
+                try {
+                    workerReleased.await(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return 1;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return this == obj;
+        }
+    }
+}
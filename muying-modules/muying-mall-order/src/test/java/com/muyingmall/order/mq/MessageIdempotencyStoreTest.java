@@ -0,0 +1,99 @@
+package com.muyingmall.order.mq;
+
+import com.muyingmall.common.CacheConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 消息幂等存储测试：布隆过滤器未命中直接领取，命中时才复核 Redis
+ *
+ * @author 母婴商城开发团队
+ */
+class MessageIdempotencyStoreTest {
+
+    private StringRedisTemplate stringRedisTemplate;
+
+    private ValueOperations<String, String> valueOperations;
+
+    private RotatingBloomFilter bloomFilter;
+
+    private MessageIdempotencyStore store;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        bloomFilter = new RotatingBloomFilter(1000, 0.001);
+        store = new MessageIdempotencyStore(stringRedisTemplate, bloomFilter, 300, 72);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void bloomMissShouldClaimWithoutReadingRedis() {
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(true, true));
+
+        assertEquals(List.of(MessageIdempotencyStore.CLAIMED, MessageIdempotencyStore.CLAIMED),
+                store.claim(List.of("m1", "m2")));
+
+        verify(stringRedisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+        verify(valueOperations, never()).multiGet(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedClaimOnMissShouldReportCurrentMarker() {
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(true, false, false));
+        when(valueOperations.multiGet(List.of(key("m2"), key("m3"))))
+                .thenReturn(Arrays.asList(MessageIdempotencyStore.DONE, null));
+
+        // m3 的标记在两次调用之间过期，按处理中返回稍后重试
+        assertEquals(List.of(MessageIdempotencyStore.CLAIMED, MessageIdempotencyStore.DONE,
+                MessageIdempotencyStore.PROCESSING), store.claim(List.of("m1", "m2", "m3")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void bloomHitShouldBeRecheckedBeforeClaiming() {
+        bloomFilter.put("dup");
+        when(stringRedisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(true));
+        when(stringRedisTemplate.execute(any(RedisScript.class), eq(List.of(key("dup"))), any(Object[].class)))
+                .thenReturn(List.of(MessageIdempotencyStore.DONE));
+
+        assertEquals(List.of(MessageIdempotencyStore.CLAIMED, MessageIdempotencyStore.DONE),
+                store.claim(List.of("fresh", "dup")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void allHitsShouldSkipDirectClaim() {
+        bloomFilter.put("dup");
+        when(stringRedisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(MessageIdempotencyStore.CLAIMED));
+
+        assertEquals(List.of(MessageIdempotencyStore.CLAIMED), store.claim(List.of("dup")));
+
+        verify(stringRedisTemplate, never()).executePipelined(any(RedisCallback.class));
+    }
+
+    private static String key(String messageId) {
+        return CacheConstants.ORDER_MQ_CONSUMED_KEY + messageId;
+    }
+}
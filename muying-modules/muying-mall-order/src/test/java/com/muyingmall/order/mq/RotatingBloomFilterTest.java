@@ -0,0 +1,80 @@
+package com.muyingmall.order.mq;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 双代轮换布隆过滤器测试：无漏判、误判率、写满后轮换保留上一代
+ *
+ * @author 母婴商城开发团队
+ */
+class RotatingBloomFilterTest {
+
+    @Test
+    void insertedValuesShouldAlwaysBeFound() {
+        RotatingBloomFilter filter = new RotatingBloomFilter(10000, 0.001);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("msg-" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("msg-" + i));
+        }
+    }
+
+    @Test
+    void falsePositiveRateShouldStayNearTarget() {
+        int capacity = 20000;
+        double fpp = 0.01;
+        RotatingBloomFilter filter = new RotatingBloomFilter(capacity, fpp);
+        // 写到容量前一个，不触发轮换
+        for (int i = 0; i < capacity - 1; i++) {
+            filter.put("seen-" + i);
+        }
+
+        int probes = 100000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("unseen-" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue(rate < fpp * 2, "误判率过高: " + rate);
+    }
+
+    @Test
+    void rotationShouldKeepPreviousGenerationOnly() {
+        int capacity = 1000;
+        RotatingBloomFilter filter = new RotatingBloomFilter(capacity, 0.001);
+        for (int i = 0; i < capacity; i++) {
+            filter.put("first-" + i);
+        }
+        // 第一代写满后降为上一代，仍可查到
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(filter.mightContain("first-" + i));
+        }
+
+        for (int i = 0; i < capacity; i++) {
+            filter.put("second-" + i);
+        }
+        // 再次轮换后第一代被丢弃，只剩误判
+        int stillFound = 0;
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(filter.mightContain("second-" + i));
+            if (filter.mightContain("first-" + i)) {
+                stillFound++;
+            }
+        }
+        assertTrue(stillFound < capacity / 100, "轮换后旧元素仍大量命中: " + stillFound);
+        assertFalse(filter.mightContain("never-inserted"));
+    }
+
+    @Test
+    void invalidParametersShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new RotatingBloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new RotatingBloomFilter(100, 1));
+    }
+}
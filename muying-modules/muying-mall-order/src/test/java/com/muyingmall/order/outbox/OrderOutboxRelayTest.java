@@ -0,0 +1,192 @@
+package com.muyingmall.order.outbox;
+
+import com.muyingmall.order.entity.OrderOutbox;
+import com.muyingmall.order.mapper.OrderOutboxMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单消息发件箱投递测试：每轮只发送一次、失败写回退避时间、发送和等待确认限制在租约内
+ *
+ * @author 母婴商城开发团队
+ */
+class OrderOutboxRelayTest {
+
+    private static final long CONFIRM_TIMEOUT_MILLIS = 100;
+
+    private static final long LEASE_MILLIS = 300;
+
+    private OrderOutboxMapper orderOutboxMapper;
+
+    private TransactionTemplate transactionTemplate;
+
+    private RabbitTemplate rabbitTemplate;
+
+    private OrderOutboxRelay relay;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        orderOutboxMapper = mock(OrderOutboxMapper.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        rabbitTemplate = mock(RabbitTemplate.class);
+        relay = new OrderOutboxRelay(orderOutboxMapper, transactionTemplate, rabbitTemplate, true, 10, 0, 1000,
+                CONFIRM_TIMEOUT_MILLIS, LEASE_MILLIS, 1000, 300000, 72);
+    }
+
+    @Test
+    void eachMessageShouldBeSentOnceAndFailuresPushedBack() throws Exception {
+        when(orderOutboxMapper.lockDue(any(), eq(10))).thenReturn(List.of(
+                outbox(1, "ack", 0), outbox(2, "nack", 2), outbox(3, "error", 0), outbox(4, "returned", 0)));
+        doAnswer(invocation -> {
+            String routingKey = invocation.getArgument(1);
+            CorrelationData correlationData = invocation.getArgument(3);
+            switch (routingKey) {
+                case "error" -> throw new AmqpConnectException(new RuntimeException("connection refused"));
+                case "nack" -> correlationData.getFuture().complete(new CorrelationData.Confirm(false, "overflow"));
+                case "returned" -> {
+                    correlationData.setReturned(new ReturnedMessage(
+                            new Message(new byte[0], new MessageProperties()), 312, "NO_ROUTE", "order", routingKey));
+                    correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+                }
+                default -> correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+            }
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        LocalDateTime before = LocalDateTime.now();
+        assertEquals(4, relay.publishBatch());
+
+        verify(rabbitTemplate, times(4)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        verify(orderOutboxMapper).lease(eq(List.of(1L, 2L, 3L, 4L)), any());
+        verify(orderOutboxMapper).markDone(eq(List.of(1L)), eq(OrderOutbox.STATUS_SENT), any());
+        verify(orderOutboxMapper).markDone(eq(List.of(4L)), eq(OrderOutbox.STATUS_UNROUTABLE), any());
+        // 第三次发送退避 4 秒，首次发送退避 1 秒
+        assertRetryAfter(2L, before, Duration.ofSeconds(4), "Broker否认: overflow");
+        assertRetryAfter(3L, before, Duration.ofSeconds(1), "发送异常: ");
+    }
+
+    @Test
+    void sendingShouldStopBeforeLeaseRunsOut() throws Exception {
+        List<OrderOutbox> batch = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            batch.add(outbox(id, "slow", 0));
+        }
+        when(orderOutboxMapper.lockDue(any(), anyInt())).thenReturn(batch);
+        // 第一条发送就耗尽了发送预算（租约减确认超时）
+        doAnswer(invocation -> {
+            TimeUnit.MILLISECONDS.sleep(LEASE_MILLIS - CONFIRM_TIMEOUT_MILLIS + 20);
+            ((CorrelationData) invocation.getArgument(3)).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        LocalDateTime before = LocalDateTime.now();
+        relay.publishBatch();
+
+        verify(rabbitTemplate, times(1)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+        verify(orderOutboxMapper).markDone(eq(List.of(1L)), eq(OrderOutbox.STATUS_SENT), any());
+        for (long id = 2; id <= 5; id++) {
+            // 未发出的消息立即放回，不计退避
+            assertRetryAfter(id, before, Duration.ZERO, "租约内未发送");
+        }
+    }
+
+    @Test
+    void confirmWaitShouldEndWithinLease() throws Exception {
+        when(orderOutboxMapper.lockDue(any(), anyInt())).thenReturn(List.of(outbox(1, "lost", 0), outbox(2, "lost", 0)));
+
+        long start = System.nanoTime();
+        relay.publishBatch();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < LEASE_MILLIS, "等待确认超出租约: " + elapsedMillis + "ms");
+        verify(orderOutboxMapper).markRetry(eq(1L), any(), eq("等待确认超时"));
+        verify(orderOutboxMapper).markRetry(eq(2L), any(), eq("等待确认超时"));
+        verify(orderOutboxMapper, never()).markDone(anyCollection(), anyInt(), any());
+    }
+
+    @Test
+    void emptyBatchShouldNotSend() throws Exception {
+        when(orderOutboxMapper.lockDue(any(), anyInt())).thenReturn(List.of());
+
+        assertEquals(0, relay.publishBatch());
+
+        verify(orderOutboxMapper, never()).lease(anyCollection(), any());
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void relayShouldNotUseSharedRetryingTemplate() {
+        RabbitTemplate shared = mock(RabbitTemplate.class);
+        when(shared.getConnectionFactory()).thenReturn(mock(ConnectionFactory.class));
+        ObjectProvider<RabbitTemplate> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(shared);
+
+        OrderOutboxRelay springRelay = new OrderOutboxRelay(orderOutboxMapper, transactionTemplate, provider, true,
+                10, 0, 1000, CONFIRM_TIMEOUT_MILLIS, LEASE_MILLIS, 1000, 300000, 72);
+
+        RabbitTemplate template = (RabbitTemplate) ReflectionTestUtils.getField(springRelay, "rabbitTemplate");
+        assertNotSame(shared, template);
+        assertNull(ReflectionTestUtils.getField(template, "retryTemplate"));
+        assertTrue(template.isMandatoryFor(new Message(new byte[0], new MessageProperties())));
+    }
+
+    private void assertRetryAfter(long id, LocalDateTime before, Duration delay, String errorPrefix) {
+        ArgumentCaptor<LocalDateTime> retryTime = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<String> error = ArgumentCaptor.forClass(String.class);
+        verify(orderOutboxMapper).markRetry(eq(id), retryTime.capture(), error.capture());
+        LocalDateTime expected = before.plus(delay);
+        assertTrue(!retryTime.getValue().isBefore(expected) && retryTime.getValue().isBefore(expected.plusSeconds(1)),
+                "重试时间不符: " + retryTime.getValue());
+        assertTrue(error.getValue().startsWith(errorPrefix), error.getValue());
+    }
+
+    private static OrderOutbox outbox(long id, String routingKey, int previousAttempts) {
+        OrderOutbox outbox = new OrderOutbox();
+        outbox.setId(id);
+        outbox.setMessageId("M" + id);
+        outbox.setExchange("order");
+        outbox.setRoutingKey(routingKey);
+        outbox.setPayload("{}");
+        // 领取时发送次数加一，实体中是领取前的值
+        outbox.setAttempts(previousAttempts);
+        return outbox;
+    }
+}
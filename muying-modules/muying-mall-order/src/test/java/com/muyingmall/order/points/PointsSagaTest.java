@@ -0,0 +1,272 @@
+package com.muyingmall.order.points;
+
+import com.muyingmall.order.async.AfterCommitDispatcher;
+import com.muyingmall.order.entity.PointsReservation;
+import com.muyingmall.order.mapper.PointsReservationMapper;
+import com.muyingmall.order.service.OrderService;
+import com.muyingmall.order.service.PointsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 积分抵扣 Saga 测试：用内存积分预留表执行预留、确认、取消和补偿，校验重复投递和扫描重放不会重复扣减或退还
+ *
+ * @author 母婴商城开发团队
+ */
+class PointsSagaTest {
+
+    private static final Integer ORDER_ID = 10;
+
+    private static final Integer USER_ID = 7;
+
+    private static final int MAX_CONFIRM_ATTEMPTS = 3;
+
+    private final Map<Long, PointsReservation> table = new ConcurrentHashMap<>();
+
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * 分发器登记的任务，由测试决定何时执行，模拟事务提交后的异步执行和重复投递
+     */
+    private final List<Runnable> dispatched = new ArrayList<>();
+
+    private PointsService pointsService;
+
+    private OrderService orderService;
+
+    private PointsSaga saga;
+
+    @BeforeEach
+    void setUp() {
+        PointsReservationMapper mapper = mock(PointsReservationMapper.class);
+        when(mapper.insert(any(PointsReservation.class))).thenAnswer(invocation -> {
+            PointsReservation reservation = invocation.getArgument(0);
+            reservation.setId(ids.incrementAndGet());
+            table.put(reservation.getId(), copy(reservation));
+            return 1;
+        });
+        when(mapper.selectByOrderId(any())).thenAnswer(invocation -> table.values().stream()
+                .filter(row -> row.getOrderId().equals(invocation.getArgument(0)))
+                .findFirst().map(PointsSagaTest::copy).orElse(null));
+        when(mapper.selectDue(any(), anyInt())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            return table.values().stream()
+                    .filter(row -> row.getStatus() == PointsReservation.STATUS_PENDING
+                            || row.getStatus() == PointsReservation.STATUS_REFUNDING)
+                    .filter(row -> !row.getNextRetryTime().isAfter(now))
+                    .sorted(Comparator.comparing(PointsReservation::getNextRetryTime))
+                    .limit(invocation.<Integer>getArgument(1))
+                    .map(PointsSagaTest::copy)
+                    .toList();
+        });
+        when(mapper.lease(anyLong(), anyInt(), anyInt(), any())).thenAnswer(invocation -> {
+            PointsReservation row = table.get(invocation.<Long>getArgument(0));
+            if (!row.getStatus().equals(invocation.getArgument(1))
+                    || !row.getAttempts().equals(invocation.getArgument(2))) {
+                return 0;
+            }
+            row.setAttempts(row.getAttempts() + 1);
+            row.setNextRetryTime(invocation.getArgument(3));
+            return 1;
+        });
+        when(mapper.transition(anyLong(), anyInt(), anyInt(), any())).thenAnswer(invocation -> {
+            PointsReservation row = table.get(invocation.<Long>getArgument(0));
+            if (!row.getStatus().equals(invocation.getArgument(1))) {
+                return 0;
+            }
+            row.setStatus(invocation.getArgument(2));
+            row.setNextRetryTime(LocalDateTime.now());
+            if (invocation.getArgument(3) != null) {
+                row.setLastError(invocation.getArgument(3));
+            }
+            return 1;
+        });
+        when(mapper.markRetry(anyLong(), anyInt(), any(), any())).thenAnswer(invocation -> {
+            PointsReservation row = table.get(invocation.<Long>getArgument(0));
+            if (!row.getStatus().equals(invocation.getArgument(1))) {
+                return 0;
+            }
+            row.setNextRetryTime(invocation.getArgument(2));
+            row.setLastError(invocation.getArgument(3));
+            return 1;
+        });
+
+        AfterCommitDispatcher dispatcher = mock(AfterCommitDispatcher.class);
+        doAnswer(invocation -> dispatched.add(invocation.getArgument(2)))
+                .when(dispatcher).dispatch(anyString(), any(), any(Runnable.class));
+
+        pointsService = mock(PointsService.class);
+        orderService = mock(OrderService.class);
+        // 租约为 0 时扫描任务随时可以接手，重试无需等待，便于直接驱动恢复流程
+        saga = new PointsSaga(mapper, pointsService, dispatcher, orderService, 100, 0, MAX_CONFIRM_ATTEMPTS, 0, 0);
+    }
+
+    @Test
+    void reserveThenConfirmShouldConsumeOnce() {
+        when(pointsService.consumePoints(anyLong(), any(), anyLong(), anyString())).thenReturn(true);
+
+        saga.reserve(ORDER_ID, "OD10", USER_ID, 300);
+        assertFalse(saga.isSettled(ORDER_ID));
+        assertEquals(PointsReservation.STATUS_PENDING, status());
+
+        runDispatched();
+
+        assertEquals(PointsReservation.STATUS_CONFIRMED, status());
+        assertTrue(saga.isSettled(ORDER_ID));
+        verify(pointsService).consumePoints(eq(USER_ID.longValue()), eq(BigDecimal.valueOf(300)),
+                eq(ORDER_ID.longValue()), anyString());
+    }
+
+    @Test
+    void replayedConfirmShouldNotConsumeAgain() {
+        when(pointsService.consumePoints(anyLong(), any(), anyLong(), anyString())).thenReturn(true);
+        saga.reserve(ORDER_ID, "OD10", USER_ID, 300);
+        Runnable confirm = dispatched.get(0);
+
+        // 分发器重复执行同一确认任务，扫描任务也在确认后再次运行
+        confirm.run();
+        confirm.run();
+        saga.recover();
+
+        assertEquals(PointsReservation.STATUS_CONFIRMED, status());
+        verify(pointsService, times(1)).consumePoints(anyLong(), any(), anyLong(), anyString());
+    }
+
+    @Test
+    void cancelBeforeConfirmShouldReleaseWithoutCallingPointsService() {
+        saga.reserve(ORDER_ID, "OD10", USER_ID, 300);
+
+        saga.cancel(ORDER_ID);
+        runDispatched();
+        saga.recover();
+
+        assertEquals(PointsReservation.STATUS_CANCELLED, status());
+        verify(pointsService, never()).consumePoints(anyLong(), any(), anyLong(), anyString());
+        verify(pointsService, never()).refundPoints(anyLong(), any(), anyLong(), anyString());
+    }
+
+    @Test
+    void cancelAfterConfirmShouldRefundOnce() {
+        when(pointsService.consumePoints(anyLong(), any(), anyLong(), anyString())).thenReturn(true);
+        when(pointsService.refundPoints(anyLong(), any(), anyLong(), anyString())).thenReturn(true);
+        saga.reserve(ORDER_ID, "OD10", USER_ID, 300);
+        runDispatched();
+
+        saga.cancel(ORDER_ID);
+        Runnable refund = dispatched.get(0);
+        refund.run();
+        // 重复的取消和退还任务都不再调用积分服务
+        refund.run();
+        saga.cancel(ORDER_ID);
+        runDispatched();
+        saga.recover();
+
+        assertEquals(PointsReservation.STATUS_REFUNDED, status());
+        verify(pointsService, times(1)).refundPoints(eq(USER_ID.longValue()), eq(BigDecimal.valueOf(300)),
+                eq(ORDER_ID.longValue()), anyString());
+    }
+
+    @Test
+    void cancelDuringConfirmShouldRefundConsumedPoints() {
+        when(pointsService.consumePoints(anyLong(), any(), anyLong(), anyString())).thenAnswer(invocation -> {
+            // 积分服务扣减期间订单被取消
+            saga.cancel(ORDER_ID);
+            return true;
+        });
+        when(pointsService.refundPoints(anyLong(), any(), anyLong(), anyString())).thenReturn(true);
+        saga.reserve(ORDER_ID, "OD10", USER_ID, 300);
+
+        runDispatched();
+
+        assertEquals(PointsReservation.STATUS_REFUNDED, status());
+        verify(pointsService, times(1)).refundPoints(anyLong(), any(), anyLong(), anyString());
+    }
+
+    @Test
+    void rejectedConsumeShouldCancelOrderWithoutRefund() {
+        when(pointsService.consumePoints(anyLong(), any(), anyLong(), anyString())).thenReturn(false);
+        when(orderService.cancelTimeoutOrder(ORDER_ID)).thenReturn(true);
+        saga.reserve(ORDER_ID, "OD10", USER_ID, 300);
+
+        runDispatched();
+        saga.recover();
+
+        assertEquals(PointsReservation.STATUS_CANCELLED, status());
+        verify(orderService, times(1)).cancelTimeoutOrder(ORDER_ID);
+        verify(pointsService, never()).refundPoints(anyLong(), any(), anyLong(), anyString());
+    }
+
+    @Test
+    void repeatedFailuresShouldRetryThenCompensateAndRefund() {
+        when(pointsService.consumePoints(anyLong(), any(), anyLong(), anyString()))
+                .thenThrow(new IllegalStateException("积分服务超时"));
+        when(pointsService.refundPoints(anyLong(), any(), anyLong(), anyString()))
+                .thenThrow(new IllegalStateException("积分服务超时"))
+                .thenReturn(true);
+        when(orderService.cancelTimeoutOrder(ORDER_ID)).thenReturn(true);
+        saga.reserve(ORDER_ID, "OD10", USER_ID, 300);
+
+        runDispatched();
+        assertEquals(PointsReservation.STATUS_PENDING, status());
+        for (int i = 1; i < MAX_CONFIRM_ATTEMPTS; i++) {
+            saga.recover();
+        }
+        // 超过最大次数后无法确定是否已扣减：取消订单并退还，首次退还失败由扫描重试
+        assertEquals(PointsReservation.STATUS_REFUNDING, status());
+        saga.recover();
+        saga.recover();
+
+        assertEquals(PointsReservation.STATUS_REFUNDED, status());
+        verify(pointsService, times(MAX_CONFIRM_ATTEMPTS)).consumePoints(anyLong(), any(), anyLong(), anyString());
+        verify(pointsService, times(2)).refundPoints(anyLong(), any(), anyLong(), anyString());
+        verify(orderService, times(1)).cancelTimeoutOrder(ORDER_ID);
+    }
+
+    private void runDispatched() {
+        List<Runnable> tasks = new ArrayList<>(dispatched);
+        dispatched.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private int status() {
+        return table.values().iterator().next().getStatus();
+    }
+
+    private static PointsReservation copy(PointsReservation source) {
+        PointsReservation reservation = new PointsReservation();
+        reservation.setId(source.getId());
+        reservation.setOrderId(source.getOrderId());
+        reservation.setOrderNo(source.getOrderNo());
+        reservation.setUserId(source.getUserId());
+        reservation.setPoints(source.getPoints());
+        reservation.setStatus(source.getStatus());
+        reservation.setAttempts(source.getAttempts());
+        reservation.setNextRetryTime(source.getNextRetryTime());
+        reservation.setLastError(source.getLastError());
+        return reservation;
+    }
+}
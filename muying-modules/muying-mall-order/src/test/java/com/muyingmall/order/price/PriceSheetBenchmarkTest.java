@@ -0,0 +1,187 @@
+package com.muyingmall.order.price;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单价格计算测试，含50行订单与原 BigDecimal 计算方式的基准对比（基准测试默认不执行）
+ *
+ * @author 母婴商城开发团队
+ */
+class PriceSheetBenchmarkTest {
+
+    private static final int LINES = 50;
+
+    private static final int ORDERS = 2000;
+
+    private final PointsPolicy defaultPolicy = new PointsPolicy(100, 5000);
+
+    @Test
+    void shouldAllocateProportionallyAndExactly() {
+        PriceSheet sheet = new PriceSheet(3);
+        sheet.addLine(1000, 1);
+        sheet.addLine(2000, 1);
+        sheet.addLine(3001, 1);
+        assertEquals(1000L, sheet.applyCoupon(1000));
+        // 累计取整：166、499-166、1000-499
+        assertEquals(166L, sheet.couponShareAt(0));
+        assertEquals(333L, sheet.couponShareAt(1));
+        assertEquals(501L, sheet.couponShareAt(2));
+        assertEquals(5001L, sheet.linePayableAt(0) + sheet.linePayableAt(1) + sheet.linePayableAt(2));
+    }
+
+    @Test
+    void shouldCapDiscountsAndPoints() {
+        PriceSheet sheet = new PriceSheet(2);
+        sheet.addLine(4000, 2);
+        sheet.addLine(2000, 1);
+        sheet.setShippingFee(800);
+
+        // 优惠券不超过商品总额
+        assertEquals(10000L, sheet.applyCoupon(20000));
+        assertEquals(0L, sheet.applyPoints(1000, defaultPolicy));
+        assertEquals(800L, sheet.getPayable());
+
+        // 默认最多抵扣50元
+        sheet.applyCoupon(1000);
+        assertEquals(5000L, sheet.applyPoints(8000, defaultPolicy));
+        assertEquals(5000L, sheet.getPointsDiscount());
+        assertEquals(10000L + 800 - 1000 - 5000, sheet.getPayable());
+        assertEquals(5000L, sheet.pointsShareAt(0) + sheet.pointsShareAt(1));
+
+        // 抵扣不超过使用优惠券后的商品金额，多出的积分不使用
+        sheet.applyCoupon(7000);
+        assertEquals(3000L, sheet.applyPoints(8000, defaultPolicy));
+
+        // 50积分抵扣1元，不限上限
+        PointsPolicy policy = new PointsPolicy(50, 0);
+        sheet.applyCoupon(0);
+        assertEquals(101L, sheet.applyPoints(101, policy));
+        assertEquals(202L, sheet.getPointsDiscount());
+        for (int i = 0; i < sheet.size(); i++) {
+            assertTrue(sheet.linePayableAt(i) >= 0);
+        }
+    }
+
+    @Test
+    void shouldConvertAtEdges() {
+        assertEquals(12345L, Money.toCents(new BigDecimal("123.45")));
+        assertEquals(12346L, Money.toCents(new BigDecimal("123.455")));
+        assertEquals(0L, Money.toCents(null));
+        assertEquals(new BigDecimal("123.45"), Money.toYuan(12345));
+    }
+
+    @Test
+    void longCentsShouldMatchBigDecimal() {
+        Workload workload = new Workload();
+        assertEquals(legacyAll(workload.decimalPrices, workload.quantities),
+                calculateAll(new PriceSheet(LINES), workload.prices, workload.quantities));
+    }
+
+    @Tag("benchmark")
+    @Test
+    void benchmarkLongCentsAgainstBigDecimal(TestReporter reporter) {
+        Workload workload = new Workload();
+
+        // 两种方式各预热若干轮后测量
+        int rounds = 50;
+        PriceSheet sheet = new PriceSheet(LINES);
+        for (int r = 0; r < rounds; r++) {
+            legacyAll(workload.decimalPrices, workload.quantities);
+            calculateAll(sheet, workload.prices, workload.quantities);
+        }
+
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            legacyAll(workload.decimalPrices, workload.quantities);
+        }
+        long legacyNanos = (System.nanoTime() - start) / rounds;
+
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            calculateAll(sheet, workload.prices, workload.quantities);
+        }
+        long nanos = (System.nanoTime() - start) / rounds;
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        calculateAll(sheet, workload.prices, workload.quantities);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        reporter.publishEntry("lines=" + LINES + ", orders=" + ORDERS,
+                String.format("BigDecimal %.2f us/单，以分计算 %.2f us/单，一轮计算分配 %d B",
+                        legacyNanos / 1000.0 / ORDERS, nanos / 1000.0 / ORDERS, allocated));
+    }
+
+    /**
+     * 基准数据：2000 个各含 50 行的订单
+     */
+    private static final class Workload {
+        private final long[][] prices = new long[ORDERS][LINES];
+        private final int[][] quantities = new int[ORDERS][LINES];
+        private final BigDecimal[][] decimalPrices = new BigDecimal[ORDERS][LINES];
+
+        private Workload() {
+            Random random = new Random(42);
+            for (int o = 0; o < ORDERS; o++) {
+                for (int i = 0; i < LINES; i++) {
+                    prices[o][i] = 100 + random.nextInt(50000);
+                    quantities[o][i] = 1 + random.nextInt(3);
+                    decimalPrices[o][i] = BigDecimal.valueOf(prices[o][i], 2);
+                }
+            }
+        }
+    }
+
+    /**
+     * 以分计算：商品总额、运费、满减券、积分抵扣，并按行分摊
+     */
+    private long calculateAll(PriceSheet sheet, long[][] prices, int[][] quantities) {
+        long total = 0L;
+        for (int o = 0; o < prices.length; o++) {
+            sheet.reset();
+            for (int i = 0; i < LINES; i++) {
+                sheet.addLine(prices[o][i], quantities[o][i]);
+            }
+            sheet.setShippingFee(1000);
+            sheet.applyCoupon(2000);
+            sheet.applyPoints(6000, defaultPolicy);
+            total += sheet.getPayable();
+        }
+        return total;
+    }
+
+    /**
+     * 改造前的做法：每行 multiply/add，积分按 100积分=1元 divide，上限50元
+     */
+    private static long legacyAll(BigDecimal[][] prices, int[][] quantities) {
+        long total = 0L;
+        for (int o = 0; o < prices.length; o++) {
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            for (int i = 0; i < LINES; i++) {
+                totalAmount = totalAmount.add(prices[o][i].multiply(BigDecimal.valueOf(quantities[o][i])));
+            }
+            BigDecimal shippingFee = new BigDecimal("10.00");
+            BigDecimal couponAmount = new BigDecimal("20.00");
+            BigDecimal pointsAmount = new BigDecimal(6000).divide(new BigDecimal("100"), 2, RoundingMode.DOWN);
+            BigDecimal maxDiscount = new BigDecimal("50");
+            if (pointsAmount.compareTo(maxDiscount) > 0) {
+                pointsAmount = maxDiscount;
+            }
+            BigDecimal actualAmount = totalAmount.add(shippingFee).subtract(couponAmount).subtract(pointsAmount);
+            total += actualAmount.max(BigDecimal.ZERO).movePointRight(2).longValueExact();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,383 @@
+package com.muyingmall.order.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.muyingmall.common.dto.Result;
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.common.redis.id.IdGenerator;
+import com.muyingmall.order.async.AfterCommitDispatcher;
+import com.muyingmall.order.cart.CartStore;
+import com.muyingmall.order.client.ProductBatchLoader;
+import com.muyingmall.order.client.ProductInfo;
+import com.muyingmall.order.client.ProductServiceClient;
+import com.muyingmall.order.entity.Cart;
+import com.muyingmall.order.entity.Order;
+import com.muyingmall.order.entity.OrderProduct;
+import com.muyingmall.order.entity.User;
+import com.muyingmall.order.entity.UserAddress;
+import com.muyingmall.order.mapper.OrderMapper;
+import com.muyingmall.order.mapper.OrderProductMapper;
+import com.muyingmall.order.mapper.UserAddressMapper;
+import com.muyingmall.order.mapper.UserMapper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 下单流程测试：校验1/10/50行购物车下单时远程调用与数据库写入的次数，库存预占在下单、支付和取消时的调用，
+ * 并与原逐行处理方式做基准对比
+ *
+ * @author 母婴商城开发团队
+ */
+class CreateOrderBenchmarkTest {
+
+    private static final Integer USER_ID = 1;
+
+    private static final Integer ADDRESS_ID = 10;
+
+    /**
+     * 模拟一次远程调用的耗时
+     */
+    private static final long REMOTE_NANOS = TimeUnit.MICROSECONDS.toNanos(1000);
+
+    /**
+     * 模拟一次数据库或 Redis 写入的耗时
+     */
+    private static final long DB_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private static final int ROUNDS = 20;
+
+    private static final int RESERVATION_TTL_SECONDS = 2100;
+
+    private ProductServiceClient productServiceClient;
+    private OrderMapper orderMapper;
+    private OrderProductMapper orderProductMapper;
+    private CartStore cartStore;
+    private AfterCommitDispatcher afterCommitDispatcher;
+    private OrderServiceImpl orderService;
+
+    private final AtomicInteger orderSeq = new AtomicInteger();
+
+    /**
+     * 模拟的调用耗时，功能测试中为0
+     */
+    private long remoteNanos;
+    private long dbNanos;
+
+    @BeforeAll
+    static void initTableInfo() {
+        // 条件更新使用 Lambda 列名，需要实体的表信息
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Order.class);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        productServiceClient = mock(ProductServiceClient.class);
+        orderMapper = mock(OrderMapper.class);
+        orderProductMapper = mock(OrderProductMapper.class);
+        cartStore = mock(CartStore.class);
+        afterCommitDispatcher = mock(AfterCommitDispatcher.class);
+        UserMapper userMapper = mock(UserMapper.class);
+        UserAddressMapper addressMapper = mock(UserAddressMapper.class);
+        IdGenerator idGenerator = mock(IdGenerator.class);
+
+        User user = new User();
+        when(userMapper.selectById(USER_ID)).thenReturn(user);
+        UserAddress address = new UserAddress();
+        address.setUserId(USER_ID.longValue());
+        when(addressMapper.selectById(ADDRESS_ID)).thenReturn(address);
+        when(idGenerator.nextNo(anyString(), anyString()))
+                .thenAnswer(invocation -> "OD" + orderSeq.incrementAndGet());
+
+        when(orderMapper.insert(any(Order.class))).thenAnswer(invocation -> {
+            pause(dbNanos);
+            invocation.getArgument(0, Order.class).setOrderId(orderSeq.get());
+            return 1;
+        });
+        when(orderProductMapper.insertBatch(anyList())).thenAnswer(invocation -> {
+            pause(dbNanos);
+            return invocation.getArgument(0, List.class).size();
+        });
+        when(orderProductMapper.insert(any(OrderProduct.class))).thenAnswer(invocation -> {
+            pause(dbNanos);
+            return 1;
+        });
+        when(cartStore.remove(anyInt(), anyCollection())).thenAnswer(invocation -> {
+            pause(dbNanos);
+            return invocation.getArgument(1, Collection.class).size();
+        });
+
+        when(productServiceClient.getProducts(anyList())).thenAnswer(invocation -> {
+            pause(remoteNanos);
+            List<Integer> ids = invocation.getArgument(0);
+            List<ProductInfo> products = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                products.add(productInfo(id));
+            }
+            return Result.success(products);
+        });
+        when(productServiceClient.getProduct(anyInt())).thenAnswer(invocation -> {
+            pause(remoteNanos);
+            return Result.success(productInfo(invocation.getArgument(0)));
+        });
+        when(productServiceClient.updateStock(anyInt(), anyInt())).thenAnswer(invocation -> {
+            pause(remoteNanos);
+            return Result.success();
+        });
+        when(productServiceClient.reserveStock(anyString(), anyMap(), anyInt())).thenAnswer(invocation -> {
+            pause(remoteNanos);
+            return Result.success(true);
+        });
+        when(productServiceClient.confirmReservation(anyString())).thenReturn(Result.success(true));
+        when(productServiceClient.releaseReservation(anyString())).thenReturn(Result.success(true));
+        when(productServiceClient.restoreOrderStock(anyString())).thenReturn(Result.success(true));
+
+        ProductServiceImpl productService = new ProductServiceImpl(productServiceClient, mock(ProductBatchLoader.class));
+
+        Map<Class<?>, Object> dependencies = new HashMap<>();
+        dependencies.put(UserMapper.class, userMapper);
+        dependencies.put(UserAddressMapper.class, addressMapper);
+        dependencies.put(CartStore.class, cartStore);
+        dependencies.put(OrderProductMapper.class, orderProductMapper);
+        dependencies.put(com.muyingmall.order.service.ProductService.class, productService);
+        dependencies.put(IdGenerator.class, idGenerator);
+        dependencies.put(AfterCommitDispatcher.class, afterCommitDispatcher);
+        orderService = newOrderService(dependencies);
+        ReflectionTestUtils.setField(orderService, "baseMapper", orderMapper);
+        ReflectionTestUtils.setField(orderService, "stockReservationTtlSeconds", RESERVATION_TTL_SECONDS);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50})
+    void shouldLoadAndReserveOncePerOrder(int lines) {
+        givenCart(lines);
+
+        Map<String, Object> result = orderService.createOrder(USER_ID, ADDRESS_ID, null, null, null,
+                null, BigDecimal.ZERO, null);
+
+        String orderNo = (String) result.get("orderNo");
+        verify(productServiceClient, times(1)).getProducts(anyList());
+        verify(productServiceClient, never()).getProduct(anyInt());
+        verify(orderProductMapper, times(1)).insertBatch(anyList());
+        verify(orderProductMapper, never()).insert(any(OrderProduct.class));
+
+        // 同一商品的多行购物车合并为一次预占，下单时不再直接扣减
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<Integer, Integer>> items = ArgumentCaptor.forClass(Map.class);
+        verify(productServiceClient, times(1)).reserveStock(eq(orderNo), items.capture(), eq(RESERVATION_TTL_SECONDS));
+        verify(productServiceClient, never()).deductOrderStock(anyString(), anyMap());
+        int distinctProducts = Math.min(lines, 20);
+        assertEquals(distinctProducts, items.getValue().size());
+        assertEquals(lines * 2, items.getValue().values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void shouldRegisterReleaseBeforeReserving() {
+        givenCart(3);
+
+        Map<String, Object> result = orderService.createOrder(USER_ID, ADDRESS_ID, null, null, null,
+                null, BigDecimal.ZERO, null);
+
+        InOrder inOrder = inOrder(afterCommitDispatcher, productServiceClient);
+        ArgumentCaptor<Runnable> release = ArgumentCaptor.forClass(Runnable.class);
+        inOrder.verify(afterCommitDispatcher).dispatchAfterRollback(eq("release-stock"), any(), release.capture());
+        inOrder.verify(productServiceClient).reserveStock(anyString(), anyMap(), anyInt());
+
+        // 回滚补偿按订单号释放预占
+        release.getValue().run();
+        verify(productServiceClient).releaseReservation((String) result.get("orderNo"));
+    }
+
+    @Test
+    void shouldFailWhenReservationRejected() {
+        givenCart(2);
+        when(productServiceClient.reserveStock(anyString(), anyMap(), anyInt())).thenReturn(Result.error("库存不足"));
+
+        assertThrows(BusinessException.class, () -> orderService.createOrder(USER_ID, ADDRESS_ID, null, null,
+                null, null, BigDecimal.ZERO, null));
+        verify(afterCommitDispatcher).dispatchAfterRollback(eq("release-stock"), any(), any());
+    }
+
+    @Test
+    void shouldReleaseReservationWhenTimeoutCancelled() {
+        Order order = order(OrderStatus.PENDING_PAYMENT);
+        when(orderMapper.selectById(7)).thenReturn(order);
+        when(orderMapper.update(any(), any())).thenReturn(1);
+
+        assertEquals(true, orderService.cancelTimeoutOrder(7));
+
+        ArgumentCaptor<Runnable> release = ArgumentCaptor.forClass(Runnable.class);
+        verify(afterCommitDispatcher).dispatch(eq("release-stock"), eq(7), release.capture());
+        verify(afterCommitDispatcher, never()).dispatch(eq("restore-stock"), any(), any());
+        release.getValue().run();
+        verify(productServiceClient).releaseReservation("OD7");
+        verify(productServiceClient, never()).restoreOrderStock(anyString());
+        verify(productServiceClient, never()).updateStock(anyInt(), anyInt());
+    }
+
+    @Test
+    void shouldRestoreConfirmedStockWhenPaidOrderCancelled() {
+        // 批量取消传入的是转换前的订单，已支付订单的预占已确认，需按明细退回
+        orderService.compensateCancelledOrders(List.of(order(OrderStatus.PENDING_SHIPMENT)));
+
+        ArgumentCaptor<Runnable> restore = ArgumentCaptor.forClass(Runnable.class);
+        verify(afterCommitDispatcher).dispatch(eq("restore-stock"), eq(7), restore.capture());
+        verify(afterCommitDispatcher, never()).dispatch(eq("release-stock"), any(), any());
+        restore.getValue().run();
+        verify(productServiceClient).restoreOrderStock("OD7");
+        verify(productServiceClient, never()).releaseReservation(anyString());
+    }
+
+    @Test
+    void shouldConfirmReservationAfterPayment() {
+        orderService.confirmPaidOrders(List.of(order(OrderStatus.PENDING_PAYMENT)));
+
+        ArgumentCaptor<Runnable> confirm = ArgumentCaptor.forClass(Runnable.class);
+        verify(afterCommitDispatcher).dispatch(eq("confirm-stock"), eq(7), confirm.capture());
+        confirm.getValue().run();
+        verify(productServiceClient).confirmReservation("OD7");
+
+        // 确认失败时抛出异常，由分发器重试
+        when(productServiceClient.confirmReservation("OD7")).thenReturn(Result.error("预占已过期"));
+        assertThrows(BusinessException.class, () -> confirm.getValue().run());
+    }
+
+    @Tag("benchmark")
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 50})
+    void benchmarkAgainstPerLinePath(int lines, TestReporter reporter) {
+        givenCart(lines);
+        remoteNanos = REMOTE_NANOS;
+        dbNanos = DB_NANOS;
+
+        // 预热
+        runLegacy(lines);
+        orderService.createOrder(USER_ID, ADDRESS_ID, null, null, null, null, BigDecimal.ZERO, null);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            runLegacy(lines);
+        }
+        long legacyNanos = (System.nanoTime() - start) / ROUNDS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            orderService.createOrder(USER_ID, ADDRESS_ID, null, null, null, null, BigDecimal.ZERO, null);
+        }
+        long batchNanos = (System.nanoTime() - start) / ROUNDS;
+
+        reporter.publishEntry("lines=" + lines,
+                String.format("逐行 %.2f ms/单，批量 %.2f ms/单",
+                        legacyNanos / 1_000_000.0, batchNanos / 1_000_000.0));
+    }
+
+    /**
+     * 原下单方式：每行查询商品、写订单商品、先读后写库存、删除购物车项
+     */
+    private void runLegacy(int lines) {
+        List<Cart> carts = cartStore.getSelected(USER_ID);
+        for (Cart cart : carts) {
+            ProductInfo product = productServiceClient.getProduct(cart.getProductId()).getData();
+            orderProductMapper.insert(new OrderProduct());
+            ProductInfo current = productServiceClient.getProduct(cart.getProductId()).getData();
+            productServiceClient.updateStock(product.getId(), current.getStock() - cart.getQuantity());
+            cartStore.remove(USER_ID, Collections.singletonList(cart.getCartId()));
+        }
+        assertEquals(lines, carts.size());
+    }
+
+    /**
+     * 每行数量为2，超过20行后商品重复出现（同一商品不同规格）
+     */
+    private void givenCart(int lines) {
+        List<Cart> carts = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            Cart cart = new Cart();
+            cart.setCartId(i + 1);
+            cart.setUserId(USER_ID);
+            cart.setProductId(100 + i % 20);
+            cart.setQuantity(2);
+            carts.add(cart);
+        }
+        when(cartStore.getSelected(USER_ID)).thenReturn(carts);
+    }
+
+    private static Order order(OrderStatus status) {
+        Order order = new Order();
+        order.setOrderId(7);
+        order.setOrderNo("OD7");
+        order.setUserId(USER_ID);
+        order.setStatus(status);
+        return order;
+    }
+
+    private static ProductInfo productInfo(Integer id) {
+        ProductInfo info = new ProductInfo();
+        info.setId(id);
+        info.setName("商品" + id);
+        info.setMainImage("/img/" + id + ".png");
+        info.setPrice(new BigDecimal("59.90"));
+        info.setStock(10_000);
+        info.setStatus("上架");
+        info.setCategoryId(1);
+        info.setBrandId(1);
+        return info;
+    }
+
+    private static void pause(long nanos) {
+        if (nanos > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+
+    /**
+     * 按构造参数类型注入依赖，其余依赖使用空实现的 mock
+     */
+    private static OrderServiceImpl newOrderService(Map<Class<?>, Object> dependencies) throws Exception {
+        Constructor<?> constructor = OrderServiceImpl.class.getConstructors()[0];
+        Class<?>[] types = constructor.getParameterTypes();
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            Object dependency = dependencies.get(types[i]);
+            args[i] = dependency != null ? dependency : mock(types[i]);
+        }
+        return (OrderServiceImpl) constructor.newInstance(args);
+    }
+}
@@ -0,0 +1,225 @@
+package com.muyingmall.order.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.order.archive.OrderArchiveReader;
+import com.muyingmall.order.dto.OrderHistoryPage;
+import com.muyingmall.order.entity.Order;
+import com.muyingmall.order.mapper.OrderArchiveMapper;
+import com.muyingmall.order.mapper.OrderMapper;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Constructor;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单历史游标分页测试：用内存订单表和归档表执行查询条件，校验翻页不重不漏，同一创建时间的订单按订单ID继续定位
+ *
+ * @author 母婴商城开发团队
+ */
+class OrderHistoryPagingTest {
+
+    private static final Integer USER_ID = 1;
+
+    private static final Pattern LIMIT = Pattern.compile("LIMIT (\\d+)");
+
+    private final List<Order> orders = new ArrayList<>();
+
+    private final List<Order> archivedOrders = new ArrayList<>();
+
+    private OrderServiceImpl orderService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Order.class);
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        OrderMapper orderMapper = mock(OrderMapper.class);
+        when(orderMapper.selectList(any())).thenAnswer(invocation -> select(invocation.getArgument(0)));
+        OrderArchiveMapper orderArchiveMapper = mock(OrderArchiveMapper.class);
+        when(orderArchiveMapper.selectLatestCreateTime(any())).thenAnswer(invocation -> archivedOrders.stream()
+                .filter(order -> order.getUserId().equals(invocation.getArgument(0)))
+                .map(Order::getCreateTime)
+                .max(Comparator.naturalOrder())
+                .orElse(null));
+        when(orderArchiveMapper.selectHistory(any(), any(), any(), any(), anyInt())).thenAnswer(invocation -> {
+            String status = invocation.getArgument(1);
+            return seek(archivedOrders, invocation.getArgument(0),
+                    status != null ? OrderStatus.fromCode(status) : null,
+                    invocation.getArgument(2), invocation.getArgument(3), invocation.getArgument(4));
+        });
+
+        Constructor<?> constructor = OrderServiceImpl.class.getConstructors()[0];
+        Class<?>[] types = constructor.getParameterTypes();
+        Object[] args = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            args[i] = types[i] == OrderArchiveReader.class ? new OrderArchiveReader(orderArchiveMapper) : mock(types[i]);
+        }
+        orderService = (OrderServiceImpl) constructor.newInstance(args);
+        ReflectionTestUtils.setField(orderService, "baseMapper", orderMapper);
+
+        // 每三个订单共用一个创建时间，并混入其他用户的订单
+        LocalDateTime base = LocalDateTime.of(2026, 10, 1, 12, 0);
+        for (int i = 1; i <= 25; i++) {
+            orders.add(order(i, USER_ID, base.plusMinutes(i / 3),
+                    i % 2 == 0 ? OrderStatus.COMPLETED : OrderStatus.PENDING_PAYMENT));
+            orders.add(order(100 + i, 2, base.plusMinutes(i / 3), OrderStatus.COMPLETED));
+        }
+    }
+
+    @Test
+    void pagesShouldCoverAllOrdersOnceInOrder() {
+        List<Integer> expected = orders.stream()
+                .filter(order -> USER_ID.equals(order.getUserId()))
+                .sorted(newestFirst())
+                .map(Order::getOrderId)
+                .collect(Collectors.toList());
+
+        List<Integer> seen = new ArrayList<>();
+        List<Integer> pageSizes = new ArrayList<>();
+        String cursor = null;
+        OrderHistoryPage page;
+        do {
+            page = orderService.getUserOrderHistory(USER_ID, cursor, 10, null);
+            page.getList().forEach(order -> seen.add(order.getOrderId()));
+            pageSizes.add(page.getList().size());
+            cursor = page.getNextCursor();
+        } while (page.isHasMore());
+
+        assertEquals(expected, seen);
+        assertEquals(List.of(10, 10, 5), pageSizes);
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void exactMultipleOfPageSizeShouldEndWithoutEmptyPage() {
+        orders.removeIf(order -> USER_ID.equals(order.getUserId()) && order.getOrderId() > 20);
+
+        OrderHistoryPage first = orderService.getUserOrderHistory(USER_ID, null, 10, null);
+        assertTrue(first.isHasMore());
+        OrderHistoryPage second = orderService.getUserOrderHistory(USER_ID, first.getNextCursor(), 10, null);
+
+        assertEquals(10, second.getList().size());
+        assertFalse(second.isHasMore());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void statusFilterShouldApplyOnEveryPage() {
+        List<Integer> seen = new ArrayList<>();
+        String cursor = null;
+        OrderHistoryPage page;
+        do {
+            page = orderService.getUserOrderHistory(USER_ID, cursor, 4, "completed");
+            page.getList().forEach(order -> {
+                assertEquals(OrderStatus.COMPLETED, order.getStatus());
+                seen.add(order.getOrderId());
+            });
+            cursor = page.getNextCursor();
+        } while (page.isHasMore());
+
+        assertEquals(12, seen.size());
+        assertEquals(seen.stream().distinct().count(), seen.size());
+    }
+
+    @Test
+    void pagesShouldContinueIntoArchivedOrders() {
+        // 热表只剩最近的订单，更早的已归档；另有一笔刚归档、两张表中同时存在的订单
+        List<Order> archived = orders.stream()
+                .filter(order -> USER_ID.equals(order.getUserId()) && order.getOrderId() <= 12)
+                .collect(Collectors.toList());
+        archivedOrders.addAll(archived);
+        orders.removeIf(order -> archived.contains(order) && order.getOrderId() != 12);
+
+        List<Integer> seen = new ArrayList<>();
+        String cursor = null;
+        OrderHistoryPage page;
+        do {
+            page = orderService.getUserOrderHistory(USER_ID, cursor, 7, null);
+            page.getList().forEach(order -> seen.add(order.getOrderId()));
+            cursor = page.getNextCursor();
+        } while (page.isHasMore());
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 25; i >= 1; i--) {
+            expected.add(i);
+        }
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    void invalidCursorOrStatusShouldBeRejected() {
+        assertThrows(BusinessException.class, () -> orderService.getUserOrderHistory(USER_ID, "not-a-cursor", 10, null));
+        assertThrows(BusinessException.class, () -> orderService.getUserOrderHistory(USER_ID, null, 10, "unknown"));
+    }
+
+    /**
+     * 按查询条件的参数在内存订单表上执行：user_id、可选的状态，以及游标的 (创建时间, 创建时间, 订单ID)
+     */
+    private List<Order> select(AbstractWrapper<?, ?, ?> wrapper) {
+        // 参数在生成 SQL 片段时才写入
+        Matcher limit = LIMIT.matcher(wrapper.getSqlSegment());
+        assertTrue(limit.find(), "游标分页必须限制返回行数");
+        List<Object> params = wrapper.getParamNameValuePairs().entrySet().stream()
+                .sorted(Comparator.comparingInt(entry -> Integer.parseInt(entry.getKey().replaceAll("\\D", ""))))
+                .map(Map.Entry::getValue)
+                .collect(Collectors.toList());
+        Integer userId = (Integer) params.get(0);
+        OrderStatus status = params.size() % 3 == 2 ? (OrderStatus) params.get(1) : null;
+        LocalDateTime cursorTime = params.size() >= 4 ? (LocalDateTime) params.get(params.size() - 3) : null;
+        Integer cursorId = params.size() >= 4 ? (Integer) params.get(params.size() - 1) : null;
+
+        return seek(orders, userId, status, cursorTime, cursorId, Integer.parseInt(limit.group(1)));
+    }
+
+    private static List<Order> seek(List<Order> table, Integer userId, OrderStatus status,
+                                    LocalDateTime cursorTime, Integer cursorId, int limit) {
+        return table.stream()
+                .filter(order -> order.getUserId().equals(userId))
+                .filter(order -> status == null || order.getStatus() == status)
+                .filter(order -> cursorTime == null || order.getCreateTime().isBefore(cursorTime)
+                        || order.getCreateTime().equals(cursorTime) && order.getOrderId() < cursorId)
+                .sorted(newestFirst())
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private static Comparator<Order> newestFirst() {
+        return Comparator.comparing(Order::getCreateTime).thenComparing(Order::getOrderId).reversed();
+    }
+
+    private static Order order(int orderId, Integer userId, LocalDateTime createTime, OrderStatus status) {
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setUserId(userId);
+        order.setCreateTime(createTime);
+        order.setStatus(status);
+        return order;
+    }
+}
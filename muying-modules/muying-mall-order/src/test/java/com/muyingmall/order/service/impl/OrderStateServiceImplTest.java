@@ -0,0 +1,197 @@
+package com.muyingmall.order.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.conditions.AbstractWrapper;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.event.OrderStatusChangedEvent;
+import com.muyingmall.order.entity.Order;
+import com.muyingmall.order.entity.OrderStateLog;
+import com.muyingmall.order.mapper.OrderMapper;
+import com.muyingmall.order.mapper.OrderStateLogMapper;
+import com.muyingmall.order.service.OrderService;
+import com.muyingmall.statemachine.OrderEvent;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 批量订单状态转换测试：按目标状态分组的条件更新、日志批量写入、取消补偿、支付后确认库存预占和分批事务
+ *
+ * @author 母婴商城开发团队
+ */
+class OrderStateServiceImplTest {
+
+    private final Map<Integer, Order> orders = new HashMap<>();
+
+    private OrderService orderService;
+
+    private OrderMapper orderMapper;
+
+    private OrderStateLogMapper orderStateLogMapper;
+
+    private ApplicationEventPublisher eventPublisher;
+
+    private TransactionTemplate transactionTemplate;
+
+    private OrderStateServiceImpl orderStateService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), Order.class);
+    }
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        orderService = mock(OrderService.class);
+        orderMapper = mock(OrderMapper.class);
+        orderStateLogMapper = mock(OrderStateLogMapper.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+
+        // 按 IN 条件中的订单ID返回订单，模拟 SELECT ... FOR UPDATE
+        when(orderMapper.selectList(any())).thenAnswer(invocation -> {
+            AbstractWrapper<?, ?, ?> wrapper = invocation.getArgument(0);
+            assertTrue(wrapper.getSqlSegment().endsWith("FOR UPDATE"));
+            return wrapper.getParamNameValuePairs().entrySet().stream()
+                    .sorted(Comparator.comparingInt(entry -> Integer.parseInt(entry.getKey().replaceAll("\\D", ""))))
+                    .map(entry -> orders.get(entry.getValue()))
+                    .filter(order -> order != null)
+                    .collect(Collectors.toList());
+        });
+        when(orderMapper.batchTransitStatus(anyCollection(), anyCollection(), anyString(), any()))
+                .thenAnswer(invocation -> invocation.getArgument(0, Collection.class).size());
+
+        orderStateService = new OrderStateServiceImpl(orderService, orderMapper, orderStateLogMapper,
+                eventPublisher, transactionTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cancelShouldUpdateOncePerTargetAndSkipInvalidOrders() {
+        givenOrder(1, OrderStatus.PENDING_PAYMENT);
+        givenOrder(2, OrderStatus.PAID);
+        givenOrder(3, OrderStatus.PENDING_SHIPMENT);
+        givenOrder(4, OrderStatus.SHIPPED);
+
+        List<Integer> transited = orderStateService.sendEvents(List.of(1, 2, 3, 4, 2, 99), OrderEvent.CANCEL, "admin", null);
+
+        assertEquals(List.of(1, 2, 3), transited);
+        ArgumentCaptor<Collection<Integer>> ids = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Collection<String>> fromStatuses = ArgumentCaptor.forClass(Collection.class);
+        verify(orderMapper, times(1)).batchTransitStatus(ids.capture(), fromStatuses.capture(),
+                eq(OrderStatus.CANCELLED.getCode()), any());
+        assertEquals(List.of(1, 2, 3), new ArrayList<>(ids.getValue()));
+        assertEquals(Set.of(OrderStatus.PENDING_PAYMENT.getCode(), OrderStatus.PAID.getCode(),
+                OrderStatus.PENDING_SHIPMENT.getCode()), Set.copyOf(fromStatuses.getValue()));
+
+        ArgumentCaptor<List<OrderStateLog>> logs = ArgumentCaptor.forClass(List.class);
+        verify(orderStateLogMapper, times(1)).insertBatch(logs.capture());
+        assertEquals(3, logs.getValue().size());
+
+        ArgumentCaptor<List<Order>> cancelled = ArgumentCaptor.forClass(List.class);
+        verify(orderService).compensateCancelledOrders(cancelled.capture());
+        assertEquals(List.of(1, 2, 3), cancelled.getValue().stream().map(Order::getOrderId).collect(Collectors.toList()));
+
+        ArgumentCaptor<OrderStatusChangedEvent> events = ArgumentCaptor.forClass(OrderStatusChangedEvent.class);
+        verify(eventPublisher, times(3)).publishEvent(events.capture());
+        for (OrderStatusChangedEvent event : events.getAllValues()) {
+            assertEquals(OrderStatus.CANCELLED, event.getNewStatus());
+            assertEquals(orders.get(event.getOrderId().intValue()).getStatus(), event.getOldStatus());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void payShouldConfirmStockReservationOfPaidOrdersOnly() {
+        givenOrder(1, OrderStatus.PENDING_PAYMENT);
+        givenOrder(2, OrderStatus.CANCELLED);
+        givenOrder(3, OrderStatus.PENDING_PAYMENT);
+
+        assertEquals(List.of(1, 3), orderStateService.sendEvents(List.of(1, 2, 3), OrderEvent.PAY, null, null));
+
+        verify(orderMapper, times(1)).batchTransitStatus(anyCollection(), anyCollection(),
+                eq(OrderStatus.PENDING_SHIPMENT.getCode()), any());
+        ArgumentCaptor<List<Order>> paid = ArgumentCaptor.forClass(List.class);
+        verify(orderService).confirmPaidOrders(paid.capture());
+        assertEquals(List.of(1, 3), paid.getValue().stream().map(Order::getOrderId).collect(Collectors.toList()));
+        verify(orderService, never()).compensateCancelledOrders(anyList());
+    }
+
+    @Test
+    void receiveShouldNotRunCancelCompensation() {
+        givenOrder(1, OrderStatus.SHIPPED);
+        givenOrder(2, OrderStatus.PENDING_RECEIPT);
+
+        assertEquals(List.of(1, 2), orderStateService.sendEvents(List.of(1, 2), OrderEvent.RECEIVE, null, null));
+
+        verify(orderMapper, times(1)).batchTransitStatus(anyCollection(), anyCollection(),
+                eq(OrderStatus.COMPLETED.getCode()), any());
+        verify(orderService, never()).compensateCancelledOrders(anyList());
+        verify(orderService, never()).confirmPaidOrders(anyList());
+    }
+
+    @Test
+    void noApplicableOrderShouldWriteNothing() {
+        givenOrder(1, OrderStatus.CANCELLED);
+
+        assertTrue(orderStateService.sendEvents(List.of(1), OrderEvent.PAY, null, null).isEmpty());
+
+        verify(orderMapper, never()).batchTransitStatus(anyCollection(), anyCollection(), anyString(), any());
+        verify(orderStateLogMapper, never()).insertBatch(anyList());
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    @Test
+    void largeRequestShouldBeSplitIntoTransactions() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= 1200; i++) {
+            givenOrder(i, OrderStatus.PENDING_SHIPMENT);
+            ids.add(i);
+        }
+
+        assertEquals(1200, orderStateService.sendEvents(ids, OrderEvent.SHIP, null, null).size());
+
+        verify(transactionTemplate, times(3)).execute(any());
+        verify(orderStateLogMapper, times(3)).insertBatch(anyList());
+    }
+
+    private void givenOrder(int orderId, OrderStatus status) {
+        Order order = new Order();
+        order.setOrderId(orderId);
+        order.setOrderNo("OD" + orderId);
+        order.setUserId(1);
+        order.setStatus(status);
+        orders.put(orderId, order);
+    }
+}
@@ -0,0 +1,79 @@
+package com.muyingmall.order.statemachine;
+
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.statemachine.OrderEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单状态转换表测试：事件转换、反向索引与状态图保持一致
+ *
+ * @author 母婴商城开发团队
+ */
+class OrderTransitionTableTest {
+
+    @Test
+    void eventTargetsShouldFollowStateGraph() {
+        for (OrderEvent event : OrderEvent.values()) {
+            for (OrderStatus source : OrderStatus.values()) {
+                OrderStatus target = OrderTransitionTable.targetOf(source, event);
+                if (target != null) {
+                    assertTrue(OrderTransitionTable.canTransit(source, target), event + " " + source + " -> " + target);
+                    assertTrue(OrderTransitionTable.sourcesOf(event, target).contains(source));
+                }
+            }
+        }
+    }
+
+    @Test
+    void sourcesShouldBeExactlyStatesWhereEventApplies() {
+        for (OrderEvent event : OrderEvent.values()) {
+            for (OrderStatus target : OrderStatus.values()) {
+                Set<OrderStatus> expected = EnumSet.noneOf(OrderStatus.class);
+                for (OrderStatus source : OrderStatus.values()) {
+                    if (OrderTransitionTable.targetOf(source, event) == target) {
+                        expected.add(source);
+                    }
+                }
+                assertEquals(expected, OrderTransitionTable.sourcesOf(event, target), event + " -> " + target);
+            }
+        }
+    }
+
+    @Test
+    void shouldResolveKnownTransitions() {
+        assertEquals(OrderStatus.PENDING_SHIPMENT, OrderTransitionTable.targetOf(OrderStatus.PENDING_PAYMENT, OrderEvent.PAY));
+        assertEquals(OrderStatus.CANCELLED, OrderTransitionTable.targetOf(OrderStatus.PAID, OrderEvent.CANCEL));
+        assertEquals(OrderStatus.COMPLETED, OrderTransitionTable.targetOf(OrderStatus.PENDING_RECEIPT, OrderEvent.RECEIVE));
+        assertNull(OrderTransitionTable.targetOf(OrderStatus.SHIPPED, OrderEvent.CANCEL));
+        assertNull(OrderTransitionTable.targetOf(OrderStatus.CANCELLED, OrderEvent.PAY));
+        assertNull(OrderTransitionTable.targetOf(null, OrderEvent.PAY));
+        assertNull(OrderTransitionTable.targetOf(OrderStatus.PAID, null));
+    }
+
+    @Test
+    void terminalStatesShouldHaveNoNextState() {
+        for (OrderStatus terminal : EnumSet.of(OrderStatus.CANCELLED, OrderStatus.REFUNDED, OrderStatus.RETURNED)) {
+            assertTrue(OrderTransitionTable.nextStates(terminal).isEmpty(), terminal.name());
+        }
+        assertFalse(OrderTransitionTable.canTransit(OrderStatus.COMPLETED, OrderStatus.PENDING_PAYMENT));
+        assertFalse(OrderTransitionTable.canTransit(null, OrderStatus.PAID));
+        assertTrue(OrderTransitionTable.nextStates(null).isEmpty());
+    }
+
+    @Test
+    void returnedSetsShouldBeReadOnly() {
+        assertThrows(UnsupportedOperationException.class,
+                () -> OrderTransitionTable.nextStates(OrderStatus.PAID).add(OrderStatus.COMPLETED));
+        assertThrows(UnsupportedOperationException.class,
+                () -> OrderTransitionTable.sourcesOf(OrderEvent.CANCEL, OrderStatus.CANCELLED).clear());
+    }
+}
@@ -0,0 +1,249 @@
+package com.muyingmall.order.stats;
+
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.event.OrderStatusChangedEvent;
+import com.muyingmall.order.entity.OrderSalesBucket;
+import com.muyingmall.order.mapper.OrderMapper;
+import com.muyingmall.order.mapper.OrderSalesBucketMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 销售汇总测试：用内存中的订单和汇总桶模拟两张表，校验区间拆分结果与逐单累加一致
+ *
+ * @author 母婴商城开发团队
+ */
+class OrderSalesRollupTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2026, 10, 1);
+
+    private static final int DAYS = 5;
+
+    private final List<OrderSalesRecord> completedOrders = new ArrayList<>();
+
+    private final Map<String, OrderSalesBucket> buckets = new HashMap<>();
+
+    private OrderMapper orderMapper;
+
+    private OrderSalesBucketMapper bucketMapper;
+
+    private OrderSalesRollup rollup;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        orderMapper = mock(OrderMapper.class);
+        bucketMapper = mock(OrderSalesBucketMapper.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+
+        when(orderMapper.streamCompletedSales(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime start = invocation.getArgument(0);
+            LocalDateTime end = invocation.getArgument(1);
+            List<OrderSalesRecord> rows = new ArrayList<>();
+            for (OrderSalesRecord record : completedOrders) {
+                if (!record.getCreateTime().isBefore(start) && record.getCreateTime().isBefore(end)) {
+                    rows.add(record);
+                }
+            }
+            Cursor<OrderSalesRecord> cursor = mock(Cursor.class);
+            when(cursor.iterator()).thenReturn(rows.iterator());
+            return cursor;
+        });
+        when(orderMapper.sumCompletedSales(any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            LocalDateTime start = invocation.getArgument(0);
+            LocalDateTime end = invocation.getArgument(1);
+            boolean endInclusive = invocation.getArgument(2);
+            BigDecimal total = BigDecimal.ZERO;
+            for (OrderSalesRecord record : completedOrders) {
+                LocalDateTime time = record.getCreateTime();
+                if (!time.isBefore(start) && (time.isBefore(end) || endInclusive && time.equals(end))) {
+                    total = total.add(record.getActualAmount());
+                }
+            }
+            return total;
+        });
+
+        when(bucketMapper.replaceBatch(anyList())).thenAnswer(invocation -> {
+            List<OrderSalesBucket> list = invocation.getArgument(0);
+            list.forEach(bucket -> buckets.put(key(bucket.getBucketType(), bucket.getBucketTime()), bucket));
+            return list.size();
+        });
+        when(bucketMapper.incrementBatch(anyList())).thenAnswer(invocation -> {
+            List<OrderSalesBucket> list = invocation.getArgument(0);
+            for (OrderSalesBucket delta : list) {
+                OrderSalesBucket bucket = buckets.computeIfAbsent(key(delta.getBucketType(), delta.getBucketTime()),
+                        k -> bucket(delta.getBucketType(), delta.getBucketTime(), BigDecimal.ZERO));
+                bucket.setSalesAmount(bucket.getSalesAmount().add(delta.getSalesAmount()));
+                bucket.setOrderCount(bucket.getOrderCount() + delta.getOrderCount());
+                bucket.setItemCount(bucket.getItemCount() + delta.getItemCount());
+            }
+            return list.size();
+        });
+        when(bucketMapper.deleteBetween(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime start = invocation.getArgument(0);
+            LocalDateTime end = invocation.getArgument(1);
+            int before = buckets.size();
+            buckets.values().removeIf(bucket ->
+                    !bucket.getBucketTime().isBefore(start) && bucket.getBucketTime().isBefore(end));
+            return before - buckets.size();
+        });
+        when(bucketMapper.sumSalesAmount(anyString(), any(), any())).thenAnswer(invocation -> {
+            String type = invocation.getArgument(0);
+            LocalDateTime start = invocation.getArgument(1);
+            LocalDateTime end = invocation.getArgument(2);
+            return buckets.values().stream()
+                    .filter(bucket -> bucket.getBucketType().equals(type))
+                    .filter(bucket -> !bucket.getBucketTime().isBefore(start) && bucket.getBucketTime().isBefore(end))
+                    .map(OrderSalesBucket::getSalesAmount)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+        });
+
+        rollup = new OrderSalesRollup(orderMapper, bucketMapper, transactionTemplate, 2);
+    }
+
+    @Test
+    void salesBetweenShouldMatchOrderScanForAnyRange() {
+        Random random = new Random(42);
+        for (int i = 0; i < 3000; i++) {
+            LocalDateTime createTime = FIRST_DAY.atStartOfDay().plusSeconds(random.nextInt(DAYS * 86_400));
+            completedOrders.add(record(i, createTime, BigDecimal.valueOf(100 + random.nextInt(100_000), 2), 1L));
+        }
+        // 恰好落在整点和零点的订单，用于校验边界的开闭
+        completedOrders.add(record(3000, FIRST_DAY.plusDays(2).atStartOfDay(), new BigDecimal("77.77"), 1L));
+        completedOrders.add(record(3001, FIRST_DAY.atTime(10, 0), new BigDecimal("66.66"), 1L));
+        assertEquals(completedOrders.size(), rollup.rebuild(FIRST_DAY, FIRST_DAY.plusDays(DAYS - 1)));
+
+        List<LocalDateTime[]> ranges = new ArrayList<>();
+        ranges.add(new LocalDateTime[]{FIRST_DAY.atStartOfDay(), FIRST_DAY.plusDays(DAYS).atStartOfDay()});
+        ranges.add(new LocalDateTime[]{FIRST_DAY.atTime(10, 0), FIRST_DAY.plusDays(2).atStartOfDay()});
+        ranges.add(new LocalDateTime[]{FIRST_DAY.atTime(10, 0), FIRST_DAY.atTime(10, 0)});
+        ranges.add(new LocalDateTime[]{FIRST_DAY.atTime(10, 5), FIRST_DAY.atTime(10, 55)});
+        for (int i = 0; i < 500; i++) {
+            LocalDateTime a = FIRST_DAY.atStartOfDay().plusSeconds(random.nextInt(DAYS * 86_400));
+            LocalDateTime b = FIRST_DAY.atStartOfDay().plusSeconds(random.nextInt(DAYS * 86_400));
+            ranges.add(a.isAfter(b) ? new LocalDateTime[]{b, a} : new LocalDateTime[]{a, b});
+        }
+
+        for (LocalDateTime[] range : ranges) {
+            clearInvocations(orderMapper, bucketMapper);
+            assertEquals(0, scan(range[0], range[1]).compareTo(rollup.getSalesBetween(range[0], range[1])),
+                    "区间销售额与逐单累加不一致: " + range[0] + " ~ " + range[1]);
+            // 最多两次边界聚合和三次汇总桶查询，与区间跨度无关
+            verify(orderMapper, atMost(2)).sumCompletedSales(any(), any(), anyBoolean());
+            verify(bucketMapper, atMost(3)).sumSalesAmount(anyString(), any(), any());
+        }
+    }
+
+    @Test
+    void reversedRangeShouldBeZero() {
+        assertEquals(BigDecimal.ZERO, rollup.getSalesBetween(FIRST_DAY.atTime(12, 0), FIRST_DAY.atTime(11, 0)));
+        assertEquals(BigDecimal.ZERO, rollup.getSalesBetween(null, FIRST_DAY.atTime(11, 0)));
+    }
+
+    @Test
+    void completingAndRevertingShouldAdjustBuckets() {
+        LocalDateTime createTime = FIRST_DAY.atTime(9, 30);
+        OrderSalesRecord record = record(1, createTime, new BigDecimal("120.50"), 3L);
+        when(orderMapper.selectSalesRecord(1)).thenReturn(record);
+
+        rollup.onOrderStatusChanged(new OrderStatusChangedEvent(1L, "OD1", 1L,
+                OrderStatus.PENDING_RECEIPT, OrderStatus.COMPLETED));
+        OrderSalesBucket hour = buckets.get(key(OrderSalesBucket.TYPE_HOUR, FIRST_DAY.atTime(9, 0)));
+        OrderSalesBucket day = buckets.get(key(OrderSalesBucket.TYPE_DAY, FIRST_DAY.atStartOfDay()));
+        assertEquals(0, new BigDecimal("120.50").compareTo(hour.getSalesAmount()));
+        assertEquals(1L, hour.getOrderCount());
+        assertEquals(3L, day.getItemCount());
+
+        rollup.onOrderStatusChanged(new OrderStatusChangedEvent(1L, "OD1", 1L,
+                OrderStatus.COMPLETED, OrderStatus.RETURNING));
+        assertEquals(0, BigDecimal.ZERO.compareTo(hour.getSalesAmount()));
+        assertEquals(0L, hour.getOrderCount());
+        assertEquals(0L, day.getItemCount());
+    }
+
+    @Test
+    void transitionsNotTouchingCompletedShouldBeIgnored() {
+        rollup.onOrderStatusChanged(new OrderStatusChangedEvent(1L, "OD1", 1L,
+                OrderStatus.PENDING_PAYMENT, OrderStatus.PAID));
+
+        verify(orderMapper, never()).selectSalesRecord(anyInt());
+        verify(bucketMapper, never()).incrementBatch(anyList());
+    }
+
+    @Test
+    void rebuildShouldReplaceStaleBuckets() {
+        LocalDateTime staleHour = FIRST_DAY.atTime(3, 0);
+        buckets.put(key(OrderSalesBucket.TYPE_HOUR, staleHour),
+                bucket(OrderSalesBucket.TYPE_HOUR, staleHour, new BigDecimal("999")));
+        completedOrders.add(record(1, FIRST_DAY.atTime(5, 10), new BigDecimal("10"), 1L));
+        completedOrders.add(record(2, FIRST_DAY.atTime(5, 40), new BigDecimal("15"), 2L));
+
+        assertEquals(2L, rollup.rebuild(FIRST_DAY, FIRST_DAY));
+
+        assertEquals(2, buckets.size());
+        OrderSalesBucket hour = buckets.get(key(OrderSalesBucket.TYPE_HOUR, FIRST_DAY.atTime(5, 0)));
+        assertEquals(0, new BigDecimal("25").compareTo(hour.getSalesAmount()));
+        assertEquals(2L, hour.getOrderCount());
+        assertEquals(3L, hour.getItemCount());
+    }
+
+    private BigDecimal scan(LocalDateTime start, LocalDateTime end) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (OrderSalesRecord record : completedOrders) {
+            if (!record.getCreateTime().isBefore(start) && !record.getCreateTime().isAfter(end)) {
+                total = total.add(record.getActualAmount());
+            }
+        }
+        return total;
+    }
+
+    private static String key(String bucketType, LocalDateTime bucketTime) {
+        return bucketType + "@" + bucketTime;
+    }
+
+    private static OrderSalesRecord record(int orderId, LocalDateTime createTime, BigDecimal amount, long items) {
+        OrderSalesRecord record = new OrderSalesRecord();
+        record.setOrderId(orderId);
+        record.setCreateTime(createTime);
+        record.setActualAmount(amount);
+        record.setItemCount(items);
+        return record;
+    }
+
+    private static OrderSalesBucket bucket(String bucketType, LocalDateTime bucketTime, BigDecimal amount) {
+        OrderSalesBucket bucket = new OrderSalesBucket();
+        bucket.setBucketType(bucketType);
+        bucket.setBucketTime(bucketTime);
+        bucket.setSalesAmount(amount);
+        bucket.setOrderCount(0L);
+        bucket.setItemCount(0L);
+        return bucket;
+    }
+}
@@ -0,0 +1,158 @@
+package com.muyingmall.order.stats;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.enums.OrderStatus;
+import com.muyingmall.event.OrderStatusChangedEvent;
+import com.muyingmall.order.mapper.OrderMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单状态计数器测试：在真实 Redis 上校验重建、增量更新和对账时整体替换计数器
+ *
+ * @author 母婴商城开发团队
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class OrderStatusCounterRedisTest {
+
+    private static final String USER_KEY_PREFIX = CacheConstants.ORDER_STATUS_COUNTER_KEY + "user:";
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    private OrderMapper orderMapper;
+
+    private OrderStatusCounter counter;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+        orderMapper = mock(OrderMapper.class);
+        counter = new OrderStatusCounter(redisTemplate, orderMapper, 168);
+    }
+
+    @Test
+    void missingCounterShouldBeRebuiltWithExpiry() {
+        when(orderMapper.countGroupByStatus(7)).thenReturn(List.of(
+                row(null, "PENDING_PAYMENT", 2), row(null, "paid", 1)));
+
+        Map<String, Long> counts = counter.getCounts(7);
+
+        assertEquals(Map.of("PENDING_PAYMENT", 2L, "PAID", 1L, OrderStatusCounter.TOTAL_FIELD, 3L), counts);
+        assertEquals(counts, counter.getCounts(7));
+        long ttl = redisTemplate.getExpire(USER_KEY_PREFIX + 7, TimeUnit.SECONDS);
+        assertTrue(ttl > 0 && ttl <= TimeUnit.HOURS.toSeconds(168));
+    }
+
+    @Test
+    void statusChangeShouldOnlyUpdateExistingCounters() {
+        counter.onOrderStatusChanged(new OrderStatusChangedEvent(1L, "OD1", 8L, null, OrderStatus.PENDING_PAYMENT));
+        assertFalse(redisTemplate.hasKey(USER_KEY_PREFIX + 8));
+
+        when(orderMapper.countGroupByStatus(8)).thenReturn(List.of(row(null, "PENDING_PAYMENT", 1)));
+        counter.getCounts(8);
+        counter.onOrderStatusChanged(new OrderStatusChangedEvent(1L, "OD1", 8L,
+                OrderStatus.PENDING_PAYMENT, OrderStatus.PAID));
+        counter.onOrderStatusChanged(new OrderStatusChangedEvent(2L, "OD2", 8L, null, OrderStatus.PENDING_PAYMENT));
+
+        assertEquals(Map.of("PENDING_PAYMENT", 1L, "PAID", 1L, OrderStatusCounter.TOTAL_FIELD, 2L), counter.getCounts(8));
+    }
+
+    @Test
+    void reconcileShouldReplaceStaleFields() {
+        redisTemplate.opsForHash().putAll(USER_KEY_PREFIX + 9, Map.of("REFUNDING", "5", OrderStatusCounter.TOTAL_FIELD, "5"));
+        when(orderMapper.countGroupByStatus(null)).thenReturn(List.of(row(null, "COMPLETED", 4)));
+        when(orderMapper.countGroupByUserAndStatus(anyCollection())).thenReturn(List.of(row(9, "COMPLETED", 4)));
+
+        counter.reconcile();
+
+        Map<String, Long> expected = Map.of("COMPLETED", 4L, OrderStatusCounter.TOTAL_FIELD, 4L);
+        assertEquals(expected, counter.getCounts(9));
+        assertEquals(expected, counter.getCounts(null));
+        assertTrue(redisTemplate.getExpire(USER_KEY_PREFIX + 9, TimeUnit.SECONDS) > 0);
+        // 全局计数器不过期
+        assertEquals(-1L, redisTemplate.getExpire(CacheConstants.ORDER_STATUS_COUNTER_KEY + "global", TimeUnit.SECONDS));
+    }
+
+    @Test
+    void counterShouldNeverDisappearDuringReconcile() throws Exception {
+        String key = USER_KEY_PREFIX + 10;
+        redisTemplate.opsForHash().put(key, OrderStatusCounter.TOTAL_FIELD, "1");
+        when(orderMapper.countGroupByStatus(any())).thenReturn(List.of(row(null, "PAID", 1)));
+        when(orderMapper.countGroupByUserAndStatus(anyCollection())).thenReturn(List.of(row(10, "PAID", 1)));
+
+        // 对账反复整体替换计数器，另一线程持续检查计数器是否出现删除后未写入的空窗
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> missing = executor.submit(() -> {
+                int misses = 0;
+                while (!done.get()) {
+                    if (!redisTemplate.hasKey(key)) {
+                        misses++;
+                    }
+                }
+                return misses;
+            });
+            for (int i = 0; i < 200; i++) {
+                counter.reconcile();
+            }
+            done.set(true);
+            assertEquals(0, missing.get(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Map<String, Object> row(Integer userId, String status, long count) {
+        return userId != null
+                ? Map.of("user_id", userId, "status", status, "cnt", count)
+                : Map.of("status", status, "cnt", count);
+    }
+}
@@ -25,6 +25,8 @@ import com.muyingmall.payment.service.CacheRefreshService;
 import com.muyingmall.payment.service.OrderNotificationService;
 import com.muyingmall.common.util.EnumUtil;
 import com.muyingmall.common.exception.BusinessException;
+import com.muyingmall.common.redis.id.IdBizTag;
+import com.muyingmall.common.redis.id.IdGenerator;
 import com.muyingmall.payment.service.MessageProducerService;
 import com.muyingmall.payment.dto.PaymentMessage;
 import io.swagger.v3.oas.annotations.Operation;
@@ -79,6 +81,7 @@ public class PaymentController {
     private final CacheRefreshService cacheRefreshService; // 注入缓存刷新服务
     private final OrderNotificationService orderNotificationService; // 注入订单通知服务
     private final MessageProducerService messageProducerService; // 注入消息发送服务
+    private final IdGenerator idGenerator; // 注入分布式ID生成器
     @Autowired
     private OrderMapper orderMapper; // 注入OrderMapper
 
@@ -1168,6 +1171,6 @@ public class PaymentController {
      * 生成支付单号
      */
     private String generatePaymentNo() {
-        return "PAY" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 4);
+        return idGenerator.nextNo(IdBizTag.PAYMENT, "PAY");
     }
 }
\ No newline at end of file
@@ -7,6 +7,8 @@ import com.muyingmall.payment.service.PaymentService;
 import com.muyingmall.payment.service.MessageProducerService;
 import com.muyingmall.payment.dto.PaymentMessage;
 import com.muyingmall.common.enums.PaymentStatus;
+import com.muyingmall.common.redis.id.IdBizTag;
+import com.muyingmall.common.redis.id.IdGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,7 +16,6 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 @Service
 @Transactional
@@ -24,6 +25,9 @@ public class PaymentServiceImpl extends ServiceImpl<PaymentMapper, Payment> impl
     @Autowired(required = false)
     private MessageProducerService messageProducerService;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
     @Override
     public Payment createPayment(Payment payment) {
         if (payment.getPaymentNo() == null || payment.getPaymentNo().isEmpty()) {
@@ -70,6 +74,6 @@ public class PaymentServiceImpl extends ServiceImpl<PaymentMapper, Payment> impl
     }
 
     private String generatePaymentNo() {
-        return "PAY" + System.currentTimeMillis() + UUID.randomUUID().toString().substring(0, 8);
+        return idGenerator.nextNo(IdBizTag.PAYMENT, "PAY");
     }
 }
\ No newline at end of file
@@ -0,0 +1,245 @@
+package com.muyingmall.product.cache;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.product.entity.Product;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品详情本地近缓存
+ *
+ * <p>放在 Redis 详情缓存之前，热门商品的详情请求直接在进程内命中：</p>
+ * <ul>
+ *   <li>条目数有上限，过期时间很短（默认3秒），库存等变化最多延迟一个过期时间可见</li>
+ *   <li>商品变更时本地立即失效，并通过 Redis 发布订阅通知其他节点失效；在事务中变更时提交后再失效一次</li>
+ *   <li>加载期间发生过失效的结果不写入，避免并发加载把失效前读到的旧数据放回缓存</li>
+ * </ul>
+ * <p>缓存的商品对象在请求间共享，调用方不能修改。</p>
+ */
+@Slf4j
+@Component
+public class ProductDetailNearCache {
+
+    /**
+     * 失效全部商品的通知内容
+     */
+    private static final String ALL = "*";
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 失效次数，加载前记录，写入时不一致说明加载期间有失效
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final boolean enabled;
+
+    private final long ttlNanos;
+
+    private final int maxSize;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisConnectionFactory connectionFactory;
+
+    private final Counter hitCounter;
+
+    private final Counter missCounter;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    public ProductDetailNearCache(ObjectProvider<StringRedisTemplate> stringRedisTemplateProvider,
+                                  ObjectProvider<RedisConnectionFactory> connectionFactoryProvider,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${muying.product.near-cache.enabled:true}") boolean enabled,
+                                  @Value("${muying.product.near-cache.ttl-millis:3000}") long ttlMillis,
+                                  @Value("${muying.product.near-cache.max-size:10000}") int maxSize) {
+        this.stringRedisTemplate = stringRedisTemplateProvider.getIfAvailable();
+        this.connectionFactory = connectionFactoryProvider.getIfAvailable();
+        this.enabled = enabled && ttlMillis > 0 && maxSize > 0;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxSize = maxSize;
+        this.hitCounter = Counter.builder("muying.product.near_cache.requests")
+                .description("商品详情本地缓存请求数").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("muying.product.near_cache.requests")
+                .description("商品详情本地缓存请求数").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("muying.product.near_cache.size", entries, Map::size)
+                .description("商品详情本地缓存条目数").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled || connectionFactory == null) {
+            return;
+        }
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) ->
+                        evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CacheConstants.PRODUCT_DETAIL_INVALIDATE_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+
+    /**
+     * 读取本地缓存
+     *
+     * @param productId 商品ID
+     * @return 商品详情，未命中或已过期时为null
+     */
+    public Product get(Integer productId) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = entries.get(productId);
+        if (entry != null) {
+            if (System.nanoTime() - entry.expireAt < 0) {
+                hitCounter.increment();
+                return entry.product;
+            }
+            entries.remove(productId, entry);
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    /**
+     * 加载前调用，返回值传给 {@link #put(Integer, Product, long)}
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * 写入本地缓存
+     *
+     * @param productId  商品ID
+     * @param product    商品详情
+     * @param generation 加载前的 {@link #generation()}，加载期间发生过失效时不写入
+     */
+    public void put(Integer productId, Product product, long generation) {
+        if (!enabled || this.generation.get() != generation) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evictForSpace();
+        }
+        Entry entry = new Entry(product, System.nanoTime() + ttlNanos);
+        entries.put(productId, entry);
+        // 写入与失效并发时撤回，失效先于写入完成的情况由失效方删除
+        if (this.generation.get() != generation) {
+            entries.remove(productId, entry);
+        }
+    }
+
+    /**
+     * 商品变更后失效：本地立即失效并通知其他节点，在事务中调用时提交后再失效一次
+     *
+     * @param productId 商品ID
+     */
+    public void invalidate(Integer productId) {
+        invalidate(String.valueOf(productId));
+    }
+
+    /**
+     * 失效全部商品
+     */
+    public void invalidateAll() {
+        invalidate(ALL);
+    }
+
+    private void invalidate(String target) {
+        if (!enabled) {
+            return;
+        }
+        evictAndPublish(target);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 提交前其他请求可能读到并缓存旧数据
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictAndPublish(target);
+                }
+            });
+        }
+    }
+
+    private void evictAndPublish(String target) {
+        evictLocal(target);
+        if (stringRedisTemplate == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(CacheConstants.PRODUCT_DETAIL_INVALIDATE_CHANNEL, target);
+        } catch (Exception e) {
+            // 其他节点的本地缓存在过期后自然失效
+            log.warn("发送商品详情缓存失效通知失败: target={}, error={}", target, e.getMessage());
+        }
+    }
+
+    private void evictLocal(String target) {
+        generation.incrementAndGet();
+        if (ALL.equals(target)) {
+            entries.clear();
+            return;
+        }
+        try {
+            entries.remove(Integer.valueOf(target));
+        } catch (NumberFormatException e) {
+            log.warn("忽略无效的商品详情缓存失效通知: {}", target);
+        }
+    }
+
+    /**
+     * 条目数达到上限时先清理过期条目，仍不足时任意淘汰一成
+     */
+    private void evictForSpace() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> now - entry.expireAt >= 0);
+        int excess = entries.size() - maxSize * 9 / 10;
+        Iterator<Integer> iterator = entries.keySet().iterator();
+        while (excess-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static final class Entry {
+
+        private final Product product;
+
+        private final long expireAt;
+
+        private Entry(Product product, long expireAt) {
+            this.product = product;
+            this.expireAt = expireAt;
+        }
+    }
+}
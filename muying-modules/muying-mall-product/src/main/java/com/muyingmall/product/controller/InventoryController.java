@@ -17,6 +17,7 @@ import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 库存管理控制器
@@ -97,6 +98,123 @@ public class InventoryController {
         }
     }
 
+    /**
+     * 批量减少库存（任一商品库存不足则整体失败）
+     */
+    @PostMapping("/batch-decrease")
+    @Operation(summary = "批量减少库存")
+    public Result<Boolean> batchDecreaseInventory(
+            @Parameter(description = "商品ID和扣减数量的映射") @RequestBody Map<Integer, Integer> productStockMap,
+            @Parameter(description = "操作原因") @RequestParam String reason) {
+        try {
+            boolean success = inventoryService.batchDecreaseStock(productStockMap, reason);
+            if (success) {
+                log.info("批量库存减少成功: items={}, reason={}", productStockMap, reason);
+                return Result.success("批量库存减少成功", true);
+            } else {
+                return Result.error("批量库存减少失败，可能库存不足");
+            }
+        } catch (Exception e) {
+            log.error("批量减少库存失败", e);
+            return Result.error("批量减少库存失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按订单批量减少库存（任一商品库存不足则整体失败，同一订单重复请求只扣减一次）
+     */
+    @PostMapping("/orders/{orderNo}/deduct")
+    @Operation(summary = "按订单扣减库存")
+    public Result<Boolean> deductOrderInventory(
+            @Parameter(description = "订单号") @PathVariable @NotNull String orderNo,
+            @Parameter(description = "商品ID和扣减数量的映射") @RequestBody Map<Integer, Integer> productStockMap) {
+        try {
+            boolean success = inventoryService.deductOrderStock(orderNo, productStockMap);
+            if (success) {
+                return Result.success("订单库存扣减成功", true);
+            } else {
+                return Result.error("订单库存扣减失败，可能库存不足");
+            }
+        } catch (Exception e) {
+            log.error("按订单扣减库存失败: orderNo={}", orderNo, e);
+            return Result.error("按订单扣减库存失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 恢复订单扣减或预占的库存（订单取消或下单回滚时调用，重复调用不会重复恢复）
+     */
+    @PostMapping("/orders/{orderNo}/restore")
+    @Operation(summary = "恢复订单库存")
+    public Result<Boolean> restoreOrderInventory(
+            @Parameter(description = "订单号") @PathVariable @NotNull String orderNo) {
+        try {
+            inventoryService.restoreOrderStock(orderNo);
+            return Result.success("订单库存恢复成功", true);
+        } catch (Exception e) {
+            log.error("恢复订单库存失败: orderNo={}", orderNo, e);
+            return Result.error("恢复订单库存失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按订单预占库存（任一商品可用库存不足则整体失败）
+     */
+    @PostMapping("/reservations/{orderNo}")
+    @Operation(summary = "预占库存")
+    public Result<Boolean> reserveInventory(
+            @Parameter(description = "订单号") @PathVariable @NotNull String orderNo,
+            @Parameter(description = "商品ID和预占数量的映射") @RequestBody Map<Integer, Integer> productStockMap,
+            @Parameter(description = "预占有效期（秒）") @RequestParam(required = false) Integer ttlSeconds) {
+        try {
+            boolean success = inventoryService.reserveStock(orderNo, productStockMap, ttlSeconds);
+            if (success) {
+                return Result.success("库存预占成功", true);
+            } else {
+                return Result.error("库存预占失败，可能库存不足");
+            }
+        } catch (Exception e) {
+            log.error("预占库存失败: orderNo={}", orderNo, e);
+            return Result.error("预占库存失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 确认订单的库存预占（支付成功后调用）
+     */
+    @PostMapping("/reservations/{orderNo}/confirm")
+    @Operation(summary = "确认库存预占")
+    public Result<Boolean> confirmReservation(
+            @Parameter(description = "订单号") @PathVariable @NotNull String orderNo) {
+        try {
+            boolean success = inventoryService.confirmReservation(orderNo);
+            if (success) {
+                return Result.success("库存预占确认成功", true);
+            } else {
+                return Result.error("库存预占确认失败，预占不存在或已过期");
+            }
+        } catch (Exception e) {
+            log.error("确认库存预占失败: orderNo={}", orderNo, e);
+            return Result.error("确认库存预占失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 释放订单的库存预占（订单取消时调用）
+     */
+    @PostMapping("/reservations/{orderNo}/release")
+    @Operation(summary = "释放库存预占")
+    public Result<Boolean> releaseReservation(
+            @Parameter(description = "订单号") @PathVariable @NotNull String orderNo) {
+        try {
+            inventoryService.releaseReservation(orderNo);
+            return Result.success("库存预占释放成功", true);
+        } catch (Exception e) {
+            log.error("释放库存预占失败: orderNo={}", orderNo, e);
+            return Result.error("释放库存预占失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 设置库存
      */
@@ -0,0 +1,88 @@
+package com.muyingmall.product.controller;
+
+import com.muyingmall.common.api.ProductDto;
+import com.muyingmall.common.dto.Result;
+import com.muyingmall.product.entity.Product;
+import com.muyingmall.product.service.InventoryService;
+import com.muyingmall.product.service.ProductService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 商品信息服务间接口
+ * 对应 ProductServiceApi 中声明的 /product/info 路径，供订单、购物车等服务调用
+ */
+@Slf4j
+@RestController
+@RequestMapping("/product/info")
+@RequiredArgsConstructor
+@Tag(name = "商品信息（服务间）", description = "供其他微服务调用的商品信息接口")
+public class ProductInfoController {
+
+    /**
+     * 单次批量查询的最大商品数量
+     */
+    private static final int MAX_BATCH_SIZE = 200;
+
+    private final ProductService productService;
+    private final InventoryService inventoryService;
+
+    /**
+     * 批量获取商品信息
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "批量获取商品信息", description = "根据商品ID列表一次性获取商品基本信息（价格、库存、状态），基本信息优先读取缓存，库存和状态读取当前值")
+    public Result<List<ProductDto>> getProductsByIds(@RequestBody List<Long> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return Result.success(Collections.emptyList());
+        }
+        if (productIds.size() > MAX_BATCH_SIZE) {
+            return Result.error("单次批量查询商品数量不能超过" + MAX_BATCH_SIZE);
+        }
+
+        List<Integer> ids = new ArrayList<>(productIds.size());
+        for (Long productId : productIds) {
+            if (productId != null) {
+                ids.add(productId.intValue());
+            }
+        }
+
+        try {
+            List<Product> products = productService.getProductsByIds(ids);
+            List<ProductDto> result = new ArrayList<>(products.size());
+            for (Product product : products) {
+                result.add(toDto(product));
+            }
+            return Result.success(result);
+        } catch (Exception e) {
+            log.error("批量获取商品信息失败: productIds={}", productIds, e);
+            return Result.error("批量获取商品信息失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 转换为服务间接口约定的商品信息，库存为当前可用库存
+     */
+    private ProductDto toDto(Product product) {
+        ProductDto dto = new ProductDto();
+        dto.setProductId(product.getProductId().longValue());
+        dto.setProductName(product.getProductName());
+        dto.setProductImg(product.getProductImg());
+        dto.setPrice(product.getPriceNew());
+        dto.setStock(inventoryService.getAvailableStock(product));
+        dto.setStatus(product.getProductStatus());
+        dto.setCategoryId(product.getCategoryId() != null ? product.getCategoryId().longValue() : null);
+        dto.setBrandId(product.getBrandId() != null ? product.getBrandId().longValue() : null);
+        return dto;
+    }
+}
@@ -68,6 +68,13 @@ public class Product implements Serializable {
      */
     private Integer stock;
 
+    /**
+     * 预占库存，已下单未支付的数量，可用库存 = 库存 - 预占库存
+     * 只由预占相关语句增量更新，按实体更新时不写入，避免旧值覆盖并发预占
+     */
+    @TableField(insertStrategy = FieldStrategy.NEVER, updateStrategy = FieldStrategy.NEVER)
+    private Integer reservedStock;
+
     /**
      * 销量
      */
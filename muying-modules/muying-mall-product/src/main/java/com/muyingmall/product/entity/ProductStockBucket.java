@@ -0,0 +1,38 @@
+package com.muyingmall.product.entity;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 商品分桶库存实体类
+ * 热点商品的库存拆分到多行，扣减随机落在不同行上，不再争用同一个行锁
+ */
+@Data
+@TableName("product_stock_bucket")
+public class ProductStockBucket implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 商品ID
+     */
+    private Integer productId;
+
+    /**
+     * 桶序号，从0开始
+     */
+    private Integer bucketNo;
+
+    /**
+     * 桶内库存
+     */
+    private Integer stock;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,94 @@
+package com.muyingmall.product.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 库存预占实体类
+ * 每个订单行一条，预占期间数量计入商品的预占库存，支付后确认转为实际扣减，取消或到期后释放；
+ * 下单直接扣减的订单行以已确认状态写入，作为按订单号恢复库存的扣减明细；
+ * 每个订单另有一行商品ID为 {@link #ORDER_MARKER_PRODUCT_ID} 的标记行，状态随订单的其他记录一起变更
+ */
+@Data
+@TableName("stock_reservation")
+public class StockReservation implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 预占中
+     */
+    public static final int STATUS_RESERVED = 0;
+
+    /**
+     * 已确认：库存已实际扣减
+     */
+    public static final int STATUS_CONFIRMED = 1;
+
+    /**
+     * 已释放：订单取消，已确认的扣减也退回库存后转为此状态
+     */
+    public static final int STATUS_RELEASED = 2;
+
+    /**
+     * 已过期：到期未确认，由定时任务释放
+     */
+    public static final int STATUS_EXPIRED = 3;
+
+    /**
+     * 订单标记行的商品ID：扣减或预占时随订单记录一起写入；恢复或释放时订单还没有记录，则写入已释放的标记行，
+     * 之后迟到的扣减或预占写入标记行时唯一键冲突，不再生效
+     */
+    public static final int ORDER_MARKER_PRODUCT_ID = 0;
+
+    /**
+     * ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 订单号
+     */
+    private String orderNo;
+
+    /**
+     * 商品ID
+     */
+    private Integer productId;
+
+    /**
+     * 预占数量
+     */
+    private Integer quantity;
+
+    /**
+     * 是否已从库存台账或分桶库存直接扣减，是则不计入商品的预占库存，释放时退回对应的库存
+     */
+    private Boolean deducted;
+
+    /**
+     * 状态
+     */
+    private Integer status;
+
+    /**
+     * 过期时间
+     */
+    private LocalDateTime expireTime;
+
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -2,7 +2,11 @@ package com.muyingmall.product.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.muyingmall.product.entity.InventoryLog;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
  * 库存变动日志Mapper接口
@@ -10,4 +14,47 @@ import org.apache.ibatis.annotations.Mapper;
 @Mapper
 public interface InventoryLogMapper extends BaseMapper<InventoryLog> {
 
+    /**
+     * 批量记录扣减日志，一条语句写入多行；变动后剩余库存取自同一事务中已扣减的商品行
+     *
+     * @param items      商品ID -> 扣减数量
+     * @param changeType 变动类型
+     * @param remark     备注
+     * @return 写入的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO inventory_log (product_id, change_amount, type, remaining, operator, remark, create_time) " +
+            "SELECT p.product_id, -CASE p.product_id " +
+            "<foreach collection='items' index='productId' item='quantity' separator=' '>" +
+            "WHEN #{productId} THEN #{quantity}" +
+            "</foreach>" +
+            " END, #{changeType}, p.stock, 'system', #{remark}, NOW() " +
+            "FROM product p WHERE p.product_id IN " +
+            "<foreach collection='items' index='productId' open='(' separator=',' close=')'>#{productId}</foreach>" +
+            "</script>")
+    int insertDecreaseLogs(@Param("items") Map<Integer, Integer> items,
+                           @Param("changeType") String changeType,
+                           @Param("remark") String remark);
+
+    /**
+     * 批量记录增加日志，一条语句写入多行；变动后剩余库存取自同一事务中已增加的商品行
+     *
+     * @param items      商品ID -> 增加数量
+     * @param changeType 变动类型
+     * @param remark     备注
+     * @return 写入的行数
+     */
+    @Insert("<script>" +
+            "INSERT INTO inventory_log (product_id, change_amount, type, remaining, operator, remark, create_time) " +
+            "SELECT p.product_id, CASE p.product_id " +
+            "<foreach collection='items' index='productId' item='quantity' separator=' '>" +
+            "WHEN #{productId} THEN #{quantity}" +
+            "</foreach>" +
+            " END, #{changeType}, p.stock, 'system', #{remark}, NOW() " +
+            "FROM product p WHERE p.product_id IN " +
+            "<foreach collection='items' index='productId' open='(' separator=',' close=')'>#{productId}</foreach>" +
+            "</script>")
+    int insertIncreaseLogs(@Param("items") Map<Integer, Integer> items,
+                           @Param("changeType") String changeType,
+                           @Param("remark") String remark);
 }
\ No newline at end of file
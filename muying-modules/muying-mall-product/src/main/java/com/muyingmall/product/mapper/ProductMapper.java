@@ -8,6 +8,10 @@ import com.muyingmall.product.entity.Product;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * 商品Mapper接口
@@ -66,4 +70,110 @@ public interface ProductMapper extends BaseMapper<Product> {
          */
         @Select("SELECT COUNT(*) FROM product WHERE brand_id = #{brandId}")
         int countProductByBrandId(@Param("brandId") Integer brandId);
-}
\ No newline at end of file
+
+        /**
+         * 按增量扣减库存，用于库存台账回写（可用库存已在 Redis 中校验）
+         *
+         * @param productId 商品ID
+         * @param delta     扣减量，负数为增加
+         * @return 影响的行数
+         */
+        @Update("UPDATE product SET stock = stock - #{delta}, update_time = NOW() WHERE product_id = #{productId}")
+        int applyStockDelta(@Param("productId") Integer productId, @Param("delta") long delta);
+
+        /**
+         * 批量扣减库存，一条语句完成；只扣减可用库存充足的商品，影响行数小于商品数时说明有商品库存不足，调用方需回滚
+         *
+         * @param items 商品ID -> 扣减数量
+         * @return 影响的行数
+         */
+        @Update("<script>" +
+                        "UPDATE product SET stock = CASE product_id " +
+                        "<foreach collection='items' index='productId' item='quantity' separator=' '>" +
+                        "WHEN #{productId} THEN stock - #{quantity}" +
+                        "</foreach>" +
+                        " END, update_time = NOW() " +
+                        "WHERE product_id IN " +
+                        "<foreach collection='items' index='productId' open='(' separator=',' close=')'>#{productId}</foreach>" +
+                        " AND stock - reserved_stock &gt;= CASE product_id " +
+                        "<foreach collection='items' index='productId' item='quantity' separator=' '>" +
+                        "WHEN #{productId} THEN #{quantity}" +
+                        "</foreach>" +
+                        " END" +
+                        "</script>")
+        int batchDecreaseStock(@Param("items") Map<Integer, Integer> items);
+
+        /**
+         * 批量按增量增加库存，一条语句完成，不读后写，不覆盖并发的扣减
+         *
+         * @param items 商品ID -> 增加数量
+         * @return 影响的行数
+         */
+        @Update("<script>" +
+                        "UPDATE product SET stock = stock + CASE product_id " +
+                        "<foreach collection='items' index='productId' item='quantity' separator=' '>" +
+                        "WHEN #{productId} THEN #{quantity}" +
+                        "</foreach>" +
+                        " END, update_time = NOW() WHERE product_id IN " +
+                        "<foreach collection='items' index='productId' open='(' separator=',' close=')'>#{productId}</foreach>" +
+                        "</script>")
+        int batchIncreaseStock(@Param("items") Map<Integer, Integer> items);
+
+        /**
+         * 预占库存，可用库存不足时不更新
+         *
+         * @param productId 商品ID
+         * @param quantity  预占数量
+         * @return 影响的行数，0 表示可用库存不足或商品不存在
+         */
+        @Update("UPDATE product SET reserved_stock = reserved_stock + #{quantity}, update_time = NOW() " +
+                        "WHERE product_id = #{productId} AND stock - reserved_stock >= #{quantity}")
+        int reserveStock(@Param("productId") Integer productId, @Param("quantity") int quantity);
+
+        /**
+         * 确认预占：库存与预占库存同时扣减
+         *
+         * @param items 商品ID -> 确认数量
+         * @return 影响的行数
+         */
+        @Update("<script>" +
+                        "UPDATE product SET stock = stock - CASE product_id " +
+                        "<foreach collection='items' index='productId' item='quantity' separator=' '>" +
+                        "WHEN #{productId} THEN #{quantity}" +
+                        "</foreach>" +
+                        " END, reserved_stock = reserved_stock - CASE product_id " +
+                        "<foreach collection='items' index='productId' item='quantity' separator=' '>" +
+                        "WHEN #{productId} THEN #{quantity}" +
+                        "</foreach>" +
+                        " END, update_time = NOW() WHERE product_id IN " +
+                        "<foreach collection='items' index='productId' open='(' separator=',' close=')'>#{productId}</foreach>" +
+                        "</script>")
+        int confirmReservedStock(@Param("items") Map<Integer, Integer> items);
+
+        /**
+         * 释放预占库存
+         *
+         * @param items 商品ID -> 释放数量
+         * @return 影响的行数
+         */
+        @Update("<script>" +
+                        "UPDATE product SET reserved_stock = reserved_stock - CASE product_id " +
+                        "<foreach collection='items' index='productId' item='quantity' separator=' '>" +
+                        "WHEN #{productId} THEN #{quantity}" +
+                        "</foreach>" +
+                        " END, update_time = NOW() WHERE product_id IN " +
+                        "<foreach collection='items' index='productId' open='(' separator=',' close=')'>#{productId}</foreach>" +
+                        "</script>")
+        int releaseReservedStock(@Param("items") Map<Integer, Integer> items);
+
+        /**
+         * 用分桶库存合计刷新商品库存（库存 = 分桶合计 + 数据库预占），未变化时不更新
+         *
+         * @param productId 商品ID
+         * @param total     分桶库存合计
+         * @return 影响的行数
+         */
+        @Update("UPDATE product SET stock = #{total} + reserved_stock, update_time = NOW() " +
+                        "WHERE product_id = #{productId} AND stock != #{total} + reserved_stock")
+        int refreshBucketedStock(@Param("productId") Integer productId, @Param("total") int total);
+}
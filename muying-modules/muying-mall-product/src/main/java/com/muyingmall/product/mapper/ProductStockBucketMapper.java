@@ -0,0 +1,135 @@
+package com.muyingmall.product.mapper;
+
+import com.muyingmall.product.entity.ProductStockBucket;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
+
+/**
+ * 商品分桶库存 Mapper 接口
+ */
+@Mapper
+public interface ProductStockBucketMapper {
+
+        /**
+         * 从指定桶扣减，桶内库存不足时不更新
+         *
+         * @param productId 商品ID
+         * @param bucketNo  桶序号
+         * @param quantity  扣减数量
+         * @return 影响的行数，0 表示桶内库存不足
+         */
+        @Update("UPDATE product_stock_bucket SET stock = stock - #{quantity} " +
+                        "WHERE product_id = #{productId} AND bucket_no = #{bucketNo} AND stock >= #{quantity}")
+        int deduct(@Param("productId") Integer productId, @Param("bucketNo") int bucketNo,
+                        @Param("quantity") int quantity);
+
+        /**
+         * 向指定桶增加库存
+         *
+         * @param productId 商品ID
+         * @param bucketNo  桶序号
+         * @param quantity  增加数量
+         * @return 影响的行数
+         */
+        @Update("UPDATE product_stock_bucket SET stock = stock + #{quantity} " +
+                        "WHERE product_id = #{productId} AND bucket_no = #{bucketNo}")
+        int add(@Param("productId") Integer productId, @Param("bucketNo") int bucketNo,
+                        @Param("quantity") int quantity);
+
+        /**
+         * 设置指定桶的库存
+         *
+         * @param productId 商品ID
+         * @param bucketNo  桶序号
+         * @param stock     桶内库存
+         * @return 影响的行数
+         */
+        @Update("UPDATE product_stock_bucket SET stock = #{stock} WHERE product_id = #{productId} AND bucket_no = #{bucketNo}")
+        int updateStock(@Param("productId") Integer productId, @Param("bucketNo") int bucketNo,
+                        @Param("stock") int stock);
+
+        /**
+         * 按桶序号顺序查询并锁定商品的全部桶
+         *
+         * @param productId 商品ID
+         * @return 分桶库存
+         */
+        @Select("SELECT * FROM product_stock_bucket WHERE product_id = #{productId} ORDER BY bucket_no FOR UPDATE")
+        List<ProductStockBucket> selectForUpdate(@Param("productId") Integer productId);
+
+        /**
+         * 按桶序号顺序选出一个库存足够且未被其他事务锁定的桶并锁定，被锁定的桶直接跳过不等待
+         *
+         * @param productId 商品ID
+         * @param quantity  扣减数量
+         * @return 选中的桶，没有可用的桶时为null
+         */
+        @Select("SELECT * FROM product_stock_bucket WHERE product_id = #{productId} AND stock >= #{quantity} " +
+                        "ORDER BY bucket_no LIMIT 1 FOR UPDATE SKIP LOCKED")
+        ProductStockBucket selectAvailableForUpdate(@Param("productId") Integer productId,
+                        @Param("quantity") int quantity);
+
+        /**
+         * 按桶序号顺序查询并锁定商品未被其他事务锁定的桶，被锁定的桶直接跳过不等待
+         *
+         * @param productId 商品ID
+         * @return 分桶库存
+         */
+        @Select("SELECT * FROM product_stock_bucket WHERE product_id = #{productId} ORDER BY bucket_no FOR UPDATE SKIP LOCKED")
+        List<ProductStockBucket> selectUnlockedForUpdate(@Param("productId") Integer productId);
+
+        /**
+         * 商品各桶库存之和
+         *
+         * @param productId 商品ID
+         * @return 库存合计，没有分桶时为null
+         */
+        @Select("SELECT SUM(stock) FROM product_stock_bucket WHERE product_id = #{productId}")
+        Integer sumStock(@Param("productId") Integer productId);
+
+        /**
+         * 商品的桶数
+         *
+         * @param productId 商品ID
+         * @return 桶数
+         */
+        @Select("SELECT COUNT(*) FROM product_stock_bucket WHERE product_id = #{productId}")
+        int countBuckets(@Param("productId") Integer productId);
+
+        /**
+         * 创建分桶，已存在的桶不覆盖
+         *
+         * @param buckets 分桶库存
+         * @return 写入的行数
+         */
+        @Insert("<script>" +
+                        "INSERT IGNORE INTO product_stock_bucket (product_id, bucket_no, stock) VALUES " +
+                        "<foreach collection='buckets' item='b' separator=','>" +
+                        "(#{b.productId}, #{b.bucketNo}, #{b.stock})" +
+                        "</foreach>" +
+                        "</script>")
+        int insertBuckets(@Param("buckets") List<ProductStockBucket> buckets);
+
+        /**
+         * 有分桶的商品
+         *
+         * @return 商品ID
+         */
+        @Select("SELECT DISTINCT product_id FROM product_stock_bucket")
+        List<Integer> selectProductIds();
+
+        /**
+         * 删除商品的全部桶
+         *
+         * @param productId 商品ID
+         * @return 删除的行数
+         */
+        @Delete("DELETE FROM product_stock_bucket WHERE product_id = #{productId}")
+        int deleteByProductId(@Param("productId") Integer productId);
+}
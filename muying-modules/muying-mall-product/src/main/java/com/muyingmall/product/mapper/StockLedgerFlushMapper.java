@@ -0,0 +1,35 @@
+package com.muyingmall.product.mapper;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+
+/**
+ * 库存台账回写记录 Mapper 接口
+ * 回写序号与库存更新在同一事务中写入，重复回写同一序号时跳过
+ */
+@Mapper
+public interface StockLedgerFlushMapper {
+
+        /**
+         * 记录回写序号
+         *
+         * @param seq 回写序号
+         * @return 1-首次回写，0-该序号已回写过
+         */
+        @Insert("INSERT IGNORE INTO `stock_ledger_flush` (`seq`, `create_time`) VALUES (#{seq}, NOW())")
+        int insertIgnore(@Param("seq") long seq);
+
+        /**
+         * 清理早于指定时间的回写记录
+         *
+         * @param before 回写时间早于该时间
+         * @param limit  单次删除上限
+         * @return 删除的行数
+         */
+        @Delete("DELETE FROM `stock_ledger_flush` WHERE `create_time` < #{before} LIMIT #{limit}")
+        int deleteBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
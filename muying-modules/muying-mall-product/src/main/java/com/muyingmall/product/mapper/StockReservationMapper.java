@@ -0,0 +1,68 @@
+package com.muyingmall.product.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.muyingmall.product.entity.StockReservation;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 库存预占 Mapper 接口
+ */
+@Mapper
+public interface StockReservationMapper extends BaseMapper<StockReservation> {
+
+        /**
+         * 批量写入一个订单的预占记录
+         *
+         * @param reservations 预占记录
+         * @return 写入的行数
+         */
+        @Insert("<script>" +
+                        "INSERT INTO stock_reservation (order_no, product_id, quantity, deducted, status, expire_time, create_time, update_time) VALUES " +
+                        "<foreach collection='reservations' item='r' separator=','>" +
+                        "(#{r.orderNo}, #{r.productId}, #{r.quantity}, #{r.deducted}, #{r.status}, #{r.expireTime}, NOW(), NOW())" +
+                        "</foreach>" +
+                        "</script>")
+        int insertBatch(@Param("reservations") List<StockReservation> reservations);
+
+        /**
+         * 查询并锁定订单的全部预占记录
+         *
+         * @param orderNo 订单号
+         * @return 预占记录
+         */
+        @Select("SELECT * FROM stock_reservation WHERE order_no = #{orderNo} FOR UPDATE")
+        List<StockReservation> selectByOrderNoForUpdate(@Param("orderNo") String orderNo);
+
+        /**
+         * 查询并锁定一批已到期的预占记录，跳过其他事务正在处理的记录，多个实例可同时清理
+         *
+         * @param now   当前时间
+         * @param limit 批次大小
+         * @return 已到期的预占记录
+         */
+        @Select("SELECT * FROM stock_reservation WHERE status = 0 AND expire_time <= #{now} " +
+                        "ORDER BY expire_time LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+        List<StockReservation> selectExpiredForUpdate(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+        /**
+         * 批量变更状态
+         *
+         * @param ids  预占ID
+         * @param from 原状态
+         * @param to   目标状态
+         * @return 影响的行数
+         */
+        @Update("<script>" +
+                        "UPDATE stock_reservation SET status = #{to}, update_time = NOW() WHERE id IN " +
+                        "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>" +
+                        " AND status = #{from}" +
+                        "</script>")
+        int transition(@Param("ids") List<Long> ids, @Param("from") int from, @Param("to") int to);
+}
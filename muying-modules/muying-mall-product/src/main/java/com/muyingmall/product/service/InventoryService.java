@@ -50,7 +50,7 @@ public interface InventoryService {
     boolean checkStock(Integer productId, Integer quantity);
 
     /**
-     * 锁定库存（预占用）
+     * 锁定库存（直接扣减，不记录预占，下单预占使用 {@link #reserveStock}）
      *
      * @param productId 商品ID
      * @param quantity  锁定数量
@@ -86,6 +86,60 @@ public interface InventoryService {
      */
     boolean batchDecreaseStock(java.util.Map<Integer, Integer> productStockMap, String reason);
 
+    /**
+     * 按订单批量扣减库存并记录扣减明细，任一商品库存不足时整体失败；同一订单重复扣减时直接返回成功，
+     * 订单库存已恢复后才到达的扣减不再生效
+     *
+     * @param orderNo         订单号
+     * @param productStockMap 商品ID和扣减数量的映射
+     * @return 是否成功，库存不足或订单库存已恢复时为false
+     */
+    boolean deductOrderStock(String orderNo, java.util.Map<Integer, Integer> productStockMap);
+
+    /**
+     * 恢复订单扣减或预占的库存（订单取消、下单回滚），按扣减明细退回，重复调用不会重复恢复；
+     * 订单没有扣减明细（如扣减请求未到达）时记录为已恢复，之后到达的扣减不再生效
+     *
+     * @param orderNo 订单号
+     * @return 是否成功
+     */
+    boolean restoreOrderStock(String orderNo);
+
+    /**
+     * 按订单预占库存，任一商品可用库存不足时整体失败；同一订单重复预占时直接返回成功，
+     * 订单预占已释放后才到达的预占不再生效
+     *
+     * @param orderNo         订单号
+     * @param productStockMap 商品ID和预占数量的映射
+     * @param ttlSeconds      预占有效期（秒），为空时使用默认值
+     * @return 是否成功，可用库存不足或订单预占已释放时为false
+     */
+    boolean reserveStock(String orderNo, java.util.Map<Integer, Integer> productStockMap, Integer ttlSeconds);
+
+    /**
+     * 确认订单的预占（支付成功），预占数量转为实际扣减；已确认时直接返回成功
+     *
+     * @param orderNo 订单号
+     * @return 是否成功，预占已过期或已释放时返回false
+     */
+    boolean confirmReservation(String orderNo);
+
+    /**
+     * 释放订单的预占（订单取消），已确认的预占不受影响；订单还没有预占记录时记录为已释放，之后到达的预占不再生效
+     *
+     * @param orderNo 订单号
+     * @return 是否成功
+     */
+    boolean releaseReservation(String orderNo);
+
+    /**
+     * 释放一批已到期的预占，供定时任务调用
+     *
+     * @param limit 批次大小
+     * @return 释放的预占记录数
+     */
+    int releaseExpiredReservations(int limit);
+
     /**
      * 获取库存变动记录
      *
@@ -105,13 +159,21 @@ public interface InventoryService {
     List<Product> getLowStockProducts(Integer threshold);
 
     /**
-     * 获取商品当前库存
+     * 获取商品当前可用库存（库存减去预占库存）
      *
      * @param productId 商品ID
-     * @return 库存数量
+     * @return 可用库存数量
      */
     Integer getCurrentStock(Integer productId);
 
+    /**
+     * 按已读取的商品行计算可用库存，库存台账或分桶管理的商品以 Redis 或分桶合计为准
+     *
+     * @param product 含库存和预占库存的商品
+     * @return 可用库存数量
+     */
+    int getAvailableStock(Product product);
+
     /**
      * 记录库存变动日志
      *
@@ -50,6 +50,14 @@ public interface ProductService extends IService<Product> {
          */
         Product getProductDetail(Integer id);
 
+        /**
+         * 批量获取商品基本信息（优先读取缓存，未命中部分一次性回源数据库）
+         *
+         * @param ids 商品ID列表
+         * @return 商品列表，按请求ID顺序返回，不存在的商品不包含在结果中
+         */
+        List<Product> getProductsByIds(List<Integer> ids);
+
         /**
          * 创建商品
          *
@@ -5,17 +5,28 @@ import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.muyingmall.product.entity.InventoryLog;
 import com.muyingmall.product.entity.Product;
+import com.muyingmall.product.entity.StockReservation;
 import com.muyingmall.product.mapper.InventoryLogMapper;
 import com.muyingmall.product.mapper.ProductMapper;
+import com.muyingmall.product.mapper.StockReservationMapper;
 import com.muyingmall.product.service.InventoryService;
+import com.muyingmall.product.stock.StockBuckets;
+import com.muyingmall.product.stock.StockLedger;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * 库存管理服务实现类
@@ -27,6 +38,15 @@ public class InventoryServiceImpl implements InventoryService {
 
     private final ProductMapper productMapper;
     private final InventoryLogMapper inventoryLogMapper;
+    private final StockLedger stockLedger;
+    private final StockBuckets stockBuckets;
+    private final StockReservationMapper stockReservationMapper;
+
+    /**
+     * 默认预占有效期（秒）
+     */
+    @Value("${muying.product.reservation.default-ttl-seconds:900}")
+    private long defaultReservationTtlSeconds;
 
     @Override
     @Transactional
@@ -36,6 +56,13 @@ public class InventoryServiceImpl implements InventoryService {
             return false;
         }
 
+        if (stockLedger.manages(productId)) {
+            return increaseLedgerStock(productId, quantity, reason);
+        }
+        if (bucketed(productId)) {
+            return changeBucketStock(productId, quantity, "增加", reason);
+        }
+
         try {
             // 获取当前商品信息
             Product product = productMapper.selectById(productId);
@@ -75,6 +102,13 @@ public class InventoryServiceImpl implements InventoryService {
             return false;
         }
 
+        if (stockLedger.manages(productId)) {
+            return deductLedgerStock(productId, quantity, "减少", reason);
+        }
+        if (bucketed(productId)) {
+            return changeBucketStock(productId, -quantity, "减少", reason);
+        }
+
         try {
             // 获取当前商品信息
             Product product = productMapper.selectById(productId);
@@ -85,10 +119,10 @@ public class InventoryServiceImpl implements InventoryService {
 
             Integer beforeStock = product.getStock() != null ? product.getStock() : 0;
             
-            // 检查库存是否足够
-            if (beforeStock < quantity) {
-                log.warn("库存不足: productId={}, currentStock={}, requiredQuantity={}", 
-                         productId, beforeStock, quantity);
+            // 检查可用库存是否足够
+            if (availableStock(product) < quantity) {
+                log.warn("库存不足: productId={}, currentStock={}, reservedStock={}, requiredQuantity={}", 
+                         productId, beforeStock, product.getReservedStock(), quantity);
                 return false;
             }
 
@@ -98,6 +132,7 @@ public class InventoryServiceImpl implements InventoryService {
             LambdaUpdateWrapper<Product> updateWrapper = new LambdaUpdateWrapper<>();
             updateWrapper.eq(Product::getProductId, productId)
                          .eq(Product::getStock, beforeStock) // 乐观锁，确保并发安全
+                         .apply("stock - reserved_stock >= {0}", quantity) // 期间新增的预占不被挤占
                          .set(Product::getStock, afterStock)
                          .set(Product::getUpdateTime, LocalDateTime.now());
             
@@ -144,6 +179,13 @@ public class InventoryServiceImpl implements InventoryService {
             
             int updateCount = productMapper.update(null, updateWrapper);
             if (updateCount > 0) {
+                int sellable = quantity - (product.getReservedStock() != null ? product.getReservedStock() : 0);
+                if (stockLedger.manages(productId)) {
+                    // 尚未回写的扣减从设置值中扣除，回写后数据库库存与台账一致
+                    afterCommit(() -> stockLedger.reset(productId, sellable));
+                } else if (stockBuckets.manages(productId)) {
+                    stockBuckets.reset(productId, sellable);
+                }
                 // 记录库存变动日志
                 recordInventoryLog(productId, "设置", changeAmount, beforeStock, quantity, reason);
                 log.info("库存设置成功: productId={}, beforeStock={}, afterStock={}", 
@@ -163,13 +205,21 @@ public class InventoryServiceImpl implements InventoryService {
         }
 
         try {
+            if (stockLedger.manages(productId)) {
+                Integer available = stockLedger.available(productId);
+                if (available != null) {
+                    return available >= quantity;
+                }
+            } else if (stockBuckets.manages(productId)) {
+                Integer available = stockBuckets.available(productId);
+                return available != null && available >= quantity;
+            }
             Product product = productMapper.selectById(productId);
             if (product == null) {
                 return false;
             }
 
-            Integer currentStock = product.getStock() != null ? product.getStock() : 0;
-            return currentStock >= quantity;
+            return availableStock(product) >= quantity;
         } catch (Exception e) {
             log.error("检查库存失败: productId={}, quantity={}", productId, quantity, e);
             return false;
@@ -185,6 +235,13 @@ public class InventoryServiceImpl implements InventoryService {
             return false;
         }
 
+        if (stockLedger.manages(productId)) {
+            return deductLedgerStock(productId, quantity, "锁定", reason);
+        }
+        if (bucketed(productId)) {
+            return changeBucketStock(productId, -quantity, "锁定", reason);
+        }
+
         try {
             // 获取当前商品信息
             Product product = productMapper.selectById(productId);
@@ -195,10 +252,10 @@ public class InventoryServiceImpl implements InventoryService {
 
             Integer beforeStock = product.getStock() != null ? product.getStock() : 0;
             
-            // 检查库存是否足够
-            if (beforeStock < quantity) {
-                log.warn("库存不足，无法锁定: productId={}, currentStock={}, requiredQuantity={}", 
-                         productId, beforeStock, quantity);
+            // 检查可用库存是否足够
+            if (availableStock(product) < quantity) {
+                log.warn("库存不足，无法锁定: productId={}, currentStock={}, reservedStock={}, requiredQuantity={}", 
+                         productId, beforeStock, product.getReservedStock(), quantity);
                 return false;
             }
 
@@ -208,6 +265,7 @@ public class InventoryServiceImpl implements InventoryService {
             LambdaUpdateWrapper<Product> updateWrapper = new LambdaUpdateWrapper<>();
             updateWrapper.eq(Product::getProductId, productId)
                          .eq(Product::getStock, beforeStock) // 乐观锁
+                         .apply("stock - reserved_stock >= {0}", quantity) // 期间新增的预占不被挤占
                          .set(Product::getStock, afterStock)
                          .set(Product::getUpdateTime, LocalDateTime.now());
             
@@ -236,6 +294,21 @@ public class InventoryServiceImpl implements InventoryService {
             return false;
         }
 
+        if (stockLedger.manages(productId)) {
+            try {
+                // 恢复量随台账回写数据库
+                afterCommit(() -> stockLedger.restore(productId, quantity));
+                log.info("台账库存释放成功: productId={}, quantity={}, reason={}", productId, quantity, reason);
+                return true;
+            } catch (Exception e) {
+                log.error("释放台账库存失败: productId={}, quantity={}, reason={}", productId, quantity, reason, e);
+                return false;
+            }
+        }
+        if (bucketed(productId)) {
+            return changeBucketStock(productId, quantity, "释放", reason);
+        }
+
         try {
             // 获取当前商品信息
             Product product = productMapper.selectById(productId);
@@ -294,30 +367,280 @@ public class InventoryServiceImpl implements InventoryService {
             return false;
         }
 
-        try {
-            // 先批量检查库存
-            if (!batchCheckStock(productStockMap)) {
-                log.warn("批量扣减库存失败：库存不足");
+        for (Integer quantity : productStockMap.values()) {
+            if (quantity == null || quantity <= 0) {
+                log.warn("批量扣减库存参数无效: {}", productStockMap);
                 return false;
             }
+        }
 
-            // 批量扣减库存
-            for (Map.Entry<Integer, Integer> entry : productStockMap.entrySet()) {
-                if (!decreaseStock(entry.getKey(), entry.getValue(), reason)) {
-                    log.error("批量扣减库存失败：商品ID={}", entry.getKey());
-                    throw new RuntimeException("批量扣减库存失败，已回滚");
+        // 台账管理的商品在 Redis 中整体扣减，分桶商品逐个从桶中扣减，其余商品在数据库中整体扣减
+        Map<Integer, Integer> ledgerItems = new TreeMap<>();
+        Map<Integer, Integer> bucketItems = new TreeMap<>();
+        Map<Integer, Integer> dbItems = new TreeMap<>();
+        productStockMap.forEach((productId, quantity) -> {
+            if (stockLedger.manages(productId)) {
+                ledgerItems.put(productId, quantity);
+            } else if (stockBuckets.manages(productId)) {
+                bucketItems.put(productId, quantity);
+            } else {
+                dbItems.put(productId, quantity);
+            }
+        });
+
+        try {
+            if (!dbItems.isEmpty()) {
+                // 一条条件更新扣减全部商品，库存不足的商品不会被更新，影响行数不等于商品数即整批失败
+                int updated = productMapper.batchDecreaseStock(dbItems);
+                if (updated != dbItems.size()) {
+                    log.warn("批量扣减库存失败：库存不足或商品不存在, 商品数量={}, 扣减成功={}", dbItems.size(), updated);
+                    TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                    return false;
                 }
+                inventoryLogMapper.insertDecreaseLogs(dbItems, "减少", reason);
             }
-            
+            for (Map.Entry<Integer, Integer> entry : bucketItems.entrySet()) {
+                if (!changeBucketStock(entry.getKey(), -entry.getValue(), "减少", reason)) {
+                    TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                    return false;
+                }
+            }
+            if (!ledgerItems.isEmpty() && !deductAllLedgerStock(ledgerItems, reason)) {
+                // 已扣减的数据库库存随事务回滚
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                return false;
+            }
+
             log.info("批量扣减库存成功：商品数量={}", productStockMap.size());
             return true;
         } catch (Exception e) {
             log.error("批量扣减库存失败", e);
-            // 事务会自动回滚
+            // 异常在此被捕获，需显式标记回滚，避免已扣减的商品残留
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             return false;
         }
     }
 
+    @Override
+    @Transactional
+    public boolean deductOrderStock(String orderNo, Map<Integer, Integer> productStockMap) {
+        if (orderNo == null || orderNo.isEmpty()) {
+            return false;
+        }
+        List<StockReservation> existing = stockReservationMapper.selectList(new LambdaQueryWrapper<StockReservation>()
+                .eq(StockReservation::getOrderNo, orderNo));
+        if (!existing.isEmpty()) {
+            if (released(existing)) {
+                log.warn("订单库存已恢复，拒绝迟到的扣减请求: orderNo={}", orderNo);
+                return false;
+            }
+            log.info("订单已扣减库存，忽略重复请求: orderNo={}", orderNo);
+            return true;
+        }
+        if (!batchDecreaseStock(productStockMap, "订单扣减:" + orderNo)) {
+            return false;
+        }
+
+        // 扣减明细以已确认的预占记录保存，订单取消或下单回滚时按订单号恢复
+        LocalDateTime now = LocalDateTime.now();
+        List<StockReservation> records = new ArrayList<>(productStockMap.size());
+        for (Map.Entry<Integer, Integer> entry : new TreeMap<>(productStockMap).entrySet()) {
+            StockReservation record = new StockReservation();
+            record.setOrderNo(orderNo);
+            record.setProductId(entry.getKey());
+            record.setQuantity(entry.getValue());
+            record.setDeducted(stockLedger.manages(entry.getKey()) || stockBuckets.manages(entry.getKey()));
+            record.setStatus(StockReservation.STATUS_CONFIRMED);
+            record.setExpireTime(now);
+            records.add(record);
+        }
+        records.add(orderMarker(orderNo, StockReservation.STATUS_CONFIRMED, now));
+        try {
+            stockReservationMapper.insertBatch(records);
+        } catch (DuplicateKeyException e) {
+            // 同一订单的并发请求已扣减成功，或订单库存已先行恢复，本次扣减回滚
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            if (released(stockReservationMapper.selectByOrderNoForUpdate(orderNo))) {
+                log.warn("订单库存已恢复，拒绝迟到的扣减请求: orderNo={}", orderNo);
+                return false;
+            }
+            log.info("订单已被并发请求扣减库存: orderNo={}", orderNo);
+        }
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public boolean restoreOrderStock(String orderNo) {
+        List<StockReservation> reservations = stockReservationMapper.selectByOrderNoForUpdate(orderNo);
+        if (reservations.isEmpty()) {
+            if (markReleased(orderNo)) {
+                log.info("订单没有库存扣减记录，已标记为已恢复: orderNo={}", orderNo);
+                return true;
+            }
+            // 并发的扣减已先写入记录
+            reservations = stockReservationMapper.selectByOrderNoForUpdate(orderNo);
+        }
+
+        releaseReservations(orderNo, reservationsWithStatus(reservations, StockReservation.STATUS_RESERVED),
+                StockReservation.STATUS_RELEASED);
+        List<StockReservation> confirmed = reservationsWithStatus(reservations, StockReservation.STATUS_CONFIRMED);
+        if (!confirmed.isEmpty()) {
+            stockReservationMapper.transition(idsOf(confirmed), StockReservation.STATUS_CONFIRMED,
+                    StockReservation.STATUS_RELEASED);
+            Map<Integer, Integer> items = quantitiesOf(confirmed, true);
+            quantitiesOf(confirmed, false).forEach((productId, quantity) -> items.merge(productId, quantity, Integer::sum));
+            returnStock(items, "订单恢复", orderNo);
+            log.info("恢复订单库存: orderNo={}, items={}", orderNo, items);
+        }
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public boolean reserveStock(String orderNo, Map<Integer, Integer> productStockMap, Integer ttlSeconds) {
+        if (orderNo == null || orderNo.isEmpty() || productStockMap == null || productStockMap.isEmpty()) {
+            return false;
+        }
+        for (Integer quantity : productStockMap.values()) {
+            if (quantity == null || quantity <= 0) {
+                log.warn("预占库存参数无效: orderNo={}, items={}", orderNo, productStockMap);
+                return false;
+            }
+        }
+
+        List<StockReservation> existing = stockReservationMapper.selectList(new LambdaQueryWrapper<StockReservation>()
+                .eq(StockReservation::getOrderNo, orderNo));
+        if (!existing.isEmpty()) {
+            if (released(existing)) {
+                log.warn("订单预占已释放，拒绝迟到的预占请求: orderNo={}", orderNo);
+                return false;
+            }
+            log.info("订单已预占库存，忽略重复请求: orderNo={}", orderNo);
+            return true;
+        }
+
+        long ttl = ttlSeconds != null && ttlSeconds > 0 ? ttlSeconds : defaultReservationTtlSeconds;
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(ttl);
+        List<StockReservation> reservations = new ArrayList<>(productStockMap.size());
+        try {
+            // 按商品ID顺序加行锁，避免并发预占互相死锁
+            for (Map.Entry<Integer, Integer> entry : new TreeMap<>(productStockMap).entrySet()) {
+                Integer productId = entry.getKey();
+                Integer quantity = entry.getValue();
+                boolean ledger = stockLedger.manages(productId);
+                boolean bucketed = !ledger && stockBuckets.manages(productId);
+                boolean reserved;
+                if (ledger) {
+                    reserved = deductLedgerStock(productId, quantity, "预占", orderNo);
+                } else if (bucketed) {
+                    // 分桶商品不写商品行的预占库存，避免热点行锁
+                    reserved = stockBuckets.deduct(productId, quantity);
+                } else {
+                    reserved = productMapper.reserveStock(productId, quantity) > 0;
+                }
+                if (!reserved) {
+                    log.warn("预占库存失败，可用库存不足: orderNo={}, productId={}, quantity={}", orderNo, productId, quantity);
+                    TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                    return false;
+                }
+
+                StockReservation reservation = new StockReservation();
+                reservation.setOrderNo(orderNo);
+                reservation.setProductId(productId);
+                reservation.setQuantity(quantity);
+                reservation.setDeducted(ledger || bucketed);
+                reservation.setStatus(StockReservation.STATUS_RESERVED);
+                reservation.setExpireTime(expireTime);
+                reservations.add(reservation);
+            }
+            reservations.add(orderMarker(orderNo, StockReservation.STATUS_RESERVED, expireTime));
+            stockReservationMapper.insertBatch(reservations);
+            log.info("预占库存成功: orderNo={}, items={}, expireTime={}", orderNo, productStockMap, expireTime);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // 同一订单的并发请求已预占成功，或订单预占已先行释放，本次预占回滚
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            if (released(stockReservationMapper.selectByOrderNoForUpdate(orderNo))) {
+                log.warn("订单预占已释放，拒绝迟到的预占请求: orderNo={}", orderNo);
+                return false;
+            }
+            log.info("订单已被并发请求预占库存: orderNo={}", orderNo);
+            return true;
+        } catch (Exception e) {
+            log.error("预占库存失败: orderNo={}, items={}", orderNo, productStockMap, e);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+    }
+
+    @Override
+    @Transactional
+    public boolean confirmReservation(String orderNo) {
+        List<StockReservation> reservations = stockReservationMapper.selectByOrderNoForUpdate(orderNo);
+        if (reservations.isEmpty()) {
+            log.warn("确认预占失败，订单没有预占记录: orderNo={}", orderNo);
+            return false;
+        }
+
+        List<StockReservation> pending = new ArrayList<>(reservations.size());
+        for (StockReservation reservation : reservations) {
+            int status = reservation.getStatus();
+            if (status == StockReservation.STATUS_RESERVED) {
+                pending.add(reservation);
+            } else if (status != StockReservation.STATUS_CONFIRMED) {
+                // 部分已过期或已释放，整单不能再确认，剩余的预占一并释放
+                log.warn("确认预占失败，预占已过期或已释放: orderNo={}, productId={}, status={}",
+                        orderNo, reservation.getProductId(), status);
+                releaseReservations(orderNo, reservationsWithStatus(reservations, StockReservation.STATUS_RESERVED),
+                        StockReservation.STATUS_EXPIRED);
+                return false;
+            }
+        }
+        if (pending.isEmpty()) {
+            return true;
+        }
+
+        stockReservationMapper.transition(idsOf(pending), StockReservation.STATUS_RESERVED,
+                StockReservation.STATUS_CONFIRMED);
+        // 经台账预占的数量随台账回写数据库，经分桶预占的已从桶中扣减
+        Map<Integer, Integer> dbItems = quantitiesOf(pending, false);
+        if (!dbItems.isEmpty()) {
+            productMapper.confirmReservedStock(dbItems);
+            inventoryLogMapper.insertDecreaseLogs(dbItems, "预占确认", orderNo);
+        }
+        log.info("确认预占成功: orderNo={}, items={}", orderNo, pending.size());
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public boolean releaseReservation(String orderNo) {
+        List<StockReservation> reservations = stockReservationMapper.selectByOrderNoForUpdate(orderNo);
+        if (reservations.isEmpty()) {
+            if (markReleased(orderNo)) {
+                log.info("订单没有预占记录，已标记为已释放: orderNo={}", orderNo);
+                return true;
+            }
+            reservations = stockReservationMapper.selectByOrderNoForUpdate(orderNo);
+        }
+        List<StockReservation> pending = reservationsWithStatus(reservations, StockReservation.STATUS_RESERVED);
+        if (!pending.isEmpty()) {
+            releaseReservations(orderNo, pending, StockReservation.STATUS_RELEASED);
+        }
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public int releaseExpiredReservations(int limit) {
+        List<StockReservation> expired = stockReservationMapper.selectExpiredForUpdate(LocalDateTime.now(), limit);
+        if (!expired.isEmpty()) {
+            releaseReservations(null, expired, StockReservation.STATUS_EXPIRED);
+        }
+        return expired.size();
+    }
+
     @Override
     public List<InventoryLog> getInventoryLogs(Integer productId, Integer page, Integer size) {
         if (productId == null || page == null || size == null || page <= 0 || size <= 0) {
@@ -365,17 +688,294 @@ public class InventoryServiceImpl implements InventoryService {
         }
 
         try {
+            if (stockLedger.manages(productId)) {
+                Integer available = stockLedger.available(productId);
+                if (available != null) {
+                    return available;
+                }
+            } else if (stockBuckets.manages(productId)) {
+                return stockBuckets.available(productId);
+            }
             Product product = productMapper.selectById(productId);
             if (product == null) {
                 return null;
             }
-            return product.getStock() != null ? product.getStock() : 0;
+            return availableStock(product);
         } catch (Exception e) {
             log.error("获取当前库存失败: productId={}", productId, e);
             return null;
         }
     }
 
+    @Override
+    public int getAvailableStock(Product product) {
+        Integer productId = product.getProductId();
+        try {
+            if (stockLedger.manages(productId)) {
+                Integer available = stockLedger.available(productId);
+                if (available != null) {
+                    return available;
+                }
+            } else if (stockBuckets.manages(productId)) {
+                Integer available = stockBuckets.available(productId);
+                if (available != null) {
+                    return available;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取台账或分桶库存失败，使用数据库库存: productId={}", productId, e);
+        }
+        return availableStock(product);
+    }
+
+    /**
+     * 从库存台账扣减，数据库由台账定时回写；所在事务回滚时恢复
+     */
+    private boolean deductLedgerStock(Integer productId, Integer quantity, String changeType, String reason) {
+        try {
+            if (!stockLedger.deduct(productId, quantity)) {
+                log.warn("台账库存不足: productId={}, requiredQuantity={}, type={}", productId, quantity, changeType);
+                return false;
+            }
+        } catch (Exception e) {
+            log.error("台账扣减库存失败: productId={}, quantity={}, type={}, reason={}",
+                    productId, quantity, changeType, reason, e);
+            return false;
+        }
+        afterRollback(() -> stockLedger.restore(productId, quantity));
+        log.info("台账库存{}成功: productId={}, quantity={}, reason={}", changeType, productId, quantity, reason);
+        return true;
+    }
+
+    /**
+     * 多商品整体从库存台账扣减
+     */
+    private boolean deductAllLedgerStock(Map<Integer, Integer> productStockMap, String reason) {
+        try {
+            if (!stockLedger.deductAll(productStockMap)) {
+                log.warn("批量扣减台账库存失败：库存不足");
+                return false;
+            }
+        } catch (Exception e) {
+            log.error("批量扣减台账库存失败", e);
+            return false;
+        }
+        afterRollback(() -> productStockMap.forEach(stockLedger::restore));
+        log.info("批量扣减台账库存成功：商品数量={}, reason={}", productStockMap.size(), reason);
+        return true;
+    }
+
+    /**
+     * 台账管理的商品入库：数据库按增量更新（不读后写，不覆盖未回写的扣减），提交后同步台账
+     */
+    private boolean increaseLedgerStock(Integer productId, Integer quantity, String reason) {
+        try {
+            if (productMapper.applyStockDelta(productId, -quantity) == 0) {
+                log.warn("商品不存在: productId={}", productId);
+                return false;
+            }
+            Product product = productMapper.selectById(productId);
+            Integer afterStock = product.getStock() != null ? product.getStock() : 0;
+            recordInventoryLog(productId, "增加", quantity, afterStock - quantity, afterStock, reason);
+            afterCommit(() -> stockLedger.mirror(productId, quantity));
+            log.info("台账商品库存增加成功: productId={}, quantity={}", productId, quantity);
+            return true;
+        } catch (Exception e) {
+            log.error("增加库存失败: productId={}, quantity={}, reason={}", productId, quantity, reason, e);
+            return false;
+        }
+    }
+
+    /**
+     * 商品是否按分桶管理库存，同时由台账管理时以台账为准
+     */
+    private boolean bucketed(Integer productId) {
+        return !stockLedger.manages(productId) && stockBuckets.manages(productId);
+    }
+
+    /**
+     * 分桶商品的库存变更，只更新桶行，不锁商品行
+     *
+     * @param delta 库存增量，负数为扣减
+     */
+    private boolean changeBucketStock(Integer productId, int delta, String changeType, String reason) {
+        try {
+            boolean changed = delta > 0
+                    ? stockBuckets.add(productId, delta)
+                    : stockBuckets.deduct(productId, -delta);
+            if (!changed) {
+                log.warn("分桶库存{}失败，库存不足或商品不存在: productId={}, quantity={}",
+                        changeType, productId, Math.abs(delta));
+                return false;
+            }
+            Integer afterStock = stockBuckets.available(productId);
+            int remaining = afterStock != null ? afterStock : 0;
+            recordInventoryLog(productId, changeType, delta, remaining - delta, remaining, reason);
+            log.info("分桶库存{}成功: productId={}, quantity={}, afterStock={}",
+                    changeType, productId, Math.abs(delta), remaining);
+            return true;
+        } catch (Exception e) {
+            log.error("分桶库存{}失败: productId={}, quantity={}, reason={}",
+                    changeType, productId, Math.abs(delta), reason, e);
+            return false;
+        }
+    }
+
+    /**
+     * 释放已锁定的预占记录：数据库预占库存按商品合并后一条语句扣回，直接扣减的数量退回商品当前的库存管理方式
+     */
+    private void releaseReservations(String orderNo, List<StockReservation> reservations, int status) {
+        if (reservations.isEmpty()) {
+            return;
+        }
+        stockReservationMapper.transition(idsOf(reservations), StockReservation.STATUS_RESERVED, status);
+        Map<Integer, Integer> dbItems = quantitiesOf(reservations, false);
+        if (!dbItems.isEmpty()) {
+            productMapper.releaseReservedStock(dbItems);
+            // 启用台账或分桶前的预占：商品行可售库存已增加，同步到台账或桶
+            dbItems.forEach((productId, quantity) -> {
+                if (stockLedger.manages(productId)) {
+                    afterCommit(() -> stockLedger.mirror(productId, quantity));
+                } else if (stockBuckets.manages(productId)) {
+                    stockBuckets.add(productId, quantity);
+                }
+            });
+        }
+        returnStock(quantitiesOf(reservations, true), "释放", orderNo);
+        log.info("释放预占库存: orderNo={}, records={}, status={}", orderNo, reservations.size(), status);
+    }
+
+    /**
+     * 把已扣减的库存退回商品当前的库存管理方式：台账提交后恢复，分桶加回随机桶，
+     * 其余商品（含扣减后已退出台账或分桶的）一条语句按增量加回商品行
+     */
+    private void returnStock(Map<Integer, Integer> items, String changeType, String reason) {
+        Map<Integer, Integer> dbItems = new TreeMap<>();
+        items.forEach((productId, quantity) -> {
+            if (stockLedger.manages(productId)) {
+                afterCommit(() -> stockLedger.restore(productId, quantity));
+            } else if (stockBuckets.manages(productId)) {
+                stockBuckets.add(productId, quantity);
+            } else {
+                dbItems.put(productId, quantity);
+            }
+        });
+        if (!dbItems.isEmpty()) {
+            productMapper.batchIncreaseStock(dbItems);
+            inventoryLogMapper.insertIncreaseLogs(dbItems, changeType, reason);
+        }
+    }
+
+    /**
+     * 订单还没有扣减或预占记录时写入已释放的标记行，迟到的扣减或预占因唯一键冲突不再生效
+     *
+     * @return 是否写入，false 表示并发的扣减或预占已先写入记录
+     */
+    private boolean markReleased(String orderNo) {
+        try {
+            stockReservationMapper.insertBatch(List.of(
+                    orderMarker(orderNo, StockReservation.STATUS_RELEASED, LocalDateTime.now())));
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private static StockReservation orderMarker(String orderNo, int status, LocalDateTime expireTime) {
+        StockReservation marker = new StockReservation();
+        marker.setOrderNo(orderNo);
+        marker.setProductId(StockReservation.ORDER_MARKER_PRODUCT_ID);
+        marker.setQuantity(0);
+        marker.setDeducted(false);
+        marker.setStatus(status);
+        marker.setExpireTime(expireTime);
+        return marker;
+    }
+
+    /**
+     * 订单的记录是否已全部释放或过期（含只有已释放标记行的订单）
+     */
+    private static boolean released(List<StockReservation> reservations) {
+        for (StockReservation reservation : reservations) {
+            int status = reservation.getStatus();
+            if (status != StockReservation.STATUS_RELEASED && status != StockReservation.STATUS_EXPIRED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<StockReservation> reservationsWithStatus(List<StockReservation> reservations, int status) {
+        List<StockReservation> result = new ArrayList<>(reservations.size());
+        for (StockReservation reservation : reservations) {
+            if (reservation.getStatus() == status) {
+                result.add(reservation);
+            }
+        }
+        return result;
+    }
+
+    private static List<Long> idsOf(List<StockReservation> reservations) {
+        List<Long> ids = new ArrayList<>(reservations.size());
+        for (StockReservation reservation : reservations) {
+            ids.add(reservation.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 按商品合并预占数量
+     *
+     * @param deducted true-已从台账或分桶直接扣减的记录，false-计入预占库存的记录
+     */
+    private static Map<Integer, Integer> quantitiesOf(List<StockReservation> reservations, boolean deducted) {
+        Map<Integer, Integer> quantities = new TreeMap<>();
+        for (StockReservation reservation : reservations) {
+            if (reservation.getProductId() == StockReservation.ORDER_MARKER_PRODUCT_ID) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(reservation.getDeducted()) == deducted) {
+                quantities.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+            }
+        }
+        return quantities;
+    }
+
+    /**
+     * 可用库存 = 库存 - 预占库存
+     */
+    private static int availableStock(Product product) {
+        int stock = product.getStock() != null ? product.getStock() : 0;
+        int reserved = product.getReservedStock() != null ? product.getReservedStock() : 0;
+        return stock - reserved;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void afterRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        action.run();
+                    }
+                }
+            });
+        }
+    }
+
     @Override
     public void recordInventoryLog(Integer productId, String changeType, Integer changeAmount, 
                                   Integer beforeStock, Integer afterStock, String reason) {
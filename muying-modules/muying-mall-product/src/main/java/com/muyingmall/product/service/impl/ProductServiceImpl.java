@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.muyingmall.common.CacheConstants;
+import com.muyingmall.product.cache.ProductDetailNearCache;
 import com.muyingmall.product.entity.Category;
 import com.muyingmall.product.entity.Product;
 import com.muyingmall.product.entity.ProductImage;
@@ -18,6 +19,9 @@ import com.muyingmall.common.utils.RedisUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
@@ -26,6 +30,7 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -34,6 +39,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -48,10 +54,14 @@ public class ProductServiceImpl extends ServiceImpl<ProductMapper, Product> impl
     private final ProductSpecsMapper productSpecsMapper;
     private final ProductMapper productMapper;
     private final CategoryMapper categoryMapper;
+    private final ProductDetailNearCache productDetailNearCache;
     
     @Autowired(required = false)
     private RedisUtil redisUtil;
 
+    @Autowired(required = false)
+    private RedisTemplate<String, Object> redisTemplate;
+
     @Override
     public Page<Product> getProductPage(int page, int size, Integer categoryId, Boolean isHot, Boolean isNew,
             Boolean isRecommend, String keyword) {
@@ -194,126 +204,91 @@ public class ProductServiceImpl extends ServiceImpl<ProductMapper, Product> impl
 
     /**
      * 获取商品详情
-     * 优化：使用Hash存储商品详情，减少序列化/反序列化开销
+     * 优化：本地近缓存 -> 一次管道化读取 Redis 详情Hash及图片、规格列表 -> 回源数据库后一次管道化事务写回
      */
     @Override
-    @Transactional(readOnly = true)
     public Product getProductDetail(Integer id) {
         if (id == null) {
             return null;
         }
 
-        // 构建缓存键
-        String cacheKey = CacheConstants.PRODUCT_DETAIL_KEY + id;
-
-        // 使用Hash结构优化 - 查询缓存
-        // 首先检查Hash键是否存在
-        boolean hasKey = redisUtil.hasKey(cacheKey);
-        if (hasKey) {
-            log.info("从缓存获取商品详情: productId={}", id);
+        Product product = productDetailNearCache.get(id);
+        if (product != null) {
+            return product;
+        }
 
-            try {
-                // 从Hash中获取所有字段
-                Map<Object, Object> productMap = redisUtil.hGetAll(cacheKey);
-                if (productMap != null && !productMap.isEmpty()) {
-                    // 将Map转换为Product对象
-                    Product product = new Product();
-
-                    // 设置基本属性
-                    if (productMap.get("productId") != null)
-                        product.setProductId(Integer.valueOf(productMap.get("productId").toString()));
-                    if (productMap.get("productName") != null)
-                        product.setProductName(productMap.get("productName").toString());
-                    if (productMap.get("productImg") != null)
-                        product.setProductImg(productMap.get("productImg").toString());
-                    if (productMap.get("categoryId") != null)
-                        product.setCategoryId(Integer.valueOf(productMap.get("categoryId").toString()));
-                    if (productMap.get("brandId") != null && !"null".equals(productMap.get("brandId"))) {
-                        product.setBrandId(Integer.valueOf(productMap.get("brandId").toString()));
-                    }
-                    if (productMap.get("description") != null)
-                        product.setProductDetail(productMap.get("description").toString());
-                    if (productMap.get("detail") != null)
-                        product.setProductDetail(productMap.get("detail").toString());
-                    if (productMap.get("priceOld") != null) {
-                        product.setPriceOld(new BigDecimal(productMap.get("priceOld").toString()));
-                    }
-                    if (productMap.get("priceNew") != null) {
-                        product.setPriceNew(new BigDecimal(productMap.get("priceNew").toString()));
-                    }
-                    if (productMap.get("stock") != null)
-                        product.setStock(Integer.valueOf(productMap.get("stock").toString()));
-                    if (productMap.get("sales") != null)
-                        product.setSales(Integer.valueOf(productMap.get("sales").toString()));
-                    if (productMap.get("isHot") != null)
-                        product.setIsHot(Integer.valueOf(productMap.get("isHot").toString()));
-                    if (productMap.get("isNew") != null)
-                        product.setIsNew(Integer.valueOf(productMap.get("isNew").toString()));
-                    if (productMap.get("isRecommend") != null)
-                        product.setIsRecommend(Integer.valueOf(productMap.get("isRecommend").toString()));
-                    if (productMap.get("productStatus") != null)
-                        product.setProductStatus(productMap.get("productStatus").toString());
-                    if (productMap.get("rating") != null)
-                        product.setRating(new BigDecimal(productMap.get("rating").toString()));
-
-                    // 处理日期字段
-                    if (productMap.get("createTime") != null) {
-                        try {
-                            product.setCreateTime(LocalDateTime.parse(productMap.get("createTime").toString()));
-                        } catch (Exception e) {
-                            log.warn("解析创建时间失败: {}", e.getMessage());
-                        }
-                    }
+        long generation = productDetailNearCache.generation();
+        product = readProductDetailCache(id);
+        if (product == null) {
+            product = loadProductDetail(id);
+        }
+        if (product != null) {
+            productDetailNearCache.put(id, product, generation);
+        }
+        return product;
+    }
 
-                    if (productMap.get("updateTime") != null) {
-                        try {
-                            product.setUpdateTime(LocalDateTime.parse(productMap.get("updateTime").toString()));
-                        } catch (Exception e) {
-                            log.warn("解析更新时间失败: {}", e.getMessage());
-                        }
-                    }
+    /**
+     * 一次管道化读取商品详情Hash、图片列表和规格列表
+     *
+     * @return 商品详情，缓存不存在或读取失败时为null
+     */
+    private Product readProductDetailCache(Integer id) {
+        if (redisTemplate == null) {
+            return null;
+        }
 
-                    // 获取商品图片列表(作为单独的列表存储)
-                    String imagesKey = cacheKey + ":images";
-                    if (redisUtil.hasKey(imagesKey)) {
-                        List<Object> imagesList = redisUtil.lRange(imagesKey, 0, -1);
-                        if (imagesList != null && !imagesList.isEmpty()) {
-                            List<ProductImage> images = new ArrayList<>();
-                            for (Object img : imagesList) {
-                                if (img instanceof ProductImage) {
-                                    images.add((ProductImage) img);
-                                }
-                            }
-                            product.setImages(images);
-                        }
-                    }
+        String cacheKey = CacheConstants.PRODUCT_DETAIL_KEY + id;
+        try {
+            List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                    ops.opsForHash().entries(cacheKey);
+                    ops.opsForList().range(cacheKey + ":images", 0, -1);
+                    ops.opsForList().range(cacheKey + ":specs", 0, -1);
+                    return null;
+                }
+            });
 
-                    // 获取商品规格列表(作为单独的列表存储)
-                    String specsKey = cacheKey + ":specs";
-                    if (redisUtil.hasKey(specsKey)) {
-                        List<Object> specsList = redisUtil.lRange(specsKey, 0, -1);
-                        if (specsList != null && !specsList.isEmpty()) {
-                            List<ProductSpecs> specs = new ArrayList<>();
-                            for (Object spec : specsList) {
-                                if (spec instanceof ProductSpecs) {
-                                    specs.add((ProductSpecs) spec);
-                                }
-                            }
-                            product.setSpecsList(specs);
-                        }
-                    }
+            Object cached = results.isEmpty() ? null : results.get(0);
+            if (!(cached instanceof Map) || ((Map<?, ?>) cached).isEmpty()) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> productMap = (Map<Object, Object>) cached;
+            Product product = convertCacheMapToProduct(productMap);
+            // 图片、规格列表与Hash在同一事务中写入，列表不存在即没有图片或规格
+            product.setImages(filterList(results.get(1), ProductImage.class));
+            product.setSpecsList(filterList(results.get(2), ProductSpecs.class));
+            log.debug("从缓存获取商品详情: productId={}", id);
+            return product;
+        } catch (Exception e) {
+            log.error("从缓存获取商品详情失败: {}", e.getMessage(), e);
+            // 发生异常，继续从数据库获取
+            return null;
+        }
+    }
 
-                    return product;
+    private static <T> List<T> filterList(Object cached, Class<T> type) {
+        List<T> result = new ArrayList<>();
+        if (cached instanceof List) {
+            for (Object item : (List<?>) cached) {
+                if (type.isInstance(item)) {
+                    result.add(type.cast(item));
                 }
-            } catch (Exception e) {
-                log.error("从缓存获取商品详情失败: {}", e.getMessage(), e);
-                // 发生异常，继续从数据库获取
             }
         }
+        return result;
+    }
 
+    /**
+     * 从数据库加载商品详情，并写回 Redis 缓存
+     */
+    private Product loadProductDetail(Integer id) {
         log.info("缓存未命中，从数据库获取商品详情: productId={}", id);
 
-        // 缓存不存在或获取失败，查询数据库
         // 获取商品基本信息
         Product product = getById(id);
         if (product == null) {
@@ -334,60 +309,202 @@ public class ProductServiceImpl extends ServiceImpl<ProductMapper, Product> impl
                         .orderByAsc(ProductSpecs::getSortOrder));
         product.setSpecsList(specs);
 
-        // 使用Hash结构缓存商品详情
-        try {
-            // 主键
-            Map<String, Object> productMap = new HashMap<>();
-
-            // 基本属性
-            productMap.put("productId", product.getProductId());
-            productMap.put("productName", product.getProductName());
-            productMap.put("productImg", product.getProductImg());
-            productMap.put("categoryId", product.getCategoryId());
-            productMap.put("brandId", product.getBrandId());
-            productMap.put("description", product.getProductDetail());
-            productMap.put("detail", product.getProductDetail());
-            productMap.put("priceOld", product.getPriceOld());
-            productMap.put("priceNew", product.getPriceNew());
-            productMap.put("stock", product.getStock());
-            productMap.put("sales", product.getSales());
-            productMap.put("isHot", product.getIsHot());
-            productMap.put("isNew", product.getIsNew());
-            productMap.put("isRecommend", product.getIsRecommend());
-            productMap.put("productStatus", product.getProductStatus());
-            productMap.put("rating", product.getRating());
-
-            // 日期时间
-            if (product.getCreateTime() != null) {
-                productMap.put("createTime", product.getCreateTime().toString());
+        if (redisTemplate != null) {
+            try {
+                writeProductDetailCache(product, images, specs);
+                log.info("商品详情已缓存到Redis(Hash): productId={}", id);
+            } catch (Exception e) {
+                log.error("缓存商品详情到Redis失败: {}", e.getMessage(), e);
+                // 缓存失败不影响正常业务
             }
-            if (product.getUpdateTime() != null) {
-                productMap.put("updateTime", product.getUpdateTime().toString());
+        }
+
+        return product;
+    }
+
+    /**
+     * 一次管道化写回商品详情：MULTI 中删除旧键、写入Hash和列表并设置过期时间，读取方不会看到只写了一半的缓存
+     */
+    private void writeProductDetailCache(Product product, List<ProductImage> images, List<ProductSpecs> specs) {
+        String cacheKey = CacheConstants.PRODUCT_DETAIL_KEY + product.getProductId();
+        String imagesKey = cacheKey + ":images";
+        String specsKey = cacheKey + ":specs";
+
+        Map<String, Object> productMap = new HashMap<>();
+        // 基本属性
+        productMap.put("productId", product.getProductId());
+        productMap.put("productName", product.getProductName());
+        productMap.put("productImg", product.getProductImg());
+        productMap.put("categoryId", product.getCategoryId());
+        productMap.put("brandId", product.getBrandId());
+        productMap.put("description", product.getProductDetail());
+        productMap.put("detail", product.getProductDetail());
+        productMap.put("priceOld", product.getPriceOld());
+        productMap.put("priceNew", product.getPriceNew());
+        productMap.put("stock", product.getStock());
+        productMap.put("sales", product.getSales());
+        productMap.put("isHot", product.getIsHot());
+        productMap.put("isNew", product.getIsNew());
+        productMap.put("isRecommend", product.getIsRecommend());
+        productMap.put("productStatus", product.getProductStatus());
+        productMap.put("rating", product.getRating());
+        // 日期时间
+        if (product.getCreateTime() != null) {
+            productMap.put("createTime", product.getCreateTime().toString());
+        }
+        if (product.getUpdateTime() != null) {
+            productMap.put("updateTime", product.getUpdateTime().toString());
+        }
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                ops.multi();
+                ops.delete(Arrays.asList(cacheKey, imagesKey, specsKey));
+                ops.opsForHash().putAll(cacheKey, productMap);
+                ops.expire(cacheKey, CacheConstants.PRODUCT_EXPIRE_TIME, TimeUnit.SECONDS);
+                if (images != null && !images.isEmpty()) {
+                    ops.opsForList().rightPushAll(imagesKey, images.toArray());
+                    ops.expire(imagesKey, CacheConstants.PRODUCT_EXPIRE_TIME, TimeUnit.SECONDS);
+                }
+                if (specs != null && !specs.isEmpty()) {
+                    ops.opsForList().rightPushAll(specsKey, specs.toArray());
+                    ops.expire(specsKey, CacheConstants.PRODUCT_EXPIRE_TIME, TimeUnit.SECONDS);
+                }
+                ops.exec();
+                return null;
             }
+        });
+    }
+
+    /**
+     * 批量获取商品基本信息
+     * 优化：一次管道化HGETALL批量读取商品详情Hash缓存，命中部分直接返回，仅对未命中的商品回源数据库（一次IN查询）；
+     * 缓存中的库存仅供展示和预校验，下单时以条件扣减为准
+     */
+    @Override
+    public List<Product> getProductsByIds(List<Integer> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-            // 缓存商品基本信息到Hash
-            redisUtil.hPutAll(cacheKey, productMap, CacheConstants.PRODUCT_EXPIRE_TIME);
+        List<Integer> distinctIds = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        Map<Integer, Product> productMap = new HashMap<>(distinctIds.size() * 2);
 
-            // 单独缓存图片列表
-            if (images != null && !images.isEmpty()) {
-                String imagesKey = cacheKey + ":images";
-                redisUtil.del(imagesKey); // 先删除，再添加
-                redisUtil.lRightPushAll(imagesKey, new ArrayList<>(images));
-                redisUtil.expire(imagesKey, CacheConstants.PRODUCT_EXPIRE_TIME);
+        // 批量读取缓存
+        if (redisTemplate != null) {
+            try {
+                List<Object> cachedList = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) {
+                        RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                        for (Integer id : distinctIds) {
+                            ops.opsForHash().entries(CacheConstants.PRODUCT_DETAIL_KEY + id);
+                        }
+                        return null;
+                    }
+                });
+
+                for (int i = 0; i < distinctIds.size() && i < cachedList.size(); i++) {
+                    Object cached = cachedList.get(i);
+                    if (cached instanceof Map && !((Map<?, ?>) cached).isEmpty()) {
+                        @SuppressWarnings("unchecked")
+                        Map<Object, Object> cachedMap = (Map<Object, Object>) cached;
+                        productMap.put(distinctIds.get(i), convertCacheMapToProduct(cachedMap));
+                    }
+                }
+            } catch (Exception e) {
+                log.error("批量读取商品缓存失败，回源数据库: {}", e.getMessage(), e);
             }
+        }
 
-            // 单独缓存规格列表
-            if (specs != null && !specs.isEmpty()) {
-                String specsKey = cacheKey + ":specs";
-                redisUtil.del(specsKey); // 先删除，再添加
-                redisUtil.lRightPushAll(specsKey, new ArrayList<>(specs));
-                redisUtil.expire(specsKey, CacheConstants.PRODUCT_EXPIRE_TIME);
+        // 未命中的商品一次性回源数据库
+        List<Integer> missIds = distinctIds.stream()
+                .filter(id -> !productMap.containsKey(id))
+                .collect(Collectors.toList());
+        if (!missIds.isEmpty()) {
+            for (Product product : listByIds(missIds)) {
+                productMap.put(product.getProductId(), product);
             }
+        }
 
-            log.info("商品详情已缓存到Redis(Hash): productId={}", id);
-        } catch (Exception e) {
-            log.error("缓存商品详情到Redis失败: {}", e.getMessage(), e);
-            // 缓存失败不影响正常业务
+        log.debug("批量获取商品信息: 请求数量={}, 缓存命中={}, 回源数量={}",
+                distinctIds.size(), distinctIds.size() - missIds.size(), missIds.size());
+
+        List<Product> result = new ArrayList<>(productMap.size());
+        for (Integer id : distinctIds) {
+            Product product = productMap.get(id);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将商品详情Hash缓存转换为Product对象
+     */
+    private Product convertCacheMapToProduct(Map<Object, Object> productMap) {
+        Product product = new Product();
+
+        // 设置基本属性
+        if (productMap.get("productId") != null)
+            product.setProductId(Integer.valueOf(productMap.get("productId").toString()));
+        if (productMap.get("productName") != null)
+            product.setProductName(productMap.get("productName").toString());
+        if (productMap.get("productImg") != null)
+            product.setProductImg(productMap.get("productImg").toString());
+        if (productMap.get("categoryId") != null)
+            product.setCategoryId(Integer.valueOf(productMap.get("categoryId").toString()));
+        if (productMap.get("brandId") != null && !"null".equals(productMap.get("brandId"))) {
+            product.setBrandId(Integer.valueOf(productMap.get("brandId").toString()));
+        }
+        if (productMap.get("description") != null)
+            product.setProductDetail(productMap.get("description").toString());
+        if (productMap.get("detail") != null)
+            product.setProductDetail(productMap.get("detail").toString());
+        if (productMap.get("priceOld") != null) {
+            product.setPriceOld(new BigDecimal(productMap.get("priceOld").toString()));
+        }
+        if (productMap.get("priceNew") != null) {
+            product.setPriceNew(new BigDecimal(productMap.get("priceNew").toString()));
+        }
+        if (productMap.get("stock") != null)
+            product.setStock(Integer.valueOf(productMap.get("stock").toString()));
+        if (productMap.get("sales") != null)
+            product.setSales(Integer.valueOf(productMap.get("sales").toString()));
+        if (productMap.get("isHot") != null)
+            product.setIsHot(Integer.valueOf(productMap.get("isHot").toString()));
+        if (productMap.get("isNew") != null)
+            product.setIsNew(Integer.valueOf(productMap.get("isNew").toString()));
+        if (productMap.get("isRecommend") != null)
+            product.setIsRecommend(Integer.valueOf(productMap.get("isRecommend").toString()));
+        if (productMap.get("productStatus") != null)
+            product.setProductStatus(productMap.get("productStatus").toString());
+        if (productMap.get("rating") != null)
+            product.setRating(new BigDecimal(productMap.get("rating").toString()));
+
+        // 处理日期字段
+        if (productMap.get("createTime") != null) {
+            try {
+                product.setCreateTime(LocalDateTime.parse(productMap.get("createTime").toString()));
+            } catch (Exception e) {
+                log.warn("解析创建时间失败: {}", e.getMessage());
+            }
+        }
+
+        if (productMap.get("updateTime") != null) {
+            try {
+                product.setUpdateTime(LocalDateTime.parse(productMap.get("updateTime").toString()));
+            } catch (Exception e) {
+                log.warn("解析更新时间失败: {}", e.getMessage());
+            }
         }
 
         return product;
@@ -589,6 +706,8 @@ public class ProductServiceImpl extends ServiceImpl<ProductMapper, Product> impl
      * 清除商品相关缓存
      */
     private void cleanProductCache() {
+        productDetailNearCache.invalidateAll();
+
         // 清除商品列表缓存
         Set<String> keys = redisUtil.keys(CacheConstants.PRODUCT_KEY_PREFIX + "*");
         if (keys != null && !keys.isEmpty()) {
@@ -606,7 +725,8 @@ public class ProductServiceImpl extends ServiceImpl<ProductMapper, Product> impl
         }
 
         try {
-            // 删除商品详情缓存
+            // 删除商品详情缓存及各节点的本地近缓存，图片、规格列表在重建详情缓存时一并替换
+            productDetailNearCache.invalidate(productId);
             String detailKey = CacheConstants.PRODUCT_DETAIL_KEY + productId;
             redisUtil.del(detailKey);
 
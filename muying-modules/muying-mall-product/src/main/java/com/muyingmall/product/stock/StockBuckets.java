@@ -0,0 +1,396 @@
+package com.muyingmall.product.stock;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.product.entity.Product;
+import com.muyingmall.product.entity.ProductStockBucket;
+import com.muyingmall.product.mapper.ProductMapper;
+import com.muyingmall.product.mapper.ProductStockBucketMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 热点商品分桶库存
+ *
+ * <p>配置的商品库存拆分到 N 个桶行（product_stock_bucket），库存变更不再集中在 product 同一行上：</p>
+ * <ul>
+ *   <li>扣减：按桶序号跳过已被其他事务锁定的桶（SKIP LOCKED），锁定第一个库存足够的桶扣减；
+ *       没有这样的桶时锁定其余未被锁定的桶，合计足够则跨桶扣减。扣减从不等待桶行锁，并发扣减不会死锁，
+ *       代价是售罄前其他事务正在扣减的桶不计入，可能提前返回库存不足</li>
+ *   <li>增加：加到随机一个桶</li>
+ *   <li>读取：各桶合计在进程内缓存很短时间（默认1秒），本节点变更的事务结束即失效</li>
+ *   <li>后台任务：把偏斜的桶重新均分，并把合计写回 product.stock（= 分桶合计 + 数据库预占），
+ *       供列表、排序、低库存预警等直接读商品表的查询使用</li>
+ * </ul>
+ * <p>商品首次使用时按 product.stock - reserved_stock 均分建桶；之后分桶商品的库存只能经库存服务修改，
+ * 直接改商品表的库存会在下次刷新时被覆盖。移出配置的商品由后台任务把合计折回商品表并删除分桶，
+ * 应在该商品没有交易时移出。商品同时由库存台账管理时以台账为准，分桶不生效。</p>
+ */
+@Slf4j
+@Component
+public class StockBuckets {
+
+    private static final long LOCK_EXPIRE_SECONDS = 60;
+
+    private final ProductStockBucketMapper bucketMapper;
+    private final ProductMapper productMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final DistributedLock distributedLock;
+
+    /**
+     * 是否启用分桶库存
+     */
+    private final boolean enabled;
+
+    /**
+     * 使用分桶库存的商品
+     */
+    private final Set<Integer> productIds;
+
+    /**
+     * 每个商品的桶数
+     */
+    private final int bucketCount;
+
+    /**
+     * 合计缓存有效期（纳秒）
+     */
+    private final long viewTtlNanos;
+
+    /**
+     * 本节点已确认建桶的商品，只记录已提交的建桶
+     */
+    private final Set<Integer> initialized = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 各商品的分桶库存合计缓存
+     */
+    private final Map<Integer, View> views = new ConcurrentHashMap<>();
+
+    private final Counter singleBucketCounter;
+    private final Counter crossBucketCounter;
+    private final Counter insufficientCounter;
+    private final Counter rebalanceCounter;
+
+    public StockBuckets(ProductStockBucketMapper bucketMapper, ProductMapper productMapper,
+                        TransactionTemplate transactionTemplate, DistributedLock distributedLock,
+                        MeterRegistry meterRegistry,
+                        @Value("${muying.product.stock-bucket.enabled:false}") boolean enabled,
+                        @Value("${muying.product.stock-bucket.product-ids:}") String productIds,
+                        @Value("${muying.product.stock-bucket.bucket-count:8}") int bucketCount,
+                        @Value("${muying.product.stock-bucket.view-ttl-millis:1000}") long viewTtlMillis) {
+        this.bucketMapper = bucketMapper;
+        this.productMapper = productMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.distributedLock = distributedLock;
+        this.enabled = enabled;
+        this.productIds = Arrays.stream(productIds.split(","))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .map(Integer::valueOf)
+                .collect(Collectors.toUnmodifiableSet());
+        this.bucketCount = Math.max(1, Math.min(bucketCount, 255));
+        this.viewTtlNanos = TimeUnit.MILLISECONDS.toNanos(viewTtlMillis);
+
+        this.singleBucketCounter = Counter.builder("muying.product.stock_bucket.deductions")
+                .description("分桶库存扣减次数").tag("result", "single_bucket").register(meterRegistry);
+        this.crossBucketCounter = Counter.builder("muying.product.stock_bucket.deductions")
+                .description("分桶库存扣减次数").tag("result", "cross_bucket").register(meterRegistry);
+        this.insufficientCounter = Counter.builder("muying.product.stock_bucket.deductions")
+                .description("分桶库存扣减次数").tag("result", "insufficient").register(meterRegistry);
+        this.rebalanceCounter = Counter.builder("muying.product.stock_bucket.rebalances")
+                .description("分桶库存重新均分次数").register(meterRegistry);
+    }
+
+    /**
+     * 商品库存是否按分桶管理
+     */
+    public boolean manages(Integer productId) {
+        return enabled && productId != null && productIds.contains(productId);
+    }
+
+    /**
+     * 扣减库存，需在调用方事务中执行
+     *
+     * @param productId 商品ID
+     * @param quantity  扣减数量
+     * @return 是否扣减成功，未被锁定的桶合计不足或商品不存在时为false
+     */
+    public boolean deduct(Integer productId, int quantity) {
+        if (!ensureBuckets(productId)) {
+            return false;
+        }
+        // 扣减只锁定未被其他事务锁定的桶、从不等待桶行锁，并发扣减之间不会互相等待形成死锁
+        ProductStockBucket picked = bucketMapper.selectAvailableForUpdate(productId, quantity);
+        if (picked != null) {
+            bucketMapper.deduct(productId, picked.getBucketNo(), quantity);
+            singleBucketCounter.increment();
+            invalidateView(productId);
+            return true;
+        }
+
+        // 库存分散在各桶，单桶都不够时锁定其余未被锁定的桶合并扣减，其他事务正在扣减的桶不计入
+        List<ProductStockBucket> buckets = bucketMapper.selectUnlockedForUpdate(productId);
+        int total = buckets.stream().mapToInt(ProductStockBucket::getStock).sum();
+        if (total < quantity) {
+            insufficientCounter.increment();
+            return false;
+        }
+        int remaining = quantity;
+        buckets.sort(Comparator.comparingInt(ProductStockBucket::getStock).reversed());
+        for (ProductStockBucket bucket : buckets) {
+            int take = Math.min(remaining, Math.max(bucket.getStock(), 0));
+            if (take > 0) {
+                bucketMapper.updateStock(productId, bucket.getBucketNo(), bucket.getStock() - take);
+                remaining -= take;
+            }
+            if (remaining == 0) {
+                break;
+            }
+        }
+        crossBucketCounter.increment();
+        invalidateView(productId);
+        return true;
+    }
+
+    /**
+     * 增加库存，加到随机一个桶
+     *
+     * @param productId 商品ID
+     * @param quantity  增加数量
+     * @return 是否成功，商品不存在时为false
+     */
+    public boolean add(Integer productId, int quantity) {
+        if (!ensureBuckets(productId)) {
+            return false;
+        }
+        bucketMapper.add(productId, ThreadLocalRandom.current().nextInt(bucketCount), quantity);
+        invalidateView(productId);
+        return true;
+    }
+
+    /**
+     * 把可售库存重新均分到各桶（如后台设置库存）
+     *
+     * @param productId 商品ID
+     * @param sellable  可售库存（库存 - 数据库预占）
+     */
+    public void reset(Integer productId, int sellable) {
+        if (!ensureBuckets(productId)) {
+            return;
+        }
+        spread(productId, bucketMapper.selectForUpdate(productId), Math.max(sellable, 0));
+        invalidateView(productId);
+    }
+
+    /**
+     * 可用库存，取各桶合计的缓存
+     *
+     * @param productId 商品ID
+     * @return 可用库存，商品不存在时为null
+     */
+    public Integer available(Integer productId) {
+        View view = views.get(productId);
+        if (view != null && System.nanoTime() - view.expireAt < 0) {
+            return view.total;
+        }
+        if (!ensureBuckets(productId)) {
+            return null;
+        }
+        Integer total = bucketMapper.sumStock(productId);
+        int value = total != null ? total : 0;
+        views.put(productId, new View(value, System.nanoTime() + viewTtlNanos));
+        return value;
+    }
+
+    /**
+     * 重新均分偏斜的桶并刷新商品表库存；移出配置的商品折回商品表
+     */
+    @Scheduled(fixedDelayString = "${muying.product.stock-bucket.rebalance-interval-millis:5000}")
+    public void rebalance() {
+        if (!enabled) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        if (!distributedLock.tryLock(CacheConstants.STOCK_BUCKET_REBALANCE_LOCK_KEY, token,
+                LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS)) {
+            return;
+        }
+        try {
+            for (Integer productId : productIds) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> rebalanceProduct(productId));
+                } catch (Exception e) {
+                    log.error("分桶库存均分失败: productId={}", productId, e);
+                }
+            }
+            for (Integer productId : bucketMapper.selectProductIds()) {
+                if (!productIds.contains(productId)) {
+                    try {
+                        transactionTemplate.executeWithoutResult(status -> fold(productId));
+                    } catch (Exception e) {
+                        log.error("分桶库存折回商品表失败: productId={}", productId, e);
+                    }
+                }
+            }
+        } finally {
+            distributedLock.unlock(CacheConstants.STOCK_BUCKET_REBALANCE_LOCK_KEY, token);
+        }
+    }
+
+    private void rebalanceProduct(Integer productId) {
+        if (!ensureBuckets(productId)) {
+            return;
+        }
+        List<ProductStockBucket> buckets = bucketMapper.selectForUpdate(productId);
+        int total = 0;
+        int min = Integer.MAX_VALUE;
+        for (ProductStockBucket bucket : buckets) {
+            total += bucket.getStock();
+            min = Math.min(min, bucket.getStock());
+        }
+        // 最少的桶不足均值一半时均分，避免扣减频繁落空后走跨桶扣减
+        if (total >= buckets.size() && min < total / buckets.size() / 2) {
+            spread(productId, buckets, total);
+            rebalanceCounter.increment();
+        }
+        productMapper.refreshBucketedStock(productId, total);
+    }
+
+    private void fold(Integer productId) {
+        List<ProductStockBucket> buckets = bucketMapper.selectForUpdate(productId);
+        int total = buckets.stream().mapToInt(ProductStockBucket::getStock).sum();
+        productMapper.refreshBucketedStock(productId, total);
+        bucketMapper.deleteByProductId(productId);
+        initialized.remove(productId);
+        views.remove(productId);
+        log.info("商品移出分桶库存，合计已折回商品表: productId={}, stock={}", productId, total);
+    }
+
+    /**
+     * 把库存均分到已锁定的桶，余数放在序号小的桶
+     */
+    private void spread(Integer productId, List<ProductStockBucket> buckets, int total) {
+        int size = buckets.size();
+        for (ProductStockBucket bucket : buckets) {
+            int index = bucket.getBucketNo() % size;
+            int target = total / size + (index < total % size ? 1 : 0);
+            if (bucket.getStock() != target) {
+                bucketMapper.updateStock(productId, bucket.getBucketNo(), target);
+            }
+        }
+    }
+
+    /**
+     * 确保商品已建桶：锁定商品行后按可售库存均分建桶，并发建桶时只有一方写入。
+     * 在调用方事务中建桶时随调用方提交或回滚
+     *
+     * @return 商品是否存在
+     */
+    private boolean ensureBuckets(Integer productId) {
+        if (initialized.contains(productId)) {
+            return true;
+        }
+        Boolean exists = transactionTemplate.execute(status -> {
+            if (bucketMapper.countBuckets(productId) >= bucketCount) {
+                return true;
+            }
+            Product product = productMapper.selectOne(new LambdaQueryWrapper<Product>()
+                    .eq(Product::getProductId, productId).last("FOR UPDATE"));
+            if (product == null) {
+                return false;
+            }
+            int existing = bucketMapper.countBuckets(productId);
+            if (existing >= bucketCount) {
+                return true;
+            }
+            // 新建时按可售库存均分，扩容时新增的桶为空，由后台任务均分
+            int sellable = 0;
+            if (existing == 0) {
+                int stock = product.getStock() != null ? product.getStock() : 0;
+                int reserved = product.getReservedStock() != null ? product.getReservedStock() : 0;
+                sellable = Math.max(stock - reserved, 0);
+            }
+            List<ProductStockBucket> buckets = new ArrayList<>(bucketCount);
+            for (int i = 0; i < bucketCount; i++) {
+                ProductStockBucket bucket = new ProductStockBucket();
+                bucket.setProductId(productId);
+                bucket.setBucketNo(i);
+                bucket.setStock(sellable / bucketCount + (i < sellable % bucketCount ? 1 : 0));
+                buckets.add(bucket);
+            }
+            bucketMapper.insertBuckets(buckets);
+            log.info("商品建立分桶库存: productId={}, buckets={}, stock={}", productId, bucketCount, sellable);
+            return true;
+        });
+        if (Boolean.TRUE.equals(exists)) {
+            markInitialized(productId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 在事务中时提交后才记为已建桶：调用方回滚时新建的桶随之回滚，下次调用重新检查并建桶
+     */
+    private void markInitialized(Integer productId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            initialized.add(productId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                initialized.add(productId);
+            }
+        });
+    }
+
+    /**
+     * 本节点的合计缓存立即失效，在事务中时结束后再失效一次，避免缓存未提交或已回滚的合计
+     */
+    private void invalidateView(Integer productId) {
+        views.remove(productId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    views.remove(productId);
+                }
+            });
+        }
+    }
+
+    private static final class View {
+
+        private final int total;
+
+        private final long expireAt;
+
+        private View(int total, long expireAt) {
+            this.total = total;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.muyingmall.product.stock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按商品合并的库存扣减批处理
+ *
+ * <p>同一商品的并发扣减请求进入该商品的队列，由其中一个请求线程（合并者）一次取出一批，
+ * 通过一次 {@link BatchDeductor} 调用（一次 Lua 脚本执行）按入队顺序逐个扣减，再把结果分发给各请求。
+ * 合并者自己的请求完成后即交出合并权，由仍在等待的请求线程接着处理。
+ * 不额外占用线程，没有并发时一个请求就是一批，热点商品上一次 Redis 往返服务整批请求。</p>
+ *
+ * <p>每个请求要么全部扣减要么不扣减，批内后面的请求不会因为前面的请求失败而失败（数量更小时仍可能成功）。</p>
+ */
+public final class StockDeductionBatcher {
+
+    /**
+     * 扣减成功
+     */
+    public static final int DEDUCTED = 1;
+
+    /**
+     * 库存不足
+     */
+    public static final int INSUFFICIENT = 0;
+
+    /**
+     * 库存台账中没有该商品，需要先加载
+     */
+    public static final int NOT_LOADED = -1;
+
+    /**
+     * 等待超时，请求未执行
+     */
+    public static final int TIMEOUT = -2;
+
+    /**
+     * 批量扣减
+     */
+    @FunctionalInterface
+    public interface BatchDeductor {
+
+        /**
+         * 按顺序扣减同一商品的一批数量
+         *
+         * @param productId  商品ID
+         * @param quantities 各请求的扣减数量
+         * @return 各请求的结果，与 quantities 一一对应；商品未加载时可只返回一个 {@link #NOT_LOADED}
+         */
+        int[] deduct(Integer productId, int[] quantities);
+    }
+
+    private final BatchDeductor deductor;
+
+    private final int maxBatchSize;
+
+    private final Map<Integer, Lane> lanes = new ConcurrentHashMap<>();
+
+    public StockDeductionBatcher(BatchDeductor deductor, int maxBatchSize) {
+        this.deductor = deductor;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * 扣减库存，阻塞到本请求所在批次执行完成
+     *
+     * @param productId     商品ID
+     * @param quantity      扣减数量
+     * @param timeoutMillis 排队等待的最长时间，超时未执行的请求直接返回 {@link #TIMEOUT}
+     * @return {@link #DEDUCTED}、{@link #INSUFFICIENT}、{@link #NOT_LOADED} 或 {@link #TIMEOUT}
+     * @throws IllegalStateException 批量扣减调用失败（如 Redis 不可用）
+     */
+    public int deduct(Integer productId, int quantity, long timeoutMillis) {
+        Lane lane = lanes.computeIfAbsent(productId, Lane::new);
+        Request request = new Request(quantity);
+        lane.queue.add(request);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            drain(lane, request, deadline);
+            try {
+                // 合并者处理完自己的请求即交出合并权，仍在等待的请求短暂等待后重新争抢
+                return request.result.get(1, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (System.nanoTime() - deadline >= 0 && lane.queue.remove(request)) {
+                    return TIMEOUT;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (lane.queue.remove(request)) {
+                    return TIMEOUT;
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("批量扣减库存失败: productId=" + productId, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 抢到合并权的线程按批取出执行，直到自己的请求完成或等待超时，之后交出合并权，
+     * 合并者的等待时间不会因为持续有新请求入队而超出自己的超时时间
+     */
+    private void drain(Lane lane, Request own, long deadline) {
+        if (lane.queue.isEmpty() || !lane.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            do {
+                List<Request> batch = new ArrayList<>(Math.min(maxBatchSize, 64));
+                Request request;
+                while (batch.size() < maxBatchSize && (request = lane.queue.poll()) != null) {
+                    batch.add(request);
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                execute(lane.productId, batch);
+            } while (!own.result.isDone() && System.nanoTime() - deadline < 0);
+        } finally {
+            lane.draining.set(false);
+        }
+    }
+
+    private void execute(Integer productId, List<Request> batch) {
+        int[] quantities = new int[batch.size()];
+        for (int i = 0; i < quantities.length; i++) {
+            quantities[i] = batch.get(i).quantity;
+        }
+        int[] results;
+        try {
+            results = deductor.deduct(productId, quantities);
+        } catch (RuntimeException e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            int result = i < results.length ? results[i] : NOT_LOADED;
+            if (results.length > 0 && results[0] == NOT_LOADED) {
+                result = NOT_LOADED;
+            }
+            batch.get(i).result.complete(result);
+        }
+    }
+
+    private static final class Lane {
+
+        private final Integer productId;
+
+        private final ConcurrentLinkedQueue<Request> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Lane(Integer productId) {
+            this.productId = productId;
+        }
+    }
+
+    private static final class Request {
+
+        private final int quantity;
+
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        private Request(int quantity) {
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package com.muyingmall.product.stock;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.product.entity.InventoryLog;
+import com.muyingmall.product.entity.Product;
+import com.muyingmall.product.mapper.InventoryLogMapper;
+import com.muyingmall.product.mapper.ProductMapper;
+import com.muyingmall.product.mapper.StockLedgerFlushMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 库存台账
+ *
+ * <p>开启后，商品的可用库存以 Redis 为准，扣减不再读取和更新 product 行：</p>
+ * <ul>
+ *   <li>扣减：同一商品的并发请求合并成批（{@link StockDeductionBatcher}），一次 Lua 脚本按顺序逐个校验扣减，
+ *       并把扣减量累加到待回写HASH，库存不足的请求失败，不会超卖；多商品扣减用一个脚本整体校验、整体扣减</li>
+ *   <li>回写：定时把待回写HASH改名为回写中，带序号在一个事务中按增量更新 product.stock 并写库存变动日志，
+ *       序号与库存同一事务提交，进程在提交后、清除回写中之前宕机时，重试会识别已回写的序号</li>
+ *   <li>对账：持锁（与回写互斥）先回写，再按 可用库存 = 数据库库存 - 待回写扣减量 重置台账，
+ *       修复绕过台账直接修改数据库（如订单取消恢复库存、后台编辑商品）造成的偏差</li>
+ *   <li>加载：商品首次扣减时按同样的公式从数据库加载，已存在时不覆盖</li>
+ * </ul>
+ * <p>不超卖依赖 Redis 不丢失已执行的扣减，生产环境需开启 AOF（appendfsync always）或使用主从同步写。</p>
+ */
+@Slf4j
+@Component
+public class StockLedger {
+
+    /**
+     * 回写中HASH里保存回写序号的字段
+     */
+    private static final String SEQ_FIELD = "_seq";
+
+    /**
+     * 对账时每批处理的商品数
+     */
+    private static final int RECONCILE_BATCH_SIZE = 200;
+
+    /**
+     * 回写与对账锁的过期时间（秒）
+     */
+    private static final long LOCK_EXPIRE_SECONDS = 60;
+
+    /**
+     * 回写记录保留天数
+     */
+    private static final int FLUSH_RETAIN_DAYS = 7;
+
+    /**
+     * 按顺序扣减同一商品的一批数量
+     * KEYS[1] 可用库存, KEYS[2] 待回写HASH; ARGV[1] 商品ID, ARGV[2..] 各请求扣减数量
+     * 返回各请求结果（1-成功，0-库存不足），未加载时返回 {-1}
+     */
+    private static final String DEDUCT_BATCH_SCRIPT =
+            "local stock = redis.call('GET', KEYS[1]) " +
+            "if not stock then return {-1} end " +
+            "stock = tonumber(stock) " +
+            "local result = {} " +
+            "local total = 0 " +
+            "for i = 2, #ARGV do " +
+            "    local quantity = tonumber(ARGV[i]) " +
+            "    if quantity <= stock then " +
+            "        stock = stock - quantity " +
+            "        total = total + quantity " +
+            "        result[i - 1] = 1 " +
+            "    else " +
+            "        result[i - 1] = 0 " +
+            "    end " +
+            "end " +
+            "if total > 0 then " +
+            "    redis.call('DECRBY', KEYS[1], total) " +
+            "    redis.call('HINCRBY', KEYS[2], ARGV[1], total) " +
+            "end " +
+            "return result";
+
+    /**
+     * 多商品整体扣减，任一商品库存不足时都不扣减
+     * KEYS[1..n] 各商品可用库存, KEYS[n+1] 待回写HASH; ARGV[1..n] 商品ID, ARGV[n+1..2n] 扣减数量
+     * 返回 1-成功，0-库存不足，-i 第 i 个商品未加载
+     */
+    private static final String DEDUCT_ALL_SCRIPT =
+            "local n = #KEYS - 1 " +
+            "for i = 1, n do " +
+            "    local stock = redis.call('GET', KEYS[i]) " +
+            "    if not stock then return -i end " +
+            "    if tonumber(stock) < tonumber(ARGV[n + i]) then return 0 end " +
+            "end " +
+            "for i = 1, n do " +
+            "    redis.call('DECRBY', KEYS[i], ARGV[n + i]) " +
+            "    redis.call('HINCRBY', KEYS[n + 1], ARGV[i], ARGV[n + i]) " +
+            "end " +
+            "return 1";
+
+    /**
+     * 调整可用库存（已加载时）和待回写扣减量
+     * KEYS[1] 可用库存, KEYS[2] 待回写HASH; ARGV[1] 商品ID, ARGV[2] 可用库存增量, ARGV[3] 待回写扣减量增量
+     */
+    private static final String ADJUST_SCRIPT =
+            "if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('INCRBY', KEYS[1], ARGV[2]) end " +
+            "if tonumber(ARGV[3]) ~= 0 then redis.call('HINCRBY', KEYS[2], ARGV[1], ARGV[3]) end " +
+            "return 1";
+
+    /**
+     * 按数据库库存设置可用库存：数据库库存 - 待回写扣减量 - 回写中扣减量
+     * KEYS[1] 可用库存, KEYS[2] 待回写HASH, KEYS[3] 回写中HASH
+     * ARGV[1] 商品ID, ARGV[2] 数据库库存, ARGV[3] 1-仅在不存在时设置（加载），0-仅在存在时设置（重置）
+     * 返回 {是否原本存在, 原值, 新值}
+     */
+    private static final String SYNC_SCRIPT =
+            "local current = redis.call('GET', KEYS[1]) " +
+            "if current and ARGV[3] == '1' then return {1, tonumber(current), tonumber(current)} end " +
+            "if not current and ARGV[3] == '0' then return {0, 0, 0} end " +
+            "local available = tonumber(ARGV[2]) - tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0') " +
+            "    - tonumber(redis.call('HGET', KEYS[3], ARGV[1]) or '0') " +
+            "redis.call('SET', KEYS[1], available) " +
+            "if current then return {1, tonumber(current), available} end " +
+            "return {0, 0, available}";
+
+    /**
+     * 取出待回写扣减量：上次回写未完成时原样返回回写中HASH，否则把待回写HASH改名为回写中并分配序号
+     * KEYS[1] 待回写HASH, KEYS[2] 回写中HASH, KEYS[3] 回写序号
+     */
+    private static final String TAKE_SCRIPT =
+            "if redis.call('EXISTS', KEYS[2]) == 0 then " +
+            "    if redis.call('EXISTS', KEYS[1]) == 0 then return {} end " +
+            "    redis.call('RENAME', KEYS[1], KEYS[2]) " +
+            "    redis.call('HSET', KEYS[2], '" + SEQ_FIELD + "', redis.call('INCR', KEYS[3])) " +
+            "end " +
+            "return redis.call('HGETALL', KEYS[2])";
+
+    private static final DefaultRedisScript<List> DEDUCT_BATCH_REDIS_SCRIPT = new DefaultRedisScript<>(DEDUCT_BATCH_SCRIPT, List.class);
+    private static final DefaultRedisScript<Long> DEDUCT_ALL_REDIS_SCRIPT = new DefaultRedisScript<>(DEDUCT_ALL_SCRIPT, Long.class);
+    private static final DefaultRedisScript<Long> ADJUST_REDIS_SCRIPT = new DefaultRedisScript<>(ADJUST_SCRIPT, Long.class);
+    private static final DefaultRedisScript<List> SYNC_REDIS_SCRIPT = new DefaultRedisScript<>(SYNC_SCRIPT, List.class);
+    private static final DefaultRedisScript<List> TAKE_REDIS_SCRIPT = new DefaultRedisScript<>(TAKE_SCRIPT, List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final DistributedLock distributedLock;
+    private final ProductMapper productMapper;
+    private final InventoryLogMapper inventoryLogMapper;
+    private final StockLedgerFlushMapper stockLedgerFlushMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final StockDeductionBatcher batcher;
+
+    /**
+     * 是否启用库存台账
+     */
+    private final boolean enabled;
+
+    /**
+     * 使用库存台账的商品，为空时全部商品
+     */
+    private final Set<Integer> productIds;
+
+    /**
+     * 扣减请求排队等待的最长时间（毫秒）
+     */
+    private final long waitMillis;
+
+    private final Counter deductedCounter;
+    private final Counter insufficientCounter;
+    private final Counter timeoutCounter;
+    private final Counter driftCounter;
+
+    public StockLedger(StringRedisTemplate stringRedisTemplate, DistributedLock distributedLock,
+                       ProductMapper productMapper, InventoryLogMapper inventoryLogMapper,
+                       StockLedgerFlushMapper stockLedgerFlushMapper, TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${muying.product.stock-ledger.enabled:false}") boolean enabled,
+                       @Value("${muying.product.stock-ledger.product-ids:}") String productIds,
+                       @Value("${muying.product.stock-ledger.max-batch-size:256}") int maxBatchSize,
+                       @Value("${muying.product.stock-ledger.wait-millis:2000}") long waitMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.distributedLock = distributedLock;
+        this.productMapper = productMapper;
+        this.inventoryLogMapper = inventoryLogMapper;
+        this.stockLedgerFlushMapper = stockLedgerFlushMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.productIds = Arrays.stream(productIds.split(","))
+                .map(String::trim)
+                .filter(StringUtils::hasText)
+                .map(Integer::valueOf)
+                .collect(Collectors.toUnmodifiableSet());
+        this.waitMillis = waitMillis;
+        this.batcher = new StockDeductionBatcher(this::deductBatch, maxBatchSize);
+
+        this.deductedCounter = Counter.builder("muying.product.stock_ledger.deductions")
+                .description("库存台账扣减请求数").tag("result", "deducted").register(meterRegistry);
+        this.insufficientCounter = Counter.builder("muying.product.stock_ledger.deductions")
+                .description("库存台账扣减请求数").tag("result", "insufficient").register(meterRegistry);
+        this.timeoutCounter = Counter.builder("muying.product.stock_ledger.deductions")
+                .description("库存台账扣减请求数").tag("result", "timeout").register(meterRegistry);
+        this.driftCounter = Counter.builder("muying.product.stock_ledger.drift")
+                .description("对账时修复的台账偏差商品数").register(meterRegistry);
+    }
+
+    /**
+     * 商品库存是否由台账管理
+     */
+    public boolean manages(Integer productId) {
+        return enabled && productId != null && (productIds.isEmpty() || productIds.contains(productId));
+    }
+
+    /**
+     * 扣减可用库存，数据库异步回写
+     *
+     * @param productId 商品ID
+     * @param quantity  扣减数量
+     * @return 是否扣减成功，库存不足、商品不存在或排队超时时为false
+     */
+    public boolean deduct(Integer productId, int quantity) {
+        int result = batcher.deduct(productId, quantity, waitMillis);
+        if (result == StockDeductionBatcher.NOT_LOADED && load(productId)) {
+            result = batcher.deduct(productId, quantity, waitMillis);
+        }
+        if (result == StockDeductionBatcher.DEDUCTED) {
+            deductedCounter.increment();
+            return true;
+        }
+        if (result == StockDeductionBatcher.TIMEOUT) {
+            timeoutCounter.increment();
+            log.warn("库存台账扣减排队超时: productId={}, quantity={}", productId, quantity);
+        } else {
+            insufficientCounter.increment();
+        }
+        return false;
+    }
+
+    /**
+     * 多商品整体扣减，任一商品库存不足时都不扣减
+     *
+     * @param quantities 商品ID -> 扣减数量，商品需全部由台账管理
+     * @return 是否扣减成功
+     */
+    public boolean deductAll(Map<Integer, Integer> quantities) {
+        List<Integer> ids = new ArrayList<>(quantities.keySet());
+        Collections.sort(ids);
+        List<String> keys = new ArrayList<>(ids.size() + 1);
+        List<String> args = new ArrayList<>(ids.size() * 2);
+        for (Integer id : ids) {
+            keys.add(CacheConstants.STOCK_LEDGER_KEY + id);
+            args.add(String.valueOf(id));
+        }
+        for (Integer id : ids) {
+            args.add(String.valueOf(quantities.get(id)));
+        }
+        keys.add(CacheConstants.STOCK_LEDGER_PENDING_KEY);
+
+        // 每轮最多发现一个未加载的商品
+        for (int round = 0; round <= ids.size(); round++) {
+            Long result = stringRedisTemplate.execute(DEDUCT_ALL_REDIS_SCRIPT, keys, args.toArray());
+            if (result == null || result == 0L) {
+                insufficientCounter.increment();
+                return false;
+            }
+            if (result == 1L) {
+                deductedCounter.increment();
+                return true;
+            }
+            if (!load(ids.get((int) (-result) - 1))) {
+                insufficientCounter.increment();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 恢复经台账扣减的库存（如释放锁定），增量随扣减一起回写数据库
+     *
+     * @param productId 商品ID
+     * @param quantity  恢复数量
+     */
+    public void restore(Integer productId, int quantity) {
+        stringRedisTemplate.execute(ADJUST_REDIS_SCRIPT,
+                Arrays.asList(CacheConstants.STOCK_LEDGER_KEY + productId, CacheConstants.STOCK_LEDGER_PENDING_KEY),
+                String.valueOf(productId), String.valueOf(quantity), String.valueOf(-quantity));
+    }
+
+    /**
+     * 数据库库存已按增量修改（如入库），同步调整可用库存
+     *
+     * @param productId 商品ID
+     * @param delta     库存增量
+     */
+    public void mirror(Integer productId, int delta) {
+        stringRedisTemplate.execute(ADJUST_REDIS_SCRIPT,
+                Arrays.asList(CacheConstants.STOCK_LEDGER_KEY + productId, CacheConstants.STOCK_LEDGER_PENDING_KEY),
+                String.valueOf(productId), String.valueOf(delta), "0");
+    }
+
+    /**
+     * 数据库库存已设置为指定值，按该值重置可用库存
+     *
+     * @param productId 商品ID
+     * @param dbStock   数据库库存
+     */
+    public void reset(Integer productId, int dbStock) {
+        sync(productId, dbStock, false);
+    }
+
+    /**
+     * 可用库存
+     *
+     * @param productId 商品ID
+     * @return 可用库存，台账中没有该商品时为null
+     */
+    public Integer available(Integer productId) {
+        String value = stringRedisTemplate.opsForValue().get(CacheConstants.STOCK_LEDGER_KEY + productId);
+        return value != null ? Integer.valueOf(value) : null;
+    }
+
+    /**
+     * 回写待回写的扣减量
+     */
+    @Scheduled(fixedDelayString = "${muying.product.stock-ledger.flush-interval-millis:1000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        if (!distributedLock.tryLock(CacheConstants.STOCK_LEDGER_LOCK_KEY, token, LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS)) {
+            return;
+        }
+        try {
+            flushLocked();
+        } catch (Exception e) {
+            log.error("库存台账回写失败，等待下次重试", e);
+        } finally {
+            distributedLock.unlock(CacheConstants.STOCK_LEDGER_LOCK_KEY, token);
+        }
+    }
+
+    /**
+     * 对账：先回写，再按数据库库存重置全部台账商品的可用库存
+     */
+    @Scheduled(fixedDelayString = "${muying.product.stock-ledger.reconcile-interval-millis:300000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        if (!distributedLock.tryLock(CacheConstants.STOCK_LEDGER_LOCK_KEY, token, LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int checked = 0;
+        int drifted = 0;
+        try {
+            flushLocked();
+
+            List<Integer> batch = new ArrayList<>(RECONCILE_BATCH_SIZE);
+            ScanOptions options = ScanOptions.scanOptions()
+                    .match(CacheConstants.STOCK_LEDGER_KEY + "*").count(1000).build();
+            try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    batch.add(Integer.valueOf(cursor.next().substring(CacheConstants.STOCK_LEDGER_KEY.length())));
+                    if (batch.size() >= RECONCILE_BATCH_SIZE) {
+                        drifted += reconcileBatch(batch);
+                        checked += batch.size();
+                        batch.clear();
+                        distributedLock.renewLock(CacheConstants.STOCK_LEDGER_LOCK_KEY, token,
+                                LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                drifted += reconcileBatch(batch);
+                checked += batch.size();
+            }
+
+            int purged;
+            LocalDateTime before = LocalDateTime.now().minusDays(FLUSH_RETAIN_DAYS);
+            do {
+                purged = stockLedgerFlushMapper.deleteBefore(before, 1000);
+            } while (purged >= 1000);
+
+            log.info("库存台账对账完成: checked={}, drifted={}, cost={}ms",
+                    checked, drifted, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("库存台账对账失败", e);
+        } finally {
+            distributedLock.unlock(CacheConstants.STOCK_LEDGER_LOCK_KEY, token);
+        }
+    }
+
+    /**
+     * 持锁回写：取出待回写扣减量，与回写序号在一个事务中更新数据库，提交后删除回写中HASH
+     */
+    private void flushLocked() {
+        List<?> entries = stringRedisTemplate.execute(TAKE_REDIS_SCRIPT, Arrays.asList(
+                CacheConstants.STOCK_LEDGER_PENDING_KEY, CacheConstants.STOCK_LEDGER_INFLIGHT_KEY,
+                CacheConstants.STOCK_LEDGER_SEQ_KEY));
+        if (entries == null || entries.isEmpty()) {
+            return;
+        }
+
+        long seq = 0L;
+        Map<Integer, Long> deltas = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < entries.size(); i += 2) {
+            String field = String.valueOf(entries.get(i));
+            long value = Long.parseLong(String.valueOf(entries.get(i + 1)));
+            if (SEQ_FIELD.equals(field)) {
+                seq = value;
+            } else if (value != 0L) {
+                deltas.put(Integer.valueOf(field), value);
+            }
+        }
+
+        long flushSeq = seq;
+        Boolean applied = transactionTemplate.execute(status -> {
+            if (stockLedgerFlushMapper.insertIgnore(flushSeq) == 0) {
+                return false;
+            }
+            deltas.forEach(productMapper::applyStockDelta);
+            recordFlushLogs(flushSeq, deltas);
+            return true;
+        });
+        stringRedisTemplate.delete(CacheConstants.STOCK_LEDGER_INFLIGHT_KEY);
+
+        if (Boolean.TRUE.equals(applied)) {
+            log.debug("库存台账回写完成: seq={}, products={}", flushSeq, deltas.size());
+        } else {
+            log.warn("库存台账回写序号已处理过，跳过: seq={}", flushSeq);
+        }
+    }
+
+    private void recordFlushLogs(long seq, Map<Integer, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Map<Integer, Integer> remaining = new HashMap<>(deltas.size() * 2);
+        for (Product product : productMapper.selectBatchIds(deltas.keySet())) {
+            remaining.put(product.getProductId(), product.getStock());
+        }
+        LocalDateTime now = LocalDateTime.now();
+        deltas.forEach((productId, delta) -> {
+            InventoryLog inventoryLog = new InventoryLog();
+            inventoryLog.setProductId(productId);
+            inventoryLog.setChangeAmount((int) -delta);
+            inventoryLog.setType("台账回写");
+            inventoryLog.setReferenceId(String.valueOf(seq));
+            inventoryLog.setRemaining(remaining.get(productId));
+            inventoryLog.setOperator("system");
+            inventoryLog.setRemark("库存台账回写");
+            inventoryLog.setCreateTime(now);
+            inventoryLogMapper.insert(inventoryLog);
+        });
+    }
+
+    /**
+     * 按数据库库存重置一批商品，返回偏差商品数
+     */
+    private int reconcileBatch(List<Integer> ids) {
+        Map<Integer, Integer> dbStocks = new HashMap<>(ids.size() * 2);
+        for (Product product : productMapper.selectBatchIds(ids)) {
+            dbStocks.put(product.getProductId(), sellableStock(product));
+        }
+        int drifted = 0;
+        for (Integer id : ids) {
+            Integer dbStock = dbStocks.get(id);
+            if (dbStock == null) {
+                // 商品已删除
+                stringRedisTemplate.delete(CacheConstants.STOCK_LEDGER_KEY + id);
+                continue;
+            }
+            List<?> result = sync(id, dbStock, false);
+            if (result != null && result.size() == 3 && !String.valueOf(result.get(1)).equals(String.valueOf(result.get(2)))) {
+                drifted++;
+                driftCounter.increment();
+                log.warn("库存台账偏差已修复: productId={}, ledger={}, expected={}", id, result.get(1), result.get(2));
+            }
+        }
+        return drifted;
+    }
+
+    /**
+     * 从数据库加载商品的可用库存
+     *
+     * @return 商品是否存在
+     */
+    private boolean load(Integer productId) {
+        Product product = productMapper.selectById(productId);
+        if (product == null) {
+            return false;
+        }
+        sync(productId, sellableStock(product), true);
+        return true;
+    }
+
+    /**
+     * 数据库中可售的库存，扣除台账启用前已在数据库预占的数量
+     */
+    private static int sellableStock(Product product) {
+        int stock = product.getStock() != null ? product.getStock() : 0;
+        int reserved = product.getReservedStock() != null ? product.getReservedStock() : 0;
+        return stock - reserved;
+    }
+
+    private List<?> sync(Integer productId, int dbStock, boolean onlyIfAbsent) {
+        return stringRedisTemplate.execute(SYNC_REDIS_SCRIPT,
+                Arrays.asList(CacheConstants.STOCK_LEDGER_KEY + productId, CacheConstants.STOCK_LEDGER_PENDING_KEY,
+                        CacheConstants.STOCK_LEDGER_INFLIGHT_KEY),
+                String.valueOf(productId), String.valueOf(dbStock), onlyIfAbsent ? "1" : "0");
+    }
+
+    /**
+     * 批量扣减，供 {@link StockDeductionBatcher} 调用
+     */
+    private int[] deductBatch(Integer productId, int[] quantities) {
+        List<String> args = new ArrayList<>(quantities.length + 1);
+        args.add(String.valueOf(productId));
+        for (int quantity : quantities) {
+            args.add(String.valueOf(quantity));
+        }
+        List<?> result = stringRedisTemplate.execute(DEDUCT_BATCH_REDIS_SCRIPT,
+                Arrays.asList(CacheConstants.STOCK_LEDGER_KEY + productId, CacheConstants.STOCK_LEDGER_PENDING_KEY),
+                args.toArray());
+        if (result == null) {
+            throw new IllegalStateException("库存台账扣减脚本无返回: productId=" + productId);
+        }
+        int[] results = new int[result.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = Integer.parseInt(String.valueOf(result.get(i)));
+        }
+        return results;
+    }
+}
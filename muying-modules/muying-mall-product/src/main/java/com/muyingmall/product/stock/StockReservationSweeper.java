@@ -0,0 +1,64 @@
+package com.muyingmall.product.stock;
+
+import com.muyingmall.product.service.InventoryService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 过期库存预占清理任务
+ *
+ * <p>定时分批释放到期未确认的预占，每批一个事务：锁定一批到期记录（跳过其他实例正在处理的），
+ * 标记为已过期，并把预占数量按商品合并后一条语句扣回。一次运行处理的批数有上限，积压时下次继续。</p>
+ */
+@Slf4j
+@Component
+public class StockReservationSweeper {
+
+    private final InventoryService inventoryService;
+
+    /**
+     * 每批释放的预占记录数
+     */
+    private final int batchSize;
+
+    /**
+     * 一次运行最多处理的批数
+     */
+    private final int maxBatches;
+
+    private final Counter expiredCounter;
+
+    public StockReservationSweeper(InventoryService inventoryService, MeterRegistry meterRegistry,
+                                   @Value("${muying.product.reservation.sweep-batch-size:500}") int batchSize,
+                                   @Value("${muying.product.reservation.sweep-max-batches:20}") int maxBatches) {
+        this.inventoryService = inventoryService;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatches = Math.max(1, maxBatches);
+        this.expiredCounter = Counter.builder("muying.product.reservation.expired")
+                .description("到期释放的库存预占记录数").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${muying.product.reservation.sweep-interval-millis:30000}")
+    public void sweep() {
+        int total = 0;
+        try {
+            for (int i = 0; i < maxBatches; i++) {
+                int released = inventoryService.releaseExpiredReservations(batchSize);
+                total += released;
+                expiredCounter.increment(released);
+                if (released < batchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("释放过期库存预占失败，等待下次重试", e);
+        }
+        if (total > 0) {
+            log.info("释放过期库存预占: records={}", total);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.muyingmall.product.service.impl;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.muyingmall.product.entity.StockReservation;
+import com.muyingmall.product.mapper.InventoryLogMapper;
+import com.muyingmall.product.mapper.ProductMapper;
+import com.muyingmall.product.mapper.StockReservationMapper;
+import com.muyingmall.product.stock.StockBuckets;
+import com.muyingmall.product.stock.StockLedger;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 按订单扣减、恢复库存的测试：迟到的扣减不能在恢复之后生效
+ *
+ * @author 母婴商城开发团队
+ */
+class InventoryServiceImplTest {
+
+    private static final String ORDER_NO = "O202610170001";
+
+    private ProductMapper productMapper;
+
+    private InventoryLogMapper inventoryLogMapper;
+
+    private StockReservationMapper stockReservationMapper;
+
+    private InventoryServiceImpl inventoryService;
+
+    @BeforeAll
+    static void initTableInfo() {
+        TableInfoHelper.initTableInfo(new MapperBuilderAssistant(new MybatisConfiguration(), ""), StockReservation.class);
+    }
+
+    @BeforeEach
+    void setUp() {
+        productMapper = mock(ProductMapper.class);
+        inventoryLogMapper = mock(InventoryLogMapper.class);
+        stockReservationMapper = mock(StockReservationMapper.class);
+        inventoryService = new InventoryServiceImpl(productMapper, inventoryLogMapper, mock(StockLedger.class),
+                mock(StockBuckets.class), stockReservationMapper);
+    }
+
+    @Test
+    void restoreBeforeDeductShouldLeaveReleasedMarker() {
+        when(stockReservationMapper.selectByOrderNoForUpdate(ORDER_NO)).thenReturn(Collections.emptyList());
+
+        assertTrue(inventoryService.restoreOrderStock(ORDER_NO));
+
+        StockReservation marker = singleInserted();
+        assertEquals(StockReservation.ORDER_MARKER_PRODUCT_ID, marker.getProductId());
+        assertEquals(StockReservation.STATUS_RELEASED, marker.getStatus());
+        assertEquals(0, marker.getQuantity());
+        verify(productMapper, never()).batchIncreaseStock(anyMap());
+    }
+
+    @Test
+    void lateDeductAfterRestoreShouldBeRejected() {
+        when(stockReservationMapper.selectList(any())).thenReturn(List.of(
+                record(1L, StockReservation.ORDER_MARKER_PRODUCT_ID, 0, StockReservation.STATUS_RELEASED)));
+
+        assertFalse(inventoryService.deductOrderStock(ORDER_NO, Map.of(10, 2)));
+
+        verify(productMapper, never()).batchDecreaseStock(anyMap());
+        verify(stockReservationMapper, never()).insertBatch(anyList());
+    }
+
+    @Test
+    void repeatedDeductShouldBeIgnored() {
+        when(stockReservationMapper.selectList(any())).thenReturn(List.of(
+                record(1L, 10, 2, StockReservation.STATUS_CONFIRMED),
+                record(2L, StockReservation.ORDER_MARKER_PRODUCT_ID, 0, StockReservation.STATUS_CONFIRMED)));
+
+        assertTrue(inventoryService.deductOrderStock(ORDER_NO, Map.of(10, 2)));
+
+        verify(productMapper, never()).batchDecreaseStock(anyMap());
+    }
+
+    @Test
+    void restoreShouldReturnDeductedStockAndReleaseMarker() {
+        when(stockReservationMapper.selectByOrderNoForUpdate(ORDER_NO)).thenReturn(List.of(
+                record(1L, 10, 2, StockReservation.STATUS_CONFIRMED),
+                record(2L, 11, 1, StockReservation.STATUS_CONFIRMED),
+                record(3L, StockReservation.ORDER_MARKER_PRODUCT_ID, 0, StockReservation.STATUS_CONFIRMED)));
+
+        assertTrue(inventoryService.restoreOrderStock(ORDER_NO));
+
+        verify(stockReservationMapper).transition(List.of(1L, 2L, 3L),
+                StockReservation.STATUS_CONFIRMED, StockReservation.STATUS_RELEASED);
+        verify(productMapper).batchIncreaseStock(Map.of(10, 2, 11, 1));
+        verify(inventoryLogMapper).insertIncreaseLogs(eq(Map.of(10, 2, 11, 1)), anyString(), eq(ORDER_NO));
+        verify(stockReservationMapper, never()).insertBatch(anyList());
+    }
+
+    @Test
+    void restoreRacingDeductShouldReturnConcurrentlyDeductedStock() {
+        when(stockReservationMapper.selectByOrderNoForUpdate(ORDER_NO))
+                .thenReturn(Collections.emptyList())
+                .thenReturn(List.of(
+                        record(1L, 10, 3, StockReservation.STATUS_CONFIRMED),
+                        record(2L, StockReservation.ORDER_MARKER_PRODUCT_ID, 0, StockReservation.STATUS_CONFIRMED)));
+        when(stockReservationMapper.insertBatch(anyList())).thenThrow(new DuplicateKeyException("uk_order_product"));
+
+        assertTrue(inventoryService.restoreOrderStock(ORDER_NO));
+
+        verify(productMapper).batchIncreaseStock(Map.of(10, 3));
+    }
+
+    @Test
+    void releaseBeforeReserveShouldLeaveReleasedMarker() {
+        when(stockReservationMapper.selectByOrderNoForUpdate(ORDER_NO)).thenReturn(Collections.emptyList());
+
+        assertTrue(inventoryService.releaseReservation(ORDER_NO));
+        assertEquals(StockReservation.STATUS_RELEASED, singleInserted().getStatus());
+
+        when(stockReservationMapper.selectList(any())).thenReturn(List.of(
+                record(1L, StockReservation.ORDER_MARKER_PRODUCT_ID, 0, StockReservation.STATUS_RELEASED)));
+        assertFalse(inventoryService.reserveStock(ORDER_NO, Map.of(10, 1), null));
+        verify(productMapper, never()).reserveStock(any(), anyInt());
+    }
+
+    @SuppressWarnings("unchecked")
+    private StockReservation singleInserted() {
+        ArgumentCaptor<List<StockReservation>> captor = ArgumentCaptor.forClass(List.class);
+        verify(stockReservationMapper).insertBatch(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        return captor.getValue().get(0);
+    }
+
+    private static StockReservation record(Long id, int productId, int quantity, int status) {
+        StockReservation record = new StockReservation();
+        record.setId(id);
+        record.setOrderNo(ORDER_NO);
+        record.setProductId(productId);
+        record.setQuantity(quantity);
+        record.setDeducted(false);
+        record.setStatus(status);
+        record.setExpireTime(LocalDateTime.now());
+        return record;
+    }
+}
@@ -0,0 +1,146 @@
+package com.muyingmall.product.stock;
+
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.product.entity.Product;
+import com.muyingmall.product.entity.ProductStockBucket;
+import com.muyingmall.product.mapper.ProductMapper;
+import com.muyingmall.product.mapper.ProductStockBucketMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 分桶库存测试：在调用方事务中首次建桶，调用方回滚后不能记为已建桶
+ *
+ * @author 母婴商城开发团队
+ */
+class StockBucketsTest {
+
+    private static final Integer PRODUCT_ID = 42;
+
+    private static final int BUCKET_COUNT = 4;
+
+    /**
+     * 模拟数据库中的桶行数，调用方回滚时由测试清零
+     */
+    private final AtomicInteger bucketRows = new AtomicInteger();
+
+    private ProductStockBucketMapper bucketMapper;
+
+    private StockBuckets stockBuckets;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        bucketMapper = mock(ProductStockBucketMapper.class);
+        when(bucketMapper.countBuckets(PRODUCT_ID)).thenAnswer(invocation -> bucketRows.get());
+        when(bucketMapper.insertBuckets(anyList())).thenAnswer(invocation -> {
+            int size = invocation.getArgument(0, List.class).size();
+            bucketRows.set(size);
+            return size;
+        });
+        ProductStockBucket bucket = new ProductStockBucket();
+        bucket.setProductId(PRODUCT_ID);
+        bucket.setBucketNo(0);
+        bucket.setStock(25);
+        when(bucketMapper.selectAvailableForUpdate(eq(PRODUCT_ID), anyInt())).thenReturn(bucket);
+
+        ProductMapper productMapper = mock(ProductMapper.class);
+        Product product = new Product();
+        product.setProductId(PRODUCT_ID);
+        product.setStock(100);
+        product.setReservedStock(0);
+        when(productMapper.selectOne(any())).thenReturn(product);
+
+        // 与默认传播行为一致：已有事务时加入调用方事务，由测试控制提交或回滚
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+
+        stockBuckets = new StockBuckets(bucketMapper, productMapper, transactionTemplate,
+                mock(DistributedLock.class), new SimpleMeterRegistry(), true, String.valueOf(PRODUCT_ID),
+                BUCKET_COUNT, 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void rolledBackFirstDeductionShouldRebuildBuckets() {
+        // 首次扣减在调用方事务中建桶，随后调用方回滚，新建的桶一并消失
+        TransactionSynchronizationManager.initSynchronization();
+        assertTrue(stockBuckets.deduct(PRODUCT_ID, 1));
+        rollback();
+        bucketRows.set(0);
+
+        // 再次扣减需要重新检查并建桶，而不是在不存在的桶上扣减
+        TransactionSynchronizationManager.initSynchronization();
+        assertTrue(stockBuckets.deduct(PRODUCT_ID, 1));
+        commit();
+
+        verify(bucketMapper, times(2)).insertBuckets(anyList());
+        assertEquals(BUCKET_COUNT, bucketRows.get());
+    }
+
+    @Test
+    void committedBucketsShouldNotBeCheckedAgain() {
+        TransactionSynchronizationManager.initSynchronization();
+        assertTrue(stockBuckets.deduct(PRODUCT_ID, 1));
+        // 提交前同一事务内的后续扣减仍会检查，此时桶已存在，不会重复建桶
+        assertTrue(stockBuckets.deduct(PRODUCT_ID, 1));
+        commit();
+
+        assertTrue(stockBuckets.deduct(PRODUCT_ID, 1));
+        assertTrue(stockBuckets.add(PRODUCT_ID, 1));
+
+        // 建桶时锁定商品行前后各检查一次，同一事务内第二次扣减检查一次，提交后不再检查
+        verify(bucketMapper, times(3)).countBuckets(PRODUCT_ID);
+        verify(bucketMapper, times(1)).insertBuckets(anyList());
+    }
+
+    @Test
+    void bucketsCreatedOutsideTransactionShouldBeMarkedImmediately() {
+        assertTrue(stockBuckets.deduct(PRODUCT_ID, 1));
+        assertTrue(stockBuckets.deduct(PRODUCT_ID, 1));
+
+        verify(bucketMapper, times(2)).countBuckets(PRODUCT_ID);
+        verify(bucketMapper, times(1)).insertBuckets(anyList());
+    }
+
+    private static void commit() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+    }
+
+    private static void rollback() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+    }
+}
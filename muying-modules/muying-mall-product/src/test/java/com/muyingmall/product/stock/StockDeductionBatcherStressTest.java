@@ -0,0 +1,212 @@
+package com.muyingmall.product.stock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 库存扣减批处理并发压测：单个热点商品上请求数远超库存，校验不超卖、不少卖及请求合并
+ *
+ * @author 母婴商城开发团队
+ */
+class StockDeductionBatcherStressTest {
+
+    private static final int THREADS = 64;
+
+    private static final int REQUESTS_PER_THREAD = 200;
+
+    /**
+     * 模拟一次 Redis 往返的耗时（纳秒）
+     */
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    @Test
+    void shouldNeverOversellHotProduct() throws Exception {
+        int initialStock = 5000;
+        InMemoryLedger ledger = new InMemoryLedger(initialStock);
+        StockDeductionBatcher batcher = new StockDeductionBatcher(ledger, 256);
+
+        AtomicInteger deducted = new AtomicInteger();
+        AtomicInteger insufficient = new AtomicInteger();
+        runConcurrently(() -> {
+            int result = batcher.deduct(1, 1, 10_000);
+            if (result == StockDeductionBatcher.DEDUCTED) {
+                deducted.incrementAndGet();
+            } else if (result == StockDeductionBatcher.INSUFFICIENT) {
+                insufficient.incrementAndGet();
+            }
+        });
+
+        int requests = THREADS * REQUESTS_PER_THREAD;
+        assertEquals(initialStock, deducted.get());
+        assertEquals(requests - initialStock, insufficient.get());
+        assertEquals(0L, ledger.stock);
+        assertEquals(initialStock, ledger.deductedTotal.get());
+        assertTrue(ledger.roundTrips.get() < requests / 4, "请求未合并: roundTrips=" + ledger.roundTrips.get());
+    }
+
+    @Test
+    void shouldConserveStockWithMixedQuantities() throws Exception {
+        int initialStock = 20000;
+        InMemoryLedger ledger = new InMemoryLedger(initialStock);
+        StockDeductionBatcher batcher = new StockDeductionBatcher(ledger, 64);
+
+        AtomicLong deductedQuantity = new AtomicLong();
+        AtomicInteger minFailedQuantity = new AtomicInteger(Integer.MAX_VALUE);
+        runConcurrently(() -> {
+            int quantity = ThreadLocalRandom.current().nextInt(1, 6);
+            int result = batcher.deduct(1, quantity, 10_000);
+            if (result == StockDeductionBatcher.DEDUCTED) {
+                deductedQuantity.addAndGet(quantity);
+            } else {
+                minFailedQuantity.accumulateAndGet(quantity, Math::min);
+            }
+        });
+
+        // 成功扣减量与剩余库存之和等于初始库存，剩余库存小于任何失败请求的数量（不少卖）
+        assertEquals(initialStock, deductedQuantity.get() + ledger.stock);
+        assertTrue(ledger.stock >= 0);
+        assertTrue(ledger.stock < minFailedQuantity.get(), "库存剩余但有请求失败: stock=" + ledger.stock);
+    }
+
+    @Test
+    void shouldIsolateProducts() throws Exception {
+        InMemoryLedger first = new InMemoryLedger(1000);
+        InMemoryLedger second = new InMemoryLedger(3000);
+        StockDeductionBatcher batcher = new StockDeductionBatcher((productId, quantities) ->
+                (productId == 1 ? first : second).deduct(productId, quantities), 128);
+
+        AtomicInteger counter = new AtomicInteger();
+        runConcurrently(() -> batcher.deduct(counter.incrementAndGet() % 2 + 1, 1, 10_000));
+
+        assertEquals(0L, first.stock);
+        assertEquals(0L, second.stock);
+    }
+
+    @Test
+    void drainerShouldHandOffAfterOwnRequest() throws Exception {
+        int threads = 16;
+        Map<Thread, Integer> ownQuantities = new ConcurrentHashMap<>();
+        Set<Integer> completed = ConcurrentHashMap.newKeySet();
+        AtomicInteger drainedAfterOwn = new AtomicInteger();
+        // 每个线程用不同的扣减数量标识自己的请求，每批只取一个请求
+        StockDeductionBatcher batcher = new StockDeductionBatcher((productId, quantities) -> {
+            Integer own = ownQuantities.get(Thread.currentThread());
+            if (completed.contains(own)) {
+                drainedAfterOwn.incrementAndGet();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+            completed.add(quantities[0]);
+            return new int[]{StockDeductionBatcher.DEDUCTED};
+        }, 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch startGate = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                int quantity = t + 1;
+                futures.add(executor.submit(() -> {
+                    ownQuantities.put(Thread.currentThread(), quantity);
+                    startGate.await();
+                    return batcher.deduct(1, quantity, 10_000);
+                }));
+            }
+            startGate.countDown();
+            for (Future<Integer> future : futures) {
+                assertEquals(StockDeductionBatcher.DEDUCTED, future.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads, completed.size());
+        assertEquals(0, drainedAfterOwn.get(), "合并者在自己的请求完成后仍在处理其他请求");
+    }
+
+    @Test
+    void shouldReportNotLoadedAndFailures() {
+        StockDeductionBatcher notLoaded = new StockDeductionBatcher((productId, quantities) ->
+                new int[]{StockDeductionBatcher.NOT_LOADED}, 16);
+        assertEquals(StockDeductionBatcher.NOT_LOADED, notLoaded.deduct(1, 1, 1000));
+
+        StockDeductionBatcher failing = new StockDeductionBatcher((productId, quantities) -> {
+            throw new IllegalStateException("redis down");
+        }, 16);
+        assertThrows(IllegalStateException.class, () -> failing.deduct(1, 1, 1000));
+    }
+
+    private static void runConcurrently(Runnable request) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch startGate = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    startGate.await();
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        request.run();
+                    }
+                    return null;
+                }));
+            }
+            startGate.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 模拟 Redis 台账：脚本串行执行，每次调用耗时一次往返
+     */
+    private static final class InMemoryLedger implements StockDeductionBatcher.BatchDeductor {
+
+        private long stock;
+
+        private final AtomicLong deductedTotal = new AtomicLong();
+
+        private final AtomicInteger roundTrips = new AtomicInteger();
+
+        private InMemoryLedger(long stock) {
+            this.stock = stock;
+        }
+
+        @Override
+        public int[] deduct(Integer productId, int[] quantities) {
+            roundTrips.incrementAndGet();
+            LockSupport.parkNanos(ROUND_TRIP_NANOS);
+            int[] results = new int[quantities.length];
+            synchronized (this) {
+                for (int i = 0; i < quantities.length; i++) {
+                    if (quantities[i] <= stock) {
+                        stock -= quantities[i];
+                        deductedTotal.addAndGet(quantities[i]);
+                        results[i] = StockDeductionBatcher.DEDUCTED;
+                    } else {
+                        results[i] = StockDeductionBatcher.INSUFFICIENT;
+                    }
+                }
+            }
+            return results;
+        }
+    }
+}
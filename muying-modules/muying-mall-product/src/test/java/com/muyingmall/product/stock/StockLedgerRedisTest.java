@@ -0,0 +1,199 @@
+package com.muyingmall.product.stock;
+
+import com.muyingmall.common.CacheConstants;
+import com.muyingmall.common.redis.lock.DistributedLock;
+import com.muyingmall.product.entity.Product;
+import com.muyingmall.product.mapper.InventoryLogMapper;
+import com.muyingmall.product.mapper.ProductMapper;
+import com.muyingmall.product.mapper.StockLedgerFlushMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 库存台账 Lua 脚本测试：在真实 Redis 上执行批量扣减和多商品整体扣减，校验不超卖及待回写扣减量
+ *
+ * @author 母婴商城开发团队
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class StockLedgerRedisTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS =
+            new GenericContainer<>(DockerImageName.parse("redis:7-alpine")).withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    private ProductMapper productMapper;
+
+    private StockLedger ledger;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        }, true);
+        productMapper = mock(ProductMapper.class);
+        ledger = new StockLedger(redisTemplate, mock(DistributedLock.class), productMapper,
+                mock(InventoryLogMapper.class), mock(StockLedgerFlushMapper.class), mock(TransactionTemplate.class),
+                new SimpleMeterRegistry(), true, "", 256, 10_000);
+    }
+
+    @Test
+    void concurrentDeductShouldNeverOversell() throws Exception {
+        int initialStock = 500;
+        setAvailable(1, initialStock);
+
+        int threads = 32;
+        int requestsPerThread = 50;
+        AtomicInteger deducted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch startGate = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    startGate.await();
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        if (ledger.deduct(1, 1)) {
+                            deducted.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            startGate.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(initialStock, deducted.get());
+        assertEquals(0, ledger.available(1));
+        assertEquals(initialStock, pending(1));
+    }
+
+    @Test
+    void deductShouldLoadFromDatabaseWhenAbsent() {
+        when(productMapper.selectById(any())).thenReturn(product(2, 10, 2));
+
+        assertTrue(ledger.deduct(2, 3));
+        assertEquals(5, ledger.available(2));
+        assertEquals(3, pending(2));
+
+        assertFalse(ledger.deduct(2, 6));
+        assertEquals(5, ledger.available(2));
+        assertEquals(3, pending(2));
+    }
+
+    @Test
+    void deductShouldFailForMissingProduct() {
+        assertFalse(ledger.deduct(3, 1));
+        assertNull(ledger.available(3));
+        assertNull(redisTemplate.opsForHash().get(CacheConstants.STOCK_LEDGER_PENDING_KEY, "3"));
+    }
+
+    @Test
+    void deductAllShouldBeAllOrNothing() {
+        setAvailable(1, 5);
+        setAvailable(2, 1);
+
+        assertFalse(ledger.deductAll(Map.of(1, 2, 2, 3)));
+        assertEquals(5, ledger.available(1));
+        assertEquals(1, ledger.available(2));
+        assertNull(redisTemplate.opsForHash().get(CacheConstants.STOCK_LEDGER_PENDING_KEY, "1"));
+
+        assertTrue(ledger.deductAll(Map.of(1, 2, 2, 1)));
+        assertEquals(3, ledger.available(1));
+        assertEquals(0, ledger.available(2));
+        assertEquals(2, pending(1));
+        assertEquals(1, pending(2));
+    }
+
+    @Test
+    void deductAllShouldLoadAbsentProducts() {
+        setAvailable(1, 5);
+        when(productMapper.selectById(2)).thenReturn(product(2, 8, 0));
+        when(productMapper.selectById(3)).thenReturn(product(3, 4, 1));
+
+        assertTrue(ledger.deductAll(Map.of(1, 1, 2, 2, 3, 3)));
+        assertEquals(4, ledger.available(1));
+        assertEquals(6, ledger.available(2));
+        assertEquals(0, ledger.available(3));
+        assertEquals(3, pending(3));
+    }
+
+    @Test
+    void restoreShouldReturnStockAndPendingDeduction() {
+        setAvailable(1, 5);
+        assertTrue(ledger.deduct(1, 4));
+
+        ledger.restore(1, 3);
+
+        assertEquals(4, ledger.available(1));
+        assertEquals(1, pending(1));
+    }
+
+    private static void setAvailable(Integer productId, int stock) {
+        redisTemplate.opsForValue().set(CacheConstants.STOCK_LEDGER_KEY + productId, String.valueOf(stock));
+    }
+
+    private static long pending(Integer productId) {
+        Object value = redisTemplate.opsForHash().get(CacheConstants.STOCK_LEDGER_PENDING_KEY, String.valueOf(productId));
+        return value != null ? Long.parseLong(value.toString()) : 0L;
+    }
+
+    private static Product product(Integer productId, int stock, int reservedStock) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setStock(stock);
+        product.setReservedStock(reservedStock);
+        return product;
+    }
+}
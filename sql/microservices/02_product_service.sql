@@ -53,6 +53,7 @@ CREATE TABLE `product` (
   `original_price` decimal(10, 2) NULL DEFAULT NULL COMMENT '商品原价',
   `cost_price` decimal(10, 2) NULL DEFAULT NULL COMMENT '成本价',
   `stock` int NOT NULL DEFAULT 0 COMMENT '库存数量',
+  `reserved_stock` int NOT NULL DEFAULT 0 COMMENT '预占库存（已下单未支付），可用库存 = stock - reserved_stock',
   `warning_stock` int NULL DEFAULT 10 COMMENT '预警库存',
   `sales_count` int NOT NULL DEFAULT 0 COMMENT '销售数量',
   `view_count` int NOT NULL DEFAULT 0 COMMENT '浏览数量',
@@ -176,6 +177,39 @@ CREATE TABLE `stock_log` (
   CONSTRAINT `fk_stock_log_spec` FOREIGN KEY (`spec_id`) REFERENCES `product_specs` (`spec_id`) ON DELETE CASCADE ON UPDATE CASCADE
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '库存变更记录表' ROW_FORMAT = DYNAMIC;
 
+-- 库存台账回写记录表：回写序号与库存更新同一事务提交，重复回写同一批扣减时跳过
+CREATE TABLE `stock_ledger_flush` (
+  `seq` bigint UNSIGNED NOT NULL COMMENT '回写序号',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '回写时间',
+  PRIMARY KEY (`seq`) USING BTREE,
+  INDEX `idx_create_time`(`create_time` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '库存台账回写记录表' ROW_FORMAT = DYNAMIC;
+
+-- 库存预占表：每个订单行一条，到期未确认由定时任务批量释放
+CREATE TABLE `stock_reservation` (
+  `id` bigint UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '预占ID',
+  `order_no` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '订单号',
+  `product_id` int UNSIGNED NOT NULL COMMENT '商品ID，0 为订单标记行',
+  `quantity` int NOT NULL COMMENT '预占数量',
+  `deducted` tinyint(1) NOT NULL DEFAULT 0 COMMENT '是否已从库存台账或分桶库存直接扣减：0-否（计入预占库存），1-是',
+  `status` tinyint NOT NULL DEFAULT 0 COMMENT '状态：0-预占中，1-已确认（含下单直接扣减），2-已释放，3-已过期',
+  `expire_time` datetime NOT NULL COMMENT '过期时间',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_order_product`(`order_no` ASC, `product_id` ASC) USING BTREE,
+  INDEX `idx_status_expire`(`status` ASC, `expire_time` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '库存预占表' ROW_FORMAT = DYNAMIC;
+
+-- 商品分桶库存表：热点商品的库存拆分到多行，扣减落在未被其他事务锁定的行上，商品表库存定时按合计刷新
+CREATE TABLE `product_stock_bucket` (
+  `product_id` int UNSIGNED NOT NULL COMMENT '商品ID',
+  `bucket_no` tinyint UNSIGNED NOT NULL COMMENT '桶序号',
+  `stock` int NOT NULL DEFAULT 0 COMMENT '桶内库存',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`product_id`, `bucket_no`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '商品分桶库存表' ROW_FORMAT = DYNAMIC;
+
 -- 插入基础分类数据
 INSERT INTO `category` (`category_id`, `parent_id`, `name`, `icon`, `sort_order`, `status`) VALUES
 (1, 0, '奶粉', 'categorys/milk.png', 1, 1),
@@ -98,6 +98,82 @@ CREATE TABLE `order_state_log` (
   CONSTRAINT `fk_order_state_log` FOREIGN KEY (`order_id`) REFERENCES `order` (`order_id`) ON DELETE CASCADE ON UPDATE CASCADE
 ) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '订单状态日志表' ROW_FORMAT = DYNAMIC;
 
+-- 订单销售汇总桶表
+CREATE TABLE `order_sales_bucket` (
+  `id` bigint UNSIGNED NOT NULL AUTO_INCREMENT COMMENT 'ID',
+  `bucket_type` varchar(10) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '桶类型：HOUR-小时，DAY-天',
+  `bucket_time` datetime NOT NULL COMMENT '桶起始时间（按订单创建时间归桶）',
+  `sales_amount` decimal(16, 2) NOT NULL DEFAULT 0.00 COMMENT '已完成订单销售额',
+  `order_count` bigint NOT NULL DEFAULT 0 COMMENT '已完成订单数',
+  `item_count` bigint NOT NULL DEFAULT 0 COMMENT '商品件数',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_type_time`(`bucket_type` ASC, `bucket_time` ASC) USING BTREE,
+  INDEX `idx_bucket_time`(`bucket_time` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '订单销售汇总桶表' ROW_FORMAT = DYNAMIC;
+
+-- 订单消息发件箱表：与业务数据同一事务写入，由投递任务批量发布到 RabbitMQ，至少投递一次
+CREATE TABLE `order_outbox` (
+  `id` bigint UNSIGNED NOT NULL AUTO_INCREMENT COMMENT 'ID',
+  `message_id` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '消息ID',
+  `exchange` varchar(128) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '交换机',
+  `routing_key` varchar(128) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '路由键',
+  `message_type` varchar(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '消息类型（消息转换器的类型头）',
+  `payload` text CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '消息体JSON',
+  `priority` tinyint NULL DEFAULT NULL COMMENT '消息优先级（0-9）',
+  `status` tinyint NOT NULL DEFAULT 0 COMMENT '状态：0-待发送，1-已发送，2-无法路由',
+  `attempts` int NOT NULL DEFAULT 0 COMMENT '发送次数',
+  `next_retry_time` datetime(3) NOT NULL COMMENT '下次发送时间（发送中为租约到期时间）',
+  `last_error` varchar(512) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '最近一次失败原因',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `sent_time` datetime NULL DEFAULT NULL COMMENT '确认发送时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_message_id`(`message_id` ASC) USING BTREE,
+  INDEX `idx_status_retry`(`status` ASC, `next_retry_time` ASC) USING BTREE,
+  INDEX `idx_status_sent`(`status` ASC, `sent_time` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '订单消息发件箱表' ROW_FORMAT = DYNAMIC;
+
+-- 优惠券批量发放任务表：按用户ID游标分块发放，检查点与发放结果同一事务提交，可断点续发
+CREATE TABLE `coupon_issue_job` (
+  `id` bigint UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '任务ID',
+  `batch_id` int UNSIGNED NOT NULL COMMENT '优惠券批次ID',
+  `coupon_id` bigint UNSIGNED NOT NULL COMMENT '发放的优惠券ID',
+  `user_status` tinyint NULL DEFAULT NULL COMMENT '目标用户状态：0-禁用，1-正常，为空时不限',
+  `max_user_id` bigint UNSIGNED NULL DEFAULT NULL COMMENT '目标用户ID上限（含），为空时不限',
+  `last_user_id` bigint UNSIGNED NOT NULL DEFAULT 0 COMMENT '检查点：已处理的最大用户ID',
+  `target_count` bigint NOT NULL DEFAULT 0 COMMENT '创建时统计的目标用户数',
+  `scanned_count` bigint NOT NULL DEFAULT 0 COMMENT '已扫描用户数',
+  `issued_count` bigint NOT NULL DEFAULT 0 COMMENT '已发放数',
+  `skipped_count` bigint NOT NULL DEFAULT 0 COMMENT '跳过数（已持有或发行量不足）',
+  `status` tinyint NOT NULL DEFAULT 0 COMMENT '状态：0-待执行，1-执行中，2-已暂停，3-已完成，4-失败',
+  `last_error` varchar(512) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '最近一次失败原因或结束说明',
+  `start_time` datetime NULL DEFAULT NULL COMMENT '开始执行时间',
+  `finish_time` datetime NULL DEFAULT NULL COMMENT '结束时间',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_status`(`status` ASC) USING BTREE,
+  INDEX `idx_batch_id`(`batch_id` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '优惠券批量发放任务表' ROW_FORMAT = DYNAMIC;
+
+-- 积分预留表：订单事务内写入待确认记录，提交后向积分服务确认扣减，失败或超时补偿
+CREATE TABLE `points_reservation` (
+  `id` bigint UNSIGNED NOT NULL AUTO_INCREMENT COMMENT 'ID',
+  `order_id` int UNSIGNED NOT NULL COMMENT '订单ID',
+  `order_no` varchar(64) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NOT NULL COMMENT '订单编号',
+  `user_id` int UNSIGNED NOT NULL COMMENT '用户ID',
+  `points` int NOT NULL COMMENT '抵扣积分',
+  `status` tinyint NOT NULL DEFAULT 0 COMMENT '状态：0-待确认，1-已确认，2-待退还，3-已退还，4-已取消',
+  `attempts` int NOT NULL DEFAULT 0 COMMENT '调用积分服务次数',
+  `next_retry_time` datetime(3) NOT NULL COMMENT '下次处理时间（处理中为租约到期时间）',
+  `last_error` varchar(512) CHARACTER SET utf8mb4 COLLATE utf8mb4_0900_ai_ci NULL DEFAULT NULL COMMENT '最近一次失败原因',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_order_id`(`order_id` ASC) USING BTREE,
+  INDEX `idx_status_retry`(`status` ASC, `next_retry_time` ASC) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_0900_ai_ci COMMENT = '积分预留表' ROW_FORMAT = DYNAMIC;
+
 -- 购物车表
 CREATE TABLE `cart` (
   `cart_id` int UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '购物车ID',
@@ -312,11 +388,20 @@ GROUP BY op.product_id, op.product_name
 ORDER BY total_quantity DESC, total_sales_amount DESC;
 
 -- 创建索引优化查询性能
-CREATE INDEX `idx_order_user_status` ON `order` (`user_id`, `status`);
+CREATE INDEX `idx_order_user_status` ON `order` (`user_id`, `status`, `create_time`, `order_id`);
+-- 订单历史游标分页按 (create_time, order_id) 定位
+CREATE INDEX `idx_order_user_create` ON `order` (`user_id`, `create_time`, `order_id`);
 CREATE INDEX `idx_order_payment_time` ON `order` (`payment_time`, `status`);
 CREATE INDEX `idx_order_finish_time` ON `order` (`finish_time`, `status`);
+-- 归档任务按状态和最后更新时间挑选已关闭订单
+CREATE INDEX `idx_order_status_update` ON `order` (`status`, `update_time`);
 CREATE INDEX `idx_order_product_commented` ON `order_product` (`is_commented`, `create_time`);
 CREATE INDEX `idx_cart_user_selected` ON `cart` (`user_id`, `selected`);
 CREATE INDEX `idx_logistics_status_time` ON `logistics` (`status`, `ship_time`);
 
+-- 订单归档表：结构与热表一致，由归档任务把关闭超过保留天数的订单及其商品、状态日志迁入
+CREATE TABLE `order_archive` LIKE `order`;
+CREATE TABLE `order_product_archive` LIKE `order_product`;
+CREATE TABLE `order_state_log_archive` LIKE `order_state_log`;
+
 SET FOREIGN_KEY_CHECKS = 1;
\ No newline at end of file
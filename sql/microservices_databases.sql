@@ -1050,7 +1050,7 @@ CREATE TABLE `user_coupon` (
   UNIQUE KEY `uk_coupon_code` (`coupon_code`),
   KEY `idx_user_id` (`user_id`),
   KEY `idx_template_id` (`template_id`),
-  KEY `idx_use_status` (`use_status`),
+  KEY `idx_use_status_end_time` (`use_status`, `end_time`),
   KEY `idx_end_time` (`end_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户优惠券表';
 